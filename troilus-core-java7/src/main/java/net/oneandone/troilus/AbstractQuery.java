@@ -26,7 +26,9 @@ import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.policies.RetryPolicy;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
 
@@ -103,6 +105,14 @@ abstract class AbstractQuery<Q> {
         return newQuery(ctx.withRetryPolicy(policy));
     }
     
+    /**
+     * @param idempotent  true, if the query can be applied multiple times without changing the result
+     * @return a cloned query instance with the modified behavior
+     */
+    public Q withIdempotence(boolean idempotent) {
+        return newQuery(ctx.withIdempotence(idempotent));
+    }
+    
     /**
      * @param microsSinceEpoch the writetime in since epoch to set
      * @return a cloned query instance with the modified behavior
@@ -195,11 +205,72 @@ abstract class AbstractQuery<Q> {
     }
         
     
+    /**
+     * performs a read statement. The read will be hedged, if hedged reads are activated and the statement is idempotent. 
+     * The execution will be shared with identical in-flight reads, if single-flight reads are activated  
+     * 
+     * @param dbSession        the db session
+     * @param tablename        the tablename of the read
+     * @param statementFuture  the read statement to perform in an async way
+     * @return the result future 
+     */
+    protected ListenableFuture<ResultSet> performReadAsync(final DBSession dbSession, final Tablename tablename, ListenableFuture<Statement> statementFuture) {
+        if ((getExecutionSpec().getHedgePercentile() == null) && (getExecutionSpec().getSingleFlight() == null)) {
+            return performAsync(dbSession, statementFuture);
+        }
+        
+        Function<Statement, ListenableFuture<ResultSet>> statementToResultSetFuture = new Function<Statement, ListenableFuture<ResultSet>>() {
+            @Override
+            public ListenableFuture<ResultSet> apply(final Statement statement) {
+                if (Boolean.TRUE.equals(getExecutionSpec().getSingleFlight())) {
+                    Supplier<ListenableFuture<ResultSet>> read = new Supplier<ListenableFuture<ResultSet>>() {
+                        @Override
+                        public ListenableFuture<ResultSet> get() {
+                            return performHedgedReadAsync(dbSession, tablename, statement);
+                        }
+                    };
+                    
+                    return SingleFlight.executeAsync(dbSession.getSession(), statement, getExecutionSpec().getConsistencyLevel(), read);
+                    
+                } else {
+                    return performHedgedReadAsync(dbSession, tablename, statement);
+                }
+            }
+        };
+        
+        return ListenableFutures.transform(statementFuture, statementToResultSetFuture);  
+    }
+    
+    
+    private ListenableFuture<ResultSet> performHedgedReadAsync(final DBSession dbSession, Tablename tablename, final Statement statement) {
+        if (getExecutionSpec().getHedgePercentile() == null) {
+            return performAsync(dbSession, statement);
+        }
+        
+        Supplier<ListenableFuture<ResultSet>> read = new Supplier<ListenableFuture<ResultSet>>() {
+            @Override
+            public ListenableFuture<ResultSet> get() {
+                return performAsync(dbSession, statement);
+            }
+        };
+        
+        return ReadHedger.get(tablename).executeAsync(read, 
+                                                      !Boolean.FALSE.equals(statement.isIdempotent()), 
+                                                      getExecutionSpec().getHedgePercentile(), 
+                                                      getExecutionSpec().getHedgeMaxExtraLoad());
+    }
+    
+    
     /**
      * @param statementFuture  the statement to perform in a sync way
      * @return the result future 
      */
     protected ListenableFuture<ResultSet> performAsync(DBSession dbSession, Statement statement) {
+        // the remaining time of the deadline becomes the read timeout of the driver 
+        if (!Deadlines.applyTo(getExecutionSpec(), statement)) {
+            return Futures.immediateFailedFuture(new DeadlineExceededException("deadline exceeded"));
+        }
+        
         if (getExecutionSpec().getConsistencyLevel() != null) {
             statement.setConsistencyLevel(getExecutionSpec().getConsistencyLevel());
         }
@@ -212,6 +283,10 @@ abstract class AbstractQuery<Q> {
             statement.setRetryPolicy(getExecutionSpec().getRetryPolicy());
         }
 
+        if (getExecutionSpec().getIdempotent() != null) {
+            statement.setIdempotent(getExecutionSpec().getIdempotent());
+        }
+
         if (getExecutionSpec().getEnableTracing() != null) {
             if (getExecutionSpec().getEnableTracing()) {
                 statement.enableTracing();
@@ -220,6 +295,11 @@ abstract class AbstractQuery<Q> {
             }
         }
         
+        // explicitly untraced queries will not be sampled 
+        if ((getExecutionSpec().getTraceSampler() != null) && !Boolean.FALSE.equals(getExecutionSpec().getEnableTracing())) {
+            return getExecutionSpec().getTraceSampler().executeAsync(dbSession, statement);
+        }
+        
         return dbSession.executeAsync(statement);
     }
     
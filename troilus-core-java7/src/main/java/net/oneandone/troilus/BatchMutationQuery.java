@@ -26,6 +26,7 @@ import com.datastax.driver.core.BatchStatement.Type;
 import com.datastax.driver.core.Statement;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
 
@@ -55,7 +56,7 @@ class BatchMutationQuery extends MutationQuery<BatchMutation> implements BatchMu
         }
     }
     
-    private BatchMutationQuery(Context ctx, Type type, ImmutableList<Batchable<?>> batchables) {
+    BatchMutationQuery(Context ctx, Type type, ImmutableList<Batchable<?>> batchables) {
         super(ctx);
         this.type = type;
         this.batchables = batchables;
@@ -99,6 +100,44 @@ class BatchMutationQuery extends MutationQuery<BatchMutation> implements BatchMu
     }
 
 
+    @Override
+    public ListenableFuture<Result> executeAsync() {
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+        }
+        
+        // the response interceptors of the batched queries are not executed  
+        if (isLookupIndexActivated()) {
+            return Futures.immediateFailedFuture(new IllegalStateException("batches are not supported by a lookup index"));
+        }
+        
+        if ((getExecutionSpec().getMaxBatchStatements() == null) || (getExecutionSpec().getWriteBehindJournal() != null)) {
+            return super.executeAsync();
+        }
+        
+        ImmutableList.Builder<ListenableFuture<Statement>> statementFutures = ImmutableList.builder();
+        for (Batchable<?> batchable : batchables) {
+            statementFutures.add(batchable.getStatementAsync(getDefaultDbSession()));
+        }
+        return executeBatchAsync(type, statementFutures.build());
+    }
+    
+    
+    private boolean isLookupIndexActivated() {
+        if (LookupIndexImpl.isActivated(getContext())) {
+            return true;
+        }
+        
+        for (Batchable<?> batchable : batchables) {
+            if ((batchable instanceof AbstractQuery) && LookupIndexImpl.isActivated(((AbstractQuery<?>) batchable).getContext())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
     @Override
     public ListenableFuture<Statement> getStatementAsync(final DBSession dbSession) {
         
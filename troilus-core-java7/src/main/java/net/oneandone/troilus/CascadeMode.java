@@ -0,0 +1,44 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+
+/**
+ * The way how the statements of cascading interceptors are performed together 
+ * with the statement of the query. The cascade mode is ignored, if the query is 
+ * added to a batch. By using UNLOGGED or PARALLEL the cascading statements are not 
+ * atomic with the query statement. The cascading statements of a conditional query 
+ * are performed after the query statement, and only if it has been applied
+ */
+public enum CascadeMode {
+    
+    /**
+     * the query statement and the cascading statements are performed within a single logged batch (default)
+     */
+    LOGGED,
+    
+    /**
+     * the statements are grouped by partition. Each group is performed as unlogged batch. 
+     * The groups are performed in parallel 
+     */
+    UNLOGGED,
+    
+    /**
+     * each statement is performed independently in parallel 
+     */
+    PARALLEL;
+}
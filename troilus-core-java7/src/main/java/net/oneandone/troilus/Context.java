@@ -30,6 +30,10 @@ import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.policies.RetryPolicy;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 
 
 
@@ -116,6 +120,16 @@ public class Context  {
                            executor);
 
     }
+
+    Context withoutInterceptors() {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec,
+                           new InterceptorRegistry(),
+                           beanMapper,
+                           udtValueMapper,
+                           executor);
+    }
     
     Context withSerialConsistency(ConsistencyLevel consistencyLevel) {
         return new Context(dbSession,
@@ -177,6 +191,160 @@ public class Context  {
                            executor);        
     }
     
+    Context withLwtSerialization(int maxRetries) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withLwtSerialization(maxRetries),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);        
+    }
+    
+    Context withCascadeMode(CascadeMode cascadeMode) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withCascadeMode(cascadeMode),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);        
+    }
+    
+    Context withIdempotence(boolean idempotent) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withIdempotence(idempotent),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);        
+    }
+    
+    Context withHedging(double percentile, double maxExtraLoad) {
+        if ((percentile <= 0) || (percentile >= 1)) {
+            throw new IllegalArgumentException("percentile has to be between 0 and 1");
+        }
+        if (maxExtraLoad < 0) {
+            throw new IllegalArgumentException("max extra load must not be negative");
+        }
+        
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withHedging(percentile, maxExtraLoad),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);        
+    }
+    
+    Context withReadCoalescing(long windowMillis, int maxBatchSize) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("window has to be greater than 0");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("max batch size has to be greater than 0");
+        }
+        
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withReadCoalescing(windowMillis, maxBatchSize),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);        
+    }
+    
+    Context withSingleFlight(boolean singleFlight) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withSingleFlight(singleFlight),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);        
+    }
+    
+    Context withBatchSizeLimit(int maxStatements, int maxBytes) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withBatchSizeLimit(maxStatements, maxBytes),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);        
+    }
+    
+    Context withUnsetNulls(boolean unsetNulls) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withUnsetNulls(unsetNulls),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);        
+    }
+    
+    Context withWriteBehind(WriteBehindJournalImpl writeBehindJournal) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withWriteBehind(writeBehindJournal),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);
+    }
+    
+    Context withReadYourWrites(ReadYourWritesSessionImpl readYourWritesSession) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withReadYourWrites(readYourWritesSession),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);
+    }
+    
+    Context withTimeout(long timeoutMillis) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withTimeout(timeoutMillis),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);
+    }
+    
+    Context withDeadline(long deadlineMillis) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withDeadline(deadlineMillis),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);
+    }
+    
+    Context withActiveDeadline(long activeDeadlineMillis) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withActiveDeadline(activeDeadlineMillis),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);
+    }
+    
+    Context withTraceSampling(TraceSamplerImpl traceSampler) {
+        return new Context(dbSession,
+                           catalog,
+                           executionSpec.withTraceSampling(traceSampler),
+                           interceptorRegistry,
+                           beanMapper,
+                           udtValueMapper,
+                           executor);
+    }
+    
     Context withConsistency(ConsistencyLevel consistencyLevel) {
         return new Context(dbSession,
                            catalog,
@@ -217,6 +385,26 @@ public class Context  {
     InterceptorRegistry getInterceptorRegistry() {
         return interceptorRegistry;
     }
+    
+    /**
+     * @param entity     the entity to map
+     * @param tablename  the tablename
+     * @return the column values of the entity. Absent values are omitted, if unset nulls are activated
+     */
+    ImmutableMap<String, Optional<Object>> toEntityValues(Object entity, Tablename tablename) {
+        final ImmutableMap<String, Optional<Object>> values = beanMapper.toValues(entity, catalog.getColumnNames(tablename));
+        
+        if (Boolean.TRUE.equals(executionSpec.getUnsetNulls())) {
+            return ImmutableMap.copyOf(Maps.filterValues(values, new Predicate<Optional<Object>>() {
+                                                                    @Override
+                                                                    public boolean apply(Optional<Object> value) {
+                                                                        return value.isPresent();
+                                                                    }
+                                                                 }));
+        } else {
+            return values;
+        }
+    }
         
   
     @Override
@@ -238,9 +426,43 @@ public class Context  {
         private final Long writetimeMicrosSinceEpoch;
         private final Boolean enableTracing;
         private final RetryPolicy retryPolicy;
+        private final Integer lwtSerializationRetries;
+        private final CascadeMode cascadeMode;
+        private final Integer maxBatchStatements;
+        private final Integer maxBatchSizeBytes;
+        private final Double hedgePercentile;
+        private final Double hedgeMaxExtraLoad;
+        private final Boolean idempotent;
+        private final Long coalescingWindowMillis;
+        private final Integer coalescingMaxBatchSize;
+        private final Boolean singleFlight;
+        private final Boolean unsetNulls;
+        private final WriteBehindJournalImpl writeBehindJournal;
+        private final ReadYourWritesSessionImpl readYourWritesSession;
+        private final Long timeoutMillis;
+        private final Long deadlineMillis;
+        private final Long activeDeadlineMillis;
+        private final TraceSamplerImpl traceSampler;
         
         ExecutionSpecImpl() {
             this(null, 
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
+                 null,
                  null,
                  null,
                  null,
@@ -253,13 +475,47 @@ public class Context  {
                                  Integer ttlSec,
                                  Long writetimeMicrosSinceEpoch,
                                  Boolean enableTracking,
-                                 RetryPolicy retryPolicy) {
+                                 RetryPolicy retryPolicy,
+                                 Integer lwtSerializationRetries,
+                                 CascadeMode cascadeMode,
+                                 Integer maxBatchStatements,
+                                 Integer maxBatchSizeBytes,
+                                 Double hedgePercentile,
+                                 Double hedgeMaxExtraLoad,
+                                 Boolean idempotent,
+                                 Long coalescingWindowMillis,
+                                 Integer coalescingMaxBatchSize,
+                                 Boolean singleFlight,
+                                 Boolean unsetNulls,
+                                 WriteBehindJournalImpl writeBehindJournal,
+                                 ReadYourWritesSessionImpl readYourWritesSession,
+                                 Long timeoutMillis,
+                                 Long deadlineMillis,
+                                 Long activeDeadlineMillis,
+                                 TraceSamplerImpl traceSampler) {
             this.consistencyLevel = consistencyLevel;
             this.serialConsistencyLevel = serialConsistencyLevel;
             this.ttlSec = ttlSec;
             this.writetimeMicrosSinceEpoch = writetimeMicrosSinceEpoch;
             this.enableTracing = enableTracking;
             this.retryPolicy = retryPolicy;
+            this.lwtSerializationRetries = lwtSerializationRetries;
+            this.cascadeMode = cascadeMode;
+            this.maxBatchStatements = maxBatchStatements;
+            this.maxBatchSizeBytes = maxBatchSizeBytes;
+            this.hedgePercentile = hedgePercentile;
+            this.hedgeMaxExtraLoad = hedgeMaxExtraLoad;
+            this.idempotent = idempotent;
+            this.coalescingWindowMillis = coalescingWindowMillis;
+            this.coalescingMaxBatchSize = coalescingMaxBatchSize;
+            this.singleFlight = singleFlight;
+            this.unsetNulls = unsetNulls;
+            this.writeBehindJournal = writeBehindJournal;
+            this.readYourWritesSession = readYourWritesSession;
+            this.timeoutMillis = timeoutMillis;
+            this.deadlineMillis = deadlineMillis;
+            this.activeDeadlineMillis = activeDeadlineMillis;
+            this.traceSampler = traceSampler;
         }
         
         public ExecutionSpec withConsistency(ConsistencyLevel consistencyLevel) {
@@ -268,7 +524,24 @@ public class Context  {
                                          this.ttlSec,
                                          this.writetimeMicrosSinceEpoch,
                                          this.enableTracing,
-                                         this.retryPolicy);
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
         }
     
         public ExecutionSpec withSerialConsistency(ConsistencyLevel consistencyLevel) {
@@ -277,7 +550,24 @@ public class Context  {
                                          this.ttlSec,
                                          this.writetimeMicrosSinceEpoch,
                                          this.enableTracing,
-                                         this.retryPolicy);
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
         }
         
         public ExecutionSpec withTtl(int ttlSec) {
@@ -286,7 +576,24 @@ public class Context  {
                                          ttlSec,
                                          this.writetimeMicrosSinceEpoch,
                                          this.enableTracing,
-                                         this.retryPolicy);
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
         }
         
         public ExecutionSpec withWritetime(long microsSinceEpoch) {
@@ -295,7 +602,24 @@ public class Context  {
                                          this.ttlSec,
                                          microsSinceEpoch,
                                          this.enableTracing,
-                                         this.retryPolicy);
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
         }
 
         public ExecutionSpec withTracking() {
@@ -304,7 +628,24 @@ public class Context  {
                                          this.ttlSec,
                                          this.writetimeMicrosSinceEpoch,
                                          true,
-                                         this.retryPolicy);
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
         }
 
         public ExecutionSpec withoutTracking() {
@@ -313,7 +654,24 @@ public class Context  {
                                          this.ttlSec,
                                          this.writetimeMicrosSinceEpoch,
                                          false,
-                                         this.retryPolicy);
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
         }
         
         public ExecutionSpec withRetryPolicy(RetryPolicy policy) {
@@ -322,7 +680,388 @@ public class Context  {
                                          this.ttlSec,
                                          this.writetimeMicrosSinceEpoch,
                                          this.enableTracing,
-                                         policy);
+                                         policy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withLwtSerialization(int maxRetries) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         maxRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withCascadeMode(CascadeMode cascadeMode) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withBatchSizeLimit(int maxStatements, int maxBytes) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         maxStatements,
+                                         maxBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withHedging(double percentile, double maxExtraLoad) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         percentile,
+                                         maxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withIdempotence(boolean idempotent) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withReadCoalescing(long windowMillis, int maxBatchSize) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         windowMillis,
+                                         maxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withSingleFlight(boolean singleFlight) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withUnsetNulls(boolean unsetNulls) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withWriteBehind(WriteBehindJournalImpl writeBehindJournal) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withReadYourWrites(ReadYourWritesSessionImpl readYourWritesSession) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withTimeout(long timeoutMillis) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withDeadline(long deadlineMillis) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withActiveDeadline(long activeDeadlineMillis) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         activeDeadlineMillis,
+                                         this.traceSampler);
+        }
+
+        public ExecutionSpec withTraceSampling(TraceSamplerImpl traceSampler) {
+            return new ExecutionSpecImpl(this.consistencyLevel,
+                                         this.serialConsistencyLevel,
+                                         this.ttlSec,
+                                         this.writetimeMicrosSinceEpoch,
+                                         this.enableTracing,
+                                         this.retryPolicy,
+                                         this.lwtSerializationRetries,
+                                         this.cascadeMode,
+                                         this.maxBatchStatements,
+                                         this.maxBatchSizeBytes,
+                                         this.hedgePercentile,
+                                         this.hedgeMaxExtraLoad,
+                                         this.idempotent,
+                                         this.coalescingWindowMillis,
+                                         this.coalescingMaxBatchSize,
+                                         this.singleFlight,
+                                         this.unsetNulls,
+                                         this.writeBehindJournal,
+                                         this.readYourWritesSession,
+                                         this.timeoutMillis,
+                                         this.deadlineMillis,
+                                         this.activeDeadlineMillis,
+                                         traceSampler);
         }
 
         public ConsistencyLevel getConsistencyLevel() {
@@ -350,6 +1089,74 @@ public class Context  {
             return retryPolicy;
         }
         
+        public Integer getLwtSerializationRetries() {
+            return lwtSerializationRetries;
+        }
+        
+        public CascadeMode getCascadeMode() {
+            return cascadeMode;
+        }
+        
+        public Integer getMaxBatchStatements() {
+            return maxBatchStatements;
+        }
+        
+        public Integer getMaxBatchSizeBytes() {
+            return maxBatchSizeBytes;
+        }
+        
+        public Double getHedgePercentile() {
+            return hedgePercentile;
+        }
+        
+        public Double getHedgeMaxExtraLoad() {
+            return hedgeMaxExtraLoad;
+        }
+        
+        public Boolean getIdempotent() {
+            return idempotent;
+        }
+        
+        public Long getCoalescingWindowMillis() {
+            return coalescingWindowMillis;
+        }
+        
+        public Integer getCoalescingMaxBatchSize() {
+            return coalescingMaxBatchSize;
+        }
+        
+        public Boolean getSingleFlight() {
+            return singleFlight;
+        }
+        
+        public Boolean getUnsetNulls() {
+            return unsetNulls;
+        }
+        
+        public WriteBehindJournalImpl getWriteBehindJournal() {
+            return writeBehindJournal;
+        }
+        
+        public ReadYourWritesSessionImpl getReadYourWritesSession() {
+            return readYourWritesSession;
+        }
+        
+        public Long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+        
+        public Long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+        
+        public Long getActiveDeadlineMillis() {
+            return activeDeadlineMillis;
+        }
+        
+        public TraceSamplerImpl getTraceSampler() {
+            return traceSampler;
+        }
+        
         @Override
         public String toString() {
             return MoreObjects.toStringHelper("spec")
@@ -359,6 +1166,23 @@ public class Context  {
                               .add("writetimeMicrosSinceEpoch", writetimeMicrosSinceEpoch)
                               .add("enableTracing", enableTracing)
                               .add("retryPolicy", retryPolicy)
+                              .add("lwtSerializationRetries", lwtSerializationRetries)
+                              .add("cascadeMode", cascadeMode)
+                              .add("maxBatchStatements", maxBatchStatements)
+                              .add("maxBatchSizeBytes", maxBatchSizeBytes)
+                              .add("hedgePercentile", hedgePercentile)
+                              .add("hedgeMaxExtraLoad", hedgeMaxExtraLoad)
+                              .add("idempotent", idempotent)
+                              .add("coalescingWindowMillis", coalescingWindowMillis)
+                              .add("coalescingMaxBatchSize", coalescingMaxBatchSize)
+                              .add("singleFlight", singleFlight)
+                              .add("unsetNulls", unsetNulls)
+                              .add("writeBehindJournal", writeBehindJournal)
+                              .add("readYourWritesSession", readYourWritesSession)
+                              .add("timeoutMillis", timeoutMillis)
+                              .add("deadlineMillis", deadlineMillis)
+                              .add("activeDeadlineMillis", activeDeadlineMillis)
+                              .add("traceSampler", traceSampler)
                               .toString();
         }
     }
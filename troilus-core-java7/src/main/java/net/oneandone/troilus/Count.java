@@ -31,6 +31,13 @@ public abstract class Count implements Result {
      * @return the count value
      */
     public abstract long getCount();
+    
+    /**
+     * @return true, if the count is an estimation 
+     */
+    public boolean isApproximate() {
+        return false;
+    }
  
     /**
      * @param rs  the result set
@@ -40,6 +47,16 @@ public abstract class Count implements Result {
         return new CountResultImpl(rs);
     }
     
+    /**
+     * @param count           the count value
+     * @param isApproximate   true, if the count is an estimation
+     * @param executionInfos  the execution infos of the performed queries
+     * @return the count result
+     */
+    static Count newCountResult(long count, boolean isApproximate, ImmutableList<ExecutionInfo> executionInfos) {
+        return new AggregatedCountResultImpl(count, isApproximate, executionInfos);
+    }
+    
     
     private static final class CountResultImpl extends Count {
         private final ResultSet rs;
@@ -71,6 +88,45 @@ public abstract class Count implements Result {
             return count;
         }
     }
+    
+    
+    private static final class AggregatedCountResultImpl extends Count {
+        private final long count;
+        private final boolean isApproximate;
+        private final ImmutableList<ExecutionInfo> executionInfos;
+
+        
+        private AggregatedCountResultImpl(long count, boolean isApproximate, ImmutableList<ExecutionInfo> executionInfos) {
+            this.count = count;
+            this.isApproximate = isApproximate;
+            this.executionInfos = executionInfos;
+        }
+
+        @Override
+        public ExecutionInfo getExecutionInfo() {
+            return executionInfos.isEmpty() ? null : executionInfos.get(executionInfos.size() - 1);
+        }
+        
+        @Override
+        public ImmutableList<ExecutionInfo> getAllExecutionInfo() {
+            return executionInfos;
+        }
+
+        @Override
+        public boolean wasApplied() {
+            return true;
+        }
+        
+        @Override
+        public long getCount() {
+            return count;
+        }
+        
+        @Override
+        public boolean isApproximate() {
+            return isApproximate;
+        }
+    }
 }
 
 
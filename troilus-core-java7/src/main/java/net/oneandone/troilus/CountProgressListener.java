@@ -0,0 +1,31 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+
+/**
+ * Listener which will be notified each time a token range of a parallel count has been counted
+ */
+public interface CountProgressListener {
+
+    /**
+     * @param partialCount       the summed count of the completed token ranges
+     * @param numCompletedRanges the number of completed token ranges
+     * @param numRanges          the total number of token ranges
+     */
+    void onProgress(long partialCount, int numCompletedRanges, int numRanges);
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.oneandone.troilus.java7.CounterAccumulator;
+import net.oneandone.troilus.java7.CounterMutation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import com.google.common.base.Functions;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AtomicLongMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/**
+ * Counter accumulator implementation. The diffs are summed up within a concurrent map which
+ * does not block the adding threads. A flush swaps out the buffered diffs and writes them by
+ * using a counter batch per partition
+ */
+class CounterAccumulatorImpl implements CounterAccumulator {
+    private static final Logger LOG = LoggerFactory.getLogger(CounterAccumulatorImpl.class);
+
+    private final Context ctx;
+    private final Tablename tablename;
+    private final int maxPendingUpdates;
+
+    private final AtomicLongMap<CounterKey> pendingDiffs = AtomicLongMap.create();
+    private final AtomicInteger numPendingUpdates = new AtomicInteger();
+    private final AtomicBoolean isOpen = new AtomicBoolean(true);
+    private final ScheduledExecutorService scheduler;
+    private final Thread shutdownHook;
+
+    private final Object flushLock = new Object();
+    private volatile SettableFuture<Void> nextFlushFuture = SettableFuture.create();
+    private ListenableFuture<Void> lastFlushFuture = Futures.immediateFuture(null);  // guarded by flushLock
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushAsync();
+        }
+    };
+
+
+    /**
+     * @param ctx                the context
+     * @param tablename          the tablename
+     * @param flushPeriodMillis  the flush period
+     * @param maxPendingUpdates  the number of pending updates which triggers a flush
+     */
+    CounterAccumulatorImpl(Context ctx, Tablename tablename, long flushPeriodMillis, int maxPendingUpdates) {
+        if (flushPeriodMillis <= 0) {
+            throw new IllegalArgumentException("flush period has to be greater than 0");
+        }
+        if (maxPendingUpdates <= 0) {
+            throw new IllegalArgumentException("max pending updates has to be greater than 0");
+        }
+
+        this.ctx = ctx;
+        this.tablename = tablename;
+        this.maxPendingUpdates = maxPendingUpdates;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                              .setNameFormat("troilus-counter-" + tablename + "-%d")
+                                                                                              .build());
+        scheduler.scheduleWithFixedDelay(flushTask, flushPeriodMillis, flushPeriodMillis, TimeUnit.MILLISECONDS);
+
+        // flush remaining diffs on shutdown
+        this.shutdownHook = new Thread() {
+            @Override
+            public void run() {
+                close();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+
+
+    @Override
+    public void add(ImmutableMap<String, Object> keys, String name, long diff) {
+        if (!isOpen.get()) {
+            throw new IllegalStateException("counter accumulator of " + tablename + " is closed");
+        }
+
+        pendingDiffs.addAndGet(new CounterKey(keys, name), diff);
+
+        // threshold reached? (the == ensures that the flush is triggered once)
+        if (numPendingUpdates.incrementAndGet() == maxPendingUpdates) {
+            try {
+                scheduler.execute(flushTask);
+            } catch (RejectedExecutionException ree) {
+                LOG.debug("scheduler is shut down. Diffs will be written by the final flush");
+            }
+        }
+    }
+
+
+    @Override
+    public ListenableFuture<Void> addAsync(ImmutableMap<String, Object> keys, String name, long diff) {
+        add(keys, name, diff);
+
+        // [synchronization note] the future has to be read after adding the diff. If the flush
+        // swaps in between, the returned future is a later one, which is completed after the
+        // current flush has been completed
+        return Futures.nonCancellationPropagating(nextFlushFuture);
+    }
+
+
+    @Override
+    public ListenableFuture<Void> flushAsync() {
+        final SettableFuture<Void> flushFuture;
+        final ListenableFuture<Void> previousFlushFuture;
+        final Map<CounterKey, Long> diffs = Maps.newHashMap();
+
+        synchronized (flushLock) {
+            flushFuture = nextFlushFuture;
+            nextFlushFuture = SettableFuture.create();
+            previousFlushFuture = lastFlushFuture;
+            lastFlushFuture = flushFuture;
+
+            numPendingUpdates.set(0);
+            for (CounterKey counterKey : ImmutableSet.copyOf(pendingDiffs.asMap().keySet())) {
+                long diff = pendingDiffs.remove(counterKey);
+                if (diff != 0) {
+                    diffs.put(counterKey, diff);
+                }
+            }
+        }
+
+        final ListenableFuture<Void> writeFuture = writeAsync(diffs);
+
+        // a flush is completed, if the previous flushes are completed too
+        Futures.whenAllComplete(previousFlushFuture, writeFuture)
+               .run(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Futures.getDone(writeFuture);
+                                flushFuture.set(null);
+                            } catch (ExecutionException ee) {
+                                flushFuture.setException(ee.getCause());
+                            } catch (RuntimeException rt) {
+                                flushFuture.setException(rt);
+                            }
+                        }
+                    }, MoreExecutors.directExecutor());
+
+        return Futures.nonCancellationPropagating(flushFuture);
+    }
+
+
+    private ListenableFuture<Void> writeAsync(Map<CounterKey, Long> diffs) {
+        if (diffs.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+
+        try {
+            // group the diffs by partition
+            ImmutableSet<String> partitionKeyNames = ctx.getCatalog().getPartitionKeyNames(tablename);
+            ListMultimap<ImmutableMap<String, Object>, CounterKey> partitions = LinkedListMultimap.create();
+            for (CounterKey counterKey : diffs.keySet()) {
+                partitions.put(counterKey.getPartitionKey(partitionKeyNames), counterKey);
+            }
+
+            List<ListenableFuture<Result>> futures = Lists.newArrayList();
+            for (ImmutableMap<String, Object> partitionKey : partitions.keySet()) {
+                ImmutableMap.Builder<CounterKey, Long> partitionDiffs = ImmutableMap.builder();
+                for (CounterKey counterKey : partitions.get(partitionKey)) {
+                    partitionDiffs.put(counterKey, diffs.get(counterKey));
+                }
+                futures.add(writePartitionAsync(partitionDiffs.build()));
+            }
+
+            return Futures.transform(Futures.allAsList(futures), Functions.<Void>constant(null), MoreExecutors.directExecutor());
+
+        } catch (RuntimeException rt) {
+            readd(diffs);
+            return Futures.immediateFailedFuture(rt);
+        }
+    }
+
+
+    private ListenableFuture<Result> writePartitionAsync(final ImmutableMap<CounterKey, Long> partitionDiffs) {
+        List<CounterMutation> mutations = Lists.newArrayList();
+        for (Entry<CounterKey, Long> entry : partitionDiffs.entrySet()) {
+            mutations.add(new CounterMutationQuery(ctx, new CounterMutationQueryData(tablename).keys(entry.getKey().getKeys())
+                                                                                               .name(entry.getKey().getName())
+                                                                                               .diff(entry.getValue())));
+        }
+
+        CounterMutation mutation = (mutations.size() == 1) ? mutations.get(0)
+                                                           : new CounterBatchMutationQuery(ctx, ImmutableList.copyOf(mutations));
+        ListenableFuture<Result> future = mutation.executeAsync();
+
+        Futures.addCallback(future, new FutureCallback<Result>() {
+
+                                        @Override
+                                        public void onSuccess(Result result) {
+                                        }
+
+                                        @Override
+                                        public void onFailure(Throwable error) {
+                                            // counter updates are not idempotent. Diffs are buffered again only,
+                                            // if it is sure that the updates have not been applied
+                                            if (isNotApplied(error)) {
+                                                LOG.debug("writing counter diffs of " + tablename + " failed. Diffs will be written by the next flush", error);
+                                                readd(partitionDiffs);
+                                            } else {
+                                                LOG.warn("writing counter diffs of " + tablename + " failed. Diffs " + partitionDiffs + " may be lost", error);
+                                            }
+                                        }
+                                    },
+                            MoreExecutors.directExecutor());
+
+        return future;
+    }
+
+
+    private static boolean isNotApplied(Throwable error) {
+        for (Throwable cause : Throwables.getCausalChain(error)) {
+            if ((cause instanceof UnavailableException) || (cause instanceof NoHostAvailableException)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private void readd(Map<CounterKey, Long> diffs) {
+        for (Entry<CounterKey, Long> entry : diffs.entrySet()) {
+            pendingDiffs.addAndGet(entry.getKey(), entry.getValue());
+        }
+    }
+
+
+    @Override
+    public void close() {
+        if (isOpen.getAndSet(false)) {
+            scheduler.shutdown();
+
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ise) {
+                // close is called by the shutdown hook
+            }
+
+            ListenableFutures.getUninterruptibly(flushAsync());
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("tablename", tablename)
+                          .add("pendingDiffs", pendingDiffs)
+                          .toString();
+    }
+
+
+
+    private static final class CounterKey {
+        private final ImmutableMap<String, Object> keys;
+        private final String name;
+
+        CounterKey(ImmutableMap<String, Object> keys, String name) {
+            this.keys = keys;
+            this.name = name;
+        }
+
+        ImmutableMap<String, Object> getKeys() {
+            return keys;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        ImmutableMap<String, Object> getPartitionKey(ImmutableSet<String> partitionKeyNames) {
+            return ImmutableMap.copyOf(Maps.filterKeys(keys, Predicates.in(partitionKeyNames)));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof CounterKey) &&
+                   ((CounterKey) other).keys.equals(this.keys) &&
+                   ((CounterKey) other).name.equals(this.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(keys, name);
+        }
+
+        @Override
+        public String toString() {
+            return keys + "." + name;
+        }
+    }
+}
@@ -65,6 +65,30 @@ class CounterBatchMutationQuery extends MutationQuery<CounterMutation> implement
         return newQuery(Immutables.join(batchables, other));
     }
     
+    @Override
+    protected boolean isWriteBehindSupported() {
+        return false;  // counter mutations are not idempotent and can not be replayed 
+    }
+    
+    @Override
+    public ListenableFuture<Result> executeAsync() {
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+        }
+        
+        if (getExecutionSpec().getMaxBatchStatements() == null) {
+            return super.executeAsync();
+        }
+        
+        ImmutableList.Builder<ListenableFuture<Statement>> statementFutures = ImmutableList.builder();
+        for (CounterMutation batchable : batchables) {
+            statementFutures.add(batchable.getStatementAsync(getDefaultDbSession()));
+        }
+        return executeBatchAsync(Type.COUNTER, statementFutures.build());
+    }
+    
+    
     @Override
     public ListenableFuture<Statement> getStatementAsync(final DBSession dbSession) {
         
@@ -61,6 +61,11 @@ class CounterMutationQuery extends AbstractQuery<CounterMutation> implements Cou
     
     @Override
     public ListenableFuture<Result> executeAsync() {
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+        }
+        
         ListenableFuture<ResultSet> future = performAsync(getDefaultDbSession(), getStatementAsync(getDefaultDbSession()));
         
         Function<ResultSet, Result> mapEntity = new Function<ResultSet, Result>() {
@@ -151,7 +151,7 @@ class CounterMutationQueryData {
 
             
             ListenableFuture<PreparedStatement> preparedStatementFuture = dbSession.prepareAsync(update);
-            return dbSession.bindAsync(preparedStatementFuture, values.toArray());
+            return dbSession.bindAsync(preparedStatementFuture, values.toArray(), false);
             
         // where condition-based update
         } else {
@@ -170,6 +170,7 @@ class CounterMutationQueryData {
             for (Clause whereCondition : getWhereConditions()) {
                 update.where(whereCondition);
             }
+            update.setIdempotent(false);
             
             return Futures.<Statement>immediateFuture(update);
         }
@@ -16,25 +16,33 @@
 package net.oneandone.troilus;
 
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CodecRegistry;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TokenRange;
 import com.datastax.driver.core.exceptions.DriverInternalError;
 import com.datastax.driver.core.exceptions.InvalidQueryException;
 import com.datastax.driver.core.querybuilder.BuiltStatement;
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
@@ -87,7 +95,7 @@ public class DBSession  {
         return keyspacename;
     }
     
-    private Session getSession() {
+    Session getSession() {
         return session;
     }
     
@@ -99,6 +107,66 @@ public class DBSession  {
         return getSession().getCluster().getConfiguration().getProtocolOptions().getProtocolVersion();
     }
     
+    /**
+     * @param statement  the statement
+     * @return the routing key of the statement or null, if unknown 
+     */
+    ByteBuffer getRoutingKey(Statement statement) {
+        return statement.getRoutingKey(getProtocolVersion(), getCodecRegistry());
+    }
+    
+    /**
+     * @param statement  the statement
+     * @return the estimated serialized size of the statement in bytes 
+     */
+    int estimateSize(Statement statement) {
+        if (statement instanceof BoundStatement) {
+            BoundStatement boundStatement = (BoundStatement) statement;
+            int size = 0;
+            for (int i = 0; i < boundStatement.preparedStatement().getVariables().size(); i++) {
+                size += estimateSize(boundStatement.getBytesUnsafe(i));
+            }
+            return size;
+            
+        } else if (statement instanceof BatchStatement) {
+            int size = 0;
+            for (Statement childStatement : ((BatchStatement) statement).getStatements()) {
+                size += estimateSize(childStatement);
+            }
+            return size;
+            
+        } else if (statement instanceof RegularStatement) {
+            // the values of built and simple statements are sent separately from the query string, if they are not inlined  
+            RegularStatement regularStatement = (RegularStatement) statement;
+            int size = regularStatement.getQueryString(getCodecRegistry()).getBytes(Charsets.UTF_8).length;
+            ByteBuffer[] values = regularStatement.getValues(getProtocolVersion(), getCodecRegistry());
+            if (values != null) {
+                for (ByteBuffer value : values) {
+                    size += estimateSize(value);
+                }
+            }
+            return size;
+            
+        } else {
+            return 0;
+        }
+    }
+    
+    private static int estimateSize(ByteBuffer value) {
+        return 4 + ((value == null) ? 0 : value.remaining());    // [bytes] = length prefix + value
+    }
+    
+    /**
+     * @return the token ranges of the cluster
+     */
+    ImmutableSet<TokenRange> getTokenRanges() {
+        return ImmutableSet.copyOf(getSession().getCluster().getMetadata().getTokenRanges());
+    }
+    
+    private CodecRegistry getCodecRegistry() {
+        return getSession().getCluster().getConfiguration().getCodecRegistry();
+    }
+    
  
     /**
      * @param statement the statement to prepare
@@ -108,6 +176,14 @@ public class DBSession  {
         return preparedStatementCache.prepareAsync(statement);
     }
     
+    /**
+     * @param query the query string to prepare
+     * @return the prepared statement future
+     */
+    ListenableFuture<PreparedStatement> prepareAsync(final String query) {
+        return preparedStatementCache.prepareAsync(query);
+    }
+    
     /**
      * @param preparedStatementFuture the prepared statement future to bind
      * @param values the values to bind 
@@ -123,6 +199,22 @@ public class DBSession  {
         return Futures.transform(preparedStatementFuture, bindStatementFunction, MoreExecutors.directExecutor());
     }
     
+    /**
+     * @param preparedStatementFuture the prepared statement future to bind
+     * @param values the values to bind 
+     * @param isIdempotent true, if the statement can be applied multiple times without changing the result 
+     * @return the statement future
+     */
+    public ListenableFuture<Statement> bindAsync(ListenableFuture<PreparedStatement> preparedStatementFuture, final Object[] values, final boolean isIdempotent) {
+        final Function<PreparedStatement, Statement> bindStatementFunction = new Function<PreparedStatement, Statement>() {
+            @Override
+            public Statement apply(PreparedStatement preparedStatement) {
+                return preparedStatement.bind(values).setIdempotent(isIdempotent);
+            }
+        };
+        return Futures.transform(preparedStatementFuture, bindStatementFunction, MoreExecutors.directExecutor());
+    }
+    
     
     /**
      * @param statement  te statement to execute in an async manner
@@ -173,23 +265,36 @@ public class DBSession  {
         ListenableFuture<PreparedStatement> prepareAsync(final BuiltStatement statement) {
             final PreparedStatement preparedStatment = preparedStatementCache.getIfPresent(statement.getQueryString());
             if (preparedStatment == null) {
-                final ListenableFuture<PreparedStatement> future = session.prepareAsync(statement);
-                
-                final Function<PreparedStatement, PreparedStatement> addToCacheFunction = new Function<PreparedStatement, PreparedStatement>() {
-                    
-                    public PreparedStatement apply(PreparedStatement preparedStatment) {
-                        preparedStatementCache.put(statement.getQueryString(), preparedStatment);
-                        return preparedStatment;
-                    }
-                };
-                
-                return Futures.transform(future, addToCacheFunction, MoreExecutors.directExecutor());
+                return addToCache(statement.getQueryString(), session.prepareAsync(statement));
+            } else {
+                return Futures.immediateFuture(preparedStatment);
+            }
+        }
+        
+        
+        ListenableFuture<PreparedStatement> prepareAsync(final String query) {
+            final PreparedStatement preparedStatment = preparedStatementCache.getIfPresent(query);
+            if (preparedStatment == null) {
+                return addToCache(query, session.prepareAsync(query));
             } else {
                 return Futures.immediateFuture(preparedStatment);
             }
         }
         
         
+        private ListenableFuture<PreparedStatement> addToCache(final String query, ListenableFuture<PreparedStatement> future) {
+            final Function<PreparedStatement, PreparedStatement> addToCacheFunction = new Function<PreparedStatement, PreparedStatement>() {
+                
+                public PreparedStatement apply(PreparedStatement preparedStatment) {
+                    preparedStatementCache.put(query, preparedStatment);
+                    return preparedStatment;
+                }
+            };
+            
+            return Futures.transform(future, addToCacheFunction, MoreExecutors.directExecutor());
+        }
+        
+        
         public void invalidateAll() {
             preparedStatementCache.invalidateAll();
         }      
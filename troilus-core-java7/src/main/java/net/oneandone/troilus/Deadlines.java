@@ -0,0 +1,138 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.datastax.driver.core.Statement;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/**
+ * Deadline support. A timeout or deadline of the execution spec is resolved into the active 
+ * deadline when the query is started. The active deadline is shared by all stages of the query, 
+ * such as interceptors, statement preparation, the database requests and page fetches. If the 
+ * deadline is exceeded, the query future fails and the pending downstream futures are cancelled.
+ * Futures which are not owned by the query such as the futures returned by interceptors, shared 
+ * single-flight reads or serialized lightweight transactions are joined as non-cancellation-propagating 
+ * view. They are not cancelled by the deadline.<br>
+ * The deadline timers are scheduled by a JVM-wide scheduler, which is shared by all contexts and 
+ * never shut down. Its thread is a daemon thread, which does not prevent the JVM from exiting. 
+ * Timers of completed queries are removed immediately  
+ */
+final class Deadlines {
+    
+    private static final ScheduledThreadPoolExecutor DEADLINE_SCHEDULER = newDeadlineScheduler();
+    
+    private Deadlines() {  }
+    
+    
+    private static ScheduledThreadPoolExecutor newDeadlineScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setDaemon(true)
+                                                                                                                    .setNameFormat("troilus-deadline-%d")
+                                                                                                                    .build());
+        // the timer of a completed query is cancelled. It must not be retained until its delay elapses  
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+    
+    
+    /**
+     * @param ctx  the context of the query to start
+     * @return the context with the active deadline or null, if no deadline is requested or the deadline is already active 
+     */
+    static Context start(Context ctx) {
+        final ExecutionSpec spec = ctx.getExecutionSpec();
+        if ((spec.getActiveDeadlineMillis() != null) || ((spec.getTimeoutMillis() == null) && (spec.getDeadlineMillis() == null))) {
+            return null;
+        }
+        
+        long deadlineMillis = Long.MAX_VALUE;
+        if (spec.getTimeoutMillis() != null) {
+            deadlineMillis = System.currentTimeMillis() + spec.getTimeoutMillis();
+        }
+        if (spec.getDeadlineMillis() != null) {
+            deadlineMillis = Math.min(deadlineMillis, spec.getDeadlineMillis());
+        }
+        return ctx.withActiveDeadline(deadlineMillis);
+    }
+    
+    
+    /**
+     * enforces the active deadline. If the deadline is exceeded, the future will be cancelled which
+     * cancels the downstream futures
+     *  
+     * @param ctx     the context with the active deadline
+     * @param future  the query future, which is owned by the query. A shared future has to be passed as 
+     *                non-cancellation-propagating view
+     * @return the future which fails with a {@link DeadlineExceededException}, if the deadline is exceeded
+     */
+    static <T> ListenableFuture<T> enforce(Context ctx, ListenableFuture<T> future) {
+        final Long deadlineMillis = ctx.getExecutionSpec().getActiveDeadlineMillis();
+        if ((deadlineMillis == null) || future.isDone()) {
+            return future;
+        }
+        
+        final Function<TimeoutException, T> toDeadlineExceeded = new Function<TimeoutException, T>() {
+            @Override
+            public T apply(TimeoutException te) {
+                throw new DeadlineExceededException("deadline exceeded");
+            }
+        };
+        
+        // the timeout future cancels the query future, if the timeout is reached   
+        final ListenableFuture<T> timeoutFuture = Futures.withTimeout(future, Math.max(0, deadlineMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS, DEADLINE_SCHEDULER);
+        return Futures.catching(timeoutFuture, TimeoutException.class, toDeadlineExceeded, MoreExecutors.directExecutor());
+    }
+    
+    
+    /**
+     * @param spec  the execution spec
+     * @return true, if the active deadline is exceeded
+     */
+    static boolean isExceeded(ExecutionSpec spec) {
+        return (spec.getActiveDeadlineMillis() != null) && (spec.getActiveDeadlineMillis() <= System.currentTimeMillis());
+    }
+    
+    
+    /**
+     * sets the remaining time of the active deadline as driver read timeout   
+     * 
+     * @param spec       the execution spec
+     * @param statement  the statement to perform
+     * @return false, if the deadline is exceeded
+     */
+    static boolean applyTo(ExecutionSpec spec, Statement statement) {
+        if (spec.getActiveDeadlineMillis() == null) {
+            return true;
+        }
+        
+        final long remainingMillis = spec.getActiveDeadlineMillis() - System.currentTimeMillis();
+        if (remainingMillis <= 0) {
+            return false;
+        }
+        
+        statement.setReadTimeoutMillis((int) Math.min(Integer.MAX_VALUE, remainingMillis));
+        return true;
+    }
+}
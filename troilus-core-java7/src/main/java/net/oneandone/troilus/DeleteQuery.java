@@ -137,7 +137,20 @@ class DeleteQuery extends MutationQuery<Deletion> implements Deletion {
     
     @Override
     public ListenableFuture<Result> executeAsync() {
-        ListenableFuture<Result> future = super.executeAsync();
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+        }
+        
+        final boolean isLwt = ((data.getIfExists() != null) && data.getIfExists()) || !data.getOnlyIfConditions().isEmpty();
+
+        final ReadYourWritesSessionImpl session = getExecutionSpec().getReadYourWritesSession();
+        if ((session != null) && !isLwt && (getExecutionSpec().getWritetime() == null)) {
+            // the session compares the remembered deletions with the database values by using the writetime  
+            return newQuery(getContext().withWritetime(session.newWritetime())).executeAsync();
+        }
+        
+        ListenableFuture<Result> future = isLwt ? executeLwtAsync(data.getTablename(), data.getKey()) : super.executeAsync();
         
         Function<Result, Result> validateOnlyIfFunction = new Function<Result, Result>() {
             @Override
@@ -145,6 +158,15 @@ class DeleteQuery extends MutationQuery<Deletion> implements Deletion {
                 if (!data.getOnlyIfConditions().isEmpty() && !result.wasApplied()) {
                     throw new IfConditionException(result, "if condition does not match");
                 }
+                
+                if ((session != null) && result.wasApplied()) {
+                    // the writetime of a lightweight transaction is assigned by the server 
+                    if (isLwt) {
+                        session.onConditionalDelete(getContext(), data);
+                    } else {
+                        session.onDelete(getContext(), data, getExecutionSpec().getWritetime());
+                    }
+                }
                 return result;
             }
         };
@@ -158,6 +180,31 @@ class DeleteQuery extends MutationQuery<Deletion> implements Deletion {
         // perform request executors
         ListenableFuture<DeleteQueryData> queryDataFuture = executeRequestInterceptorsAsync(Futures.<DeleteQueryData>immediateFuture(data));
         
+        ListenableFuture<Statement> statementFuture = toStatementAsync(dbSession, queryDataFuture);
+        if (getInterceptorRegistry().getInterceptors(CascadeOnDeleteInterceptor.class).isEmpty()) {
+            return statementFuture;
+        
+        // cascading statements   
+        } else {
+            ListenableFuture<ImmutableSet<Statement>> cascadingStatmentsFuture = executeCascadeInterceptorsAsync(dbSession, queryDataFuture);
+            return mergeStatements(statementFuture, cascadingStatmentsFuture);
+        }
+    }
+    
+    
+    @Override
+    protected ListenableFuture<ImmutableList<Statement>> getCascadedStatementsAsync(DBSession dbSession) {
+        // perform request executors
+        ListenableFuture<DeleteQueryData> queryDataFuture = executeRequestInterceptorsAsync(Futures.<DeleteQueryData>immediateFuture(data));
+        
+        ListenableFuture<Statement> statementFuture = toStatementAsync(dbSession, queryDataFuture);
+        ListenableFuture<ImmutableSet<Statement>> cascadingStatmentsFuture = executeCascadeInterceptorsAsync(dbSession, queryDataFuture);
+        return joinStatements(statementFuture, cascadingStatmentsFuture);
+    }
+    
+    
+    private ListenableFuture<Statement> toStatementAsync(final DBSession dbSession, ListenableFuture<DeleteQueryData> queryDataFuture) {
+        
         // query data to statement
         Function<DeleteQueryData, ListenableFuture<Statement>> queryDataToStatement = new Function<DeleteQueryData, ListenableFuture<Statement>>() {
             @Override
@@ -169,16 +216,7 @@ class DeleteQuery extends MutationQuery<Deletion> implements Deletion {
             }
         };
         
-        
-        ListenableFuture<Statement> statementFuture = ListenableFutures.transform(queryDataFuture, queryDataToStatement, getExecutor());
-        if (getInterceptorRegistry().getInterceptors(CascadeOnDeleteInterceptor.class).isEmpty()) {
-            return statementFuture;
-        
-        // cascading statements   
-        } else {
-            ListenableFuture<ImmutableSet<Statement>> cascadingStatmentsFuture = executeCascadeInterceptorsAsync(dbSession, queryDataFuture);
-            return mergeStatements(statementFuture, cascadingStatmentsFuture);
-        }
+        return ListenableFutures.transform(queryDataFuture, queryDataToStatement, getExecutor());
     }
 
     
@@ -194,7 +232,7 @@ class DeleteQuery extends MutationQuery<Deletion> implements Deletion {
             Function<DeleteQueryData, ListenableFuture<DeleteQueryData>> mapperFunction = new Function<DeleteQueryData, ListenableFuture<DeleteQueryData>>() {
                 @Override
                 public ListenableFuture<DeleteQueryData> apply(DeleteQueryData queryData) {
-                    return icptor.onDeleteRequestAsync(queryData);
+                    return Futures.nonCancellationPropagating(icptor.onDeleteRequestAsync(queryData));
                 }
             };
             
@@ -215,7 +253,7 @@ class DeleteQuery extends MutationQuery<Deletion> implements Deletion {
             Function<DeleteQueryData, ListenableFuture<ImmutableSet<? extends Batchable<?>>>> querydataToBatchables = new Function<DeleteQueryData, ListenableFuture<ImmutableSet<? extends Batchable<?>>>>() {
                 @Override
                 public ListenableFuture<ImmutableSet<? extends Batchable<?>>> apply(DeleteQueryData queryData) {
-                    return icptor.onDeleteAsync(queryData);                    
+                    return Futures.nonCancellationPropagating(icptor.onDeleteAsync(queryData));                    
                 }
             };
             ListenableFuture<ImmutableSet<? extends Batchable<?>>> batchablesFutureSet = ListenableFutures.transform(queryDataFuture, querydataToBatchables);
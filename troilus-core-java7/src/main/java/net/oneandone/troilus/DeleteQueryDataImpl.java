@@ -194,15 +194,27 @@ class DeleteQueryDataImpl implements DeleteQueryData {
             }
             
             ListenableFuture<PreparedStatement> preparedStatementFuture = dbSession.prepareAsync(delete);
-            return dbSession.bindAsync(preparedStatementFuture, values.toArray());
+            return dbSession.bindAsync(preparedStatementFuture, values.toArray(), isIdempotent(data));
             
         // where condition-based delete    
         } else {
             for (Clause whereCondition : data.getWhereConditions()) {
                 delete.where(whereCondition);
             }
+            delete.setIdempotent(isIdempotent(data));
            
             return Futures.<Statement>immediateFuture(delete);
         }        
     }
+    
+    
+    /**
+     * @param data  the data
+     * @return true, if the delete can be applied multiple times without changing the result 
+     */
+    static boolean isIdempotent(DeleteQueryData data) {
+        // lightweight transactions are not idempotent
+        return data.getOnlyIfConditions().isEmpty() && 
+               ((data.getIfExists() == null) || !data.getIfExists());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,306 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import net.oneandone.troilus.MetadataCatalog.TableSchema;
+import net.oneandone.troilus.java7.EntitySession;
+import net.oneandone.troilus.java7.interceptor.WriteQueryData;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+
+
+/**
+ * Entity session implementation. The snapshots are held by a weak identity map. A save 
+ * diffs the current property values against the snapshot and performs a minimal update.
+ * The snapshot is moved forward before the update is performed, so that a concurrent save 
+ * of the same entity writes its own changes only  
+ */
+class EntitySessionImpl implements EntitySession {
+
+    private final Context ctx;
+    private final Tablename tablename;
+    
+    // weak keys are compared by identity  
+    private final ConcurrentMap<Object, ImmutableMap<String, Optional<Object>>> snapshots = new MapMaker().weakKeys().makeMap();
+
+
+    /**
+     * @param ctx        the context
+     * @param tablename  the tablename
+     */
+    EntitySessionImpl(Context ctx, Tablename tablename) {
+        this.ctx = ctx;
+        this.tablename = tablename;
+    }
+
+    
+    @Override
+    public <E> E attach(E entity) {
+        snapshots.put(entity, toValues(entity));
+        return entity;
+    }
+    
+    @Override
+    public void detach(Object entity) {
+        snapshots.remove(entity);
+    }
+    
+    @Override
+    public boolean isModified(Object entity) {
+        return !getSnapshot(entity).equals(toValues(entity));
+    }
+    
+    @Override
+    public Optional<Result> save(Object entity) {
+        return ListenableFutures.getUninterruptibly(saveAsync(entity));
+    }
+    
+    @Override
+    public ListenableFuture<Optional<Result>> saveAsync(final Object entity) {
+        final ImmutableMap<String, Optional<Object>> snapshot = getSnapshot(entity);
+        final ImmutableMap<String, Optional<Object>> values = toValues(entity);
+        
+        final WriteQueryData data = diff(ctx.getCatalog().getTableSchema(tablename), snapshot, values);
+        if (data == null) {
+            return Futures.immediateFuture(Optional.<Result>absent());
+        }
+        
+        // a list append or prepend would be performed twice, if a concurrent save diffs against the same snapshot   
+        if (!snapshots.replace(entity, snapshot, values)) {
+            return saveAsync(entity);  // snapshot has been changed by a concurrent save
+        }
+        
+        final ListenableFuture<Result> resultFuture = new UpdateQuery(ctx, data).executeAsync();
+        
+        // the snapshot is restored, if the update fails (and no other save has moved it forward in the meantime)   
+        Futures.addCallback(resultFuture, 
+                            new FutureCallback<Result>() {
+                                
+                                @Override
+                                public void onSuccess(Result result) {
+                                    if (!result.wasApplied()) {
+                                        snapshots.replace(entity, values, snapshot);
+                                    }
+                                }
+                                
+                                @Override
+                                public void onFailure(Throwable t) {
+                                    snapshots.replace(entity, values, snapshot);
+                                }
+                            },
+                            MoreExecutors.directExecutor());
+        
+        final Function<Result, Optional<Result>> toOptional = new Function<Result, Optional<Result>>() {
+            @Override
+            public Optional<Result> apply(Result result) {
+                return Optional.of(result);
+            }
+        };
+        
+        return Futures.transform(resultFuture, toOptional, MoreExecutors.directExecutor());
+    }
+
+    
+    private ImmutableMap<String, Optional<Object>> getSnapshot(Object entity) {
+        final ImmutableMap<String, Optional<Object>> snapshot = snapshots.get(entity);
+        if (snapshot == null) {
+            throw new IllegalStateException("entity " + entity + " is not attached");
+        }
+        return snapshot;
+    }
+    
+    /**
+     * maps the entity. Collections are copied, so that in-place modifications do not change the snapshot.
+     * Empty collections are mapped to absent values (an empty collection is stored as null)
+     */
+    private ImmutableMap<String, Optional<Object>> toValues(Object entity) {
+        final Map<String, Optional<Object>> values = Maps.newHashMap();
+        for (Entry<String, Optional<Object>> entry : ctx.getBeanMapper().toValues(entity, ctx.getCatalog().getColumnNames(tablename)).entrySet()) {
+            final Object value = entry.getValue().orNull();
+            if (isEmptyCollection(value)) {
+                values.put(entry.getKey(), Optional.absent());
+            } else if (value instanceof Set) {
+                values.put(entry.getKey(), Optional.<Object>of(ImmutableSet.copyOf((Set<?>) value)));
+            } else if (value instanceof List) {
+                values.put(entry.getKey(), Optional.<Object>of(ImmutableList.copyOf((List<?>) value)));
+            } else if (value instanceof Map) {
+                values.put(entry.getKey(), Optional.<Object>of(ImmutableMap.copyOf((Map<?, ?>) value)));
+            } else {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return ImmutableMap.copyOf(values);
+    }
+    
+    
+    /**
+     * @return the query data of the changes or null, if nothing is changed 
+     */
+    private WriteQueryData diff(TableSchema schema, ImmutableMap<String, Optional<Object>> snapshot, ImmutableMap<String, Optional<Object>> values) {
+        final Map<String, Object> keys = Maps.newHashMap();
+        final Map<String, Optional<Object>> valuesToMutate = Maps.newHashMap();
+        final Map<String, ImmutableSet<Object>> setValuesToAdd = Maps.newHashMap();
+        final Map<String, ImmutableSet<Object>> setValuesToRemove = Maps.newHashMap();
+        final Map<String, ImmutableList<Object>> listValuesToAppend = Maps.newHashMap();
+        final Map<String, ImmutableList<Object>> listValuesToPrepend = Maps.newHashMap();
+        final Map<String, ImmutableMap<Object, Optional<Object>>> mapValuesToMutate = Maps.newHashMap();
+        
+        for (Entry<String, Optional<Object>> entry : values.entrySet()) {
+            final String name = entry.getKey();
+            final Optional<Object> oldValue = snapshot.get(name);
+            final Optional<Object> newValue = entry.getValue();
+
+            if (schema.isPrimaryKey(name)) {
+                if (!newValue.isPresent()) {
+                    throw new IllegalStateException("key " + name + " of entity is not set");
+                } else if (!newValue.equals(oldValue)) {
+                    throw new IllegalStateException("key " + name + " of attached entity has been modified");
+                }
+                keys.put(name, newValue.get());
+                
+            } else if (newValue.equals(oldValue)) {
+                continue;
+                
+            } else if (isCollectionChange(Set.class, oldValue, newValue)) {
+                final Set<Object> oldSet = toSet(oldValue);
+                final Set<Object> newSet = toSet(newValue);
+                final ImmutableSet<Object> added = ImmutableSet.copyOf(Sets.difference(newSet, oldSet));
+                final ImmutableSet<Object> removed = ImmutableSet.copyOf(Sets.difference(oldSet, newSet));
+                
+                if (added.isEmpty() && removed.isEmpty()) {
+                    continue;   // absent and empty collections are the same
+                } else if (newSet.isEmpty()) {
+                    valuesToMutate.put(name, Optional.absent());
+                } else {
+                    if (!added.isEmpty()) {
+                        setValuesToAdd.put(name, added);
+                    }
+                    if (!removed.isEmpty()) {
+                        setValuesToRemove.put(name, removed);
+                    }
+                }
+                
+            } else if (isCollectionChange(List.class, oldValue, newValue)) {
+                final List<Object> oldList = toList(oldValue);
+                final List<Object> newList = toList(newValue);
+                final int numAdded = newList.size() - oldList.size();
+                
+                if (newList.equals(oldList)) {
+                    continue;
+                } else if (newList.isEmpty()) {
+                    valuesToMutate.put(name, Optional.absent());
+                } else if ((numAdded > 0) && newList.subList(0, oldList.size()).equals(oldList)) {
+                    listValuesToAppend.put(name, ImmutableList.copyOf(newList.subList(oldList.size(), newList.size())));
+                } else if ((numAdded > 0) && newList.subList(numAdded, newList.size()).equals(oldList)) {
+                    listValuesToPrepend.put(name, ImmutableList.copyOf(newList.subList(0, numAdded)));
+                } else {
+                    // removing list elements by value would remove all occurrences 
+                    valuesToMutate.put(name, newValue);
+                }
+                
+            } else if (isCollectionChange(Map.class, oldValue, newValue)) {
+                final Map<Object, Object> oldMap = toMap(oldValue);
+                final Map<Object, Object> newMap = toMap(newValue);
+                
+                if (newMap.equals(oldMap)) {
+                    continue;
+                } else if (newMap.isEmpty() || !newMap.keySet().containsAll(oldMap.keySet())) {
+                    // removed entries can not be expressed by a put
+                    valuesToMutate.put(name, newMap.isEmpty() ? Optional.absent() : newValue);
+                } else {
+                    final Map<Object, Optional<Object>> changed = Maps.newHashMap();
+                    for (Entry<Object, Object> newEntry : newMap.entrySet()) {
+                        if (!newEntry.getValue().equals(oldMap.get(newEntry.getKey()))) {
+                            changed.put(newEntry.getKey(), Optional.of(newEntry.getValue()));
+                        }
+                    }
+                    mapValuesToMutate.put(name, ImmutableMap.copyOf(changed));
+                }
+                
+            } else {
+                valuesToMutate.put(name, newValue);
+            }
+        }
+        
+        if (valuesToMutate.isEmpty() && setValuesToAdd.isEmpty() && setValuesToRemove.isEmpty() && 
+            listValuesToAppend.isEmpty() && listValuesToPrepend.isEmpty() && mapValuesToMutate.isEmpty()) {
+            return null;
+        }
+        
+        return new WriteQueryDataImpl(tablename).keys(ImmutableMap.copyOf(keys))
+                                                .valuesToMutate(ImmutableMap.copyOf(valuesToMutate))
+                                                .setValuesToAdd(ImmutableMap.copyOf(setValuesToAdd))
+                                                .setValuesToRemove(ImmutableMap.copyOf(setValuesToRemove))
+                                                .listValuesToAppend(ImmutableMap.copyOf(listValuesToAppend))
+                                                .listValuesToPrepend(ImmutableMap.copyOf(listValuesToPrepend))
+                                                .mapValuesToMutate(ImmutableMap.copyOf(mapValuesToMutate));
+    }
+    
+    
+    private static boolean isEmptyCollection(Object value) {
+        return ((value instanceof Collection) && ((Collection<?>) value).isEmpty()) ||
+               ((value instanceof Map) && ((Map<?, ?>) value).isEmpty());
+    }
+    
+    /**
+     * @return true, if both values are collections of the given type or absent (an empty collection is stored as null) 
+     */
+    private static boolean isCollectionChange(Class<?> collectionType, Optional<Object> oldValue, Optional<Object> newValue) {
+        return (!oldValue.isPresent() || collectionType.isInstance(oldValue.get())) &&
+               (!newValue.isPresent() || collectionType.isInstance(newValue.get())) &&
+               (oldValue.isPresent() || newValue.isPresent());
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Set<Object> toSet(Optional<Object> value) {
+        return value.isPresent() ? (Set<Object>) value.get() : ImmutableSet.of();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static List<Object> toList(Optional<Object> value) {
+        return value.isPresent() ? (List<Object>) value.get() : ImmutableList.of();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Object> toMap(Optional<Object> value) {
+        return value.isPresent() ? (Map<Object, Object>) value.get() : ImmutableMap.<Object, Object>of();
+    }
+    
+    
+    @Override
+    public String toString() {
+        return "entity session of " + tablename + " (" + snapshots.size() + " attached entities)";
+    }
+}
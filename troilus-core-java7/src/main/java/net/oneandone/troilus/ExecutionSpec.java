@@ -38,6 +38,34 @@ public interface ExecutionSpec {
     
     ExecutionSpec withRetryPolicy(RetryPolicy policy);
     
+    ExecutionSpec withLwtSerialization(int maxRetries);
+    
+    ExecutionSpec withCascadeMode(CascadeMode cascadeMode);
+    
+    ExecutionSpec withBatchSizeLimit(int maxStatements, int maxBytes);
+    
+    ExecutionSpec withHedging(double percentile, double maxExtraLoad);
+    
+    ExecutionSpec withIdempotence(boolean idempotent);
+    
+    ExecutionSpec withReadCoalescing(long windowMillis, int maxBatchSize);
+    
+    ExecutionSpec withSingleFlight(boolean singleFlight);
+    
+    ExecutionSpec withUnsetNulls(boolean unsetNulls);
+    
+    ExecutionSpec withWriteBehind(WriteBehindJournalImpl writeBehindJournal);
+    
+    ExecutionSpec withReadYourWrites(ReadYourWritesSessionImpl readYourWritesSession);
+    
+    ExecutionSpec withTimeout(long timeoutMillis);
+    
+    ExecutionSpec withDeadline(long deadlineMillis);
+    
+    ExecutionSpec withActiveDeadline(long activeDeadlineMillis);
+    
+    ExecutionSpec withTraceSampling(TraceSamplerImpl traceSampler);
+    
     ConsistencyLevel getConsistencyLevel();
         
     ConsistencyLevel getSerialConsistencyLevel();
@@ -49,4 +77,38 @@ public interface ExecutionSpec {
     Boolean getEnableTracing();
         
     RetryPolicy getRetryPolicy();
+
+    Integer getLwtSerializationRetries();
+
+    CascadeMode getCascadeMode();
+
+    Integer getMaxBatchStatements();
+
+    Integer getMaxBatchSizeBytes();
+
+    Double getHedgePercentile();
+
+    Double getHedgeMaxExtraLoad();
+
+    Boolean getIdempotent();
+
+    Long getCoalescingWindowMillis();
+
+    Integer getCoalescingMaxBatchSize();
+
+    Boolean getSingleFlight();
+
+    Boolean getUnsetNulls();
+
+    WriteBehindJournalImpl getWriteBehindJournal();
+
+    ReadYourWritesSessionImpl getReadYourWritesSession();
+
+    Long getTimeoutMillis();
+
+    Long getDeadlineMillis();
+
+    Long getActiveDeadlineMillis();
+
+    TraceSamplerImpl getTraceSampler();
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+
+/**
+ * Hedged read metrics of a table. The metrics are collected
+ * by the queries which are executed with activated hedged reads 
+ */
+public interface HedgeMetrics {
+
+    /**
+     * @return the number of performed reads excluding the hedged requests
+     */
+    long getNumReads();
+    
+    /**
+     * @return the number of hedged requests which have been sent
+     */
+    long getNumHedged();
+    
+    /**
+     * @return the number of reads which have been answered by the hedged request 
+     */
+    long getNumHedgeWins();
+    
+    /**
+     * @return the ratio of hedged requests which returned earlier than the first attempt 
+     */
+    double getHedgeWinRate();
+    
+    /**
+     * @param percentile  the percentile such as 0.95  
+     * @return the read latency of the percentile measured by troilus in micros or -1, if not enough samples exist
+     */
+    long getLatencyMicros(double percentile);
+}
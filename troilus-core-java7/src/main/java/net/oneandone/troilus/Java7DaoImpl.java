@@ -17,24 +17,35 @@ package net.oneandone.troilus;
 
 
 
+import java.io.File;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import net.oneandone.troilus.interceptor.QueryInterceptor;
+import net.oneandone.troilus.java7.Batchable;
+import net.oneandone.troilus.java7.CounterAccumulator;
 import net.oneandone.troilus.java7.Dao;
 import net.oneandone.troilus.java7.Deletion;
+import net.oneandone.troilus.java7.EntitySession;
 import net.oneandone.troilus.java7.Insertion;
+import net.oneandone.troilus.java7.LargeObjectStore;
 import net.oneandone.troilus.java7.ListReadWithUnit;
+import net.oneandone.troilus.java7.LookupIndex;
+import net.oneandone.troilus.java7.MultiReadWithUnit;
 import net.oneandone.troilus.java7.Record;
 import net.oneandone.troilus.java7.ResultList;
 import net.oneandone.troilus.java7.SingleReadWithUnit;
+import net.oneandone.troilus.java7.TimeRangeReadWithUnit;
 import net.oneandone.troilus.java7.UpdateWithUnitAndCounter;
+import net.oneandone.troilus.java7.WriteBehindJournal;
+import net.oneandone.troilus.java7.WriteProcessor;
 import net.oneandone.troilus.java7.WriteWithCounter;
 
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.policies.RetryPolicy;
 import com.datastax.driver.core.querybuilder.Clause;
 import com.datastax.driver.core.ConsistencyLevel;
+import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -95,12 +106,106 @@ public class Java7DaoImpl implements Dao {
     public Dao withoutTracking() {
         return new Java7DaoImpl(ctx.withoutTracking(), this.tablename);
     }
+    
+    @Override
+    public Dao withTraceSampling(TraceSampler sampler) {
+        if (!(sampler instanceof TraceSamplerImpl)) {
+            throw new IllegalArgumentException("trace sampler " + sampler + " has not been created by a Dao");
+        }
+        return new Java7DaoImpl(ctx.withTraceSampling((TraceSamplerImpl) sampler), this.tablename);
+    }
 
     @Override
     public Dao withRetryPolicy(RetryPolicy policy) {
         return new Java7DaoImpl(ctx.withRetryPolicy(policy), this.tablename);
     }
 
+    @Override
+    public Dao withLwtSerialization(int maxContentionRetries) {
+        return new Java7DaoImpl(ctx.withLwtSerialization(maxContentionRetries), this.tablename);
+    }
+
+    @Override
+    public Dao withHedgedReads(double latencyPercentile, double maxExtraLoad) {
+        return new Java7DaoImpl(ctx.withHedging(latencyPercentile, maxExtraLoad), this.tablename);
+    }
+
+    @Override
+    public Dao withReadCoalescing(long windowMillis, int maxBatchSize) {
+        return new Java7DaoImpl(ctx.withReadCoalescing(windowMillis, maxBatchSize), this.tablename);
+    }
+
+    @Override
+    public Dao withSingleFlightReads() {
+        return new Java7DaoImpl(ctx.withSingleFlight(true), this.tablename);
+    }
+    
+    @Override
+    public Dao withTimeout(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeout has to be greater than 0");
+        }
+        return new Java7DaoImpl(ctx.withTimeout(timeoutMillis), this.tablename);
+    }
+    
+    @Override
+    public Dao withDeadline(long deadlineMillisSinceEpoch) {
+        return new Java7DaoImpl(ctx.withDeadline(deadlineMillisSinceEpoch), this.tablename);
+    }
+
+    @Override
+    public Dao withUnsetNulls() {
+        return new Java7DaoImpl(ctx.withUnsetNulls(true), this.tablename);
+    }
+
+    @Override
+    public Dao withTimeBuckets(String bucketName, String timeName, TimeBucket timeBucket) {
+        return new Java7DaoImpl(ctx.withInterceptor(new TimeBucketInterceptor(bucketName, timeName, timeBucket)), this.tablename);
+    }
+
+    @Override
+    public Dao withLookupIndex(LookupIndex lookupIndex) {
+        if (!(lookupIndex instanceof LookupIndexImpl) || !((LookupIndexImpl) lookupIndex).getTablename().equals(tablename)) {
+            throw new IllegalArgumentException("lookup index " + lookupIndex + " has not been created by a Dao of " + tablename);
+        }
+        if (ctx.getExecutionSpec().getWriteBehindJournal() != null) {
+            throw new IllegalStateException("lookup index is not supported in write-behind mode");
+        }
+        return new Java7DaoImpl(ctx.withInterceptor((LookupIndexImpl) lookupIndex), this.tablename);
+    }
+    
+    @Override
+    public Dao withWriteBehind(WriteBehindJournal writeBehindJournal) {
+        if (!(writeBehindJournal instanceof WriteBehindJournalImpl)) {
+            throw new IllegalArgumentException("write-behind journal " + writeBehindJournal + " has not been created by a Dao");
+        }
+        if (LookupIndexImpl.isActivated(ctx)) {
+            throw new IllegalStateException("write-behind mode is not supported by a lookup index");
+        }
+        return new Java7DaoImpl(ctx.withWriteBehind((WriteBehindJournalImpl) writeBehindJournal), this.tablename);
+    }
+    
+    @Override
+    public Dao withReadYourWrites(ReadYourWritesSession session) {
+        if (!(session instanceof ReadYourWritesSessionImpl)) {
+            throw new IllegalArgumentException("read-your-writes session " + session + " has not been created by a Dao");
+        }
+        return new Java7DaoImpl(ctx.withReadYourWrites((ReadYourWritesSessionImpl) session), this.tablename);
+    }
+
+    @Override
+    public Dao withCascadeMode(CascadeMode cascadeMode) {
+        return new Java7DaoImpl(ctx.withCascadeMode(cascadeMode), this.tablename);
+    }
+
+    @Override
+    public Dao withBatchSizeLimit(int maxStatements, int maxBytes) {
+        if ((maxStatements <= 0) || (maxBytes <= 0)) {
+            throw new IllegalArgumentException("max statements and max bytes have to be greater than 0");
+        }
+        return new Java7DaoImpl(ctx.withBatchSizeLimit(maxStatements, maxBytes), this.tablename);
+    }
+
     @Override
     public Dao withInterceptor(QueryInterceptor queryInterceptor) {
         return new Java7DaoImpl(ctx.withInterceptor(queryInterceptor), this.tablename);
@@ -108,7 +213,7 @@ public class Java7DaoImpl implements Dao {
     
     @Override
     public Insertion writeEntity(Object entity) {
-        ImmutableMap<String, Optional<Object>> values = ctx.getBeanMapper().toValues(entity, ctx.getCatalog().getColumnNames(tablename));
+        ImmutableMap<String, Optional<Object>> values = ctx.toEntityValues(entity, tablename);
         return new InsertQuery(ctx, new WriteQueryDataImpl(tablename).valuesToMutate(values));
     }
     
@@ -219,6 +324,64 @@ public class Java7DaoImpl implements Dao {
         return new DeleteQuery(ctx, new DeleteQueryDataImpl(tablename).key(keyNameValuePairs));
     }
     
+    @Override
+    public WriteProcessor<Batchable<?>> writeRx() {
+        return new WriteProcessorImpl<Batchable<?>>(ctx, Functions.<Batchable<?>>identity());
+    }
+    
+    @Override
+    public <E> WriteProcessor<E> writeEntityRx(Class<E> entityClass) {
+        return WriteProcessorImpl.newEntityWriteProcessor(ctx, tablename);
+    }
+    
+    @Override
+    public CounterAccumulator newCounterAccumulator(long flushPeriodMillis, int maxPendingUpdates) {
+        return new CounterAccumulatorImpl(ctx, tablename, flushPeriodMillis, maxPendingUpdates);
+    }
+    
+    @Override
+    public EntitySession newEntitySession() {
+        return new EntitySessionImpl(ctx, tablename);
+    }
+    
+    @Override
+    public LargeObjectStore newLargeObjectStore(String generationName, String chunkNumberName, String chunkDataName, int chunkSize, int maxParallelChunks) {
+        return new LargeObjectStoreImpl(ctx, tablename, generationName, chunkNumberName, chunkDataName, chunkSize, maxParallelChunks);
+    }
+
+    @Override
+    public LookupIndex newLookupIndex(String lookupTablename, ImmutableMap<String, String> columnMapping, long flushPeriodMillis, int maxPendingChanges, long reconcilePeriodMillis) {
+        return new LookupIndexImpl(ctx, tablename, Tablename.newTablename(tablename.getKeyspacename(), lookupTablename), columnMapping, flushPeriodMillis, maxPendingChanges, reconcilePeriodMillis);
+    }
+    
+    @Override
+    public WriteBehindJournal newWriteBehindJournal(File directory, int segmentSize, int maxParallelWrites) {
+        return new WriteBehindJournalImpl(ctx.getDefaultDbSession(), directory, segmentSize, maxParallelWrites);
+    }
+    
+    @Override
+    public ReadYourWritesSession newReadYourWritesSession() {
+        return new ReadYourWritesSessionImpl();
+    }
+    
+    @Override
+    public TraceSampler newTraceSampler(int sampleRate, long latencyThresholdMillis) {
+        if ((sampleRate < 0) || ((sampleRate == 0) && (latencyThresholdMillis < 0))) {
+            throw new IllegalArgumentException("sample rate has to be greater than 0 or a latency threshold has to be set");
+        }
+        return new TraceSamplerImpl(sampleRate, latencyThresholdMillis);
+    }
+    
+    @Override
+    public LwtMetrics getLwtMetrics() {
+        return LwtSerializer.get(tablename);
+    }
+    
+    @Override
+    public HedgeMetrics getHedgeMetrics() {
+        return ReadHedger.get(tablename);
+    }
+    
     @Override
     public SingleReadWithUnit<Record, Record> readWithKey(ImmutableMap<String, Object> composedkey) {
         Map<String, ImmutableList<Object>> keys = Maps.newHashMap();
@@ -271,6 +434,16 @@ public class Java7DaoImpl implements Dao {
                            keyName3.getName(), (Object) keyValue3);
     }
     
+    @Override
+    public MultiReadWithUnit<ImmutableList<Optional<Record>>, Record> readWithKeys(ImmutableList<ImmutableMap<String, Object>> keys) {
+        return new MultiReadQuery(ctx, tablename, keys);
+    }
+    
+    @Override
+    public TimeRangeReadWithUnit<ResultList<Record>, Record> readTimeRange(ImmutableMap<String, Object> keys, long fromMillis, long toMillis) {
+        return new TimeRangeReadQuery(ctx, tablename, keys, fromMillis, toMillis);
+    }
+    
     @Override
     public ListReadWithUnit<ResultList<Record>, Record> readSequenceWithKeys(String name, ImmutableList<Object> values) {
         return new ListReadQuery(ctx, new ReadQueryDataImpl(tablename).keys(ImmutableMap.of(name, values)));
@@ -0,0 +1,487 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+import net.oneandone.troilus.java7.LargeObjectStore;
+import net.oneandone.troilus.java7.Record;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.BuiltStatement;
+import com.datastax.driver.core.querybuilder.Clause;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.Update;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+
+
+/**
+ * Large object store implementation. A write stores the chunks under a new generation and
+ * keeps up to max parallel chunks in flight. The generation becomes visible by publishing 
+ * the manifest row (generation and number of chunks) after all chunks have been written. 
+ * The manifest is published by a conditional write, so that concurrent writes of the same 
+ * object are serialized. Afterwards the chunks of the replaced generation are removed.<br>
+ * A read reads the manifest and prefetches up to max parallel chunks of its generation. 
+ * The chunk buffers of the driver are handed out without copying them 
+ */
+class LargeObjectStoreImpl implements LargeObjectStore {
+
+    // the manifest row is stored with the reserved generation 0 and chunk number 0
+    private static final long MANIFEST_GENERATION = 0;
+    private static final int MANIFEST_CHUNK_NUMBER = 0;
+    
+    private final Context ctx;
+    private final Tablename tablename;
+    private final String generationName;
+    private final String chunkNumberName;
+    private final String chunkDataName;
+    private final int chunkSize;
+    private final int maxParallelChunks;
+
+
+    /**
+     * @param ctx                the context
+     * @param tablename          the tablename
+     * @param generationName     the name of the (bigint) clustering column which holds the generation
+     * @param chunkNumberName    the name of the (int) clustering column which holds the chunk number
+     * @param chunkDataName      the name of the blob column which holds the chunk data
+     * @param chunkSize          the chunk size in bytes
+     * @param maxParallelChunks  the max number of chunks which are written or prefetched in parallel
+     */
+    LargeObjectStoreImpl(Context ctx, Tablename tablename, String generationName, String chunkNumberName, String chunkDataName, int chunkSize, int maxParallelChunks) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size has to be greater than 0");
+        }
+        if (maxParallelChunks <= 0) {
+            throw new IllegalArgumentException("max parallel chunks has to be greater than 0");
+        }
+
+        this.ctx = ctx;
+        this.tablename = tablename;
+        this.generationName = generationName;
+        this.chunkNumberName = chunkNumberName;
+        this.chunkDataName = chunkDataName;
+        this.chunkSize = chunkSize;
+        this.maxParallelChunks = maxParallelChunks;
+    }
+
+
+    @Override
+    public ListenableFuture<Long> writeAsync(ImmutableMap<String, Object> keys, ReadableByteChannel channel) {
+        return new ChunkWriter(keys, channel).start();
+    }
+
+    @Override
+    public ListenableFuture<Long> writeAsync(ImmutableMap<String, Object> keys, InputStream stream) {
+        return writeAsync(keys, Channels.newChannel(stream));
+    }
+
+    @Override
+    public long write(ImmutableMap<String, Object> keys, InputStream stream) {
+        return ListenableFutures.getUninterruptibly(writeAsync(keys, stream));
+    }
+
+    @Override
+    public ListenableFuture<Optional<ReadableByteChannel>> readAsync(final ImmutableMap<String, Object> keys) {
+        final Function<Record, Optional<ReadableByteChannel>> toChannel = new Function<Record, Optional<ReadableByteChannel>>() {
+            @Override
+            public Optional<ReadableByteChannel> apply(Record manifest) {
+                if (manifest == null) {
+                    return Optional.absent();
+                } else {
+                    final ByteBuffer data = manifest.getBytes(chunkDataName).duplicate();
+                    return Optional.<ReadableByteChannel>of(new ChunkChannel(keys, data.getLong(), data.getInt()));
+                }
+            }
+        };
+
+        return Futures.transform(readManifestAsync(keys), toChannel, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public Optional<ReadableByteChannel> read(ImmutableMap<String, Object> keys) {
+        return ListenableFutures.getUninterruptibly(readAsync(keys));
+    }
+
+
+    private ImmutableMap<String, Object> toChunkKeys(ImmutableMap<String, Object> keys, long generation, int chunkNumber) {
+        return Immutables.join(Immutables.join(keys, generationName, (Object) generation), chunkNumberName, (Object) chunkNumber);
+    }
+
+    private ListenableFuture<Record> readChunkAsync(ImmutableMap<String, Object> keys, long generation, int chunkNumber) {
+        final Map<String, ImmutableList<Object>> chunkKeys = Maps.newHashMap();
+        for (Entry<String, Object> entry : toChunkKeys(keys, generation, chunkNumber).entrySet()) {
+            chunkKeys.put(entry.getKey(), ImmutableList.of(entry.getValue()));
+        }
+
+        return new SingleReadQuery(ctx, new ReadQueryDataImpl(tablename).keys(ImmutableMap.copyOf(chunkKeys))
+                                                                         .columnsToFetch(ImmutableMap.of(chunkDataName, false)))
+                                                                         .executeAsync();
+    }
+
+    private ListenableFuture<Record> readManifestAsync(ImmutableMap<String, Object> keys) {
+        return readChunkAsync(keys, MANIFEST_GENERATION, MANIFEST_CHUNK_NUMBER);
+    }
+
+    /**
+     * publishes the manifest by a conditional write. The statement is prepared, so that the 
+     * manifest values do not become part of the query string
+     *  
+     * @return the future, which is true, if the manifest has been published. False, if the 
+     *         current manifest differs from the expected one    
+     */
+    private ListenableFuture<Boolean> publishManifestAsync(ImmutableMap<String, Object> keys, ByteBuffer expectedManifest, ByteBuffer manifest) {
+        final ImmutableMap<String, Object> manifestKeys = toChunkKeys(keys, MANIFEST_GENERATION, MANIFEST_CHUNK_NUMBER);
+        final List<Object> values = Lists.newArrayList();
+        final BuiltStatement statement;
+        
+        if (expectedManifest == null) {
+            final Insert insert = (tablename.getKeyspacename() == null) ? insertInto(tablename.getTablename())
+                                                                        : insertInto(tablename.getKeyspacename(), tablename.getTablename());
+            for (Entry<String, Object> entry : manifestKeys.entrySet()) {
+                insert.value(entry.getKey(), bindMarker());
+                values.add(ctx.getUDTValueMapper().toStatementValue(tablename, entry.getKey(), entry.getValue()));
+            }
+            insert.value(chunkDataName, bindMarker());
+            values.add(manifest);
+            statement = insert.ifNotExists();
+            
+        } else {
+            final Update update = (tablename.getKeyspacename() == null) ? update(tablename.getTablename())
+                                                                        : update(tablename.getKeyspacename(), tablename.getTablename());
+            update.with(set(chunkDataName, bindMarker()));
+            values.add(manifest);
+            for (Entry<String, Object> entry : manifestKeys.entrySet()) {
+                update.where(eq(entry.getKey(), bindMarker()));
+                values.add(ctx.getUDTValueMapper().toStatementValue(tablename, entry.getKey(), entry.getValue()));
+            }
+            update.onlyIf(eq(chunkDataName, bindMarker()));
+            values.add(expectedManifest);
+            statement = update;
+        }
+        
+        final DBSession dbSession = ctx.getDefaultDbSession();
+        final ListenableFuture<Statement> statementFuture = dbSession.bindAsync(dbSession.prepareAsync(statement), values.toArray());
+        
+        final Function<Statement, ListenableFuture<ResultSet>> executor = new Function<Statement, ListenableFuture<ResultSet>>() {
+            @Override
+            public ListenableFuture<ResultSet> apply(Statement boundStatement) {
+                if (ctx.getExecutionSpec().getConsistencyLevel() != null) {
+                    boundStatement.setConsistencyLevel(ctx.getExecutionSpec().getConsistencyLevel());
+                }
+                if (ctx.getExecutionSpec().getSerialConsistencyLevel() != null) {
+                    boundStatement.setSerialConsistencyLevel(ctx.getExecutionSpec().getSerialConsistencyLevel());
+                }
+                return dbSession.executeAsync(boundStatement);
+            }
+        };
+        
+        final Function<ResultSet, Boolean> toApplied = new Function<ResultSet, Boolean>() {
+            @Override
+            public Boolean apply(ResultSet resultSet) {
+                return resultSet.wasApplied();
+            }
+        };
+        
+        return Futures.transform(ListenableFutures.transform(statementFuture, executor), toApplied, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Result> removeGenerationAsync(ImmutableMap<String, Object> keys, long generation) {
+        final List<Clause> whereConditions = Lists.newArrayList();
+        for (Entry<String, Object> entry : keys.entrySet()) {
+            whereConditions.add(eq(entry.getKey(), entry.getValue()));
+        }
+        whereConditions.add(eq(generationName, generation));
+
+        return new DeleteQuery(ctx, new DeleteQueryDataImpl(tablename).whereConditions(ImmutableList.copyOf(whereConditions)))
+                                                                      .executeAsync();
+    }
+
+    private static ByteBuffer newManifest(long generation, int numChunks) {
+        final ByteBuffer manifest = ByteBuffer.allocate(12);
+        manifest.putLong(generation).putInt(numChunks).flip();
+        return manifest;
+    }
+
+
+
+    /**
+     * Writes the chunks. The state is accessed by the sequential executor only
+     */
+    private final class ChunkWriter implements Runnable {
+        private final ImmutableMap<String, Object> keys;
+        private final ReadableByteChannel source;
+        private final Executor sequentialExecutor = MoreExecutors.newSequentialExecutor(ctx.getTaskExecutor());
+        private final SettableFuture<Long> sizeFuture = SettableFuture.create();
+        private final long generation = ThreadLocalRandom.current().nextLong(MANIFEST_GENERATION + 1, Long.MAX_VALUE);
+
+        private int numChunks = 0;
+        private int numInFlight = 0;
+        private long size = 0;
+        private boolean isEndOfStream = false;
+        private boolean isPublishing = false;
+
+
+        ChunkWriter(ImmutableMap<String, Object> keys, ReadableByteChannel source) {
+            this.keys = keys;
+            this.source = source;
+        }
+
+        ListenableFuture<Long> start() {
+            sequentialExecutor.execute(this);
+            return sizeFuture;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isEndOfStream && (numInFlight < maxParallelChunks) && !sizeFuture.isDone()) {
+                    final ByteBuffer chunk = readChunk();
+                    isEndOfStream = chunk.remaining() < chunkSize;
+
+                    // an empty object is stored as a manifest without chunks
+                    if (chunk.hasRemaining()) {
+                        writeChunk(numChunks++, chunk);
+                    }
+                }
+
+                if (isEndOfStream && (numInFlight == 0) && !isPublishing && !sizeFuture.isDone()) {
+                    isPublishing = true;
+                    publish();
+                }
+
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private ByteBuffer readChunk() throws IOException {
+            final ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+            while (chunk.hasRemaining()) {
+                if (source.read(chunk) < 0) {
+                    break;
+                }
+            }
+            chunk.flip();
+
+            return chunk;
+        }
+
+        private void writeChunk(int chunkNumber, ByteBuffer chunk) {
+            size += chunk.remaining();
+            numInFlight++;
+
+            final ImmutableMap<String, Optional<Object>> values = ImmutableMap.of(chunkDataName, Optional.<Object>of(chunk));
+            final ListenableFuture<Result> future = new UpdateQuery(ctx, new WriteQueryDataImpl(tablename).keys(toChunkKeys(keys, generation, chunkNumber))
+                                                                                                        .valuesToMutate(values))
+                                                                                                        .executeAsync();
+            Futures.addCallback(future, new FutureCallback<Result>() {
+                                            @Override
+                                            public void onSuccess(Result result) {
+                                                numInFlight--;
+                                                run();
+                                            }
+
+                                            @Override
+                                            public void onFailure(Throwable t) {
+                                                numInFlight--;
+                                                fail(t);
+                                            }
+                                        },
+                                sequentialExecutor);
+        }
+
+        private void publish() {
+            Futures.addCallback(readManifestAsync(keys), new FutureCallback<Record>() {
+                                            @Override
+                                            public void onSuccess(Record record) {
+                                                publish((record == null) ? null : record.getBytes(chunkDataName));
+                                            }
+
+                                            @Override
+                                            public void onFailure(Throwable t) {
+                                                fail(t);
+                                            }
+                                        },
+                                MoreExecutors.directExecutor());
+        }
+
+        private void publish(final ByteBuffer replacedManifest) {
+            Futures.addCallback(publishManifestAsync(keys, replacedManifest, newManifest(generation, numChunks)), new FutureCallback<Boolean>() {
+                                            @Override
+                                            public void onSuccess(Boolean isPublished) {
+                                                if (!isPublished) {
+                                                    publish();  // the manifest has been changed by a concurrent write
+                                                } else if (replacedManifest == null) {
+                                                    sizeFuture.set(size);
+                                                } else {
+                                                    removeReplacedGeneration(replacedManifest.duplicate().getLong());
+                                                }
+                                            }
+
+                                            @Override
+                                            public void onFailure(Throwable t) {
+                                                fail(t);
+                                            }
+                                        },
+                                MoreExecutors.directExecutor());
+        }
+
+        private void removeReplacedGeneration(long replacedGeneration) {
+            Futures.addCallback(removeGenerationAsync(keys, replacedGeneration), new FutureCallback<Result>() {
+                                            @Override
+                                            public void onSuccess(Result result) {
+                                                sizeFuture.set(size);
+                                            }
+
+                                            @Override
+                                            public void onFailure(Throwable t) {
+                                                sizeFuture.setException(t);  // the new generation is already published  
+                                            }
+                                        },
+                                MoreExecutors.directExecutor());
+        }
+
+        private void fail(Throwable t) {
+            // the chunks of the unpublished generation are removed (best effort) 
+            if (sizeFuture.setException(t)) {
+                removeGenerationAsync(keys, generation);
+            }
+        }
+    }
+
+
+
+    /**
+     * Channel which reads the chunks of a generation in order. The read of the next chunks is 
+     * started before they are consumed. The channel is not thread-safe
+     */
+    private final class ChunkChannel implements ReadableByteChannel {
+        private final ImmutableMap<String, Object> keys;
+        private final long generation;
+        private final int numChunks;
+        private final Deque<ListenableFuture<Record>> prefetchedChunks = new ArrayDeque<>();
+        private int nextChunkNumber = 0;
+        private ByteBuffer chunk = ByteBuffer.allocate(0);
+        private boolean isOpen = true;
+
+
+        ChunkChannel(ImmutableMap<String, Object> keys, long generation, int numChunks) {
+            this.keys = keys;
+            this.generation = generation;
+            this.numChunks = numChunks;
+            prefetch();
+        }
+
+        private void prefetch() {
+            while ((prefetchedChunks.size() < maxParallelChunks) && (nextChunkNumber < numChunks)) {
+                prefetchedChunks.addLast(readChunkAsync(keys, generation, nextChunkNumber++));
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!isOpen) {
+                throw new ClosedChannelException();
+            }
+
+            while (!chunk.hasRemaining()) {
+                // all chunks of the generation have been read?
+                if (prefetchedChunks.isEmpty()) {
+                    return -1;
+                }
+
+                final Record record;
+                try {
+                    record = ListenableFutures.getUninterruptibly(prefetchedChunks.removeFirst());
+                } catch (RuntimeException rt) {
+                    throw new IOException(rt);
+                }
+
+                if (record == null) {
+                    cancelPrefetchedChunks();
+                    throw new IOException("chunk of generation " + generation + " does not exist. The object has been replaced or deleted in the meantime");
+                } else {
+                    final ByteBuffer data = record.getBytes(chunkDataName);
+                    chunk = (data == null) ? ByteBuffer.allocate(0) : data.duplicate();
+                    prefetch();
+                }
+            }
+
+            final int num = Math.min(chunk.remaining(), dst.remaining());
+            final ByteBuffer slice = chunk.duplicate();
+            slice.limit(slice.position() + num);
+            dst.put(slice);
+            chunk.position(chunk.position() + num);
+
+            return num;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return isOpen;
+        }
+
+        @Override
+        public void close() {
+            isOpen = false;
+            cancelPrefetchedChunks();
+        }
+
+        private void cancelPrefetchedChunks() {
+            for (ListenableFuture<Record> future : prefetchedChunks) {
+                future.cancel(true);
+            }
+            prefetchedChunks.clear();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "large object store of " + tablename + " (chunk size " + chunkSize + ", max parallel chunks " + maxParallelChunks + ")";
+    }
+}
@@ -17,34 +17,54 @@ package net.oneandone.troilus;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
 
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.util.concurrent.MoreExecutors;
+import net.oneandone.troilus.MetadataCatalog.TableSchema;
+import net.oneandone.troilus.java7.CountRead;
 import net.oneandone.troilus.java7.FetchingIterator;
 import net.oneandone.troilus.java7.ListRead;
 import net.oneandone.troilus.java7.ListReadWithUnit;
+import net.oneandone.troilus.java7.Page;
+import net.oneandone.troilus.java7.PagedRead;
 import net.oneandone.troilus.java7.Record;
 import net.oneandone.troilus.java7.ResultList;
 import net.oneandone.troilus.java7.interceptor.ReadQueryData;
+import net.oneandone.troilus.java7.interceptor.ReadQueryPageInterceptor;
 import net.oneandone.troilus.java7.interceptor.ReadQueryRequestInterceptor;
 import net.oneandone.troilus.java7.interceptor.ReadQueryResponseInterceptor;
 
 import org.reactivestreams.Publisher;
 
+import com.datastax.driver.core.ClusteringOrder;
+import com.datastax.driver.core.ExecutionInfo;
 import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TokenRange;
 import com.datastax.driver.core.querybuilder.Clause;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select;
 import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 
 
@@ -160,6 +180,7 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
     @Override
     public CountReadQuery count() {
         return new CountReadQuery(getContext(), new CountReadQueryData(data.getTablename())
+                                                                        .keys(data.getKeys())
                                                                         .whereConditions(data.getWhereConditions())
                                                                         .limit(data.getLimit())
                                                                         .fetchSize(data.getFetchSize())
@@ -172,6 +193,14 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
         return new ListEntityReadQuery<>(getContext(), this, objectClass) ;
     }
     
+    @Override
+    public PagedReadQuery keysetPages(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size has to be greater than 0");
+        }
+        return new PagedReadQuery(getContext(), data, pageSize, null, 0);
+    }
+    
     
     @Override
     public Publisher<Record> executeRx() {
@@ -186,6 +215,16 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
     
     @Override
     public ListenableFuture<ResultList<Record>> executeAsync() {
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+        }
+        
+        // the paging state is not part of the single-flight key. Reads of a page are not shared 
+        if ((data.getPagingState() != null) && Boolean.TRUE.equals(getExecutionSpec().getSingleFlight())) {
+            return newQuery(getContext().withSingleFlight(false)).executeAsync();
+        }
+        
         // perform request executors
         final ListenableFuture<ReadQueryData> queryDataFuture = executeRequestInterceptorsAsync(Futures.<ReadQueryData>immediateFuture(data));  
 
@@ -201,14 +240,17 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
 
     
     private ListenableFuture<ResultList<Record>> executeAsync(final ReadQueryData queryData, DBSession dbSession) {
-        final ListenableFuture<ResultSet> resultSetFuture = performAsync(dbSession, toStatementAsync(queryData, getUDTValueMapper(), dbSession));
+        final ListenableFuture<ResultSet> resultSetFuture = performReadAsync(dbSession, queryData.getTablename(), toStatementAsync(queryData, getUDTValueMapper(), dbSession));
     	
         // result set to record list mapper
         final Function<ResultSet, ResultList<Record>> resultSetToRecordList = new Function<ResultSet, ResultList<Record>>() {
             
             @Override
             public ResultList<Record> apply(ResultSet resultSet) {
-                return new RecordListImpl(getContext(), queryData, resultSet);
+                final ResultList<Record> recordList = new RecordListImpl(getContext(), queryData, resultSet);
+                
+                final ImmutableList<ReadQueryPageInterceptor> pageInterceptors = getInterceptorRegistry().getInterceptors(ReadQueryPageInterceptor.class).reverse();
+                return pageInterceptors.isEmpty() ? recordList : new PageInterceptingRecordList(recordList, queryData, pageInterceptors, getExecutor());
             }
         };
         final ListenableFuture<ResultList<Record>> recordListFuture =  Futures.transform(resultSetFuture, resultSetToRecordList, MoreExecutors.directExecutor());
@@ -226,7 +268,7 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
             final Function<ReadQueryData, ListenableFuture<ReadQueryData>> mapperFunction = new Function<ReadQueryData, ListenableFuture<ReadQueryData>>() {
                 @Override
                 public ListenableFuture<ReadQueryData> apply(ReadQueryData queryData) {
-                    return icptor.onReadRequestAsync(queryData);
+                    return Futures.nonCancellationPropagating(icptor.onReadRequestAsync(queryData));
                 }
             };
             
@@ -246,7 +288,7 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
             final Function<ResultList<Record>, ListenableFuture<ResultList<Record>>> mapperFunction = new Function<ResultList<Record>, ListenableFuture<ResultList<Record>>>() {
                 @Override
                 public ListenableFuture<ResultList<Record>> apply(ResultList<Record> recordList) {
-                    return icptor.onReadResponseAsync(queryData, recordList);
+                    return Futures.nonCancellationPropagating(icptor.onReadResponseAsync(queryData, recordList));
                 }
             };
             
@@ -294,6 +336,267 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
     	return lfs;
     }
     
+    /**
+     * The keyset based paged read implementation. The next page is read by seeking the clustering 
+     * key of the last record (WHERE pk = ? AND (ck1, ck2) > (?, ?)). Keyset pages can not be read 
+     * concurrently, because each page depends on the last record of its predecessor. Prefetching
+     * reads the pages ahead in the background while the current page is processed  
+     */
+    static class PagedReadQuery extends AbstractQuery<PagedReadQuery> implements PagedRead {
+        private final ReadQueryData data;
+        private final int pageSize;
+        private final PageCursor cursor;
+        private final int numPrefetch;
+        
+        /**
+         * @param ctx          the context
+         * @param data         the query data
+         * @param pageSize     the page size
+         * @param cursor       the cursor or null
+         * @param numPrefetch  the number of pages to prefetch
+         */
+        PagedReadQuery(Context ctx, ReadQueryData data, int pageSize, PageCursor cursor, int numPrefetch) {
+            super(ctx);
+            this.data = data;
+            this.pageSize = pageSize;
+            this.cursor = cursor;
+            this.numPrefetch = numPrefetch;
+        }
+        
+        @Override
+        protected PagedReadQuery newQuery(Context newContext) {
+            return new PagedReadQuery(newContext, data, pageSize, cursor, numPrefetch);
+        }
+        
+        @Override
+        public PagedReadQuery withCursor(PageCursor cursor) {
+            return new PagedReadQuery(getContext(), data, pageSize, cursor, numPrefetch);
+        }
+        
+        @Override
+        public PagedReadQuery withPrefetch(int numPages) {
+            if (numPages < 0) {
+                throw new IllegalArgumentException("number of pages to prefetch has to be positive");
+            }
+            return new PagedReadQuery(getContext(), data, pageSize, cursor, numPages);
+        }
+        
+        @Override
+        public Page execute() {
+            return ListenableFutures.getUninterruptibly(executeAsync());
+        }
+        
+        @Override
+        public ListenableFuture<Page> executeAsync() {
+            final Context deadlineCtx = Deadlines.start(getContext());
+            if (deadlineCtx != null) {
+                return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+            }
+            
+            final ListenableFuture<Page> pageFuture = readPageAsync(cursor);
+            
+            Futures.addCallback(pageFuture, 
+                                new FutureCallback<Page>() {
+                                    @Override
+                                    public void onSuccess(Page page) {
+                                        ((PageImpl) page).prefetch(numPrefetch);
+                                    }
+                                    
+                                    @Override
+                                    public void onFailure(Throwable t) { }
+                                },
+                                MoreExecutors.directExecutor());
+            
+            return pageFuture;
+        }
+        
+        
+        private ListenableFuture<Page> readPageAsync(final PageCursor pageCursor) {
+            final TableSchema schema = getCatalog().getTableSchema(data.getTablename());
+            if (data.getKeys().isEmpty()) {
+                throw new IllegalStateException("keyset pagination requires a key-based read of a partition");
+            }
+            if (schema.getClusteringKeyNames().isEmpty()) {
+                throw new IllegalStateException("keyset pagination requires clustering keys (table " + data.getTablename() + ")");
+            }
+            if (ImmutableSet.copyOf(schema.getClusteringOrders()).size() > 1) {
+                throw new IllegalStateException("keyset pagination does not support mixed clustering orders (table " + data.getTablename() + ")");
+            }
+            final boolean isDescending = (schema.getClusteringOrders().get(0) == ClusteringOrder.DESC);
+            
+            
+            // clustering keys are required to build the cursor 
+            ImmutableMap<String, Boolean> columnsToFetch = data.getColumnsToFetch();
+            if (!columnsToFetch.isEmpty()) {
+                for (String clusteringKeyName : schema.getClusteringKeyNames()) {
+                    if (!columnsToFetch.containsKey(clusteringKeyName)) {
+                        columnsToFetch = Immutables.join(columnsToFetch, clusteringKeyName, false);
+                    }
+                }
+            }
+            final ReadQueryData pageData = data.columnsToFetch(columnsToFetch)
+                                               .limit(pageSize);
+
+            
+            final ListenableFuture<ReadQueryData> queryDataFuture = new ListReadQuery(getContext(), pageData).executeRequestInterceptorsAsync(Futures.<ReadQueryData>immediateFuture(pageData));
+            
+            final Function<ReadQueryData, ListenableFuture<Page>> queryExecutor = new Function<ReadQueryData, ListenableFuture<Page>>() {
+                @Override
+                public ListenableFuture<Page> apply(ReadQueryData queryData) {
+                    return readPageAsync(queryData, toSeekKey(schema, pageCursor), isDescending, schema.getClusteringKeyNames());
+                }
+            };
+            return ListenableFutures.transform(queryDataFuture, queryExecutor);
+        }
+        
+        
+        private ImmutableMap<String, Object> toSeekKey(TableSchema schema, PageCursor pageCursor) {
+            if (pageCursor == null) {
+                return ImmutableMap.of();
+            }
+            
+            final ImmutableList<String> clusteringKeyNames = schema.getClusteringKeyNames();
+            if (pageCursor.getClusteringKey().size() != clusteringKeyNames.size()) {
+                throw new IllegalArgumentException("cursor does not match with the clustering key of " + data.getTablename());
+            }
+            
+            final ImmutableMap.Builder<String, Object> seekKey = ImmutableMap.builder();
+            for (int i = 0; i < clusteringKeyNames.size(); i++) {
+                final String name = clusteringKeyNames.get(i);
+                seekKey.put(name, getUDTValueMapper().deserialize(schema.getDataType(name), pageCursor.getClusteringKey().get(i).duplicate()));
+            }
+            return seekKey.build();
+        }
+        
+        
+        private ListenableFuture<Page> readPageAsync(final ReadQueryData queryData, 
+                                                     ImmutableMap<String, Object> seekKey, 
+                                                     boolean isDescending, 
+                                                     final ImmutableList<String> clusteringKeyNames) {
+            final DBSession dbSession = getDefaultDbSession();
+            
+            final Function<Statement, Statement> setFetchSize = new Function<Statement, Statement>() {
+                @Override
+                public Statement apply(Statement statement) {
+                    // read the page with a single round trip
+                    return statement.setFetchSize(pageSize);
+                }
+            };
+            final ListenableFuture<Statement> statementFuture = Futures.transform(ReadQueryDataImpl.toStatementAsync(queryData, seekKey, isDescending, getUDTValueMapper(), dbSession), 
+                                                                                  setFetchSize, 
+                                                                                  MoreExecutors.directExecutor());
+            
+            final Function<ResultSet, Page> resultSetToPage = new Function<ResultSet, Page>() {
+                @Override
+                public Page apply(ResultSet resultSet) {
+                    final Result result = newResult(resultSet);
+                    
+                    final ImmutableList.Builder<Record> records = ImmutableList.builder();
+                    Row lastRow = null;
+                    for (Row row : resultSet) {
+                        records.add(new RecordImpl(getContext(), queryData, result, row));
+                        lastRow = row;
+                    }
+                    
+                    PageCursor nextCursor = null; 
+                    if (lastRow != null) {
+                        final ImmutableList.Builder<ByteBuffer> clusteringKey = ImmutableList.builder();
+                        for (String clusteringKeyName : clusteringKeyNames) {
+                            clusteringKey.add(lastRow.getBytesUnsafe(clusteringKeyName));
+                        }
+                        nextCursor = new PageCursor(clusteringKey.build());
+                    }
+                    
+                    return new PageImpl(result, records.build(), nextCursor);
+                }
+            };
+            
+            return Futures.transform(performReadAsync(dbSession, data.getTablename(), statementFuture), resultSetToPage, MoreExecutors.directExecutor());
+        }
+        
+        
+        
+        private final class PageImpl extends ResultAdapter implements Page {
+            private final ImmutableList<Record> records;
+            private final PageCursor pageCursor;
+            private ListenableFuture<Page> nextPageFuture = null;  // guarded by this
+            
+            PageImpl(Result result, ImmutableList<Record> records, PageCursor pageCursor) {
+                super(result);
+                this.records = records;
+                this.pageCursor = pageCursor;
+            }
+            
+            @Override
+            public ImmutableList<Record> getRecords() {
+                return records;
+            }
+            
+            @Override
+            public PageCursor getCursor() {
+                return pageCursor;
+            }
+            
+            @Override
+            public boolean hasNext() {
+                // a full page indicates that more records may exist 
+                return records.size() == pageSize;
+            }
+            
+            @Override
+            public Page next() {
+                return ListenableFutures.getUninterruptibly(nextAsync());
+            }
+            
+            @Override
+            public ListenableFuture<Page> nextAsync() {
+                if (!hasNext()) {
+                    return Futures.immediateFailedFuture(new NoSuchElementException("no more pages"));
+                }
+                
+                final ListenableFuture<Page> future = getNextPageAsync();
+                prefetch(numPrefetch + 1);   // the next page and the pages behind it
+                return future;
+            }
+            
+            private synchronized ListenableFuture<Page> getNextPageAsync() {
+                if (nextPageFuture == null) {
+                    nextPageFuture = readPageAsync(pageCursor);
+                }
+                return nextPageFuture;
+            }
+            
+            void prefetch(final int numPages) {
+                if ((numPages <= 0) || !hasNext()) {
+                    return;
+                }
+                
+                Futures.addCallback(getNextPageAsync(), 
+                                    new FutureCallback<Page>() {
+                                        @Override
+                                        public void onSuccess(Page page) {
+                                            ((PageImpl) page).prefetch(numPages - 1);
+                                        }
+                                        
+                                        @Override
+                                        public void onFailure(Throwable t) { 
+                                            // will be reported by reading the page 
+                                        }
+                                    },
+                                    MoreExecutors.directExecutor());
+            }
+            
+            @Override
+            public String toString() {
+                return MoreObjects.toStringHelper(this)
+                                  .add("records", records.size())
+                                  .add("cursor", pageCursor)
+                                  .toString();
+            }
+        }
+    }
+    
+    
     /**
      * The entity list read implementation
      * @param <E> the entity type
@@ -372,7 +675,7 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
     }
     
     
-    private static class EntityListImpl<F> extends ResultAdapter implements ResultList<F> {
+    static class EntityListImpl<F> extends ResultAdapter implements ResultList<F> {
         private final Tablename tablename;
         private final BeanMapper beanMapper;
         private final MetadataCatalog catalog;
@@ -429,93 +732,188 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
     
     private static final class CountReadQueryData {
         final Tablename tablename;
+        final ImmutableMap<String, ImmutableList<Object>> keys;
         final ImmutableSet<Clause> whereClauses;
         final Integer limit;
         final Boolean allowFiltering;
         final Integer fetchSize;
         final Boolean distinct;
+        final Integer parallelism;
+        final Boolean approximate;
+        final CountProgressListener progressListener;
 
         
         
         public CountReadQueryData(Tablename tablename) {
             this(tablename,
+                 ImmutableMap.<String, ImmutableList<Object>>of(),
                  ImmutableSet.<Clause>of(),
                  null,
                  null,
                  null,
+                 null,
+                 null,
+                 null,
                  null);
         }
         
         private CountReadQueryData(Tablename tablename,
-                                   ImmutableSet<Clause> whereClauses, 
-                                   Integer limit, 
+                                   ImmutableMap<String, ImmutableList<Object>> keys,
+                                   ImmutableSet<Clause> whereClauses,
+                                   Integer limit,
                                    Boolean allowFiltering,
                                    Integer fetchSize,
-                                   Boolean distinct) {
+                                   Boolean distinct,
+                                   Integer parallelism,
+                                   Boolean approximate,
+                                   CountProgressListener progressListener) {
             this.tablename = tablename;
+            this.keys = keys;
             this.whereClauses = whereClauses;
             this.limit = limit;
             this.allowFiltering = allowFiltering;
             this.fetchSize = fetchSize;
             this.distinct = distinct;
+            this.parallelism = parallelism;
+            this.approximate = approximate;
+            this.progressListener = progressListener;
         }
         
 
         
+        public CountReadQueryData keys(ImmutableMap<String, ImmutableList<Object>> keys) {
+            return new CountReadQueryData(this.tablename,
+                                          keys,
+                                          this.whereClauses,
+                                          this.limit,
+                                          this.allowFiltering,
+                                          this.fetchSize,
+                                          this.distinct,
+                                          this.parallelism,
+                                          this.approximate,
+                                          this.progressListener);  
+        }
+
+        
         public CountReadQueryData whereConditions(ImmutableSet<Clause> whereClauses) {
             return new CountReadQueryData(this.tablename,
+                                          this.keys,
                                           whereClauses,
                                           this.limit,
                                           this.allowFiltering,
                                           this.fetchSize,
-                                          this.distinct);  
+                                          this.distinct,
+                                          this.parallelism,
+                                          this.approximate,
+                                          this.progressListener);  
         }
 
-
         
         public CountReadQueryData limit(Integer limit) {
             return new CountReadQueryData(this.tablename,
+                                          this.keys,
                                           this.whereClauses,
                                           limit,
                                           this.allowFiltering,
                                           this.fetchSize,
-                                          this.distinct);  
+                                          this.distinct,
+                                          this.parallelism,
+                                          this.approximate,
+                                          this.progressListener);  
         }
 
         
         public CountReadQueryData allowFiltering(Boolean allowFiltering) {
             return new CountReadQueryData(this.tablename,
+                                          this.keys,
                                           this.whereClauses,
                                           this.limit,
                                           allowFiltering,
                                           this.fetchSize,
-                                          this.distinct);  
+                                          this.distinct,
+                                          this.parallelism,
+                                          this.approximate,
+                                          this.progressListener);  
         }
 
         
         public CountReadQueryData fetchSize(Integer fetchSize) {
             return new CountReadQueryData(this.tablename,
+                                          this.keys,
                                           this.whereClauses,
                                           this.limit,
                                           this.allowFiltering,
                                           fetchSize,
-                                          this.distinct);  
+                                          this.distinct,
+                                          this.parallelism,
+                                          this.approximate,
+                                          this.progressListener);  
         }
 
         
         public CountReadQueryData distinct(Boolean distinct) {
             return new CountReadQueryData(this.tablename,
+                                          this.keys,
+                                          this.whereClauses,
+                                          this.limit,
+                                          this.allowFiltering,
+                                          this.fetchSize,
+                                          distinct,
+                                          this.parallelism,
+                                          this.approximate,
+                                          this.progressListener);  
+        }
+
+        
+        public CountReadQueryData parallelism(Integer parallelism) {
+            return new CountReadQueryData(this.tablename,
+                                          this.keys,
+                                          this.whereClauses,
+                                          this.limit,
+                                          this.allowFiltering,
+                                          this.fetchSize,
+                                          this.distinct,
+                                          parallelism,
+                                          this.approximate,
+                                          this.progressListener);  
+        }
+
+        
+        public CountReadQueryData approximate(Boolean approximate) {
+            return new CountReadQueryData(this.tablename,
+                                          this.keys,
                                           this.whereClauses,
                                           this.limit,
                                           this.allowFiltering,
                                           this.fetchSize,
-                                          distinct);  
+                                          this.distinct,
+                                          this.parallelism,
+                                          approximate,
+                                          this.progressListener);  
+        }
+
+        
+        public CountReadQueryData progressListener(CountProgressListener progressListener) {
+            return new CountReadQueryData(this.tablename,
+                                          this.keys,
+                                          this.whereClauses,
+                                          this.limit,
+                                          this.allowFiltering,
+                                          this.fetchSize,
+                                          this.distinct,
+                                          this.parallelism,
+                                          this.approximate,
+                                          progressListener);  
         }
         
         public Tablename getTablename() {
             return tablename;
         }
-        
+
+        public ImmutableMap<String, ImmutableList<Object>> getKeys() {
+            return keys;
+        }
+
         public ImmutableSet<Clause> getWhereConditions() {
             return whereClauses;
         }
@@ -535,11 +933,25 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
         public Boolean getDistinct() {
             return distinct;
         }
+
+        public Integer getParallelism() {
+            return parallelism;
+        }
+
+        public Boolean getApproximate() {
+            return approximate;
+        }
+
+        public CountProgressListener getProgressListener() {
+            return progressListener;
+        }
     }
 
 
     
-    static class CountReadQuery extends AbstractQuery<CountReadQuery> implements ListRead<Count, Count> {
+    static class CountReadQuery extends AbstractQuery<CountReadQuery> implements CountRead {
+        
+        private static final BigInteger MURMUR3_RING_SIZE = BigInteger.ONE.shiftLeft(64);
         
         private final CountReadQueryData data;
     
@@ -578,10 +990,31 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
             return new CountReadQuery(getContext(),
                                       data.distinct(true));
         }
+        
+        @Override
+        public CountReadQuery withParallelism(int maxParallelism) {
+            if (maxParallelism <= 0) {
+                throw new IllegalArgumentException("max parallelism has to be greater than 0");
+            }
+            return new CountReadQuery(getContext(),
+                                      data.parallelism(maxParallelism));
+        }
+        
+        @Override
+        public CountReadQuery withProgressListener(CountProgressListener listener) {
+            return new CountReadQuery(getContext(),
+                                      data.progressListener(listener));
+        }
+        
+        @Override
+        public CountReadQuery withApproximation() {
+            return new CountReadQuery(getContext(),
+                                      data.approximate(true));
+        }
     
     
         
-        private Statement toStatement(CountReadQueryData queryData) {
+        private Select toStatement(CountReadQueryData queryData) {
             Select.Selection selection = select();
             
             if (queryData.getDistinct() != null) {
@@ -625,6 +1058,18 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
         
         @Override
         public ListenableFuture<Count> executeAsync() {
+            final Context deadlineCtx = Deadlines.start(getContext());
+            if (deadlineCtx != null) {
+                return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+            }
+            
+            if ((data.getApproximate() != null) && data.getApproximate()) {
+                return executeApproximateAsync();
+                
+            } else if (data.getParallelism() != null) {
+                return executeParallelAsync();
+            }
+            
             ListenableFuture<ResultSet> future = performAsync(getDefaultDbSession(), toStatement(data));
             
             Function<ResultSet, Count> mapEntity = new Function<ResultSet, Count>() {
@@ -637,6 +1082,183 @@ class ListReadQuery extends AbstractQuery<ListReadQuery> implements ListReadWith
             return Futures.transform(future, mapEntity, MoreExecutors.directExecutor());
         }
         
+        
+        private ListenableFuture<Count> executeParallelAsync() {
+            if (!data.getKeys().isEmpty() || !data.getWhereConditions().isEmpty()) {
+                return Futures.immediateFailedFuture(new IllegalStateException("keys and where conditions are not supported by parallel count"));
+            }
+            if (data.getLimit() != null) {
+                return Futures.immediateFailedFuture(new IllegalStateException("limit is not supported by parallel count"));
+            }
+            
+            final DBSession dbSession = getDefaultDbSession();
+            final ImmutableSet<String> partitionKeyNames = getCatalog().getPartitionKeyNames(data.getTablename());
+            final String token = QueryBuilder.token(partitionKeyNames.toArray(new String[partitionKeyNames.size()]));
+            
+            final ImmutableList.Builder<Statement> rangeStatements = ImmutableList.builder();
+            for (TokenRange range : splitTokenRanges(dbSession.getTokenRanges(), data.getParallelism())) {
+                final Select select = toStatement(data);
+                
+                // the ranges are unwrapped. A range which ends with the min token covers the end of the ring,
+                // a range which starts and ends with the same token (single token ring) covers the whole ring
+                if (range.getEnd().compareTo(range.getStart()) > 0) {
+                    select.where(QueryBuilder.gt(token, range.getStart().getValue()))
+                          .and(QueryBuilder.lte(token, range.getEnd().getValue()));
+                } else if (range.getEnd().compareTo(range.getStart()) < 0) {
+                    select.where(QueryBuilder.gt(token, range.getStart().getValue()));
+                }
+                rangeStatements.add(select);
+            }
+            
+            return new ParallelCount(dbSession, rangeStatements.build()).executeAsync(data.getParallelism());
+        }
+        
+        
+        private static ImmutableList<TokenRange> splitTokenRanges(ImmutableSet<TokenRange> tokenRanges, int maxParallelism) {
+            // split the ranges, if the ring is too coarse to utilize the parallelism   
+            final int numSplits = (tokenRanges.size() >= maxParallelism) ? 1 : (maxParallelism + tokenRanges.size() - 1) / tokenRanges.size();
+            
+            final ImmutableList.Builder<TokenRange> ranges = ImmutableList.builder();
+            for (TokenRange tokenRange : tokenRanges) {
+                for (TokenRange range : (numSplits > 1) ? tokenRange.splitEvenly(numSplits) : ImmutableList.of(tokenRange)) {
+                    ranges.addAll(range.unwrap());
+                }
+            }
+            return ranges.build();
+        }
+        
+        
+        
+        /**
+         * Counts the token ranges concurrently. A new range count is started each time a range count has been completed 
+         */
+        private final class ParallelCount {
+            private final DBSession dbSession;
+            private final ImmutableList<Statement> rangeStatements;
+            private final SettableFuture<Count> countFuture = SettableFuture.create();
+            private final AtomicInteger nextRange = new AtomicInteger();
+            private final AtomicInteger numCompletedRanges = new AtomicInteger();
+            private final AtomicLong partialCount = new AtomicLong();
+            private final Queue<ExecutionInfo> executionInfos = new ConcurrentLinkedQueue<>();
+            
+            ParallelCount(DBSession dbSession, ImmutableList<Statement> rangeStatements) {
+                this.dbSession = dbSession;
+                this.rangeStatements = rangeStatements;
+            }
+            
+            ListenableFuture<Count> executeAsync(int maxParallelism) {
+                if (rangeStatements.isEmpty()) {
+                    countFuture.set(Count.newCountResult(0, false, ImmutableList.<ExecutionInfo>of()));
+                }
+                
+                for (int i = 0; i < Math.min(maxParallelism, rangeStatements.size()); i++) {
+                    countNextRange();
+                }
+                
+                return countFuture;
+            }
+            
+            private void countNextRange() {
+                final int rangeIdx = nextRange.getAndIncrement();
+                if ((rangeIdx >= rangeStatements.size()) || countFuture.isDone()) {
+                    return;
+                }
+                
+                Futures.addCallback(performAsync(dbSession, rangeStatements.get(rangeIdx)), 
+                                    new FutureCallback<ResultSet>() {
+                                        
+                                        @Override
+                                        public void onSuccess(ResultSet rs) {
+                                            try {
+                                                final long count = partialCount.addAndGet(rs.one().getLong("count"));
+                                                executionInfos.addAll(rs.getAllExecutionInfo());
+                                                final int numCompleted = numCompletedRanges.incrementAndGet();
+                                                
+                                                if (data.getProgressListener() != null) {
+                                                    data.getProgressListener().onProgress(count, numCompleted, rangeStatements.size());
+                                                }
+                                                
+                                                if (numCompleted == rangeStatements.size()) {
+                                                    countFuture.set(Count.newCountResult(partialCount.get(), false, ImmutableList.copyOf(executionInfos)));
+                                                } else {
+                                                    countNextRange();
+                                                }
+                                                
+                                            } catch (RuntimeException rt) {
+                                                countFuture.setException(rt);
+                                            }
+                                        }
+                                        
+                                        @Override
+                                        public void onFailure(Throwable t) {
+                                            countFuture.setException(t);
+                                        }
+                                    },
+                                    MoreExecutors.directExecutor());
+            }
+        }
+        
+        
+        private ListenableFuture<Count> executeApproximateAsync() {
+            if (!data.getKeys().isEmpty() || !data.getWhereConditions().isEmpty()) {
+                return Futures.immediateFailedFuture(new IllegalStateException("keys and where conditions are not supported by approximate count"));
+            }
+            if (data.getLimit() != null) {
+                return Futures.immediateFailedFuture(new IllegalStateException("limit is not supported by approximate count"));
+            }
+            
+            final String keyspacename = (data.getTablename().getKeyspacename() == null) ? getDefaultDbSession().getKeyspacename() 
+                                                                                          : data.getTablename().getKeyspacename();
+            
+            final Statement statement = select("range_start", "range_end", "partitions_count").from("system", "size_estimates")
+                                                                                              .where(QueryBuilder.eq("keyspace_name", keyspacename))
+                                                                                              .and(QueryBuilder.eq("table_name", data.getTablename().getTablename()));
+            
+            Function<ResultSet, Count> mapEntity = new Function<ResultSet, Count>() {
+                @Override
+                public Count apply(ResultSet resultSet) {
+                    return estimate(resultSet);
+                }
+            };
+            
+            return Futures.transform(performAsync(getDefaultDbSession(), statement), mapEntity, MoreExecutors.directExecutor());
+        }
+        
+        
+        private static Count estimate(ResultSet rs) {
+            long numPartitions = 0;
+            BigInteger coveredRingSize = BigInteger.ZERO;
+            boolean isMurmur3Range = true;
+            
+            for (Row row : rs) {
+                numPartitions += row.getLong("partitions_count");
+                
+                try {
+                    BigInteger rangeSize = BigInteger.valueOf(Long.parseLong(row.getString("range_end")))
+                                                     .subtract(BigInteger.valueOf(Long.parseLong(row.getString("range_start"))));
+                    if (rangeSize.signum() <= 0) {
+                        rangeSize = rangeSize.add(MURMUR3_RING_SIZE);
+                    }
+                    coveredRingSize = coveredRingSize.add(rangeSize);
+                    
+                } catch (NumberFormatException nfe) {
+                    isMurmur3Range = false;
+                }
+            }
+            
+            // the estimates cover the (primary) ranges of the queried node only. The 
+            // estimation will be scaled to the whole ring, if the ranges are known  
+            if (isMurmur3Range && (coveredRingSize.signum() > 0)) {
+                numPartitions = BigInteger.valueOf(numPartitions)
+                                          .multiply(MURMUR3_RING_SIZE)
+                                          .divide(coveredRingSize)
+                                          .longValue();
+            }
+            
+            return Count.newCountResult(numPartitions, true, ImmutableList.copyOf(rs.getAllExecutionInfo()));
+        }
+        
+        
         @Override
         public Publisher<Count> executeRx() {
             ListenableFuture<Count> countFuture = executeAsync();
@@ -20,6 +20,7 @@ package net.oneandone.troilus;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.base.Function;
@@ -56,6 +57,7 @@ class ListenableFutures {
         
         public FlatFuture(ListenableFuture<ImmutableSet<ListenableFuture<T>>>futureSet, Executor executor) {
             this.executor = executor;
+            cancelOnCancellation(futureSet);
             futureSet.addListener(new FutureSetListner(futureSet), executor);
         }
         
@@ -95,6 +97,7 @@ class ListenableFutures {
                         } else {
                             for (ListenableFuture<T> future : futureSet.get()) {
                                 numPendingFutures++;
+                                cancelOnCancellation(future);
                                 future.addListener(new FutureListner(future), executor);
                             }
                         }
@@ -138,6 +141,7 @@ class ListenableFutures {
                 numPendingFutures = futureSet.size();
                 
                 for (ListenableFuture<ImmutableSet<T>> future : futureSet) {
+                    cancelOnCancellation(future);
                     future.addListener(new FutureListner(future), executor);
                 }
             }
@@ -188,6 +192,8 @@ class ListenableFutures {
         private ImmutableSet<T> futureSetResult = null;
         
         public JoiningFuture(ListenableFuture<ImmutableSet<T>> futureSet, ListenableFuture<T> future, Executor executor) {
+            cancelOnCancellation(future);
+            cancelOnCancellation(futureSet);
             future.addListener(new FutureListner(future), executor);
             futureSet.addListener(new FutureSetListner(futureSet), executor);
         }
@@ -270,13 +276,19 @@ class ListenableFutures {
         public MappingFuture(ListenableFuture<T> future, Function<T, ListenableFuture<E>> func, Executor executor) {
             this.future = future;
             this.func = func;
+            cancelOnCancellation(future);
             future.addListener(this, executor);
         }
         
         public void run() {
+            // do not start the next stage, if the caller has given up 
+            if (isCancelled()) {
+                return;
+            }
             
             try {
                 final ListenableFuture<E> iFuture = func.apply(future.get());
+                cancelOnCancellation(iFuture);
                 
                 Runnable resultForwarder = new Runnable() {
                     
@@ -331,8 +343,40 @@ class ListenableFutures {
     
     
     
+    /**
+     * Future base which passes a cancellation on to the futures it depends on. This avoids 
+     * requests in flight and result processing, if the caller has given up
+     */
     private static abstract class FutureImplBase<T> extends AbstractFuture<T> {
         private final AtomicBoolean isHandled = new AtomicBoolean();
+        private final Set<Future<?>> dependencies = Sets.newConcurrentHashSet();
+        
+        /**
+         * @param future  the future to cancel, if this future is cancelled  
+         */
+        protected void cancelOnCancellation(Future<?> future) {
+            if (!isDone()) {
+                dependencies.add(future);
+                if (!isDone()) {
+                    return;
+                }
+                dependencies.remove(future);
+            }
+            
+            if (isCancelled()) {
+                future.cancel(wasInterrupted());
+            }
+        }
+        
+        @Override
+        protected void afterDone() {
+            if (isCancelled()) {
+                for (Future<?> dependency : dependencies) {
+                    dependency.cancel(wasInterrupted());
+                }
+            }
+            dependencies.clear();
+        }
 
         @Override
         protected boolean set(T value) {
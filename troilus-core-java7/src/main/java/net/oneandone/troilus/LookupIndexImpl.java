@@ -0,0 +1,587 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.oneandone.troilus.java7.Batchable;
+import net.oneandone.troilus.java7.LookupIndex;
+import net.oneandone.troilus.java7.Record;
+import net.oneandone.troilus.java7.interceptor.DeleteQueryRequestInterceptor;
+import net.oneandone.troilus.java7.interceptor.WriteQueryData;
+import net.oneandone.troilus.java7.interceptor.WriteQueryResponseInterceptor;
+import net.oneandone.troilus.interceptor.DeleteQueryData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BatchStatement.Type;
+import com.google.common.base.Functions;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AsyncCallable;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/**
+ * Lookup index implementation. The index is registered as write response and delete request interceptor 
+ * of the source table. The interceptors derive the lookup row of a successfully applied key-based write 
+ * and queue it without waiting. Queued changes of the same lookup key are merged. A flush swaps out the 
+ * queued changes and writes them by using an unlogged batch per lookup partition. Flushes are 
+ * performed one after the other, so that the changes of a lookup key are written in order.<br>
+ * The previous value of a source row is unknown to the interceptors. For this reason the old lookup row 
+ * of a changed indexed value is removed by the reconciliation only. Batches, write processors and the 
+ * write-behind mode do not execute the write response interceptors and are rejected  
+ */
+class LookupIndexImpl implements LookupIndex, WriteQueryResponseInterceptor, DeleteQueryRequestInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(LookupIndexImpl.class);
+    
+    private static final int MAX_PARALLEL_VERIFICATIONS = 16;
+
+    private final Context ctx;
+    private final Context lookupCtx;
+    private final Tablename tablename;
+    private final Tablename lookupTablename;
+    private final ImmutableBiMap<String, String> columnMapping;
+    private final int maxPendingChanges;
+
+    private final AtomicBoolean isOpen = new AtomicBoolean(true);
+    private final ListeningScheduledExecutorService scheduler;
+    private final Thread shutdownHook;
+
+    private final Object pendingLock = new Object();
+    private Map<ImmutableMap<String, Object>, Change> pendingChanges = Maps.newHashMap();  // guarded by pendingLock
+
+    private final Object flushLock = new Object();
+    private ListenableFuture<Void> lastFlushFuture = Futures.immediateFuture(null);  // guarded by flushLock
+    private ListenableFuture<Void> runningReconciliation = null;                     // guarded by flushLock
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushAsync();
+        }
+    };
+
+    private final Runnable reconcileTask = new Runnable() {
+        @Override
+        public void run() {
+            reconcileAsync();
+        }
+    };
+
+
+    /**
+     * @param ctx                    the context of the source table
+     * @param tablename              the source tablename
+     * @param lookupTablename        the lookup tablename
+     * @param columnMapping          the source column names and the related lookup column names. The mapping has 
+     *                               to include the primary key columns of both tables 
+     * @param flushPeriodMillis      the flush period
+     * @param maxPendingChanges      the number of pending changes which triggers a flush
+     * @param reconcilePeriodMillis  the reconciliation period. 0 to deactivate periodic reconciliation
+     */
+    LookupIndexImpl(Context ctx, 
+                    Tablename tablename, 
+                    Tablename lookupTablename, 
+                    ImmutableMap<String, String> columnMapping, 
+                    long flushPeriodMillis, 
+                    int maxPendingChanges, 
+                    long reconcilePeriodMillis) {
+        if (flushPeriodMillis <= 0) {
+            throw new IllegalArgumentException("flush period has to be greater than 0");
+        }
+        if (maxPendingChanges <= 0) {
+            throw new IllegalArgumentException("max pending changes has to be greater than 0");
+        }
+        if (reconcilePeriodMillis < 0) {
+            throw new IllegalArgumentException("reconcile period has to be 0 or greater than 0");
+        }
+
+        this.ctx = ctx;
+        this.lookupCtx = ctx.withoutInterceptors();  // lookup writes must not be intercepted by the interceptors of the source table 
+        this.tablename = tablename;
+        this.lookupTablename = lookupTablename;
+        this.columnMapping = ImmutableBiMap.copyOf(columnMapping);
+        this.maxPendingChanges = maxPendingChanges;
+        
+        for (String keyName : getPrimaryKeyNames(tablename)) {
+            if (!this.columnMapping.containsKey(keyName)) {
+                throw new IllegalArgumentException("primary key column " + keyName + " of " + tablename + " is not mapped");
+            }
+        }
+        for (String keyName : getPrimaryKeyNames(lookupTablename)) {
+            if (!this.columnMapping.containsValue(keyName)) {
+                throw new IllegalArgumentException("primary key column " + keyName + " of " + lookupTablename + " is not mapped");
+            }
+        }
+
+        // one thread for the flushes and one for the (blocking) reconciliation scan 
+        this.scheduler = MoreExecutors.listeningDecorator(Executors.newScheduledThreadPool(2, new ThreadFactoryBuilder().setDaemon(true)
+                                                                                                                      .setNameFormat("troilus-lookup-" + lookupTablename + "-%d")
+                                                                                                                      .build()));
+        scheduler.scheduleWithFixedDelay(flushTask, flushPeriodMillis, flushPeriodMillis, TimeUnit.MILLISECONDS);
+        if (reconcilePeriodMillis > 0) {
+            scheduler.scheduleWithFixedDelay(reconcileTask, reconcilePeriodMillis, reconcilePeriodMillis, TimeUnit.MILLISECONDS);
+        }
+
+        // flush remaining changes on shutdown
+        this.shutdownHook = new Thread() {
+            @Override
+            public void run() {
+                close();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    
+    Tablename getTablename() {
+        return tablename;
+    }
+    
+    
+    /**
+     * @param ctx  the context 
+     * @return true, if a lookup index is registered by the context
+     */
+    static boolean isActivated(Context ctx) {
+        return !ctx.getInterceptorRegistry().getInterceptors(LookupIndexImpl.class).isEmpty();
+    }
+    
+    
+    private ImmutableSet<String> getPrimaryKeyNames(Tablename tablename) {
+        return ImmutableSet.<String>builder().addAll(ctx.getCatalog().getPartitionKeyNames(tablename))
+                                             .addAll(ctx.getCatalog().getTableSchema(tablename).getClusteringKeyNames())
+                                             .build();
+    }
+
+    
+    @Override
+    public ListenableFuture<Result> onWriteResponseAsync(WriteQueryData data, Result result) {
+        // failed or not applied writes must not be indexed 
+        if (isOpen.get() && result.wasApplied() && data.getWhereConditions().isEmpty()) {
+            final Map<String, Optional<Object>> sourceValues = Maps.newHashMap(data.getValuesToMutate());
+            for (Entry<String, Object> entry : data.getKeys().entrySet()) {
+                sourceValues.put(entry.getKey(), Optional.fromNullable(entry.getValue()));
+            }
+            
+            // writes without the indexed values (e.g. where condition based writes) will be repaired by the reconciliation  
+            final Change change = toPut(sourceValues);
+            if (change != null) {
+                enqueue(change);
+            }
+        }
+        
+        return Futures.immediateFuture(result);
+    }
+    
+    
+    @Override
+    public ListenableFuture<DeleteQueryData> onDeleteRequestAsync(DeleteQueryData data) {
+        // the lookup row of the deleted source row is unknown. It will be removed by the reconciliation.
+        // However, queued puts of the deleted source row must not be written 
+        if (data.getWhereConditions().isEmpty() && !data.getKey().isEmpty()) {
+            synchronized (pendingLock) {
+                for (Change change : ImmutableList.copyOf(pendingChanges.values())) {
+                    if (change.isPut() && change.getSourceKey().equals(data.getKey())) {
+                        pendingChanges.remove(change.getLookupKey());
+                    }
+                }
+            }
+        }
+        
+        return Futures.immediateFuture(data);
+    }
+    
+    
+    /**
+     * @param sourceValues  the values of the source row
+     * @return the put of the lookup row or null, if the values do not contain the indexed values and the source key
+     */
+    private Change toPut(Map<String, Optional<Object>> sourceValues) {
+        final Map<String, Object> sourceKey = Maps.newHashMap();
+        for (String keyName : getPrimaryKeyNames(tablename)) {
+            final Optional<Object> value = sourceValues.get(keyName);
+            if ((value == null) || !value.isPresent()) {
+                return null;
+            }
+            sourceKey.put(keyName, value.get());
+        }
+        
+        final ImmutableSet<String> lookupKeyNames = getPrimaryKeyNames(lookupTablename);
+        final Map<String, Object> lookupKey = Maps.newHashMap();
+        final Map<String, Optional<Object>> lookupValues = Maps.newHashMap();
+        for (Entry<String, String> entry : columnMapping.entrySet()) {
+            final Optional<Object> value = sourceValues.get(entry.getKey());
+            if (lookupKeyNames.contains(entry.getValue())) {
+                if ((value == null) || !value.isPresent()) {
+                    return null;
+                }
+                lookupKey.put(entry.getValue(), value.get());
+                
+            } else if (value != null) {
+                lookupValues.put(entry.getValue(), value);
+            }
+        }
+        
+        return new Change(ImmutableMap.copyOf(lookupKey), ImmutableMap.copyOf(sourceKey), ImmutableMap.copyOf(lookupValues));
+    }
+    
+    
+    private void enqueue(Change change) {
+        final int numPendingChanges;
+        synchronized (pendingLock) {
+            final Change pendingChange = pendingChanges.get(change.getLookupKey());
+            pendingChanges.put(change.getLookupKey(), (pendingChange == null) ? change : pendingChange.merge(change));
+            numPendingChanges = pendingChanges.size();
+        }
+        
+        // threshold reached? (the == ensures that the flush is triggered once)
+        if (numPendingChanges == maxPendingChanges) {
+            try {
+                scheduler.execute(flushTask);
+            } catch (RejectedExecutionException ree) {
+                LOG.debug("scheduler is shut down. Changes will be written by the final flush");
+            }
+        }
+    }
+    
+    
+    private ImmutableList<Change> takePendingChanges() {
+        synchronized (pendingLock) {
+            final ImmutableList<Change> changes = ImmutableList.copyOf(pendingChanges.values());
+            pendingChanges = Maps.newHashMap();
+            return changes;
+        }
+    }
+    
+    
+    private void readd(List<Change> changes) {
+        synchronized (pendingLock) {
+            for (Change change : changes) {
+                // a newer change of the lookup key replaces the failed one
+                if (!pendingChanges.containsKey(change.getLookupKey())) {
+                    pendingChanges.put(change.getLookupKey(), change);
+                }
+            }
+        }
+    }
+    
+
+    @Override
+    public ListenableFuture<Void> flushAsync() {
+        final AsyncCallable<Void> flush = new AsyncCallable<Void>() {
+            @Override
+            public ListenableFuture<Void> call() {
+                return writeAsync(takePendingChanges());
+            }
+        };
+        
+        synchronized (flushLock) {
+            // the flush is performed after the previous flush has been completed 
+            lastFlushFuture = Futures.whenAllComplete(lastFlushFuture).callAsync(flush, MoreExecutors.directExecutor());
+            return Futures.nonCancellationPropagating(lastFlushFuture);
+        }
+    }
+    
+    
+    private ListenableFuture<Void> writeAsync(ImmutableList<Change> changes) {
+        if (changes.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+
+        try {
+            // group the changes by lookup partition
+            final ImmutableSet<String> partitionKeyNames = ctx.getCatalog().getPartitionKeyNames(lookupTablename);
+            final ListMultimap<ImmutableMap<String, Object>, Change> partitions = LinkedListMultimap.create();
+            for (Change change : changes) {
+                partitions.put(ImmutableMap.copyOf(Maps.filterKeys(change.getLookupKey(), Predicates.in(partitionKeyNames))), change);
+            }
+            
+            final List<ListenableFuture<Result>> futures = Lists.newArrayList();
+            for (ImmutableMap<String, Object> partitionKey : partitions.keySet()) {
+                futures.add(writePartitionAsync(ImmutableList.copyOf(partitions.get(partitionKey))));
+            }
+    
+            return Futures.transform(Futures.allAsList(futures), Functions.<Void>constant(null), MoreExecutors.directExecutor());
+            
+        } catch (RuntimeException rt) {
+            readd(changes);
+            return Futures.immediateFailedFuture(rt);
+        }
+    }
+    
+    
+    private ListenableFuture<Result> writePartitionAsync(final ImmutableList<Change> partitionChanges) {
+        final List<Batchable<?>> mutations = Lists.newArrayList();
+        for (Change change : partitionChanges) {
+            if (change.isPut()) {
+                mutations.add(new UpdateQuery(lookupCtx, new WriteQueryDataImpl(lookupTablename).keys(change.getLookupKey())
+                                                                                                  .valuesToMutate(change.getValues())));
+            } else {
+                mutations.add(new DeleteQuery(lookupCtx, new DeleteQueryDataImpl(lookupTablename).key(change.getLookupKey())));
+            }
+        }
+        
+        final ListenableFuture<Result> future = new BatchMutationQuery(lookupCtx, Type.UNLOGGED, ImmutableList.copyOf(mutations)).executeAsync();
+        Futures.addCallback(future, new FutureCallback<Result>() {
+
+                                        @Override
+                                        public void onSuccess(Result result) {
+                                        }
+
+                                        @Override
+                                        public void onFailure(Throwable error) {
+                                            // the lookup changes are idempotent and can be written again
+                                            LOG.debug("writing lookup changes of " + lookupTablename + " failed. Changes will be written by the next flush", error);
+                                            readd(partitionChanges);
+                                        }
+                                    },
+                            MoreExecutors.directExecutor());
+        
+        return future;
+    }
+
+    
+    @Override
+    public ListenableFuture<Void> reconcileAsync() {
+        synchronized (flushLock) {
+            if (runningReconciliation == null) {
+                final AsyncCallable<Void> reconciliation = new AsyncCallable<Void>() {
+                    @Override
+                    public ListenableFuture<Void> call() {
+                        removeDanglingLookupRows();
+                        putLookupRows();
+                        return flushAsync();
+                    }
+                };
+                
+                final ListenableFuture<Void> future = Futures.submitAsync(reconciliation, scheduler);
+                runningReconciliation = future;
+                future.addListener(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            synchronized (flushLock) {
+                                                runningReconciliation = null;
+                                            }
+                                        }
+                                   }, 
+                                   MoreExecutors.directExecutor());
+            }
+            
+            return Futures.nonCancellationPropagating(runningReconciliation);
+        }
+    }
+    
+    
+    /**
+     * scans the lookup table and queues the deletion of lookup rows, which do not match with 
+     * the source row. The deletions are performed first. Lookup rows which are deleted by mistake 
+     * because of a concurrent source write will be written again by the subsequent source scan 
+     */
+    private void removeDanglingLookupRows() {
+        final ImmutableSet<String> lookupKeyNames = getPrimaryKeyNames(lookupTablename);
+        final Semaphore verifications = new Semaphore(MAX_PARALLEL_VERIFICATIONS);
+        
+        for (final Record lookupRecord : new ListReadQuery(lookupCtx, new ReadQueryDataImpl(lookupTablename).columnsToFetch(ImmutableMap.<String, Boolean>of())).execute()) {
+            final Map<String, ImmutableList<Object>> sourceKey = Maps.newHashMap();
+            for (String keyName : getPrimaryKeyNames(tablename)) {
+                final Object value = lookupRecord.getValue(columnMapping.get(keyName), Object.class);
+                if (value == null) {
+                    break;
+                }
+                sourceKey.put(keyName, ImmutableList.of(value));
+            }
+            
+            // a lookup row without complete source key does not refer to a source row 
+            if (sourceKey.size() < getPrimaryKeyNames(tablename).size()) {
+                final Map<String, Object> lookupKey = Maps.newHashMap();
+                for (String lookupKeyName : lookupKeyNames) {
+                    lookupKey.put(lookupKeyName, lookupRecord.getValue(lookupKeyName, Object.class));
+                }
+                enqueueDeletion(ImmutableMap.copyOf(lookupKey));
+                continue;
+            }
+            
+            verifications.acquireUninterruptibly();
+            final ListenableFuture<Record> sourceRecordFuture = new SingleReadQuery(ctx, new ReadQueryDataImpl(tablename).keys(ImmutableMap.copyOf(sourceKey))).executeAsync();
+            Futures.addCallback(sourceRecordFuture, new FutureCallback<Record>() {
+
+                                                        @Override
+                                                        public void onSuccess(Record sourceRecord) {
+                                                            verifications.release();
+                                                            
+                                                            final Map<String, Object> lookupKey = Maps.newHashMap();
+                                                            boolean isDangling = (sourceRecord == null);
+                                                            for (String lookupKeyName : lookupKeyNames) {
+                                                                final Object value = lookupRecord.getValue(lookupKeyName, Object.class);
+                                                                lookupKey.put(lookupKeyName, value);
+                                                                if (!isDangling) {
+                                                                    isDangling = !Objects.equal(value, sourceRecord.getValue(columnMapping.inverse().get(lookupKeyName), Object.class));
+                                                                }
+                                                            }
+                                                            
+                                                            if (isDangling) {
+                                                                enqueueDeletion(ImmutableMap.copyOf(lookupKey));
+                                                            }
+                                                        }
+
+                                                        @Override
+                                                        public void onFailure(Throwable error) {
+                                                            verifications.release();
+                                                            LOG.debug("verifying lookup row " + lookupRecord + " of " + lookupTablename + " failed", error);
+                                                        }
+                                                    },
+                                MoreExecutors.directExecutor());
+        }
+        
+        verifications.acquireUninterruptibly(MAX_PARALLEL_VERIFICATIONS);  // wait for the pending verifications
+        verifications.release(MAX_PARALLEL_VERIFICATIONS);
+        
+        ListenableFutures.getUninterruptibly(flushAsync());
+    }
+    
+    
+    private void enqueueDeletion(ImmutableMap<String, Object> lookupKey) {
+        synchronized (pendingLock) {
+            // a queued put is newer than the verified source row
+            if (!pendingChanges.containsKey(lookupKey)) {
+                pendingChanges.put(lookupKey, new Change(lookupKey, null, null));
+            }
+        }
+    }
+    
+    
+    /**
+     * scans the source table and queues the lookup rows of each source row
+     */
+    private void putLookupRows() {
+        for (Record sourceRecord : new ListReadQuery(ctx, new ReadQueryDataImpl(tablename).columnsToFetch(ImmutableMap.<String, Boolean>of())).execute()) {
+            final Map<String, Optional<Object>> sourceValues = Maps.newHashMap();
+            for (String sourceName : columnMapping.keySet()) {
+                sourceValues.put(sourceName, Optional.fromNullable(sourceRecord.getValue(sourceName, Object.class)));
+            }
+            
+            final Change change = toPut(sourceValues);
+            if (change != null) {
+                enqueue(change);
+            }
+        }
+    }
+
+
+    @Override
+    public void close() {
+        if (isOpen.getAndSet(false)) {
+            scheduler.shutdown();
+
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ise) {
+                // close is called by the shutdown hook
+            }
+
+            ListenableFutures.getUninterruptibly(flushAsync());
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("tablename", tablename)
+                          .add("lookupTablename", lookupTablename)
+                          .add("columnMapping", columnMapping)
+                          .toString();
+    }
+
+
+
+    /**
+     * Queued change of a lookup row. A change without values is a deletion 
+     */
+    private static final class Change {
+        private final ImmutableMap<String, Object> lookupKey;
+        private final ImmutableMap<String, Object> sourceKey;
+        private final ImmutableMap<String, Optional<Object>> values;
+
+        Change(ImmutableMap<String, Object> lookupKey, ImmutableMap<String, Object> sourceKey, ImmutableMap<String, Optional<Object>> values) {
+            this.lookupKey = lookupKey;
+            this.sourceKey = sourceKey;
+            this.values = values;
+        }
+
+        ImmutableMap<String, Object> getLookupKey() {
+            return lookupKey;
+        }
+
+        ImmutableMap<String, Object> getSourceKey() {
+            return sourceKey;
+        }
+        
+        ImmutableMap<String, Optional<Object>> getValues() {
+            return values;
+        }
+        
+        boolean isPut() {
+            return values != null;
+        }
+        
+        /**
+         * @param newChange  the newer change of the same lookup key
+         * @return the merged change
+         */
+        Change merge(Change newChange) {
+            // the values of another source row must not be merged
+            if (!this.isPut() || !newChange.isPut() || !this.sourceKey.equals(newChange.sourceKey)) {
+                return newChange;
+            }
+            
+            final Map<String, Optional<Object>> mergedValues = Maps.newHashMap(this.values);
+            mergedValues.putAll(newChange.values);
+            return new Change(lookupKey, sourceKey, ImmutableMap.copyOf(mergedValues));
+        }
+
+        @Override
+        public String toString() {
+            return isPut() ? ("put " + lookupKey + " " + values) : ("delete " + lookupKey);
+        }
+    }
+}
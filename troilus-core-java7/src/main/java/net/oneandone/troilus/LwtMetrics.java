@@ -0,0 +1,45 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+
+/**
+ * Lightweight transaction metrics of a table. The metrics are collected
+ * by the queries which are executed with activated lwt serialization 
+ */
+public interface LwtMetrics {
+
+    /**
+     * @return the number of performed Paxos rounds including the retries
+     */
+    long getNumExecuted();
+    
+    /**
+     * @return the number of Paxos rounds which failed by contention
+     */
+    long getNumContended();
+    
+    /**
+     * @return the ratio of contended Paxos rounds 
+     */
+    double getContentionRate();
+    
+    /**
+     * @return the number of queued and running lightweight transactions
+     */
+    int getQueueDepth();
+}
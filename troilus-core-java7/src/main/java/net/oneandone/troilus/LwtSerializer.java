@@ -0,0 +1,250 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/**
+ * Serializes the lightweight transactions of a table per partition key within the JVM. 
+ * Concurrent Paxos rounds on the same partition contend with each other. For this 
+ * reason a lightweight transaction will be started not before the previous one of 
+ * the same partition key is completed. Contended Paxos rounds are retried by using 
+ * a jittered exponential backoff. The partition slot is held while backing off.<br>
+ * Cancelling the returned future does not free the partition slot. The slot is freed 
+ * as soon as the running Paxos round is completed. A cancelled lightweight transaction 
+ * is not started or retried anymore  
+ */
+final class LwtSerializer implements LwtMetrics {
+    private static final Logger LOG = LoggerFactory.getLogger(LwtSerializer.class);
+    
+    private static final long BASE_BACKOFF_MILLIS = 5;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private static final ConcurrentMap<Tablename, LwtSerializer> SERIALIZERS = Maps.newConcurrentMap();
+    private static final ScheduledExecutorService BACKOFF_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                                                                          .setNameFormat("troilus-lwt-backoff-%d")
+                                                                                                                                          .build());
+    
+    private final Tablename tablename;
+    private final Map<ImmutableMap<String, Object>, ListenableFuture<Result>> tails = Maps.newHashMap();  // guarded by tails
+    private final AtomicLong numExecuted = new AtomicLong();
+    private final AtomicLong numContended = new AtomicLong();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    
+    
+    private LwtSerializer(Tablename tablename) {
+        this.tablename = tablename;
+    }
+    
+    
+    /**
+     * @param tablename the tablename
+     * @return the (JVM-wide) serializer of the table
+     */
+    static LwtSerializer get(Tablename tablename) {
+        LwtSerializer serializer = SERIALIZERS.get(tablename);
+        if (serializer == null) {
+            LwtSerializer newSerializer = new LwtSerializer(tablename);
+            serializer = SERIALIZERS.putIfAbsent(tablename, newSerializer);
+            if (serializer == null) {
+                serializer = newSerializer;
+            }
+        }
+        return serializer;
+    }
+    
+    
+    /**
+     * @param partitionKey  the partition key 
+     * @param lwt           the supplier which performs the lightweight transaction 
+     * @param maxRetries    the max number of retries of contended Paxos rounds
+     * @return the result future. Cancelling it does not propagate to the running Paxos round
+     */
+    ListenableFuture<Result> executeAsync(final ImmutableMap<String, Object> partitionKey, 
+                                          final Supplier<ListenableFuture<Result>> lwt,
+                                          final int maxRetries) {
+        // the slot future is completed by the last execution only. It must not be cancelled by the caller  
+        final SettableFuture<Result> resultFuture = SettableFuture.create();
+        final ListenableFuture<Result> callerFuture = Futures.nonCancellationPropagating(resultFuture);
+        
+        final ListenableFuture<Result> previousFuture;
+        synchronized (tails) {
+            previousFuture = tails.get(partitionKey);
+            tails.put(partitionKey, resultFuture);
+        }
+        queueDepth.incrementAndGet();
+        
+        // release the partition slot
+        resultFuture.addListener(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        queueDepth.decrementAndGet();
+                                        synchronized (tails) {
+                                            if (tails.get(partitionKey) == resultFuture) {
+                                                tails.remove(partitionKey);
+                                            }
+                                        }
+                                    }
+                                 }, MoreExecutors.directExecutor());
+
+        
+        Runnable startTask = new Runnable() {
+            @Override
+            public void run() {
+                performAsync(lwt, maxRetries, 0, resultFuture, callerFuture);
+            }
+        };
+        
+        if (previousFuture == null) {
+            startTask.run();
+        } else {
+            // the result of the previous lwt is not relevant 
+            previousFuture.addListener(startTask, MoreExecutors.directExecutor());
+        }
+        
+        return callerFuture;
+    }
+    
+    
+    private void performAsync(final Supplier<ListenableFuture<Result>> lwt, 
+                              final int maxRetries, 
+                              final int attempt, 
+                              final SettableFuture<Result> resultFuture,
+                              final ListenableFuture<Result> callerFuture) {
+        // cancelled by the caller? -> the lwt will not be started (again) 
+        if (callerFuture.isCancelled()) {
+            resultFuture.setException(new CancellationException("lwt on " + tablename + " has been cancelled"));
+            return;
+        }
+        
+        numExecuted.incrementAndGet();
+        
+        ListenableFuture<Result> future;
+        try {
+            future = lwt.get();
+        } catch (RuntimeException rt) {
+            future = Futures.immediateFailedFuture(rt);
+        }
+        
+        Futures.addCallback(future, new FutureCallback<Result>() {
+            
+                                        @Override
+                                        public void onSuccess(Result result) {
+                                            resultFuture.set(result);
+                                        }
+                                        
+                                        @Override
+                                        public void onFailure(Throwable error) {
+                                            if (!isContended(error)) {
+                                                resultFuture.setException(error);
+                                                return;
+                                            }
+                                            
+                                            numContended.incrementAndGet();
+                                            if (attempt >= maxRetries) {
+                                                resultFuture.setException(error);
+                                                return;
+                                            }
+
+                                            long delayMillis = computeBackoffMillis(attempt);
+                                            LOG.debug("lwt on " + tablename + " is contended. Retrying in " + delayMillis + " millis");
+                                            BACKOFF_SCHEDULER.schedule(new Runnable() {
+                                                                            @Override
+                                                                            public void run() {
+                                                                                performAsync(lwt, maxRetries, attempt + 1, resultFuture, callerFuture);
+                                                                            }
+                                                                       }, delayMillis, TimeUnit.MILLISECONDS);
+                                        }
+                                    },
+                            MoreExecutors.directExecutor());
+    }
+    
+    
+    private static long computeBackoffMillis(int attempt) {
+        long maxDelay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 20));
+        return maxDelay / 2 + ThreadLocalRandom.current().nextLong(maxDelay / 2 + 1);  
+    }
+    
+    
+    private static boolean isContended(Throwable error) {
+        for (Throwable cause : Throwables.getCausalChain(error)) {
+            if ((cause instanceof WriteTimeoutException) && (((WriteTimeoutException) cause).getWriteType() == WriteType.CAS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
+    @Override
+    public long getNumExecuted() {
+        return numExecuted.get();
+    }
+    
+    @Override
+    public long getNumContended() {
+        return numContended.get();
+    }
+    
+    @Override
+    public double getContentionRate() {
+        long executed = numExecuted.get();
+        return (executed == 0) ? 0 : ((double) numContended.get()) / executed;
+    }
+    
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+    
+    
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("tablename", tablename)
+                          .add("numExecuted", getNumExecuted())
+                          .add("numContended", getNumContended())
+                          .add("queueDepth", getQueueDepth())
+                          .toString();
+    }
+}
@@ -16,30 +16,52 @@
 package net.oneandone.troilus;
 
 
+import java.lang.ref.WeakReference;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ClusteringOrder;
 import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.SchemaChangeListenerBase;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.TableMetadata;
 import com.datastax.driver.core.UserType;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 
 
 
 /**
- * MetadataCatalog including database metadata 
+ * MetadataCatalog including database metadata. The table metadata is held as immutable 
+ * table schema snapshots, which will be replaced if the database reports a schema change
  * 
  */
 class MetadataCatalog  {
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataCatalog.class);
 
-    private final TableMetadataCache tableMetadataCache;
+    private final Session session;
+    private static final ConcurrentMap<Cluster, SchemaChangeHandler> SCHEMA_CHANGE_HANDLERS = new MapMaker().weakKeys().makeMap();
+    
+    private final ConcurrentMap<Tablename, TableSchema> tableSchemas = Maps.newConcurrentMap();
+    private final AtomicLong schemaChangeCounter = new AtomicLong();
     private final UserTypeCache userTypeCache;
 
     /**
@@ -47,8 +69,47 @@ class MetadataCatalog  {
      * @param session  the underlying session
      */
     MetadataCatalog(Session session) {
-        this.tableMetadataCache = new TableMetadataCache(session);
+        this.session = session;
         this.userTypeCache = new UserTypeCache(session);
+        getSchemaChangeHandler(session.getCluster()).register(this);
+    }
+    
+    private static SchemaChangeHandler getSchemaChangeHandler(Cluster cluster) {
+        SchemaChangeHandler handler = SCHEMA_CHANGE_HANDLERS.get(cluster);
+        if (handler == null) {
+            SchemaChangeHandler newHandler = new SchemaChangeHandler();
+            handler = SCHEMA_CHANGE_HANDLERS.putIfAbsent(cluster, newHandler);
+            if (handler == null) {
+                handler = newHandler;
+                cluster.register(handler);
+            }
+        }
+        return handler;
+    }
+    
+    /**
+     * @param tablename the tablename
+     * @return the current schema snapshot of the table
+     */
+    TableSchema getTableSchema(Tablename tablename) {
+        TableSchema schema = tableSchemas.get(tablename);
+        if (schema == null) {
+            final long numSchemaChanges = schemaChangeCounter.get();
+            final TableSchema newSchema = TableSchema.newTableSchema(tablename, loadTableMetadata(session, tablename));
+            
+            schema = tableSchemas.putIfAbsent(tablename, newSchema);
+            if (schema == null) {
+                schema = newSchema;
+                
+                // a schema change which has raced with the load may not be contained in the loaded snapshot. 
+                // The snapshot will not be cached in this case (the schema handlers increment the counter first) 
+                if (schemaChangeCounter.get() != numSchemaChanges) {
+                    tableSchemas.remove(tablename, newSchema);
+                }
+            }
+        }
+        
+        return schema;
     }
     
     /**
@@ -56,7 +117,7 @@ class MetadataCatalog  {
      * @return the columnnames of this table
      */
     public ImmutableSet<String> getColumnNames(Tablename tablename) {
-        return tableMetadataCache.getColumnNames(tablename);
+        return getTableSchema(tablename).getColumnNames();
     }
     
     /**
@@ -65,7 +126,7 @@ class MetadataCatalog  {
      * @return the column metadata
      */
     public ColumnMetadata getColumnMetadata(Tablename tablename, String columnName) {
-        return tableMetadataCache.getColumnMetadata(tablename, columnName); 
+        return getTableSchema(tablename).getColumnMetadata(columnName); 
     }
     
     /**
@@ -77,6 +138,14 @@ class MetadataCatalog  {
         return userTypeCache.get(tablename, usertypeName);
     }
     
+    /**
+     * @param tablename the tablename
+     * @return the names of the partition key columns
+     */
+    public ImmutableSet<String> getPartitionKeyNames(Tablename tablename) {
+        return getTableSchema(tablename).getPartitionKeyNames();
+    }
+    
     /**
      * Whether or not this column is part of the primary key
      * @param tablename
@@ -84,98 +153,277 @@ class MetadataCatalog  {
      * @return true if pk, false otherwise
      */
     public boolean isPrimaryKey(Tablename tablename, String columnName) {
-    	final List<ColumnMetadata> primaryKeys = tableMetadataCache.getMetadata(tablename).tableMetadata.getPrimaryKey();
-    	final ColumnMetadata columnMetadata = getColumnMetadata(tablename, columnName);
-    	return primaryKeys.contains(columnMetadata);
+        return getTableSchema(tablename).isPrimaryKey(columnName);
     }
     
-
-    private static final class TableMetadataCache {
-        private final Session session;
-        private final Cache<Tablename, Metadata> tableMetadataCache;
+    
+    private static TableMetadata loadTableMetadata(Session session, Tablename tablename) {
         
+        final String keyspacename = tablename.getKeyspacename();
         
+        if (keyspacename == null) {
+            throw new IllegalStateException("no keyspacename assigned for " + tablename);
         
-        public TableMetadataCache(Session session) {
-            this.session = session;
-            this.tableMetadataCache = CacheBuilder.newBuilder().maximumSize(150).<Tablename, Metadata>build();
+        } else {
+            final TableMetadata tableMetadata = session.getCluster().getMetadata().getKeyspace(tablename.getKeyspacename()).getTable(tablename.getTablename());
+            if (tableMetadata == null) {
+                throw new RuntimeException("table " + tablename + " is not defined");
+            }
+
+            return tableMetadata;
         }
+    }
+    
+    
+    private void onTableChanged(TableMetadata tableMetadata) {
+        schemaChangeCounter.incrementAndGet();
+        for (TableSchema schema : tableSchemas.values()) {
+            if (schema.isSchemaOf(tableMetadata)) {
+                LOG.debug("schema of " + schema.getTablename() + " has been changed");
+                tableSchemas.replace(schema.getTablename(), schema, TableSchema.newTableSchema(schema.getTablename(), tableMetadata));
+            }
+        }
+    }
+    
+    private void onTableRemoved(TableMetadata tableMetadata) {
+        schemaChangeCounter.incrementAndGet();
+        for (TableSchema schema : tableSchemas.values()) {
+            if (schema.isSchemaOf(tableMetadata)) {
+                tableSchemas.remove(schema.getTablename(), schema);
+            }
+        }
+    }
+
+    private void onKeyspaceChanged(String keyspacename) {
+        schemaChangeCounter.incrementAndGet();
+        userTypeCache.invalidateAll();
         
-        ImmutableSet<String> getColumnNames(Tablename tablename) {
-            return getMetadata(tablename).getColumnNames();
+        // the table schemas will be reloaded by the next access 
+        for (TableSchema schema : tableSchemas.values()) {
+            if (schema.getTableMetadata().getKeyspace().getName().equals(keyspacename)) {
+                tableSchemas.remove(schema.getTablename(), schema);
+            }
         }
+    }
+    
+    
+    
+    /**
+     * Schema change listener of a cluster, which notifies the catalogs of the cluster. Only one 
+     * listener is registered per cluster. The listener refers the catalogs weakly to avoid that 
+     * the cluster keeps them alive. Garbage collected catalogs are removed when a catalog is 
+     * registered or a schema change is reported
+     */
+    private static final class SchemaChangeHandler extends SchemaChangeListenerBase {
+        private final List<WeakReference<MetadataCatalog>> catalogRefs = new CopyOnWriteArrayList<>();
         
-        ColumnMetadata getColumnMetadata(Tablename tablename, String columnName) {
-            return getMetadata(tablename).getColumnMetadata(columnName);
+        void register(MetadataCatalog catalog) {
+            getCatalogs();  // removes the garbage collected catalogs 
+            catalogRefs.add(new WeakReference<>(catalog));
         }
         
-        private Metadata getMetadata(Tablename tablename) {
-            Metadata metadata = tableMetadataCache.getIfPresent(tablename);
-            if (metadata == null) {
-                metadata = loadMetadata(tablename);
-                tableMetadataCache.put(tablename, metadata);
+        @Override
+        public void onTableChanged(TableMetadata current, TableMetadata previous) {
+            for (MetadataCatalog catalog : getCatalogs()) {
+                catalog.onTableChanged(current);
             }
-            
-            return metadata;
         }
         
+        @Override
+        public void onTableRemoved(TableMetadata table) {
+            for (MetadataCatalog catalog : getCatalogs()) {
+                catalog.onTableRemoved(table);
+            }
+        }
         
-        private Metadata loadMetadata(Tablename tablename) {
-            final TableMetadata tableMetadata = loadTableMetadata(session, tablename);
-            final ImmutableSet<String> columnNames = loadColumnNames(tableMetadata);
-            return new Metadata(tablename, tableMetadata, columnNames);
+        @Override
+        public void onUserTypeChanged(UserType current, UserType previous) {
+            for (MetadataCatalog catalog : getCatalogs()) {
+                catalog.onKeyspaceChanged(current.getKeyspace());
+            }
         }
         
+        @Override
+        public void onUserTypeRemoved(UserType type) {
+            for (MetadataCatalog catalog : getCatalogs()) {
+                catalog.onKeyspaceChanged(type.getKeyspace());
+            }
+        }
         
-        private static TableMetadata loadTableMetadata(Session session, Tablename tablename) {
-            
-            final String keyspacename = tablename.getKeyspacename();
-            
-            if (keyspacename == null) {
-                throw new IllegalStateException("no keyspacename assigned for " + tablename);
-            
-            } else {
-                final TableMetadata tableMetadata = session.getCluster().getMetadata().getKeyspace(tablename.getKeyspacename()).getTable(tablename.getTablename());
-                if (tableMetadata == null) {
-                    throw new RuntimeException("table " + tablename + " is not defined");
-                }
-
-                return tableMetadata;
+        @Override
+        public void onKeyspaceRemoved(KeyspaceMetadata keyspace) {
+            for (MetadataCatalog catalog : getCatalogs()) {
+                catalog.onKeyspaceChanged(keyspace.getName());
             }
         }
-
-        private static ImmutableSet<String> loadColumnNames(TableMetadata tableMetadata) {
-            final Set<String> columnNames = Sets.newHashSet();
-            for (ColumnMetadata columnMetadata : tableMetadata.getColumns()) {
-                columnNames.add(columnMetadata.getName());
+        
+        private List<MetadataCatalog> getCatalogs() {
+            final List<MetadataCatalog> catalogs = Lists.newArrayList();
+            for (WeakReference<MetadataCatalog> catalogRef : catalogRefs) {
+                final MetadataCatalog catalog = catalogRef.get();
+                if (catalog == null) {
+                    catalogRefs.remove(catalogRef);
+                } else {
+                    catalogs.add(catalog);
+                }
             }
-            
-            return ImmutableSet.copyOf(columnNames);
+            return catalogs;
         }
     }
     
     
-    private static final class Metadata {
+    
+    /**
+     * Immutable, precompiled schema snapshot of a table 
+     */
+    static final class TableSchema {
         private final Tablename tablename;
         private final TableMetadata tableMetadata;
         private final ImmutableSet<String> columnNames;
+        private final ImmutableSet<String> partitionKeyNames;
+        private final ImmutableList<String> clusteringKeyNames;
+        private final ImmutableList<ClusteringOrder> clusteringOrders;
+        private final ImmutableMap<String, Integer> ordinals;
+        private final ColumnMetadata[] columns;
+        private final DataType[] dataTypes;
+        private final BitSet partitionKey;
+        private final BitSet clusteringKey;
+        private final BitSet primaryKey;
         
-        public Metadata(Tablename tablename, TableMetadata tableMetadata, ImmutableSet<String> columnNames) {
+        private TableSchema(Tablename tablename, 
+                            TableMetadata tableMetadata, 
+                            ImmutableSet<String> columnNames,
+                            ImmutableSet<String> partitionKeyNames,
+                            ImmutableList<String> clusteringKeyNames,
+                            ImmutableList<ClusteringOrder> clusteringOrders,
+                            ImmutableMap<String, Integer> ordinals,
+                            ColumnMetadata[] columns, 
+                            DataType[] dataTypes, 
+                            BitSet partitionKey,
+                            BitSet clusteringKey) {
             this.tablename = tablename;
             this.tableMetadata = tableMetadata;
             this.columnNames = columnNames;
+            this.partitionKeyNames = partitionKeyNames;
+            this.clusteringKeyNames = clusteringKeyNames;
+            this.clusteringOrders = clusteringOrders;
+            this.ordinals = ordinals;
+            this.columns = columns;
+            this.dataTypes = dataTypes;
+            this.partitionKey = partitionKey;
+            this.clusteringKey = clusteringKey;
+            this.primaryKey = (BitSet) partitionKey.clone();
+            this.primaryKey.or(clusteringKey);
+        }
+        
+        
+        static TableSchema newTableSchema(Tablename tablename, TableMetadata tableMetadata) {
+            final List<ColumnMetadata> columnList = tableMetadata.getColumns();
+            
+            final ColumnMetadata[] columns = columnList.toArray(new ColumnMetadata[columnList.size()]);
+            final DataType[] dataTypes = new DataType[columns.length];
+            final Map<String, Integer> ordinals = Maps.newHashMap();
+            for (int i = 0; i < columns.length; i++) {
+                dataTypes[i] = columns[i].getType();
+                ordinals.put(columns[i].getName(), i);
+            }
+            
+            final ImmutableSet.Builder<String> partitionKeyNames = ImmutableSet.builder();
+            final BitSet partitionKey = new BitSet(columns.length);
+            for (ColumnMetadata columnMetadata : tableMetadata.getPartitionKey()) {
+                partitionKey.set(ordinals.get(columnMetadata.getName()));
+                partitionKeyNames.add(columnMetadata.getName());
+            }
+            
+            final ImmutableList.Builder<String> clusteringKeyNames = ImmutableList.builder();
+            final BitSet clusteringKey = new BitSet(columns.length);
+            for (ColumnMetadata columnMetadata : tableMetadata.getClusteringColumns()) {
+                clusteringKey.set(ordinals.get(columnMetadata.getName()));
+                clusteringKeyNames.add(columnMetadata.getName());
+            }
+            
+            return new TableSchema(tablename, 
+                                   tableMetadata, 
+                                   ImmutableSet.copyOf(ordinals.keySet()), 
+                                   partitionKeyNames.build(),
+                                   clusteringKeyNames.build(),
+                                   ImmutableList.copyOf(tableMetadata.getClusteringOrder()),
+                                   ImmutableMap.copyOf(ordinals),
+                                   columns,
+                                   dataTypes,
+                                   partitionKey,
+                                   clusteringKey);
+        }
+        
+        
+        Tablename getTablename() {
+            return tablename;
+        }
+        
+        TableMetadata getTableMetadata() {
+            return tableMetadata;
         }
         
         ImmutableSet<String> getColumnNames() {
             return columnNames;
         }
         
-        ColumnMetadata getColumnMetadata(String columnName) {
-            final ColumnMetadata metadata = tableMetadata.getColumn(columnName);
-            if (metadata == null) {
-                throw new RuntimeException("table " + tablename + " does not support column '" + columnName + "'");
+        ImmutableSet<String> getPartitionKeyNames() {
+            return partitionKeyNames;
+        }
+        
+        ImmutableList<String> getClusteringKeyNames() {
+            return clusteringKeyNames;
+        }
+        
+        ImmutableList<ClusteringOrder> getClusteringOrders() {
+            return clusteringOrders;
+        }
+        
+        /**
+         * @param columnName  the column name
+         * @return the ordinal of the column 
+         */
+        int getOrdinal(String columnName) {
+            Integer ordinal = ordinals.get(columnName);
+            if (ordinal == null) {
+                // column name is not in internal form (e.g. quoted or case-insensitive name) 
+                final ColumnMetadata metadata = tableMetadata.getColumn(columnName);
+                if (metadata == null) {
+                    throw new RuntimeException("table " + tablename + " does not support column '" + columnName + "'");
+                }
+                ordinal = ordinals.get(metadata.getName());
             }
-            return metadata;
+            return ordinal;
+        }
+        
+        ColumnMetadata getColumnMetadata(String columnName) {
+            return columns[getOrdinal(columnName)];
+        }
+        
+        DataType getDataType(int ordinal) {
+            return dataTypes[ordinal];
+        }
+        
+        DataType getDataType(String columnName) {
+            return dataTypes[getOrdinal(columnName)];
+        }
+        
+        boolean isPrimaryKey(String columnName) {
+            return primaryKey.get(getOrdinal(columnName));
+        }
+        
+        boolean isPartitionKey(String columnName) {
+            return partitionKey.get(getOrdinal(columnName));
+        }
+        
+        boolean isClusteringKey(String columnName) {
+            return clusteringKey.get(getOrdinal(columnName));
+        }
+        
+        boolean isSchemaOf(TableMetadata otherTableMetadata) {
+            return tableMetadata.getName().equals(otherTableMetadata.getName()) && 
+                   tableMetadata.getKeyspace().getName().equals(otherTableMetadata.getKeyspace().getName());
         }
     }
 
@@ -0,0 +1,492 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.oneandone.troilus.java7.FetchingIterator;
+import net.oneandone.troilus.java7.MultiRead;
+import net.oneandone.troilus.java7.MultiReadWithUnit;
+import net.oneandone.troilus.java7.Record;
+import net.oneandone.troilus.java7.ResultList;
+
+import org.reactivestreams.Publisher;
+
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.ResultSet;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+
+
+
+/**
+ * Multi read query implementation. Each primary key is read by a single-partition read. The 
+ * reads are performed concurrently within a sliding window of the configured parallelism  
+ */
+class MultiReadQuery extends AbstractQuery<MultiReadQuery> implements MultiReadWithUnit<ImmutableList<Optional<Record>>, Record> {
+    
+    private static final int DEFAULT_PARALLELISM = 32;
+    
+    private final Tablename tablename;
+    private final ImmutableList<ImmutableMap<String, Object>> keys;
+    private final int parallelism;
+    
+    
+    /**
+     * @param ctx        the context 
+     * @param tablename  the tablename
+     * @param keys       the (full) primary keys to read
+     */
+    MultiReadQuery(Context ctx, Tablename tablename, ImmutableList<ImmutableMap<String, Object>> keys) {
+        this(ctx, tablename, keys, DEFAULT_PARALLELISM);
+    }
+    
+    private MultiReadQuery(Context ctx, Tablename tablename, ImmutableList<ImmutableMap<String, Object>> keys, int parallelism) {
+        super(ctx);
+        this.tablename = tablename;
+        this.keys = keys;
+        this.parallelism = parallelism;
+    }
+   
+    
+    ////////////////////
+    // factory methods
+    
+    @Override
+    protected MultiReadQuery newQuery(Context newContext) {
+        return new MultiReadQuery(newContext, tablename, keys, parallelism);
+    }
+    
+    //
+    ////////////////////
+
+    
+    @Override
+    public MultiReadQuery withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism has to be greater than 0");
+        }
+        return new MultiReadQuery(getContext(), tablename, keys, parallelism);
+    }
+    
+    @Override
+    public <E> MultiEntityReadQuery<E> asEntity(Class<E> objectClass) {
+        return new MultiEntityReadQuery<E>(getContext(), this, objectClass);
+    }
+    
+    @Override
+    public ImmutableList<Optional<Record>> execute() {
+        return ListenableFutures.getUninterruptibly(executeAsync());
+    }
+    
+    @Override
+    public ListenableFuture<ImmutableList<Optional<Record>>> executeAsync() {
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+        }
+        
+        return new MultiGet<Record>(keys, newRecordReader(), parallelism).executeAsync();
+    }
+    
+    @Override
+    public Publisher<Record> executeRx() {
+        // the streamed reads share the active deadline 
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return newQuery(deadlineCtx).executeRx();
+        }
+        
+        return new ResultListPublisher<Record>(Futures.<ResultList<Record>>immediateFuture(new MultiGet<Record>(keys, newRecordReader(), parallelism).executeRx()));
+    }
+    
+    
+    private Function<ImmutableMap<String, Object>, ListenableFuture<Record>> newRecordReader() {
+        return new Function<ImmutableMap<String, Object>, ListenableFuture<Record>>() {
+            @Override
+            public ListenableFuture<Record> apply(ImmutableMap<String, Object> key) {
+                return newSingleRead(key).executeAsync();
+            }
+        };
+    }
+    
+    
+    private SingleReadQuery newSingleRead(ImmutableMap<String, Object> key) {
+        final Map<String, ImmutableList<Object>> keyValues = Maps.newHashMap();
+        for (Entry<String, Object> entry : key.entrySet()) {
+            keyValues.put(entry.getKey(), ImmutableList.of(entry.getValue()));
+        }
+        
+        return new SingleReadQuery(getContext(), new ReadQueryDataImpl(tablename).keys(ImmutableMap.copyOf(keyValues)));
+    }
+    
+    
+    
+    /**
+     * Entity multi read query 
+     * @param <E> the entity type
+     */
+    static class MultiEntityReadQuery<E> extends AbstractQuery<MultiEntityReadQuery<E>> implements MultiRead<ImmutableList<Optional<E>>, E> {
+        private final Class<E> clazz;
+        private final MultiReadQuery query;
+        
+        
+        /**
+         * @param ctx    the context
+         * @param query  the underlying query  
+         * @param clazz  the entity type
+         */
+        MultiEntityReadQuery(Context ctx, MultiReadQuery query, Class<E> clazz) {
+            super(ctx);
+            this.query = query;
+            this.clazz = clazz;
+        }
+        
+        @Override
+        protected MultiEntityReadQuery<E> newQuery(Context newContext) {
+            return query.newQuery(newContext).<E>asEntity(clazz); 
+        }
+        
+        @Override
+        public MultiEntityReadQuery<E> withParallelism(int parallelism) {
+            return query.newQuery(getContext()).withParallelism(parallelism).<E>asEntity(clazz);
+        }
+        
+        @Override
+        public ImmutableList<Optional<E>> execute() {
+            return ListenableFutures.getUninterruptibly(executeAsync());
+        }
+        
+        @Override
+        public ListenableFuture<ImmutableList<Optional<E>>> executeAsync() {
+            final Context deadlineCtx = Deadlines.start(getContext());
+            if (deadlineCtx != null) {
+                return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+            }
+            
+            return new MultiGet<E>(query.keys, newEntityReader(), query.parallelism).executeAsync();
+        }
+        
+        @Override
+        public Publisher<E> executeRx() {
+            // the streamed reads share the active deadline 
+            final Context deadlineCtx = Deadlines.start(getContext());
+            if (deadlineCtx != null) {
+                return newQuery(deadlineCtx).executeRx();
+            }
+            
+            return new ResultListPublisher<E>(Futures.<ResultList<E>>immediateFuture(new MultiGet<E>(query.keys, newEntityReader(), query.parallelism).executeRx()));
+        }
+        
+        private Function<ImmutableMap<String, Object>, ListenableFuture<E>> newEntityReader() {
+            return new Function<ImmutableMap<String, Object>, ListenableFuture<E>>() {
+                @Override
+                public ListenableFuture<E> apply(ImmutableMap<String, Object> key) {
+                    return query.newSingleRead(key).asEntity(clazz).executeAsync();
+                }
+            };
+        }
+    }
+    
+    
+    
+    /**
+     * Performs the reads within a sliding window. The results are collected in request order, or
+     * provided in order of arrival by executing it reactive. In this case the window covers the 
+     * running reads as well as the buffered, not yet consumed elements
+     */
+    private static final class MultiGet<T> {
+        private final ImmutableList<ImmutableMap<String, Object>> keys;
+        private final Function<ImmutableMap<String, Object>, ListenableFuture<T>> reader;
+        private final int parallelism;
+        
+        private final AtomicReferenceArray<T> results;
+        private final AtomicInteger nextKey = new AtomicInteger();
+        private final AtomicInteger numCompleted = new AtomicInteger();
+        private final AtomicInteger numUsedSlots = new AtomicInteger();
+        private final SettableFuture<ImmutableList<Optional<T>>> resultFuture = SettableFuture.create();
+        private volatile ArrivalList arrivals = null;   // will be set, if executed reactive
+        
+        
+        MultiGet(ImmutableList<ImmutableMap<String, Object>> keys, 
+                 Function<ImmutableMap<String, Object>, ListenableFuture<T>> reader, 
+                 int parallelism) {
+            this.keys = keys;
+            this.reader = reader;
+            this.parallelism = parallelism;
+            this.results = new AtomicReferenceArray<>(keys.size());
+        }
+        
+        
+        ListenableFuture<ImmutableList<Optional<T>>> executeAsync() {
+            if (keys.isEmpty()) {
+                complete();
+            }
+            
+            readNext();
+            return resultFuture;
+        }
+        
+        
+        ResultList<T> executeRx() {
+            arrivals = new ArrivalList();
+            if (keys.isEmpty()) {
+                complete();
+            }
+            
+            // the reads will be started by fetching the first elements
+            return arrivals;
+        }
+        
+        
+        private void readNext() {
+            while (acquireSlot()) {
+                final int keyIdx = nextKey.getAndIncrement();
+                if ((keyIdx >= keys.size()) || resultFuture.isDone()) {
+                    numUsedSlots.decrementAndGet();
+                    return;
+                }
+                
+                read(keyIdx);
+            }
+        }
+        
+        
+        private boolean acquireSlot() {
+            while (true) {
+                final int numUsed = numUsedSlots.get();
+                if (numUsed >= parallelism) {
+                    return false;
+                    
+                } else if (numUsedSlots.compareAndSet(numUsed, numUsed + 1)) {
+                    return true;
+                }
+            }
+        }
+        
+        
+        private void releaseSlot() {
+            numUsedSlots.decrementAndGet();
+            readNext();
+        }
+        
+        
+        private void read(final int keyIdx) {
+            ListenableFuture<T> future;
+            try {
+                future = reader.apply(keys.get(keyIdx));
+            } catch (RuntimeException rt) {
+                future = Futures.immediateFailedFuture(rt);
+            }
+            
+            Futures.addCallback(future, new FutureCallback<T>() {
+                
+                                            @Override
+                                            public void onSuccess(T element) {
+                                                final boolean isBuffered = (element != null) && (arrivals != null);
+                                                if (isBuffered) {
+                                                    // the slot will be released by consuming the element
+                                                    arrivals.add(element);
+                                                } else if (arrivals == null) {
+                                                    results.set(keyIdx, element);
+                                                }
+                                                
+                                                if (numCompleted.incrementAndGet() == keys.size()) {
+                                                    complete();
+                                                } else if (!isBuffered) {
+                                                    releaseSlot();
+                                                }
+                                            }
+                                            
+                                            @Override
+                                            public void onFailure(Throwable error) {
+                                                if (resultFuture.setException(error) && (arrivals != null)) {
+                                                    arrivals.fail(error);
+                                                }
+                                            }
+                                        },
+                                MoreExecutors.directExecutor());
+        }
+        
+        
+        private void complete() {
+            if (arrivals == null) {
+                final ImmutableList.Builder<Optional<T>> builder = ImmutableList.builder();
+                for (int i = 0; i < results.length(); i++) {
+                    builder.add(Optional.fromNullable(results.get(i)));
+                }
+                resultFuture.set(builder.build());
+                
+            // the elements have been provided by the arrival list     
+            } else if (resultFuture.set(ImmutableList.<Optional<T>>of())) {
+                arrivals.complete();
+            }
+        }
+    
+    
+    
+        /**
+         * Result list which provides the elements in order of arrival. The list can be iterated only once
+         */
+        private final class ArrivalList implements ResultList<T>, FetchingIterator<T> {
+            private final Queue<T> available = Queues.newArrayDeque();   // guarded by this
+            private Throwable error = null;                              // guarded by this
+            private boolean isComplete = false;                          // guarded by this 
+            private SettableFuture<ResultSet> arrivalFuture = null;      // guarded by this
+            
+            
+            void add(T element) {
+                final SettableFuture<ResultSet> future;
+                synchronized (this) {
+                    available.add(element);
+                    future = takeArrivalFuture();
+                }
+                notifyArrival(future);
+            }
+            
+            void complete() {
+                final SettableFuture<ResultSet> future;
+                synchronized (this) {
+                    isComplete = true;
+                    future = takeArrivalFuture();
+                }
+                notifyArrival(future);
+            }
+    
+            void fail(Throwable error) {
+                final SettableFuture<ResultSet> future;
+                synchronized (this) {
+                    this.error = error;
+                    future = takeArrivalFuture();
+                }
+                notifyArrival(future);
+            }
+            
+            private SettableFuture<ResultSet> takeArrivalFuture() {
+                final SettableFuture<ResultSet> future = arrivalFuture;
+                arrivalFuture = null;
+                return future;
+            }
+            
+            private void notifyArrival(SettableFuture<ResultSet> future) {
+                if (future != null) {
+                    future.set(null);
+                }
+            }
+            
+            
+            @Override
+            public FetchingIterator<T> iterator() {
+                return this;
+            }
+            
+            @Override
+            public synchronized boolean hasNext() {
+                return !available.isEmpty() || (error != null) || !isComplete;
+            }
+            
+            @Override
+            public T next() {
+                final T element;
+                synchronized (this) {
+                    if (!available.isEmpty()) {
+                        element = available.poll();
+                        
+                    } else if (error != null) {
+                        // the error is reported once 
+                        final Throwable t = error;
+                        error = null;
+                        isComplete = true;
+                        throw ListenableFutures.unwrapIfNecessary(t);
+                        
+                    } else {
+                        throw new NoSuchElementException();
+                    }
+                }
+                
+                // the consumed element frees its slot of the read window 
+                releaseSlot();
+                return element;
+            }
+            
+            @Override
+            public synchronized int getAvailableWithoutFetching() {
+                return available.size() + ((error == null) ? 0 : 1);
+            }
+            
+            @Override
+            public synchronized boolean isFullyFetched() {
+                return isComplete && available.isEmpty();
+            }
+            
+            @Override
+            public ListenableFuture<ResultSet> fetchMoreResultsAsync() {
+                final ListenableFuture<ResultSet> future;
+                synchronized (this) {
+                    if (!available.isEmpty() || isComplete || (error != null)) {
+                        return Futures.immediateFuture(null);
+                    }
+                    
+                    if (arrivalFuture == null) {
+                        arrivalFuture = SettableFuture.create();
+                    }
+                    future = arrivalFuture;
+                }
+                
+                // starts the reads, if not already running 
+                readNext();
+                return future;
+            }
+            
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+            
+            // a multi read consists of many queries. The execution infos are provided by the records  
+            
+            @Override
+            public ExecutionInfo getExecutionInfo() {
+                return null;
+            }
+            
+            @Override
+            public ImmutableList<ExecutionInfo> getAllExecutionInfo() {
+                return ImmutableList.of();
+            }
+            
+            @Override
+            public boolean wasApplied() {
+                return true;
+            }
+        }
+    }
+}
@@ -18,17 +18,32 @@ package net.oneandone.troilus;
 
 
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
 import net.oneandone.troilus.java7.Batchable;
 
 import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ExecutionInfo;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.BatchStatement.Type;
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.UnmodifiableIterator;
 import com.google.common.util.concurrent.AbstractFuture;
@@ -56,7 +71,62 @@ abstract class MutationQuery<Q> extends AbstractQuery<Q> {
     }
     
     public ListenableFuture<Result> executeAsync() {
-        ListenableFuture<ResultSet> future = performAsync(getDefaultDbSession(), getStatementAsync(getDefaultDbSession()));
+        return executeStatementAsync(false);
+    }
+    
+    
+    /**
+     * performs the query as lightweight transaction. If lwt serialization is activated, 
+     * the query will be queued behind the other lightweight transactions of the partition 
+     * 
+     * @param tablename  the tablename
+     * @param keys       the keys of the query
+     * @return the result future
+     */
+    protected ListenableFuture<Result> executeLwtAsync(Tablename tablename, ImmutableMap<String, Object> keys) {
+        if (getExecutionSpec().getWriteBehindJournal() != null) {
+            return Futures.immediateFailedFuture(new IllegalStateException("lightweight transactions are not supported in write-behind mode"));
+        }
+        
+        Integer maxRetries = getExecutionSpec().getLwtSerializationRetries();
+        if (maxRetries == null) {
+            return executeStatementAsync(true);
+        }
+        
+        ImmutableMap<String, Object> partitionKey = ImmutableMap.copyOf(Maps.filterKeys(keys, Predicates.in(getCatalog().getPartitionKeyNames(tablename))));
+        if (partitionKey.isEmpty()) {
+            // partition is unknown (e.g. where condition based query) 
+            return executeStatementAsync(true);
+        }
+        
+        Supplier<ListenableFuture<Result>> lwt = new Supplier<ListenableFuture<Result>>() {
+            @Override
+            public ListenableFuture<Result> get() {
+                return executeStatementAsync(true);
+            }
+        };
+        return LwtSerializer.get(tablename).executeAsync(partitionKey, lwt, maxRetries);
+    }
+    
+    
+    private ListenableFuture<Result> executeStatementAsync(boolean isConditional) {
+        WriteBehindJournalImpl writeBehindJournal = getExecutionSpec().getWriteBehindJournal();
+        if ((writeBehindJournal != null) && isWriteBehindSupported()) {
+            // the statements of the cascading interceptors are journaled together with the statement of the query 
+            return writeBehindJournal.appendAsync(getStatementAsync(getDefaultDbSession()), 
+                                                  getExecutionSpec().getConsistencyLevel(), 
+                                                  getExecutionSpec().getWritetime(),
+                                                  getExecutionSpec().getIdempotent());
+        }
+        
+        CascadeMode cascadeMode = getExecutionSpec().getCascadeMode();
+        
+        ListenableFuture<ResultSet> future;
+        if ((cascadeMode == null) || (cascadeMode == CascadeMode.LOGGED)) {
+            future = performAsync(getDefaultDbSession(), getStatementAsync(getDefaultDbSession()));
+        } else {
+            future = performCascadedAsync(getDefaultDbSession(), getCascadedStatementsAsync(getDefaultDbSession()), cascadeMode, isConditional);
+        }
         
         Function<ResultSet, Result> mapEntity = new Function<ResultSet, Result>() {
             @Override
@@ -72,6 +142,128 @@ abstract class MutationQuery<Q> extends AbstractQuery<Q> {
     public abstract ListenableFuture<Statement> getStatementAsync(DBSession dbSession);
     
     
+    /**
+     * @return true, if the query will be appended to the write-behind journal in write-behind mode.
+     *         Otherwise the query is performed directly
+     */
+    protected boolean isWriteBehindSupported() {
+        return true;
+    }
+    
+    
+    /**
+     * @param dbSession  the db session
+     * @return the statement of the query followed by the statements of the cascading interceptors 
+     */
+    protected ListenableFuture<ImmutableList<Statement>> getCascadedStatementsAsync(DBSession dbSession) {
+        Function<Statement, ImmutableList<Statement>> toList = new Function<Statement, ImmutableList<Statement>>() {
+            @Override
+            public ImmutableList<Statement> apply(Statement statement) {
+                return ImmutableList.of(statement);
+            }
+        };
+        return Futures.transform(getStatementAsync(dbSession), toList, MoreExecutors.directExecutor());
+    }
+    
+    
+    private ListenableFuture<ResultSet> performCascadedAsync(final DBSession dbSession, 
+                                                             ListenableFuture<ImmutableList<Statement>> statementsFuture, 
+                                                             final CascadeMode cascadeMode,
+                                                             final boolean isConditional) {
+        
+        Function<ImmutableList<Statement>, ListenableFuture<ResultSet>> statementsToResultSet = new Function<ImmutableList<Statement>, ListenableFuture<ResultSet>>() {
+            @Override
+            public ListenableFuture<ResultSet> apply(ImmutableList<Statement> statements) {
+                if (!isConditional || (statements.size() == 1)) {
+                    return performStatementsAsync(dbSession, statements, cascadeMode);
+                }
+                
+                // the cascading statements of a conditional query are performed only, if the query statement has been applied 
+                final ImmutableList<Statement> cascadingStatements = statements.subList(1, statements.size());
+                Function<ResultSet, ListenableFuture<ResultSet>> performCascadingStatements = new Function<ResultSet, ListenableFuture<ResultSet>>() {
+                    @Override
+                    public ListenableFuture<ResultSet> apply(ResultSet resultSet) {
+                        if (!resultSet.wasApplied()) {
+                            return Futures.immediateFuture(resultSet);
+                        }
+                        return Futures.transform(performStatementsAsync(dbSession, cascadingStatements, cascadeMode), Functions.constant(resultSet), MoreExecutors.directExecutor());
+                    }
+                };
+                return ListenableFutures.transform(performAsync(dbSession, statements.get(0)), performCascadingStatements);
+            }
+        };
+        
+        return ListenableFutures.transform(statementsFuture, statementsToResultSet);  
+    }
+    
+    
+    private ListenableFuture<ResultSet> performStatementsAsync(DBSession dbSession, ImmutableList<Statement> statements, CascadeMode cascadeMode) {
+        List<ListenableFuture<ResultSet>> futures = Lists.newArrayList();
+        if (cascadeMode == CascadeMode.UNLOGGED) {
+            for (ImmutableList<Statement> partitionStatements : groupByPartition(dbSession, statements)) {
+                futures.add(performAsync(dbSession, toBatchStatement(Type.UNLOGGED, partitionStatements)));
+            }
+        } else {
+            for (Statement statement : statements) {
+                futures.add(performAsync(dbSession, statement));
+            }
+        }
+        
+        // the first future contains the first statement 
+        Function<List<ResultSet>, ResultSet> firstResultSet = new Function<List<ResultSet>, ResultSet>() {
+            @Override
+            public ResultSet apply(List<ResultSet> resultSets) {
+                return resultSets.get(0);
+            }
+        };
+        return Futures.transform(Futures.allAsList(futures), firstResultSet, MoreExecutors.directExecutor());
+    }
+    
+    
+    /**
+     * groups the statements by the partition they are routed to. The order of the statements 
+     * will be kept. Statements with an unknown routing key are put into a dedicated group
+     * 
+     * @param dbSession   the db session
+     * @param statements  the statements to group
+     * @return the statement groups
+     */
+    protected static ImmutableList<ImmutableList<Statement>> groupByPartition(DBSession dbSession, ImmutableList<Statement> statements) {
+        ListMultimap<Object, Statement> partitions = LinkedListMultimap.create();
+        for (Statement statement : statements) {
+            ByteBuffer routingKey = dbSession.getRoutingKey(statement);
+            Object partition = (routingKey == null) ? new Object() 
+                                                    : Arrays.asList(statement.getKeyspace(), routingKey);
+            partitions.put(partition, statement);
+        }
+        
+        ImmutableList.Builder<ImmutableList<Statement>> groups = ImmutableList.builder();
+        for (Object partition : partitions.keySet()) {
+            groups.add(ImmutableList.copyOf(partitions.get(partition)));
+        }
+        return groups.build();
+    }
+    
+    
+    /**
+     * @param statementFuture           the statement of the query
+     * @param cascadingStatmentsFuture  the statements of the cascading interceptors 
+     * @return the statement of the query followed by the cascading statements 
+     */
+    protected ListenableFuture<ImmutableList<Statement>> joinStatements(final ListenableFuture<Statement> statementFuture, 
+                                                                        final ListenableFuture<ImmutableSet<Statement>> cascadingStatmentsFuture) {
+        return Futures.whenAllSucceed(statementFuture, cascadingStatmentsFuture)
+                      .call(new Callable<ImmutableList<Statement>>() {
+                                @Override
+                                public ImmutableList<Statement> call() throws Exception {
+                                    return ImmutableList.<Statement>builder().add(Futures.getDone(statementFuture))
+                                                                             .addAll(Futures.getDone(cascadingStatmentsFuture))
+                                                                             .build();
+                                }
+                            }, MoreExecutors.directExecutor());
+    }
+    
+    
     protected ListenableFuture<Statement> mergeStatements(ListenableFuture<Statement> statementFuture, ListenableFuture<ImmutableSet<Statement>> cascadingStatmentsFuture) {
         ListenableFuture<ImmutableSet<Statement>> statementsFuture = ListenableFutures.join(cascadingStatmentsFuture, statementFuture, getExecutor());
 
@@ -106,21 +298,188 @@ abstract class MutationQuery<Q> extends AbstractQuery<Q> {
     }
     
     
+    /**
+     * performs the statements as batch. If a batch size limit is set, an unlogged or counter batch 
+     * which exceeds the limit will be split into batches per partition which are performed in 
+     * parallel. A logged batch which exceeds the limit will be rejected. The result of a split 
+     * batch contains the execution infos of all parts and is applied, if all parts are applied 
+     * 
+     * @param batchType         the batch type
+     * @param statementFutures  the statements of the batch
+     * @return the result future
+     */
+    protected ListenableFuture<Result> executeBatchAsync(final Type batchType, ImmutableList<ListenableFuture<Statement>> statementFutures) {
+        final DBSession dbSession = getDefaultDbSession();
+        
+        Function<List<Statement>, ListenableFuture<List<ResultSet>>> statementsToResultSets = new Function<List<Statement>, ListenableFuture<List<ResultSet>>>() {
+            @Override
+            public ListenableFuture<List<ResultSet>> apply(List<Statement> statements) {
+                List<ListenableFuture<ResultSet>> futures = Lists.newArrayList();
+                for (ImmutableList<Statement> batch : splitBatch(dbSession, batchType, ImmutableList.copyOf(statements))) {
+                    futures.add(performAsync(dbSession, toBatchStatement(batchType, batch)));
+                }
+                return Futures.allAsList(futures);
+            }
+        };
+        ListenableFuture<List<ResultSet>> future = ListenableFutures.transform(Futures.allAsList(statementFutures), statementsToResultSets);
+        
+        Function<List<ResultSet>, Result> mapEntity = new Function<List<ResultSet>, Result>() {
+            @Override
+            public Result apply(List<ResultSet> resultSets) {
+                if (resultSets.size() == 1) {
+                    return newResult(resultSets.get(0));
+                }
+                
+                ImmutableList.Builder<Result> results = ImmutableList.builder();
+                for (ResultSet resultSet : resultSets) {
+                    results.add(newResult(resultSet));
+                }
+                return new SplitBatchResult(results.build());
+            }
+        };
+        return Futures.transform(future, mapEntity, MoreExecutors.directExecutor());
+    }
+    
+    
+    /**
+     * Result of a batch which has been split into several parts
+     */
+    private static final class SplitBatchResult implements Result {
+        private final ImmutableList<Result> results;
+        
+        SplitBatchResult(ImmutableList<Result> results) {
+            this.results = results;
+        }
+        
+        @Override
+        public boolean wasApplied() {
+            for (Result result : results) {
+                if (!result.wasApplied()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public ExecutionInfo getExecutionInfo() {
+            return results.get(results.size() - 1).getExecutionInfo();
+        }
+        
+        @Override
+        public ImmutableList<ExecutionInfo> getAllExecutionInfo() {
+            ImmutableList.Builder<ExecutionInfo> infos = ImmutableList.builder();
+            for (Result result : results) {
+                infos.addAll(result.getAllExecutionInfo());
+            }
+            return infos.build();
+        }
+        
+        @Override
+        public String toString() {
+            return Joiner.on("\r\n").join(results);
+        }
+    }
+    
+    
+    private ImmutableList<ImmutableList<Statement>> splitBatch(DBSession dbSession, Type batchType, ImmutableList<Statement> statements) {
+        int maxStatements = getExecutionSpec().getMaxBatchStatements();
+        int maxBytes = getExecutionSpec().getMaxBatchSizeBytes();
+        
+        int numStatements = 0;
+        int size = 0;
+        for (Statement statement : statements) {
+            numStatements += countStatements(statement);
+            size += dbSession.estimateSize(statement);
+        }
+
+        if ((numStatements <= maxStatements) && (size <= maxBytes)) {
+            return ImmutableList.of(statements);
+        } else if (batchType == Type.LOGGED) {
+            throw new BatchTooLargeException("logged batch of " + numStatements + " statements (~" + size + " bytes) exceeds the limit of " + 
+                                             maxStatements + " statements and " + maxBytes + " bytes. Use an unlogged batch to allow splitting");
+        }
+        
+        
+        // split the batch by partition and limit 
+        ImmutableList.Builder<ImmutableList<Statement>> batches = ImmutableList.builder();
+        for (ImmutableList<Statement> partitionStatements : groupByPartition(dbSession, statements)) {
+            List<Statement> batch = Lists.newArrayList();
+            int batchNumStatements = 0;
+            int batchSize = 0;
+            
+            for (Statement statement : partitionStatements) {
+                int statementNumStatements = countStatements(statement);
+                int statementSize = dbSession.estimateSize(statement);
+                
+                if (!batch.isEmpty() && (((batchNumStatements + statementNumStatements) > maxStatements) || ((batchSize + statementSize) > maxBytes))) {
+                    batches.add(ImmutableList.copyOf(batch));
+                    batch.clear();
+                    batchNumStatements = 0;
+                    batchSize = 0;
+                }
+                
+                batch.add(statement);
+                batchNumStatements += statementNumStatements;
+                batchSize += statementSize;
+            }
+            batches.add(ImmutableList.copyOf(batch));
+        }
+        
+        return batches.build();
+    }
+    
+    
+    private static int countStatements(Statement statement) {
+        return (statement instanceof BatchStatement) ? ((BatchStatement) statement).size() : 1;
+    }
+    
+    
+    private static Statement toBatchStatement(Type batchType, ImmutableList<Statement> statements) {
+        if (statements.size() == 1) {
+            return statements.get(0);
+        } 
+        
+        BatchStatement batchStatement = new BatchStatement(batchType);
+        for (Statement statement : statements) {
+            batchStatement.add(statement);
+        }
+        return batchStatement;
+    }
+    
+    
     protected <T> ListenableFuture<Statement> mergeToBatch(Type batchType, UnmodifiableIterator<T> batchablesIt, Function<T, ListenableFuture<Statement>> statementFetcher) {
         return new BatchQueryFutureAdapter<>(new BatchStatement(batchType), batchablesIt, statementFetcher);
     }
     
     
     protected static final class BatchQueryFutureAdapter<T> extends AbstractFuture<Statement> {
+        private volatile ListenableFuture<Statement> pendingStatementFuture = null;
         
         BatchQueryFutureAdapter(BatchStatement batchStmt, UnmodifiableIterator<T> batchablesIt, Function<T, ListenableFuture<Statement>> statementFetcher) {
             handle(batchStmt, batchablesIt, statementFetcher);
         }
         
+        @Override
+        protected void afterDone() {
+            // the remaining statements will not be fetched, if the caller has given up   
+            final ListenableFuture<Statement> statementFuture = pendingStatementFuture;
+            if (isCancelled() && (statementFuture != null)) {
+                statementFuture.cancel(wasInterrupted());
+            }
+        }
+        
         private void handle(final BatchStatement batchStmt, final UnmodifiableIterator<T> batchablesIt, final Function<T, ListenableFuture<Statement>> statementFetcher) {
+            if (isCancelled()) {
+                return;
+            }
             
             if (batchablesIt.hasNext()) {
                 final ListenableFuture<Statement> statementFuture = statementFetcher.apply(batchablesIt.next());
+                pendingStatementFuture = statementFuture;
+                if (isCancelled()) {
+                    statementFuture.cancel(false);
+                }
                 
                 Runnable resultHandler = new Runnable() {
                     
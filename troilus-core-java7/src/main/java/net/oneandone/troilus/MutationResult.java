@@ -0,0 +1,95 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import com.google.common.base.MoreObjects;
+
+
+
+/**
+ * The per-item result of a reactive write. Failures of a single item
+ * are reported by this result and do not terminate the stream
+ *
+ * @param <T> the item type
+ */
+public final class MutationResult<T> {
+
+    private final T item;
+    private final Result result;
+    private final Throwable error;
+
+
+    private MutationResult(T item, Result result, Throwable error) {
+        this.item = item;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @param item    the written item
+     * @param result  the result
+     * @return the success result
+     */
+    static <T> MutationResult<T> newSuccessResult(T item, Result result) {
+        return new MutationResult<>(item, result, null);
+    }
+
+    /**
+     * @param item    the item which could not be written
+     * @param error   the error
+     * @return the failure result
+     */
+    static <T> MutationResult<T> newFailureResult(T item, Throwable error) {
+        return new MutationResult<>(item, null, error);
+    }
+
+    /**
+     * @return the item (entity or mutation) which has been received
+     */
+    public T getItem() {
+        return item;
+    }
+
+    /**
+     * @return true, if the item has been written successfully
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the query result or null, if the write has been failed
+     */
+    public Result getResult() {
+        return result;
+    }
+
+    /**
+     * @return the error or null, if the write has been succeeded
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("item", item)
+                          .add("success", isSuccess())
+                          .add("error", error)
+                          .toString();
+    }
+}
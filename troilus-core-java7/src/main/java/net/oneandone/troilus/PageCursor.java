@@ -0,0 +1,107 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+
+
+
+/**
+ * Cursor of a keyset based pagination. The cursor holds the serialized clustering key 
+ * of the last record of a page. Its string representation is url-safe and can be passed 
+ * to clients to read the next page later 
+ */
+public final class PageCursor {
+    private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+    
+    private final ImmutableList<ByteBuffer> clusteringKey;
+    
+    
+    /**
+     * @param clusteringKey  the serialized clustering key values
+     */
+    PageCursor(ImmutableList<ByteBuffer> clusteringKey) {
+        this.clusteringKey = clusteringKey;
+    }
+    
+    /**
+     * @return the serialized clustering key values
+     */
+    ImmutableList<ByteBuffer> getClusteringKey() {
+        return clusteringKey;
+    }
+    
+    
+    /**
+     * @param cursor  the string representation of the cursor
+     * @return the cursor
+     */
+    public static PageCursor valueOf(String cursor) {
+        final ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(ENCODING.decode(cursor));
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("invalid cursor " + cursor, iae);
+        }
+        
+        final List<ByteBuffer> clusteringKey = Lists.newArrayList();
+        while (buffer.hasRemaining()) {
+            final int length = buffer.getInt();
+            if ((length < 0) || (length > buffer.remaining())) {
+                throw new IllegalArgumentException("invalid cursor " + cursor);
+            }
+            final ByteBuffer value = buffer.slice();
+            value.limit(length);
+            clusteringKey.add(value);
+            buffer.position(buffer.position() + length);
+        }
+        
+        return new PageCursor(ImmutableList.copyOf(clusteringKey));
+    }
+    
+    
+    @Override
+    public String toString() {
+        int size = 0;
+        for (ByteBuffer value : clusteringKey) {
+            size += 4 + value.remaining();
+        }
+        
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (ByteBuffer value : clusteringKey) {
+            buffer.putInt(value.remaining());
+            buffer.put(value.duplicate());
+        }
+        
+        return ENCODING.encode(buffer.array());
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return (other instanceof PageCursor) && ((PageCursor) other).clusteringKey.equals(this.clusteringKey);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(clusteringKey);
+    }
+}
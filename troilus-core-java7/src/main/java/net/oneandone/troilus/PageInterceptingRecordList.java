@@ -0,0 +1,199 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+
+import net.oneandone.troilus.java7.FetchingIterator;
+import net.oneandone.troilus.java7.Record;
+import net.oneandone.troilus.java7.ResultList;
+import net.oneandone.troilus.java7.interceptor.ReadQueryData;
+import net.oneandone.troilus.java7.interceptor.ReadQueryPageInterceptor;
+import net.oneandone.troilus.java7.interceptor.ResultListAdapter;
+
+import com.datastax.driver.core.ResultSet;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+
+
+/**
+ * Record list which passes each fetched page through the page interceptors. All records
+ * available without fetching form a page. The interceptors are executed asynchronously
+ * while the next page is fetched in the background
+ */
+class PageInterceptingRecordList extends ResultListAdapter<Record> {
+
+    private final ReadQueryData queryData;
+    private final ImmutableList<ReadQueryPageInterceptor> interceptors;
+    private final Executor executor;
+
+
+    /**
+     * @param recordList    the underlying record list
+     * @param queryData     the query data
+     * @param interceptors  the page interceptors to execute
+     * @param executor      the executor to run the interceptors
+     */
+    PageInterceptingRecordList(ResultList<Record> recordList,
+                               ReadQueryData queryData,
+                               ImmutableList<ReadQueryPageInterceptor> interceptors,
+                               Executor executor) {
+        super(recordList);
+        this.queryData = queryData;
+        this.interceptors = interceptors;
+        this.executor = executor;
+    }
+
+
+    @Override
+    public FetchingIterator<Record> iterator() {
+        return new PageInterceptingIterator(super.iterator());
+    }
+
+
+
+    private final class PageInterceptingIterator implements FetchingIterator<Record> {
+        private final FetchingIterator<Record> it;
+        private ImmutableList<Record> page = ImmutableList.of();
+        private int position = 0;
+        private ListenableFuture<ImmutableList<Record>> pageFuture = null;
+
+
+        PageInterceptingIterator(FetchingIterator<Record> it) {
+            this.it = it;
+
+            // start intercepting the first page immediately
+            if (it.getAvailableWithoutFetching() > 0) {
+                pageFuture = nextPageAsync();
+            }
+        }
+
+
+        private ListenableFuture<ImmutableList<Record>> nextPageAsync() {
+            final List<Record> records = Lists.newArrayList();
+            while (it.getAvailableWithoutFetching() > 0) {
+                records.add(it.next());
+            }
+
+            ListenableFuture<ImmutableList<Record>> future = Futures.immediateFuture(ImmutableList.copyOf(records));
+            for (ReadQueryPageInterceptor interceptor : interceptors) {
+                final ReadQueryPageInterceptor icptor = interceptor;
+
+                final Function<ImmutableList<Record>, ListenableFuture<ImmutableList<Record>>> mapperFunction = new Function<ImmutableList<Record>, ListenableFuture<ImmutableList<Record>>>() {
+                    @Override
+                    public ListenableFuture<ImmutableList<Record>> apply(ImmutableList<Record> records) {
+                        return Futures.nonCancellationPropagating(icptor.onReadPageAsync(queryData, records));
+                    }
+                };
+
+                // running interceptors within dedicated threads!
+                future = ListenableFutures.transform(future, mapperFunction, executor);
+            }
+
+            // overlap the interception with fetching the next page
+            if (!it.isFullyFetched()) {
+                it.fetchMoreResultsAsync();
+            }
+
+            return future;
+        }
+
+
+        private void takePage() {
+            page = ListenableFutures.getUninterruptibly(pageFuture);
+            position = 0;
+            pageFuture = null;
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            while (position >= page.size()) {
+                if (pageFuture == null) {
+                    if ((it.getAvailableWithoutFetching() == 0) && !it.hasNext()) {  // hasNext() blocks, if the next page is not fetched yet
+                        return false;
+                    }
+                    pageFuture = nextPageAsync();
+                }
+                takePage();
+            }
+
+            return true;
+        }
+
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return page.get(position++);
+        }
+
+
+        @Override
+        public int getAvailableWithoutFetching() {
+            if (position >= page.size()) {
+                if ((pageFuture == null) && (it.getAvailableWithoutFetching() > 0)) {
+                    pageFuture = nextPageAsync();
+                }
+
+                if ((pageFuture != null) && pageFuture.isDone()) {
+                    takePage();
+                }
+            }
+
+            return page.size() - position;
+        }
+
+
+        @Override
+        public boolean isFullyFetched() {
+            return (pageFuture == null) && (it.getAvailableWithoutFetching() == 0) && it.isFullyFetched();
+        }
+
+
+        @Override
+        public ListenableFuture<ResultSet> fetchMoreResultsAsync() {
+            if (pageFuture == null) {
+                if (it.getAvailableWithoutFetching() > 0) {
+                    pageFuture = nextPageAsync();
+
+                } else {
+                    // the interception of the fetched page will be started by the next getAvailableWithoutFetching() call
+                    return it.isFullyFetched() ? Futures.<ResultSet>immediateFuture(null) : it.fetchMoreResultsAsync();
+                }
+            }
+
+            return Futures.transform(pageFuture, Functions.<ResultSet>constant(null), MoreExecutors.directExecutor());
+        }
+
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.oneandone.troilus.MetadataCatalog.TableSchema;
+import net.oneandone.troilus.java7.Record;
+import net.oneandone.troilus.java7.ResultList;
+import net.oneandone.troilus.java7.interceptor.ReadQueryData;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Session;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/**
+ * Coalesces the single-key reads of a table within the JVM. The reads arriving within the
+ * window are collected and dispatched as a batch, if the window expires or the max batch
+ * size is reached. Reads of the same partition which differ in the last clustering key only
+ * are performed as one grouped read by using an IN restriction on the last clustering key.
+ * All other reads are performed concurrently. Identical reads are performed once.
+ * 
+ * A coalescer exists per table, window and max batch size. Reads are grouped, if they use the
+ * same session, consistency level and columns. The other settings of a grouped read such as
+ * the interceptors or the tracking are taken from the first read of the group  
+ */
+final class ReadCoalescer {
+
+    private static final ConcurrentMap<CoalescerKey, ReadCoalescer> COALESCERS = Maps.newConcurrentMap();
+    private static final ScheduledExecutorService COALESCE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                                                                           .setNameFormat("troilus-coalesce-%d")
+                                                                                                                                           .build());
+
+    private final Tablename tablename;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final Object lock = new Object();
+    private Batch pendingBatch = new Batch();  // guarded by lock
+
+
+    private ReadCoalescer(Tablename tablename, long windowMillis, int maxBatchSize) {
+        this.tablename = tablename;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+
+    /**
+     * @param tablename     the tablename
+     * @param windowMillis  the max time a read is delayed to be coalesced with other reads
+     * @param maxBatchSize  the number of collected reads which triggers the batch immediately
+     * @return the (JVM-wide) coalescer of the table and settings
+     */
+    static ReadCoalescer get(Tablename tablename, long windowMillis, int maxBatchSize) {
+        final CoalescerKey key = new CoalescerKey(tablename, windowMillis, maxBatchSize);
+        ReadCoalescer coalescer = COALESCERS.get(key);
+        if (coalescer == null) {
+            ReadCoalescer newCoalescer = new ReadCoalescer(tablename, windowMillis, maxBatchSize);
+            coalescer = COALESCERS.putIfAbsent(key, newCoalescer);
+            if (coalescer == null) {
+                coalescer = newCoalescer;
+            }
+        }
+        return coalescer;
+    }
+
+
+    /**
+     * @param catalog  the catalog
+     * @param data     the read query data
+     * @return true, if the read selects a single row by its complete primary key
+     */
+    static boolean isCoalescable(MetadataCatalog catalog, ReadQueryData data) {
+        if (!data.getWhereConditions().isEmpty() ||
+            (data.getLimit() != null) ||
+            Boolean.TRUE.equals(data.getAllowFiltering()) ||
+            Boolean.TRUE.equals(data.getDistinct())) {
+            return false;
+        }
+
+        for (ImmutableList<Object> values : data.getKeys().values()) {
+            if (values.size() != 1) {
+                return false;
+            }
+        }
+
+        final TableSchema schema = catalog.getTableSchema(data.getTablename());
+        return (data.getKeys().size() == (schema.getPartitionKeyNames().size() + schema.getClusteringKeyNames().size())) &&
+               data.getKeys().keySet().containsAll(schema.getPartitionKeyNames()) &&
+               data.getKeys().keySet().containsAll(schema.getClusteringKeyNames());
+    }
+
+
+    /**
+     * @param ctx   the context
+     * @param data  the read query data of a coalescable read
+     * @return the record future. The record is null, if the row does not exist
+     */
+    ListenableFuture<Record> executeAsync(Context ctx, ReadQueryData data) {
+        final PendingRead read = new PendingRead(ctx, data);
+
+        final Batch batch;
+        final boolean isFirstRead;
+        final boolean isBatchFull;
+        synchronized (lock) {
+            batch = pendingBatch;
+            batch.add(read);
+
+            isFirstRead = (batch.size() == 1);
+            isBatchFull = (batch.size() >= maxBatchSize);
+            if (isBatchFull) {
+                pendingBatch = new Batch();
+            }
+        }
+
+        if (isBatchFull) {
+            dispatch(batch);
+
+        // first read of the window starts the timer
+        } else if (isFirstRead) {
+            COALESCE_SCHEDULER.schedule(new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                flush(batch);
+                                            }
+                                        }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return read.getFuture();
+    }
+
+
+    private void flush(Batch batch) {
+        synchronized (lock) {
+            // batch has already been dispatched because max batch size is reached?
+            if (pendingBatch != batch) {
+                return;
+            }
+            pendingBatch = new Batch();
+        }
+
+        dispatch(batch);
+    }
+
+
+    private void dispatch(Batch batch) {
+        try {
+            final ImmutableList<String> clusteringKeyNames = batch.getReads().get(0).getContext().getCatalog().getTableSchema(tablename).getClusteringKeyNames();
+            final String lastKeyName = clusteringKeyNames.isEmpty() ? null : clusteringKeyNames.get(clusteringKeyNames.size() - 1);
+    
+            final ListMultimap<GroupKey, PendingRead> groups = LinkedListMultimap.create();
+            for (PendingRead read : batch.getReads()) {
+                groups.put(new GroupKey(read, lastKeyName), read);
+            }
+    
+            for (GroupKey groupKey : groups.keySet()) {
+                dispatchGroup(groupKey, lastKeyName, groups.get(groupKey));
+            }
+            
+        } catch (RuntimeException rt) {
+            fail(batch.getReads(), rt);  // already dispatched reads are not affected
+        }
+    }
+
+
+    private void dispatchGroup(GroupKey groupKey, String lastKeyName, List<PendingRead> reads) {
+        if (lastKeyName == null) {
+            readSingleAsync(reads);
+            return;
+        }
+
+        final ListMultimap<Object, PendingRead> readsByValue = LinkedListMultimap.create();
+        for (PendingRead read : reads) {
+            readsByValue.put(read.getData().getKeys().get(lastKeyName).get(0), read);
+        }
+
+        if (readsByValue.keySet().size() == 1) {
+            readSingleAsync(reads);
+            return;
+        }
+
+        // the last clustering key values are serialized to assign the returned rows
+        final Context ctx = groupKey.getContext();
+        final Map<ByteBuffer, List<PendingRead>> readsBySerializedValue = Maps.newHashMap();
+        try {
+            for (Object value : readsByValue.keySet()) {
+                final ByteBuffer serializedValue = ctx.getUDTValueMapper().serialize(ctx.getUDTValueMapper().toStatementValue(tablename, lastKeyName, value));
+                readsBySerializedValue.put(serializedValue, readsByValue.get(value));
+            }
+        } catch (RuntimeException rt) {
+            // values can not be assigned. perform the reads concurrently
+            for (Object value : readsByValue.keySet()) {
+                readSingleAsync(readsByValue.get(value));
+            }
+            return;
+        }
+
+        readGroupedAsync(groupKey, lastKeyName, ImmutableList.copyOf(readsByValue.keySet()), readsBySerializedValue);
+    }
+
+
+    private void readSingleAsync(final List<PendingRead> reads) {
+        final PendingRead read = reads.get(0);
+        final ListenableFuture<ResultList<Record>> recordsFuture = new ListReadQuery(read.getContext(), read.getData()).executeAsync();
+
+        Futures.addCallback(recordsFuture,
+                            new FutureCallback<ResultList<Record>>() {
+
+                                @Override
+                                public void onSuccess(ResultList<Record> records) {
+                                    final Iterator<Record> it = records.iterator();
+                                    if (it.hasNext()) {
+                                        final Record record = it.next();
+                                        if (it.hasNext()) {
+                                            onFailure(new TooManyResultsException(records, "more than one record exists"));
+                                        } else {
+                                            complete(reads, record);
+                                        }
+                                    } else {
+                                        complete(reads, null);
+                                    }
+                                }
+
+                                @Override
+                                public void onFailure(Throwable error) {
+                                    fail(reads, error);
+                                }
+                            },
+                            MoreExecutors.directExecutor());
+    }
+
+
+    private void readGroupedAsync(GroupKey groupKey,
+                                  final String lastKeyName,
+                                  ImmutableList<Object> values,
+                                  final Map<ByteBuffer, List<PendingRead>> readsBySerializedValue) {
+
+        final ImmutableMap<String, Boolean> columnsToFetch = (groupKey.getColumnsToFetch().isEmpty() || groupKey.getColumnsToFetch().containsKey(lastKeyName)) ? groupKey.getColumnsToFetch()
+                                                                                                                                                              : Immutables.join(groupKey.getColumnsToFetch(), lastKeyName, false);
+
+        // the fetch size ensures that all rows are returned by the first page
+        final ReadQueryData data = new ReadQueryDataImpl(tablename).keys(Immutables.join(groupKey.getKeys(), lastKeyName, values))
+                                                                   .columnsToFetch(columnsToFetch)
+                                                                   .fetchSize(values.size() + 1);
+        final ListenableFuture<ResultList<Record>> recordsFuture = new ListReadQuery(groupKey.getContext(), data).executeAsync();
+
+        Futures.addCallback(recordsFuture,
+                            new FutureCallback<ResultList<Record>>() {
+
+                                @Override
+                                public void onSuccess(ResultList<Record> records) {
+                                    for (Record record : records) {
+                                        final List<PendingRead> reads = readsBySerializedValue.get(record.getBytesUnsafe(lastKeyName));
+                                        if (reads != null) {
+                                            complete(reads, record);
+                                        }
+                                    }
+
+                                    // reads without row
+                                    for (List<PendingRead> reads : readsBySerializedValue.values()) {
+                                        complete(reads, null);
+                                    }
+                                }
+
+                                @Override
+                                public void onFailure(Throwable error) {
+                                    for (List<PendingRead> reads : readsBySerializedValue.values()) {
+                                        fail(reads, error);
+                                    }
+                                }
+                            },
+                            MoreExecutors.directExecutor());
+    }
+
+
+    private static void complete(List<PendingRead> reads, Record record) {
+        for (PendingRead read : reads) {
+            read.getFuture().set(record);  // will be ignored, if already completed
+        }
+    }
+
+    private static void fail(List<PendingRead> reads, Throwable error) {
+        for (PendingRead read : reads) {
+            read.getFuture().setException(error);
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("tablename", tablename)
+                          .add("windowMillis", windowMillis)
+                          .add("maxBatchSize", maxBatchSize)
+                          .toString();
+    }
+
+
+
+    private static final class CoalescerKey {
+        private final Tablename tablename;
+        private final long windowMillis;
+        private final int maxBatchSize;
+
+        CoalescerKey(Tablename tablename, long windowMillis, int maxBatchSize) {
+            this.tablename = tablename;
+            this.windowMillis = windowMillis;
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof CoalescerKey) &&
+                   ((CoalescerKey) other).tablename.equals(this.tablename) &&
+                   (((CoalescerKey) other).windowMillis == this.windowMillis) &&
+                   (((CoalescerKey) other).maxBatchSize == this.maxBatchSize);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(tablename, windowMillis, maxBatchSize);
+        }
+    }
+
+
+    private static final class Batch {
+        private final List<PendingRead> reads = Lists.newArrayList();  // guarded by coalescer lock
+
+        void add(PendingRead read) {
+            reads.add(read);
+        }
+
+        int size() {
+            return reads.size();
+        }
+
+        List<PendingRead> getReads() {
+            return reads;
+        }
+    }
+
+
+    private static final class PendingRead {
+        private final Context ctx;
+        private final ReadQueryData data;
+        private final SettableFuture<Record> future = SettableFuture.create();
+
+        PendingRead(Context ctx, ReadQueryData data) {
+            this.ctx = ctx;
+            this.data = data;
+        }
+
+        Context getContext() {
+            return ctx;
+        }
+
+        ReadQueryData getData() {
+            return data;
+        }
+
+        SettableFuture<Record> getFuture() {
+            return future;
+        }
+    }
+
+
+    /**
+     * Reads with the same group key differ in the last clustering key only. The table is given
+     * by the coalescer. The session is compared by identity
+     */
+    private static final class GroupKey {
+        private final Context ctx;   // context of the first read, not part of the key 
+        private final Session session;
+        private final ConsistencyLevel consistencyLevel;
+        private final ImmutableMap<String, Boolean> columnsToFetch;
+        private final ImmutableMap<String, ImmutableList<Object>> keys;
+
+        GroupKey(PendingRead read, String lastKeyName) {
+            this.ctx = read.getContext();
+            this.session = ctx.getDefaultDbSession().getSession();
+            this.consistencyLevel = ctx.getExecutionSpec().getConsistencyLevel();
+            this.columnsToFetch = read.getData().getColumnsToFetch();
+
+            final ImmutableMap.Builder<String, ImmutableList<Object>> builder = ImmutableMap.builder();
+            for (Entry<String, ImmutableList<Object>> entry : read.getData().getKeys().entrySet()) {
+                if (!entry.getKey().equals(lastKeyName)) {
+                    builder.put(entry);
+                }
+            }
+            this.keys = builder.build();
+        }
+
+        Context getContext() {
+            return ctx;
+        }
+
+        ImmutableMap<String, Boolean> getColumnsToFetch() {
+            return columnsToFetch;
+        }
+
+        ImmutableMap<String, ImmutableList<Object>> getKeys() {
+            return keys;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof GroupKey) &&
+                   (((GroupKey) other).session == this.session) &&
+                   Objects.equal(((GroupKey) other).consistencyLevel, this.consistencyLevel) &&
+                   ((GroupKey) other).columnsToFetch.equals(this.columnsToFetch) &&
+                   ((GroupKey) other).keys.equals(this.keys);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(System.identityHashCode(session), consistencyLevel, columnsToFetch, keys);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.datastax.driver.core.ResultSet;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/**
+ * Hedges the reads of a table within the JVM. If the first attempt of a read is not 
+ * completed within the latency percentile measured for the table, a duplicate request 
+ * will be sent. The first response wins and the other request will be cancelled. The 
+ * number of hedged requests is limited by a budget, which is refilled by each read 
+ * with the max extra load (token bucket) 
+ */
+final class ReadHedger implements HedgeMetrics {
+    
+    private static final int MAX_SAMPLES = 1024;
+    private static final int MIN_SAMPLES = 100;
+    private static final long THRESHOLD_REFRESH_MILLIS = 1000;
+    private static final long TOKEN_UNIT = 1000;
+    private static final long MAX_TOKENS = 100 * TOKEN_UNIT; 
+
+    private static final ConcurrentMap<Tablename, ReadHedger> HEDGERS = Maps.newConcurrentMap();
+    private static final ScheduledExecutorService HEDGE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                                                                        .setNameFormat("troilus-hedge-%d")
+                                                                                                                                        .build());
+    
+    private final Tablename tablename;
+    private final AtomicLongArray latencySamplesMicros = new AtomicLongArray(MAX_SAMPLES);
+    private final AtomicLong numSamples = new AtomicLong();
+    private final ConcurrentMap<Double, LatencyThreshold> thresholds = Maps.newConcurrentMap();
+    private final AtomicLong hedgeTokens = new AtomicLong();
+    private final AtomicLong numReads = new AtomicLong();
+    private final AtomicLong numHedged = new AtomicLong();
+    private final AtomicLong numHedgeWins = new AtomicLong();
+    
+    
+    private ReadHedger(Tablename tablename) {
+        this.tablename = tablename;
+    }
+    
+    
+    /**
+     * @param tablename the tablename
+     * @return the (JVM-wide) hedger of the table
+     */
+    static ReadHedger get(Tablename tablename) {
+        ReadHedger hedger = HEDGERS.get(tablename);
+        if (hedger == null) {
+            ReadHedger newHedger = new ReadHedger(tablename);
+            hedger = HEDGERS.putIfAbsent(tablename, newHedger);
+            if (hedger == null) {
+                hedger = newHedger;
+            }
+        }
+        return hedger;
+    }
+    
+    
+    /**
+     * @param read           the supplier which performs the read request. The supplier will be called twice, if the read is hedged  
+     * @param isIdempotent   true, if the read is idempotent. Non-idempotent reads will never be hedged 
+     * @param percentile     the latency percentile such as 0.95 after which the hedged request is sent
+     * @param maxExtraLoad   the max ratio of hedged requests such as 0.05
+     * @return the result set future
+     */
+    ListenableFuture<ResultSet> executeAsync(final Supplier<ListenableFuture<ResultSet>> read, 
+                                             final boolean isIdempotent,
+                                             final double percentile,
+                                             final double maxExtraLoad) {
+        numReads.incrementAndGet();
+        refill(maxExtraLoad);
+        
+        final SettableFuture<ResultSet> resultFuture = SettableFuture.create();
+        final AtomicInteger numRunning = new AtomicInteger(1);
+        cancelOnCompletion(resultFuture, performAsync(read, false, numRunning, resultFuture));
+
+        long delayMicros = isIdempotent ? getThresholdMicros(percentile) : -1;
+        if (delayMicros >= 0) {
+            final ScheduledFuture<?> hedgeTimer = HEDGE_SCHEDULER.schedule(new Runnable() {
+                                                                                @Override
+                                                                                public void run() {
+                                                                                    if (!resultFuture.isDone() && tryAcquireToken()) {
+                                                                                        numHedged.incrementAndGet();
+                                                                                        numRunning.incrementAndGet();
+                                                                                        cancelOnCompletion(resultFuture, performAsync(read, true, numRunning, resultFuture));
+                                                                                    }
+                                                                                }
+                                                                           }, delayMicros, TimeUnit.MICROSECONDS);
+            cancelOnCompletion(resultFuture, hedgeTimer);
+        }
+        
+        return resultFuture;
+    }
+    
+    
+    private ListenableFuture<ResultSet> performAsync(final Supplier<ListenableFuture<ResultSet>> read, 
+                                                     final boolean isHedged, 
+                                                     final AtomicInteger numRunning,
+                                                     final SettableFuture<ResultSet> resultFuture) {
+        final long startNanos = System.nanoTime();
+        
+        ListenableFuture<ResultSet> future;
+        try {
+            future = read.get();
+        } catch (RuntimeException rt) {
+            future = Futures.immediateFailedFuture(rt);
+        }
+        
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            
+                                        @Override
+                                        public void onSuccess(ResultSet rs) {
+                                            addSample(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+                                            if (resultFuture.set(rs) && isHedged) {
+                                                numHedgeWins.incrementAndGet();
+                                            }
+                                        }
+                                        
+                                        @Override
+                                        public void onFailure(Throwable error) {
+                                            // a failed request is not reported as long as the other one is running   
+                                            if (numRunning.decrementAndGet() == 0) {
+                                                resultFuture.setException(error);
+                                            }
+                                        }
+                                    },
+                            MoreExecutors.directExecutor());
+        
+        return future;
+    }
+    
+    
+    private static void cancelOnCompletion(ListenableFuture<ResultSet> resultFuture, final Future<?> future) {
+        resultFuture.addListener(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        // no-op, if the future is the completed one 
+                                        future.cancel(true);
+                                    }
+                                 }, MoreExecutors.directExecutor());
+    }
+    
+    
+    private void refill(double maxExtraLoad) {
+        long deposit = (long) (maxExtraLoad * TOKEN_UNIT);
+        long tokens;
+        do {
+            tokens = hedgeTokens.get();
+        } while (!hedgeTokens.compareAndSet(tokens, Math.min(MAX_TOKENS, tokens + deposit)));
+    }
+    
+    
+    private boolean tryAcquireToken() {
+        long tokens;
+        do {
+            tokens = hedgeTokens.get();
+            if (tokens < TOKEN_UNIT) {
+                return false;
+            }
+        } while (!hedgeTokens.compareAndSet(tokens, tokens - TOKEN_UNIT));
+        return true;
+    }
+    
+    
+    private void addSample(long latencyMicros) {
+        int idx = (int) (numSamples.getAndIncrement() % MAX_SAMPLES);
+        latencySamplesMicros.set(idx, latencyMicros);
+    }
+    
+    
+    private long getThresholdMicros(double percentile) {
+        long nowMillis = System.currentTimeMillis();
+        LatencyThreshold threshold = thresholds.get(percentile);
+        if ((threshold == null) || (threshold.getComputedMillis() + THRESHOLD_REFRESH_MILLIS < nowMillis)) {
+            threshold = new LatencyThreshold(getLatencyMicros(percentile), nowMillis);
+            thresholds.put(percentile, threshold);
+        }
+        return threshold.getLatencyMicros();
+    }
+    
+    
+    @Override
+    public long getLatencyMicros(double percentile) {
+        int size = (int) Math.min(numSamples.get(), MAX_SAMPLES);
+        if (size < MIN_SAMPLES) {
+            return -1;
+        }
+        
+        long[] samples = new long[size];
+        for (int i = 0; i < size; i++) {
+            samples[i] = latencySamplesMicros.get(i);
+        }
+        Arrays.sort(samples);
+        
+        int idx = (int) Math.ceil(percentile * size) - 1;
+        return samples[Math.max(0, Math.min(size - 1, idx))];
+    }
+    
+    @Override
+    public long getNumReads() {
+        return numReads.get();
+    }
+    
+    @Override
+    public long getNumHedged() {
+        return numHedged.get();
+    }
+    
+    @Override
+    public long getNumHedgeWins() {
+        return numHedgeWins.get();
+    }
+    
+    @Override
+    public double getHedgeWinRate() {
+        long hedged = numHedged.get();
+        return (hedged == 0) ? 0 : ((double) numHedgeWins.get()) / hedged;
+    }
+    
+    
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("tablename", tablename)
+                          .add("numReads", getNumReads())
+                          .add("numHedged", getNumHedged())
+                          .add("numHedgeWins", getNumHedgeWins())
+                          .toString();
+    }
+    
+    
+    
+    private static final class LatencyThreshold {
+        private final long latencyMicros;
+        private final long computedMillis;
+        
+        LatencyThreshold(long latencyMicros, long computedMillis) {
+            this.latencyMicros = latencyMicros;
+            this.computedMillis = computedMillis;
+        }
+        
+        long getLatencyMicros() {
+            return latencyMicros;
+        }
+        
+        long getComputedMillis() {
+            return computedMillis;
+        }
+    }
+}
@@ -18,7 +18,9 @@ package net.oneandone.troilus;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gt;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.in;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.lt;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
 
 import java.util.List;
@@ -243,6 +245,23 @@ class ReadQueryDataImpl implements ReadQueryData {
      * @return  the query as statement
      */
     static ListenableFuture<Statement> toStatementAsync(ReadQueryData data, UDTValueMapper udtValueMapper, DBSession dbSession) {
+        return toStatementAsync(data, ImmutableMap.<String, Object>of(), false, udtValueMapper, dbSession);
+    }
+    
+    
+    /**
+     * @param data          the query data
+     * @param seekKey       the (ordered) clustering key to seek or empty  
+     * @param isDescending  true, if the records behind the seek key are lower than the seek key 
+     * @param udtValueMapper the udt value mapper
+     * @param dbSession     the db session
+     * @return  the query as statement
+     */
+    static ListenableFuture<Statement> toStatementAsync(ReadQueryData data, 
+                                                        ImmutableMap<String, Object> seekKey, 
+                                                        boolean isDescending, 
+                                                        UDTValueMapper udtValueMapper, 
+                                                        DBSession dbSession) {
         final Select.Selection selection = select();
 
         if ((data.getDistinct() != null) && data.getDistinct()) {
@@ -303,6 +322,7 @@ class ReadQueryDataImpl implements ReadQueryData {
             for (Clause whereClause : data.getWhereConditions()) {
                 select.where(whereClause);
             }
+            select.setIdempotent(true);
             
             return Futures.<Statement>immediateFuture(select);
 
@@ -322,9 +342,21 @@ class ReadQueryDataImpl implements ReadQueryData {
                 
             }
             
+            // keyset-based selection
+            if (!seekKey.isEmpty()) {
+                final List<Object> markers = Lists.newArrayList();
+                for (Object value : seekKey.values()) {
+                    markers.add(bindMarker());
+                    values.add(value);
+                }
+                
+                final List<String> names = seekKey.keySet().asList();
+                select.where(isDescending ? lt(names, markers) : gt(names, markers));
+            }
+            
 
             final ListenableFuture<PreparedStatement> preparedStatementFuture = dbSession.prepareAsync(select);
-            return dbSession.bindAsync(preparedStatementFuture, values.toArray());
+            return dbSession.bindAsync(preparedStatementFuture, values.toArray(), true);
         }
     }   
     
@@ -0,0 +1,42 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+
+/**
+ * Read-your-writes session which is typically scoped to a single user request. The session 
+ * remembers the key-based writes and deletes which have been performed through it, together 
+ * with their writetimes. Key-based single row reads through the session merge the remembered 
+ * values over the database result. If the remembered values cover the requested columns, the 
+ * read is answered by the session without querying the database. This provides 
+ * read-your-writes consistency for reads and writes with a low consistency level such as 
+ * LOCAL_ONE.<br>
+ * Collection deltas, batches and where condition based mutations are not remembered. A where
+ * condition based mutation makes the session forget the rows of the table
+ */
+public interface ReadYourWritesSession {
+
+    /**
+     * @return the number of rows remembered by the session
+     */
+    int getNumTrackedRows();
+
+    /**
+     * forgets the remembered writes and deletes
+     */
+    void clear();
+}
@@ -0,0 +1,927 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.oneandone.troilus.MetadataCatalog.TableSchema;
+import net.oneandone.troilus.UDTValueMapper.ColumnPlan;
+import net.oneandone.troilus.interceptor.DeleteQueryData;
+import net.oneandone.troilus.java7.Record;
+import net.oneandone.troilus.java7.interceptor.ReadQueryData;
+import net.oneandone.troilus.java7.interceptor.WriteQueryData;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.TupleValue;
+import com.datastax.driver.core.UDTValue;
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+
+
+/**
+ * Read-your-writes session implementation. The session remembers the column values of 
+ * key-based writes and the deletions per row. Writes through the session are performed with 
+ * an explicit writetime, so that the remembered values can be compared with the writetimes of 
+ * the database values. A database value wins, if it is newer than the remembered value.<br>
+ * Lightweight transactions are applied with the Paxos timestamp of the server. Their columns 
+ * are remembered as unknown, so that they are read from the database.<br>
+ * A read is answered by the session, if remembered values cover the requested columns and at 
+ * least one of them is not null. Otherwise the database is read, by fetching the writetimes of 
+ * the remembered columns additionally
+ */
+class ReadYourWritesSessionImpl implements ReadYourWritesSession {
+    
+    private final AtomicLong lastWritetime = new AtomicLong();
+    
+    private final Map<Tablename, Map<ImmutableMap<String, Object>, LocalRow>> tables = Maps.newHashMap();  // guarded by this
+    private final List<RangeDeletion> rangeDeletions = Lists.newArrayList();                                 // guarded by this
+    
+    
+    /**
+     * @return a new unique writetime in micros
+     */
+    long newWritetime() {
+        while (true) {
+            long last = lastWritetime.get();
+            long writetime = Math.max(System.currentTimeMillis() * 1000, last + 1);
+            if (lastWritetime.compareAndSet(last, writetime)) {
+                return writetime;
+            }
+        }
+    }
+    
+    
+    @Override
+    public synchronized int getNumTrackedRows() {
+        int num = 0;
+        for (Map<ImmutableMap<String, Object>, LocalRow> rows : tables.values()) {
+            num += rows.size();
+        }
+        return num;
+    }
+    
+    
+    @Override
+    public synchronized void clear() {
+        tables.clear();
+        rangeDeletions.clear();
+    }
+    
+    
+    private synchronized void forget(Tablename tablename) {
+        tables.remove(tablename);
+        
+        List<RangeDeletion> deletions = Lists.newArrayList();
+        for (RangeDeletion deletion : rangeDeletions) {
+            if (!deletion.tablename.equals(tablename)) {
+                deletions.add(deletion);
+            }
+        }
+        rangeDeletions.clear();
+        rangeDeletions.addAll(deletions);
+    }
+    
+    
+    // guarded by this
+    private LocalRow getOrCreateRow(Tablename tablename, ImmutableMap<String, Object> key) {
+        Map<ImmutableMap<String, Object>, LocalRow> rows = tables.get(tablename);
+        if (rows == null) {
+            rows = Maps.newHashMap();
+            tables.put(tablename, rows);
+        }
+        
+        LocalRow row = rows.get(key);
+        if (row == null) {
+            row = new LocalRow();
+            
+            // range deletions which have been performed before  
+            for (RangeDeletion deletion : rangeDeletions) {
+                if (deletion.matches(tablename, key)) {
+                    row.delete(deletion.writetime);
+                }
+            }
+            rows.put(key, row);
+        }
+        return row;
+    }
+    
+    
+    
+    ////////////////////////////////
+    // write tracking
+    
+    /**
+     * remembers a successful write
+     * 
+     * @param ctx        the context
+     * @param data       the write data
+     * @param writetime  the writetime in micros
+     * @param ttlSec     the ttl or null
+     */
+    synchronized void onWrite(Context ctx, WriteQueryData data, long writetime, Integer ttlSec) {
+        final ImmutableMap<String, Object> key = toRowKey(ctx, data.getTablename(), data.getKeys());
+        if (!data.getWhereConditions().isEmpty() || (key == null)) {
+            // the written rows are unknown
+            forget(data.getTablename());
+            return;
+        }
+        
+        final TableSchema schema = ctx.getCatalog().getTableSchema(data.getTablename());
+        final Long expireTimeMillis = ((ttlSec == null) || (ttlSec == 0)) ? null : (writetime / 1000) + (ttlSec * 1000L); 
+        final LocalRow row = getOrCreateRow(data.getTablename(), key);
+        
+        for (Entry<String, Optional<Object>> entry : data.getValuesToMutate().entrySet()) {
+            if (isTrackable(schema, entry.getKey())) {
+                row.put(entry.getKey(), LocalValue.of(entry.getValue().orNull(), writetime, expireTimeMillis));
+            }
+        }
+        
+        // the values of collection deltas are unknown
+        for (String name : Iterables.concat(data.getSetValuesToAdd().keySet(),
+                                            data.getSetValuesToRemove().keySet(),
+                                            data.getListValuesToAppend().keySet(),
+                                            data.getListValuesToPrepend().keySet(),
+                                            data.getListValuesToRemove().keySet(),
+                                            data.getMapValuesToMutate().keySet())) {
+            row.put(name, LocalValue.unknown(writetime));
+        }
+    }
+    
+    
+    /**
+     * remembers a successful lightweight transaction. A lightweight transaction is applied with the 
+     * Paxos timestamp of the server instead of a session writetime. For this reason the written 
+     * columns are remembered as unknown and will be read from the database
+     * 
+     * @param ctx   the context
+     * @param data  the write data
+     */
+    synchronized void onConditionalWrite(Context ctx, WriteQueryData data) {
+        final ImmutableMap<String, Object> key = toRowKey(ctx, data.getTablename(), data.getKeys());
+        if (!data.getWhereConditions().isEmpty() || (key == null)) {
+            forget(data.getTablename());
+            return;
+        }
+        
+        final TableSchema schema = ctx.getCatalog().getTableSchema(data.getTablename());
+        final long writetime = newWritetime();   // orders the remembered changes only 
+        final LocalRow row = getOrCreateRow(data.getTablename(), key);
+        
+        for (String name : Iterables.concat(data.getValuesToMutate().keySet(),
+                                            data.getSetValuesToAdd().keySet(),
+                                            data.getSetValuesToRemove().keySet(),
+                                            data.getListValuesToAppend().keySet(),
+                                            data.getListValuesToPrepend().keySet(),
+                                            data.getListValuesToRemove().keySet(),
+                                            data.getMapValuesToMutate().keySet())) {
+            if (isTrackable(schema, name)) {
+                row.put(name, LocalValue.unknown(writetime));
+            }
+        }
+    }
+    
+    
+    /**
+     * remembers a successful delete
+     * 
+     * @param ctx        the context
+     * @param data       the delete data
+     * @param writetime  the writetime in micros
+     */
+    synchronized void onDelete(Context ctx, DeleteQueryData data, long writetime) {
+        if (!data.getWhereConditions().isEmpty()) {
+            forget(data.getTablename());
+            return;
+        }
+        
+        final ImmutableMap<String, Object> key = toRowKey(ctx, data.getTablename(), data.getKey());
+        if (!data.getMapValuesToRemove().isEmpty()) {
+            if (key == null) {
+                forget(data.getTablename());
+            } else {
+                LocalRow row = getOrCreateRow(data.getTablename(), key);
+                for (String name : data.getMapValuesToRemove().keySet()) {
+                    row.put(name, LocalValue.unknown(writetime));
+                }
+            }
+            
+        } else if (key != null) {
+            getOrCreateRow(data.getTablename(), key).delete(writetime);
+            
+        } else {
+            // partition or clustering range deletion 
+            RangeDeletion deletion = new RangeDeletion(data.getTablename(), data.getKey(), writetime);
+            rangeDeletions.add(deletion);
+            
+            Map<ImmutableMap<String, Object>, LocalRow> rows = tables.get(data.getTablename());
+            if (rows != null) {
+                for (Entry<ImmutableMap<String, Object>, LocalRow> entry : rows.entrySet()) {
+                    if (deletion.matches(data.getTablename(), entry.getKey())) {
+                        entry.getValue().delete(writetime);
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * remembers a successful lightweight transaction delete. The Paxos timestamp of the deletion 
+     * is unknown. For this reason the row is forgotten and will be read from the database
+     * 
+     * @param ctx   the context
+     * @param data  the delete data
+     */
+    synchronized void onConditionalDelete(Context ctx, DeleteQueryData data) {
+        final ImmutableMap<String, Object> key = toRowKey(ctx, data.getTablename(), data.getKey());
+        if (!data.getWhereConditions().isEmpty() || (key == null)) {
+            forget(data.getTablename());
+            
+        } else {
+            Map<ImmutableMap<String, Object>, LocalRow> rows = tables.get(data.getTablename());
+            if (rows != null) {
+                rows.remove(key);
+            }
+        }
+    }
+    
+    
+    private static boolean isTrackable(TableSchema schema, String name) {
+        return !schema.isPrimaryKey(name) && !schema.getColumnMetadata(name).isStatic();
+    }
+    
+    
+    /**
+     * @return the primary key or null, if the keys do not address a single row 
+     */
+    private static ImmutableMap<String, Object> toRowKey(Context ctx, Tablename tablename, ImmutableMap<String, Object> keys) {
+        final TableSchema schema = ctx.getCatalog().getTableSchema(tablename);
+        if (keys.size() != (schema.getPartitionKeyNames().size() + schema.getClusteringKeyNames().size())) {
+            return null;
+        }
+        
+        for (String name : keys.keySet()) {
+            if (!schema.isPrimaryKey(name)) {
+                return null;
+            }
+        }
+        return keys;
+    }
+    
+    
+    
+    ////////////////////////////////
+    // read
+    
+    /**
+     * performs a single row read
+     * 
+     * @param ctx     the context
+     * @param data    the read data
+     * @param dbRead  the database read
+     * @return the record future. The record is null, if the row does not exist
+     */
+    ListenableFuture<Record> readAsync(final Context ctx, ReadQueryData data, Function<ReadQueryData, ListenableFuture<Record>> dbRead) {
+        final ImmutableMap<String, Object> key = toRowKey(ctx, data);
+        if (key == null) {
+            return dbRead.apply(data);
+        }
+        
+        final Tablename tablename = data.getTablename();
+        final TableSchema schema = ctx.getCatalog().getTableSchema(tablename);
+
+        final ImmutableSet<String> columns;
+        if (data.getColumnsToFetch().isEmpty()) {
+            columns = schema.getColumnNames();
+        } else {
+            columns = data.getColumnsToFetch().keySet();
+        }
+        
+        final ImmutableMap<String, LocalValue> localValues;
+        final Long deletionWritetime;
+        synchronized (this) {
+            Map<ImmutableMap<String, Object>, LocalRow> rows = tables.get(tablename);
+            LocalRow row = (rows == null) ? null : rows.get(key);
+            if (row == null) {
+                return dbRead.apply(data);
+            }
+            localValues = row.getValues(System.currentTimeMillis());
+            deletionWritetime = row.deletionWritetime;
+        }
+        
+        
+        // answer by the session? A deleted row is read from the database to detect newer writes of other clients
+        boolean isCovered = true;
+        boolean hasValue = false;
+        for (String name : columns) {
+            if (schema.getColumnMetadata(name).isStatic()) {
+                isCovered = false;
+            } else if (!schema.isPrimaryKey(name)) {
+                LocalValue localValue = localValues.get(name);
+                if ((localValue == null) && (deletionWritetime == null)) {
+                    isCovered = false;
+                } else if ((localValue != null) && !localValue.isKnown()) {
+                    isCovered = false;
+                } else if ((localValue != null) && (localValue.getValue() != null)) {
+                    hasValue = true;
+                }
+            }
+        }
+        
+        if (isCovered && hasValue) {
+            return Futures.<Record>immediateFuture(new SessionRecord(ctx, tablename, null, toLocalValues(key), merge(null, schema, columns, localValues, deletionWritetime)));
+        }
+        
+        
+        // read the database including the writetimes of the remembered columns 
+        final Map<String, Boolean> columnsToFetch = Maps.newLinkedHashMap();
+        for (String name : columns) {
+            boolean isRemembered = (localValues.containsKey(name) || (deletionWritetime != null)) && isTrackable(schema, name);
+            Boolean withMetadata = data.getColumnsToFetch().get(name);
+            columnsToFetch.put(name, ((withMetadata != null) && withMetadata) || (isRemembered && hasWritetime(schema.getDataType(name))));
+        }
+        
+        final Function<Record, Record> mergeFunction = new Function<Record, Record>() {
+            @Override
+            public Record apply(Record record) {
+                final ImmutableMap<String, LocalValue> mergedValues = merge(record, schema, columns, localValues, deletionWritetime);
+                
+                // deleted through the session and not written after the deletion?
+                if ((deletionWritetime != null) && !hasNonKeyValue(record, schema, columns, mergedValues)) {
+                    return null;
+                }
+                
+                if ((record == null) && mergedValues.isEmpty()) {
+                    return null;
+                }
+                return new SessionRecord(ctx, tablename, record, toLocalValues(key), mergedValues);
+            }
+        };
+        return Futures.transform(dbRead.apply(data.columnsToFetch(ImmutableMap.copyOf(columnsToFetch))), mergeFunction, MoreExecutors.directExecutor());
+    }
+    
+    
+    private static boolean hasWritetime(DataType dataType) {
+        return (!dataType.isCollection() || dataType.isFrozen()) && !dataType.equals(DataType.counter());
+    }
+    
+    
+    /**
+     * @return the key or null, if the read does not address a single row
+     */
+    private static ImmutableMap<String, Object> toRowKey(Context ctx, ReadQueryData data) {
+        if (!data.getWhereConditions().isEmpty() || ((data.getDistinct() != null) && data.getDistinct())) {
+            return null;
+        }
+        
+        Map<String, Object> keys = Maps.newHashMap();
+        for (Entry<String, ImmutableList<Object>> entry : data.getKeys().entrySet()) {
+            if (entry.getValue().size() != 1) {
+                return null;
+            }
+            keys.put(entry.getKey(), entry.getValue().get(0));
+        }
+        return toRowKey(ctx, data.getTablename(), ImmutableMap.copyOf(keys));
+    }
+    
+    
+    private static ImmutableMap<String, LocalValue> toLocalValues(ImmutableMap<String, Object> key) {
+        ImmutableMap.Builder<String, LocalValue> values = ImmutableMap.builder();
+        for (Entry<String, Object> entry : key.entrySet()) {
+            values.put(entry.getKey(), LocalValue.of(entry.getValue(), null, null));
+        }
+        return values.build();
+    }
+    
+    
+    /**
+     * @return the remembered values which win over the database values
+     */
+    private static ImmutableMap<String, LocalValue> merge(Record record, 
+                                                          TableSchema schema,
+                                                          ImmutableSet<String> columns, 
+                                                          ImmutableMap<String, LocalValue> localValues, 
+                                                          Long deletionWritetime) {
+        Map<String, LocalValue> mergedValues = Maps.newHashMap();
+        
+        for (String name : columns) {
+            if (!isTrackable(schema, name)) {
+                continue;
+            }
+            
+            LocalValue localValue = localValues.get(name);
+            if ((localValue == null) && (deletionWritetime != null)) {
+                localValue = LocalValue.of(null, deletionWritetime, null);  // deleted 
+            }
+            
+            if ((localValue != null) && localValue.isKnown()) {
+                Long dbWritetime = (record == null) ? null : record.getWritetime(name);
+                if ((dbWritetime == null) || (dbWritetime <= localValue.getWritetime())) {
+                    mergedValues.put(name, localValue);
+                }
+            }
+        }
+        
+        return ImmutableMap.copyOf(mergedValues);
+    }
+    
+    
+    private static boolean hasNonKeyValue(Record record, TableSchema schema, ImmutableSet<String> columns, ImmutableMap<String, LocalValue> mergedValues) {
+        for (String name : columns) {
+            if (!schema.isPrimaryKey(name)) {
+                LocalValue mergedValue = mergedValues.get(name);
+                if (mergedValue == null) {
+                    if ((record != null) && !record.isNull(name)) {
+                        return true;
+                    }
+                } else if (mergedValue.getValue() != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("tables", tables)
+                          .add("rangeDeletions", rangeDeletions.size())
+                          .toString();
+    }
+    
+    
+    
+    private static final class LocalRow {
+        private final Map<String, LocalValue> values = Maps.newHashMap();
+        private Long deletionWritetime = null;
+        
+        void put(String name, LocalValue value) {
+            LocalValue existing = values.get(name);
+            if (((existing == null) || (existing.getWritetime() <= value.getWritetime())) &&
+                ((deletionWritetime == null) || (deletionWritetime < value.getWritetime()))) {
+                values.put(name, value);
+            }
+        }
+        
+        void delete(long writetime) {
+            if ((deletionWritetime == null) || (deletionWritetime < writetime)) {
+                deletionWritetime = writetime;
+                
+                for (String name : Sets.newHashSet(values.keySet())) {
+                    if (values.get(name).getWritetime() <= writetime) {
+                        values.remove(name);
+                    }
+                }
+            }
+        }
+        
+        ImmutableMap<String, LocalValue> getValues(long nowMillis) {
+            ImmutableMap.Builder<String, LocalValue> builder = ImmutableMap.builder();
+            for (Entry<String, LocalValue> entry : values.entrySet()) {
+                builder.put(entry.getKey(), entry.getValue().isExpired(nowMillis) ? LocalValue.of(null, entry.getValue().getWritetime(), null)
+                                                                                   : entry.getValue());
+            }
+            return builder.build();
+        }
+        
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("values", values)
+                              .add("deletionWritetime", deletionWritetime)
+                              .toString();
+        }
+    }
+    
+    
+    
+    private static final class RangeDeletion {
+        private final Tablename tablename;
+        private final ImmutableMap<String, Object> key;
+        private final long writetime;
+        
+        RangeDeletion(Tablename tablename, ImmutableMap<String, Object> key, long writetime) {
+            this.tablename = tablename;
+            this.key = key;
+            this.writetime = writetime;
+        }
+        
+        boolean matches(Tablename tablename, ImmutableMap<String, Object> rowKey) {
+            return this.tablename.equals(tablename) && rowKey.entrySet().containsAll(key.entrySet());
+        }
+    }
+    
+    
+    
+    /**
+     * a remembered column value
+     */
+    static final class LocalValue {
+        private final Object value;
+        private final Long writetime;
+        private final Long expireTimeMillis;
+        private final boolean isKnown;
+        
+        private LocalValue(Object value, Long writetime, Long expireTimeMillis, boolean isKnown) {
+            this.value = value;
+            this.writetime = writetime;
+            this.expireTimeMillis = expireTimeMillis;
+            this.isKnown = isKnown;
+        }
+        
+        static LocalValue of(Object value, Long writetime, Long expireTimeMillis) {
+            return new LocalValue(value, writetime, expireTimeMillis, true);
+        }
+        
+        static LocalValue unknown(long writetime) {
+            return new LocalValue(null, writetime, null, false);
+        }
+        
+        Object getValue() {
+            return value;
+        }
+        
+        Long getWritetime() {
+            return writetime;
+        }
+        
+        Integer getTtl(long nowMillis) {
+            return (expireTimeMillis == null) ? null : (int) Math.max(0, (expireTimeMillis - nowMillis) / 1000);
+        }
+        
+        boolean isKnown() {
+            return isKnown;
+        }
+        
+        boolean isExpired(long nowMillis) {
+            return (expireTimeMillis != null) && (expireTimeMillis <= nowMillis);
+        }
+        
+        @Override
+        public String toString() {
+            return isKnown ? String.valueOf(value) + "@" + writetime : "<unknown>@" + writetime;
+        }
+    }
+    
+    
+    
+    /**
+     * record which overlays the remembered values over the database record, if present  
+     */
+    private static final class SessionRecord implements Record {
+        private final Context ctx;
+        private final Tablename tablename;
+        private final Record record;
+        private final ImmutableMap<String, LocalValue> localValues;
+        private final long nowMillis = System.currentTimeMillis();
+        
+        SessionRecord(Context ctx, 
+                      Tablename tablename, 
+                      Record record, 
+                      ImmutableMap<String, LocalValue> keyValues, 
+                      ImmutableMap<String, LocalValue> mergedValues) {
+            this.ctx = ctx;
+            this.tablename = tablename;
+            this.record = record;
+            
+            final Map<String, LocalValue> values = Maps.newHashMap(mergedValues);
+            values.putAll(keyValues);
+            this.localValues = ImmutableMap.copyOf(values);
+        }
+        
+        
+        private DataType getDataType(String name) {
+            return ctx.getCatalog().getTableSchema(tablename).getDataType(name);
+        }
+        
+        /**
+         * @return the deserialized (driver representation) value of a remembered column
+         */
+        private Object getLocalObject(String name) {
+            final ByteBuffer bytes = getLocalBytes(name);
+            return (bytes == null) ? null : ctx.getUDTValueMapper().deserialize(getDataType(name), bytes);
+        }
+        
+        private ByteBuffer getLocalBytes(String name) {
+            final Object value = ctx.getUDTValueMapper().toStatementValue(tablename, name, localValues.get(name).getValue());
+            return (value == null) ? null : ctx.getUDTValueMapper().serialize(getDataType(name), value);
+        }
+        
+        
+        @Override
+        public ExecutionInfo getExecutionInfo() {
+            return (record == null) ? null : record.getExecutionInfo();
+        }
+        
+        @Override
+        public ImmutableList<ExecutionInfo> getAllExecutionInfo() {
+            return (record == null) ? ImmutableList.<ExecutionInfo>of() : record.getAllExecutionInfo();
+        }
+        
+        @Override
+        public boolean wasApplied() {
+            return true;
+        }
+        
+        @Override
+        public Long getWritetime(String name) {
+            if (localValues.containsKey(name)) {
+                return localValues.get(name).getWritetime();
+            }
+            return (record == null) ? null : record.getWritetime(name);
+        }
+        
+        @Override
+        public Integer getTtl(String name) {
+            if (localValues.containsKey(name)) {
+                return localValues.get(name).getTtl(nowMillis);
+            }
+            return (record == null) ? null : record.getTtl(name);
+        }
+        
+        @Override
+        public boolean isNull(String name) {
+            if (localValues.containsKey(name)) {
+                return getLocalBytes(name) == null;
+            }
+            return (record == null) || record.isNull(name);
+        }
+        
+        @Override
+        public ByteBuffer getBytesUnsafe(String name) {
+            if (localValues.containsKey(name)) {
+                return getLocalBytes(name);
+            }
+            return (record == null) ? null : record.getBytesUnsafe(name);
+        }
+        
+        @Override
+        public ByteBuffer getBytes(String name) {
+            if (localValues.containsKey(name)) {
+                return (ByteBuffer) getLocalObject(name);
+            }
+            return (record == null) ? null : record.getBytes(name);
+        }
+        
+        @Override
+        public long getLong(String name) {
+            if (localValues.containsKey(name)) {
+                final Object value = getLocalObject(name);
+                return (value == null) ? 0 : ((Number) value).longValue();
+            }
+            return (record == null) ? 0 : record.getLong(name);
+        }
+        
+        @Override
+        public String getString(String name) {
+            if (localValues.containsKey(name)) {
+                return (String) getLocalObject(name);
+            }
+            return (record == null) ? null : record.getString(name);
+        }
+        
+        @Override
+        public long getTime(String name) {
+            if (localValues.containsKey(name)) {
+                final Object value = getLocalObject(name);
+                return (value == null) ? 0 : ((Number) value).longValue();
+            }
+            return (record == null) ? 0 : record.getTime(name);
+        }
+        
+        @Override
+        public boolean getBool(String name) {
+            if (localValues.containsKey(name)) {
+                final Object value = getLocalObject(name);
+                return (value == null) ? false : (Boolean) value;
+            }
+            return (record == null) ? false : record.getBool(name);
+        }
+        
+        @Override
+        public float getFloat(String name) {
+            if (localValues.containsKey(name)) {
+                final Object value = getLocalObject(name);
+                return (value == null) ? 0 : ((Number) value).floatValue();
+            }
+            return (record == null) ? 0 : record.getFloat(name);
+        }
+        
+        @Override
+        public Date getDate(String name) {
+            if (localValues.containsKey(name)) {
+                return (Date) getLocalObject(name);
+            }
+            return (record == null) ? null : record.getDate(name);
+        }
+        
+        @Override
+        public BigDecimal getDecimal(String name) {
+            if (localValues.containsKey(name)) {
+                return (BigDecimal) getLocalObject(name);
+            }
+            return (record == null) ? null : record.getDecimal(name);
+        }
+        
+        @Override
+        public int getInt(String name) {
+            if (localValues.containsKey(name)) {
+                final Object value = getLocalObject(name);
+                return (value == null) ? 0 : ((Number) value).intValue();
+            }
+            return (record == null) ? 0 : record.getInt(name);
+        }
+        
+        @Override
+        public InetAddress getInet(String name) {
+            if (localValues.containsKey(name)) {
+                return (InetAddress) getLocalObject(name);
+            }
+            return (record == null) ? null : record.getInet(name);
+        }
+        
+        @Override
+        public BigInteger getVarint(String name) {
+            if (localValues.containsKey(name)) {
+                return (BigInteger) getLocalObject(name);
+            }
+            return (record == null) ? null : record.getVarint(name);
+        }
+        
+        @Override
+        public UUID getUUID(String name) {
+            if (localValues.containsKey(name)) {
+                return (UUID) getLocalObject(name);
+            }
+            return (record == null) ? null : record.getUUID(name);
+        }
+        
+        @Override
+        public TupleValue getTupleValue(String name) {
+            if (localValues.containsKey(name)) {
+                return (TupleValue) getLocalObject(name);
+            }
+            return (record == null) ? null : record.getTupleValue(name);
+        }
+        
+        @Override
+        public UDTValue getUDTValue(String name) {
+            if (localValues.containsKey(name)) {
+                return (UDTValue) getLocalObject(name);
+            }
+            return (record == null) ? null : record.getUDTValue(name);
+        }
+        
+        @Override
+        public <T extends Enum<T>> T getEnum(String name, Class<T> enumType) {
+            return getValue(name, enumType);
+        }
+        
+        @Override
+        public <T> T getValue(ColumnName<T> name) {
+            return name.read(this);
+        }
+        
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override
+        public <T> T getValue(String name, Class<T> elementsClass) {
+            if (!localValues.containsKey(name)) {
+                return (record == null) ? null : record.getValue(name, elementsClass);
+            }
+            
+            final DataType datatype = getDataType(name);
+            if (UDTValueMapper.isBuildInType(datatype)) {
+                final Object obj = getLocalObject(name);
+                
+                // enum
+                if ((obj != null) && DataTypes.isTextDataType(datatype) && Enum.class.isAssignableFrom(elementsClass)) {
+                    return (T) Enum.valueOf((Class<Enum>) elementsClass, obj.toString());
+                }
+                
+                // bytebuffer (byte[])
+                if (datatype.equals(DataType.blob()) && byte[].class.isAssignableFrom(elementsClass)) {
+                    if (obj == null) {
+                        return (T) new byte[0];
+                    } else {
+                        final ByteBuffer bb = ((ByteBuffer) obj).duplicate();
+                        byte[] bytes = new byte[bb.remaining()];
+                        bb.get(bytes, 0, bytes.length);
+                        return (T) bytes;
+                    }
+                }
+                
+                return (T) obj;
+                
+            } else {
+                return ctx.getUDTValueMapper().fromUdtValue(datatype, getUDTValue(name), elementsClass);
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> ImmutableSet<T> getSet(String name, Class<T> elementsClass) {
+            if (!localValues.containsKey(name)) {
+                return (record == null) ? ImmutableSet.<T>of() : record.getSet(name, elementsClass);
+            }
+            
+            final Set<Object> set = (Set<Object>) getLocalObject(name);
+            if (set == null) {
+                return ImmutableSet.of();
+            }
+            
+            final ColumnPlan plan = ctx.getUDTValueMapper().getColumnPlan(tablename, name);
+            if (plan.isBuildInType()) {
+                return (ImmutableSet<T>) ImmutableSet.copyOf(set);
+            } else {
+                return ctx.getUDTValueMapper().fromUdtValues(plan.getDataType().getTypeArguments().get(0), ImmutableSet.copyOf((Set<UDTValue>) (Set<?>) set), elementsClass);
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> ImmutableList<T> getList(String name, Class<T> elementsClass) {
+            if (!localValues.containsKey(name)) {
+                return (record == null) ? ImmutableList.<T>of() : record.getList(name, elementsClass);
+            }
+            
+            final List<Object> list = (List<Object>) getLocalObject(name);
+            if (list == null) {
+                return ImmutableList.of();
+            }
+            
+            final ColumnPlan plan = ctx.getUDTValueMapper().getColumnPlan(tablename, name);
+            if (plan.isBuildInType()) {
+                return (ImmutableList<T>) ImmutableList.copyOf(list);
+            } else {
+                return ctx.getUDTValueMapper().fromUdtValues(plan.getDataType().getTypeArguments().get(0), ImmutableList.copyOf((List<UDTValue>) (List<?>) list), elementsClass);
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public <K, V> ImmutableMap<K, V> getMap(String name, Class<K> keysClass, Class<V> valuesClass) {
+            if (!localValues.containsKey(name)) {
+                return (record == null) ? ImmutableMap.<K, V>of() : record.getMap(name, keysClass, valuesClass);
+            }
+            
+            final Map<Object, Object> map = (Map<Object, Object>) getLocalObject(name);
+            if (map == null) {
+                return ImmutableMap.of();
+            }
+            
+            final ColumnPlan plan = ctx.getUDTValueMapper().getColumnPlan(tablename, name);
+            final DataType datatype = plan.getDataType();
+            if (plan.isBuildInType()) {
+                return (ImmutableMap<K, V>) ImmutableMap.copyOf(map);
+            } else {
+                return ctx.getUDTValueMapper().fromUdtValues(datatype.getTypeArguments().get(0), datatype.getTypeArguments().get(1), (ImmutableMap<Object, Object>) ImmutableMap.copyOf(map), keysClass, valuesClass);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("localValues", localValues)
+                              .add("record", record)
+                              .toString();
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
 
+import net.oneandone.troilus.UDTValueMapper.ColumnPlan;
 import net.oneandone.troilus.java7.Record;
 import net.oneandone.troilus.java7.interceptor.ReadQueryData;
 
@@ -303,8 +304,9 @@ class RecordImpl implements Record {
             return ImmutableSet.of();
         }
 
-        final DataType datatype = ctx.getCatalog().getColumnMetadata(tablename, name).getType();
-        if (UDTValueMapper.isBuildInType(datatype)) {
+        final ColumnPlan plan = ctx.getUDTValueMapper().getColumnPlan(tablename, name);
+        final DataType datatype = plan.getDataType();
+        if (plan.isBuildInType()) {
             return ImmutableSet.copyOf(getRow().getSet(name, elementsClass));
         } else {
             return ctx.getUDTValueMapper().fromUdtValues(datatype.getTypeArguments().get(0), ImmutableSet.copyOf(getRow().getSet(name, UDTValue.class)), elementsClass);
@@ -317,8 +319,9 @@ class RecordImpl implements Record {
             return ImmutableList.of();
         }
         
-        final DataType datatype = ctx.getCatalog().getColumnMetadata(tablename, name).getType();
-        if (UDTValueMapper.isBuildInType(datatype)) {
+        final ColumnPlan plan = ctx.getUDTValueMapper().getColumnPlan(tablename, name);
+        final DataType datatype = plan.getDataType();
+        if (plan.isBuildInType()) {
             return ImmutableList.copyOf(getRow().getList(name, elementsClass));
         } else {
             return ctx.getUDTValueMapper().fromUdtValues(datatype.getTypeArguments().get(0), ImmutableList.copyOf(getRow().getList(name, UDTValue.class)), elementsClass);
@@ -331,15 +334,16 @@ class RecordImpl implements Record {
             return ImmutableMap.of();
         }
         
-        final DataType datatype = ctx.getCatalog().getColumnMetadata(tablename, name).getType();
-        if (UDTValueMapper.isBuildInType(datatype)) {
+        final ColumnPlan plan = ctx.getUDTValueMapper().getColumnPlan(tablename, name);
+        final DataType datatype = plan.getDataType();
+        if (plan.isBuildInType()) {
             return ImmutableMap.copyOf(getRow().getMap(name, keysClass, valuesClass));
             
         } else {
-            if (UDTValueMapper.isBuildInType(datatype.getTypeArguments().get(0))) {
+            if (plan.isBuildInKeyType()) {
                 return ctx.getUDTValueMapper().fromUdtValues(datatype.getTypeArguments().get(0), datatype.getTypeArguments().get(1), ImmutableMap.copyOf(getRow().getMap(name, keysClass, UDTValue.class)), keysClass, valuesClass);
 
-            } else if (UDTValueMapper.isBuildInType(datatype.getTypeArguments().get(1))) {
+            } else if (plan.isBuildInValueType()) {
                 return ctx.getUDTValueMapper().fromUdtValues(datatype.getTypeArguments().get(0), datatype.getTypeArguments().get(1), ImmutableMap.copyOf(getRow().getMap(name, UDTValue.class, valuesClass)), keysClass, valuesClass);
                 
             } else {
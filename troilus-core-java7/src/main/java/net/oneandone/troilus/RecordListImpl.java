@@ -26,6 +26,7 @@ import com.datastax.driver.core.ExecutionInfo;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
 
@@ -61,6 +62,16 @@ class RecordListImpl implements ResultList<Record> {
         return rs.wasApplied();
     }
 
+    /**
+     * @return the fetch future. No more pages will be fetched, if the deadline of the query is exceeded  
+     */
+    private ListenableFuture<ResultSet> fetchMoreResultsAsync() {
+        if (!rs.isFullyFetched() && Deadlines.isExceeded(ctx.getExecutionSpec())) {
+            return Futures.immediateFailedFuture(new DeadlineExceededException("deadline exceeded"));
+        }
+        return rs.fetchMoreResults();
+    }
+    
     public FetchingIterator<Record> iterator() {
         if (queryData.getFetchSize() != null) {
         	return new PaginationBasedResultsIterator();
@@ -70,6 +81,10 @@ class RecordListImpl implements ResultList<Record> {
 
             @Override
             public boolean hasNext() {
+                // the next page would be fetched in a blocking way 
+                if ((rs.getAvailableWithoutFetching() == 0) && !rs.isFullyFetched() && Deadlines.isExceeded(ctx.getExecutionSpec())) {
+                    throw new DeadlineExceededException("deadline exceeded");
+                }
                 return iterator.hasNext();
             }
             
@@ -85,7 +100,7 @@ class RecordListImpl implements ResultList<Record> {
            
            @Override
            public ListenableFuture<ResultSet> fetchMoreResultsAsync() {
-               return rs.fetchMoreResults();
+               return RecordListImpl.this.fetchMoreResultsAsync();
            }
            
            @Override
@@ -131,7 +146,7 @@ class RecordListImpl implements ResultList<Record> {
 
 		@Override
 		public ListenableFuture<ResultSet> fetchMoreResultsAsync() {
-			return rs.fetchMoreResults();
+			return RecordListImpl.this.fetchMoreResultsAsync();
 		}
     	
     }
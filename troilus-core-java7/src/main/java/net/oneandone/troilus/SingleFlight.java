@@ -0,0 +1,330 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+
+
+/**
+ * Shares the in-flight execution of identical reads within the JVM. A read joins a running
+ * read, if the statement, the bound values, the consistency levels, the fetch size, the read 
+ * timeout and the session are the same. Reads which start at a paging state are not shared. The flight is removed as soon as its result is received, so nothing is kept after
+ * completion.<br>
+ * The rows of a fully fetched result are shared by providing each caller an own result set
+ * view. If the result spans more than one page, the first caller takes the original result
+ * set and the other callers perform the read on their own
+ */
+final class SingleFlight {
+
+    private static final ConcurrentMap<FlightKey, Flight> FLIGHTS = Maps.newConcurrentMap();
+
+
+    private SingleFlight() {  }
+
+
+    /**
+     * @param session           the session
+     * @param statement         the statement to perform
+     * @param consistencyLevel  the consistency level the statement will be performed with or null
+     * @param read              the supplier which performs the read request
+     * @return the result set future
+     */
+    static ListenableFuture<ResultSet> executeAsync(Session session,
+                                                    Statement statement,
+                                                    ConsistencyLevel consistencyLevel,
+                                                    Supplier<ListenableFuture<ResultSet>> read) {
+        final FlightKey flightKey = FlightKey.of(session, statement, consistencyLevel);
+        if (flightKey == null) {
+            return read.get();
+        }
+
+        final Flight newFlight = new Flight();
+        final Flight runningFlight = FLIGHTS.putIfAbsent(flightKey, newFlight);
+        if (runningFlight != null) {
+            return runningFlight.join(read);
+        }
+
+        ListenableFuture<ResultSet> future;
+        try {
+            future = read.get();
+        } catch (RuntimeException rt) {
+            future = Futures.immediateFailedFuture(rt);
+        }
+
+        newFlight.start(future);
+        future.addListener(new Runnable() {
+                                @Override
+                                public void run() {
+                                    FLIGHTS.remove(flightKey, newFlight);
+                                }
+                           },
+                           MoreExecutors.directExecutor());
+
+        return newFlight.join(read);
+    }
+
+
+
+    private static final class Flight {
+        private final SettableFuture<Snapshot> snapshotFuture = SettableFuture.create();
+        private final AtomicReference<ResultSet> unsharedResultSet = new AtomicReference<>();
+
+        void start(ListenableFuture<ResultSet> future) {
+            final Function<ResultSet, Snapshot> toSnapshot = new Function<ResultSet, Snapshot>() {
+                @Override
+                public Snapshot apply(ResultSet resultSet) {
+                    if (resultSet.isFullyFetched()) {
+                        return new Snapshot(resultSet);
+                    } else {
+                        unsharedResultSet.set(resultSet);
+                        return null;
+                    }
+                }
+            };
+
+            snapshotFuture.setFuture(Futures.transform(future, toSnapshot, MoreExecutors.directExecutor()));
+        }
+
+        ListenableFuture<ResultSet> join(final Supplier<ListenableFuture<ResultSet>> read) {
+            final AsyncFunction<Snapshot, ResultSet> toResultSet = new AsyncFunction<Snapshot, ResultSet>() {
+                @Override
+                public ListenableFuture<ResultSet> apply(Snapshot snapshot) {
+                    if (snapshot != null) {
+                        return Futures.<ResultSet>immediateFuture(new SnapshotResultSet(snapshot));
+                    }
+
+                    final ResultSet resultSet = unsharedResultSet.getAndSet(null);
+                    return (resultSet == null) ? read.get() : Futures.immediateFuture(resultSet);
+                }
+            };
+
+            // cancelling a caller's future must not cancel the shared flight
+            return Futures.transformAsync(Futures.nonCancellationPropagating(snapshotFuture), toResultSet, MoreExecutors.directExecutor());
+        }
+    }
+
+
+
+    private static final class Snapshot {
+        private final ImmutableList<Row> rows;
+        private final ColumnDefinitions columnDefinitions;
+        private final ImmutableList<ExecutionInfo> executionInfos;
+        private final boolean wasApplied;
+
+        Snapshot(ResultSet resultSet) {
+            this.columnDefinitions = resultSet.getColumnDefinitions();
+            this.executionInfos = ImmutableList.copyOf(resultSet.getAllExecutionInfo());
+            this.wasApplied = resultSet.wasApplied();
+            this.rows = ImmutableList.copyOf(resultSet.all());
+        }
+    }
+
+
+
+    /**
+     * Result set view of a shared snapshot. Each caller gets an own view
+     */
+    private static final class SnapshotResultSet implements ResultSet {
+        private final Snapshot snapshot;
+        private int position = 0;
+
+        private final Iterator<Row> it = new UnmodifiableIterator<Row>() {
+
+            @Override
+            public boolean hasNext() {
+                return position < snapshot.rows.size();
+            }
+
+            @Override
+            public Row next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return snapshot.rows.get(position++);
+            }
+        };
+
+
+        SnapshotResultSet(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public ColumnDefinitions getColumnDefinitions() {
+            return snapshot.columnDefinitions;
+        }
+
+        @Override
+        public boolean isExhausted() {
+            return !it.hasNext();
+        }
+
+        @Override
+        public Row one() {
+            return it.hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public List<Row> all() {
+            return Lists.newArrayList(it);
+        }
+
+        @Override
+        public Iterator<Row> iterator() {
+            return it;
+        }
+
+        @Override
+        public int getAvailableWithoutFetching() {
+            return snapshot.rows.size() - position;
+        }
+
+        @Override
+        public boolean isFullyFetched() {
+            return true;
+        }
+
+        @Override
+        public ListenableFuture<ResultSet> fetchMoreResults() {
+            return Futures.<ResultSet>immediateFuture(this);
+        }
+
+        @Override
+        public ExecutionInfo getExecutionInfo() {
+            return snapshot.executionInfos.get(snapshot.executionInfos.size() - 1);
+        }
+
+        @Override
+        public List<ExecutionInfo> getAllExecutionInfo() {
+            return snapshot.executionInfos;
+        }
+
+        @Override
+        public boolean wasApplied() {
+            return snapshot.wasApplied;
+        }
+    }
+
+
+
+    /**
+     * Only bound statements are shared. The key consists of the session, the query string,
+     * the serialized bound values and the settings which affect the result
+     */
+    private static final class FlightKey {
+        private final Session session;
+        private final String keyspace;
+        private final String queryString;
+        private final List<ByteBuffer> values;
+        private final ConsistencyLevel consistencyLevel;
+        private final ConsistencyLevel serialConsistencyLevel;
+        private final int fetchSize;
+        private final int readTimeoutMillis;
+        private final boolean isTracing;
+
+        private FlightKey(Session session,
+                          String keyspace,
+                          String queryString,
+                          List<ByteBuffer> values,
+                          ConsistencyLevel consistencyLevel,
+                          ConsistencyLevel serialConsistencyLevel,
+                          int fetchSize,
+                          int readTimeoutMillis,
+                          boolean isTracing) {
+            this.session = session;
+            this.keyspace = keyspace;
+            this.queryString = queryString;
+            this.values = values;
+            this.consistencyLevel = consistencyLevel;
+            this.serialConsistencyLevel = serialConsistencyLevel;
+            this.fetchSize = fetchSize;
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.isTracing = isTracing;
+        }
+
+        static FlightKey of(Session session, Statement statement, ConsistencyLevel consistencyLevel) {
+            if (!(statement instanceof BoundStatement)) {
+                return null;
+            }
+
+            final BoundStatement boundStatement = (BoundStatement) statement;
+            final List<ByteBuffer> values = Lists.newArrayList();
+            for (int i = 0; i < boundStatement.preparedStatement().getVariables().size(); i++) {
+                values.add(boundStatement.getBytesUnsafe(i));
+            }
+
+            return new FlightKey(session,
+                                 boundStatement.getKeyspace(),
+                                 boundStatement.preparedStatement().getQueryString(),
+                                 values,
+                                 (consistencyLevel == null) ? boundStatement.getConsistencyLevel() : consistencyLevel,
+                                 boundStatement.getSerialConsistencyLevel(),
+                                 boundStatement.getFetchSize(),
+                                 boundStatement.getReadTimeoutMillis(),
+                                 boundStatement.isTracing());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof FlightKey)) {
+                return false;
+            }
+
+            final FlightKey otherKey = (FlightKey) other;
+            return (otherKey.session == this.session) &&
+                   Objects.equal(otherKey.keyspace, this.keyspace) &&
+                   otherKey.queryString.equals(this.queryString) &&
+                   otherKey.values.equals(this.values) &&
+                   (otherKey.consistencyLevel == this.consistencyLevel) &&
+                   (otherKey.serialConsistencyLevel == this.serialConsistencyLevel) &&
+                   (otherKey.fetchSize == this.fetchSize) &&
+                   (otherKey.readTimeoutMillis == this.readTimeoutMillis) &&
+                   (otherKey.isTracing == this.isTracing);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(System.identityHashCode(session), keyspace, queryString, values, consistencyLevel, serialConsistencyLevel, fetchSize, readTimeoutMillis, isTracing);
+        }
+    }
+}
@@ -135,6 +135,32 @@ class SingleReadQuery extends AbstractQuery<SingleReadQuery> implements SingleRe
     
     @Override
     public ListenableFuture<Record> executeAsync() {
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+        }
+        
+        final ReadYourWritesSessionImpl session = getExecutionSpec().getReadYourWritesSession();
+        if (session == null) {
+            return executeAsync(data);
+            
+        } else {
+            final Function<ReadQueryData, ListenableFuture<Record>> dbReadFunction = new Function<ReadQueryData, ListenableFuture<Record>>() {
+                @Override
+                public ListenableFuture<Record> apply(ReadQueryData data) {
+                    return executeAsync(data);
+                }
+            };
+            return session.readAsync(getContext(), data, dbReadFunction);
+        }
+    }
+    
+    private ListenableFuture<Record> executeAsync(ReadQueryData data) {
+        if ((getExecutionSpec().getCoalescingWindowMillis() != null) && ReadCoalescer.isCoalescable(getCatalog(), data)) {
+            return ReadCoalescer.get(data.getTablename(), getExecutionSpec().getCoalescingWindowMillis(), getExecutionSpec().getCoalescingMaxBatchSize())
+                                .executeAsync(getContext(), data);
+        }
+        
         ListenableFuture<ResultList<Record>> recordsFuture = new ListReadQuery(getContext(), data).executeAsync();
         recordsFuture = toSingleEntryResultList(recordsFuture);
         
@@ -83,7 +83,7 @@ public class Tablename {
     
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return Objects.hashCode(keyspacename, tablename);
     }
     
     @Override
@@ -0,0 +1,70 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+
+
+
+/**
+ * The time bucket of a time-bucketed table. The bucket column holds the number of 
+ * the bucket (int), which is the number of hours or days since epoch (UTC)   
+ */
+public enum TimeBucket {
+    
+    /**
+     * one bucket per hour 
+     */
+    HOUR(TimeUnit.HOURS.toMillis(1)),
+    
+    /**
+     * one bucket per day 
+     */
+    DAY(TimeUnit.DAYS.toMillis(1));
+    
+    
+    private final long bucketMillis;
+    
+    private TimeBucket(long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+    }
+    
+    /**
+     * @param millis  the time in millis since epoch
+     * @return the bucket number of the time
+     */
+    public int toBucket(long millis) {
+        final long bucket = (millis >= 0) ? (millis / bucketMillis) : (((millis + 1) / bucketMillis) - 1);
+        return (int) bucket;
+    }
+    
+    /**
+     * @param fromMillis  the start of the time range (inclusive)
+     * @param toMillis    the end of the time range (exclusive)
+     * @return the bucket numbers of the time range in ascending order
+     */
+    public ImmutableList<Integer> toBuckets(long fromMillis, long toMillis) {
+        final ImmutableList.Builder<Integer> builder = ImmutableList.builder();
+        if (fromMillis < toMillis) {
+            for (int bucket = toBucket(fromMillis); bucket <= toBucket(toMillis - 1); bucket++) {
+                builder.add(bucket);
+            }
+        }
+        return builder.build();
+    }
+}
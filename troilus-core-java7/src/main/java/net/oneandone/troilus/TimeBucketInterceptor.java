@@ -0,0 +1,123 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.Date;
+
+import net.oneandone.troilus.interceptor.DeleteQueryData;
+import net.oneandone.troilus.java7.interceptor.DeleteQueryRequestInterceptor;
+import net.oneandone.troilus.java7.interceptor.ReadQueryData;
+import net.oneandone.troilus.java7.interceptor.ReadQueryRequestInterceptor;
+import net.oneandone.troilus.java7.interceptor.WriteQueryData;
+import net.oneandone.troilus.java7.interceptor.WriteQueryRequestInterceptor;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+
+
+/**
+ * Interceptor which computes the bucket key of a time-bucketed table. If the time value of a 
+ * key-based write, delete or read is given, the bucket key will be added 
+ */
+class TimeBucketInterceptor implements WriteQueryRequestInterceptor, DeleteQueryRequestInterceptor, ReadQueryRequestInterceptor {
+
+    private final String bucketName;
+    private final String timeName;
+    private final TimeBucket timeBucket;
+
+    
+    /**
+     * @param bucketName  the name of the (int) bucket column, which is part of the partition key
+     * @param timeName    the name of the time column, which is the first clustering column
+     * @param timeBucket  the time bucket
+     */
+    TimeBucketInterceptor(String bucketName, String timeName, TimeBucket timeBucket) {
+        this.bucketName = bucketName;
+        this.timeName = timeName;
+        this.timeBucket = timeBucket;
+    }
+    
+    String getBucketName() {
+        return bucketName;
+    }
+
+    String getTimeName() {
+        return timeName;
+    }
+    
+    TimeBucket getTimeBucket() {
+        return timeBucket;
+    }
+    
+    
+    @Override
+    public ListenableFuture<WriteQueryData> onWriteRequestAsync(WriteQueryData data) {
+        if (data.getKeys().containsKey(timeName) && !data.getKeys().containsKey(bucketName)) {
+            data = data.keys(Immutables.join(data.getKeys(), bucketName, (Object) toBucket(data.getKeys().get(timeName))));
+            
+        } else if (data.getValuesToMutate().containsKey(timeName) && !data.getValuesToMutate().containsKey(bucketName)) {   // insert
+            final Optional<Object> time = data.getValuesToMutate().get(timeName);
+            if (time.isPresent()) {
+                data = data.valuesToMutate(Immutables.join(data.getValuesToMutate(), bucketName, Optional.<Object>of(toBucket(time.get()))));
+            }
+        }
+        
+        return Futures.immediateFuture(data);
+    }
+    
+    @Override
+    public ListenableFuture<DeleteQueryData> onDeleteRequestAsync(DeleteQueryData data) {
+        if (data.getKey().containsKey(timeName) && !data.getKey().containsKey(bucketName)) {
+            data = data.key(Immutables.join(data.getKey(), bucketName, (Object) toBucket(data.getKey().get(timeName))));
+        }
+        
+        return Futures.immediateFuture(data);
+    }
+    
+    @Override
+    public ListenableFuture<ReadQueryData> onReadRequestAsync(ReadQueryData data) {
+        final ImmutableList<Object> times = data.getKeys().get(timeName);
+        if ((times != null) && (times.size() == 1) && !data.getKeys().containsKey(bucketName)) {
+            data = data.keys(Immutables.join(data.getKeys(), bucketName, ImmutableList.<Object>of(toBucket(times.get(0)))));
+        }
+        
+        return Futures.immediateFuture(data);
+    }
+    
+    
+    /**
+     * @param time  the time value, either a Date (timestamp) or a Number (millis since epoch)
+     * @return the bucket number
+     */
+    int toBucket(Object time) {
+        if (time instanceof Date) {
+            return timeBucket.toBucket(((Date) time).getTime());
+        } else if (time instanceof Number) {
+            return timeBucket.toBucket(((Number) time).longValue());
+        } else {
+            throw new IllegalArgumentException("unsupported time value " + time + " of " + timeName + ". Date or Number expected");
+        }
+    }
+    
+    
+    @Override
+    public String toString() {
+        return "time buckets " + bucketName + " (" + timeBucket + " of " + timeName + ")";
+    }
+}
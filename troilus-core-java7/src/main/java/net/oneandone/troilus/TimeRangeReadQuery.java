@@ -0,0 +1,366 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.lt;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import net.oneandone.troilus.MetadataCatalog.TableSchema;
+import net.oneandone.troilus.java7.FetchingIterator;
+import net.oneandone.troilus.java7.Record;
+import net.oneandone.troilus.java7.ResultList;
+import net.oneandone.troilus.java7.TimeRangeRead;
+import net.oneandone.troilus.java7.TimeRangeReadWithUnit;
+
+import org.reactivestreams.Publisher;
+
+import com.datastax.driver.core.ClusteringOrder;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.querybuilder.Clause;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+
+
+
+/**
+ * Time range read query implementation. Each bucket of the time range is read by a 
+ * single-partition read. Up to parallelism buckets are read ahead, while the records
+ * are consumed in clustering order 
+ */
+class TimeRangeReadQuery extends AbstractQuery<TimeRangeReadQuery> implements TimeRangeReadWithUnit<ResultList<Record>, Record> {
+    
+    private static final int DEFAULT_PARALLELISM = 4;
+    
+    private final Tablename tablename;
+    private final ImmutableMap<String, Object> keys;
+    private final long fromMillis;
+    private final long toMillis;
+    private final int parallelism;
+    private final Integer fetchSize;
+    
+    
+    /**
+     * @param ctx         the context 
+     * @param tablename   the tablename
+     * @param keys        the partition key without the bucket key
+     * @param fromMillis  the start of the time range (inclusive)
+     * @param toMillis    the end of the time range (exclusive)
+     */
+    TimeRangeReadQuery(Context ctx, Tablename tablename, ImmutableMap<String, Object> keys, long fromMillis, long toMillis) {
+        this(ctx, tablename, keys, fromMillis, toMillis, DEFAULT_PARALLELISM, null);
+    }
+    
+    private TimeRangeReadQuery(Context ctx, Tablename tablename, ImmutableMap<String, Object> keys, long fromMillis, long toMillis, int parallelism, Integer fetchSize) {
+        super(ctx);
+        this.tablename = tablename;
+        this.keys = keys;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.parallelism = parallelism;
+        this.fetchSize = fetchSize;
+    }
+   
+    
+    ////////////////////
+    // factory methods
+    
+    @Override
+    protected TimeRangeReadQuery newQuery(Context newContext) {
+        return new TimeRangeReadQuery(newContext, tablename, keys, fromMillis, toMillis, parallelism, fetchSize);
+    }
+    
+    //
+    ////////////////////
+
+    
+    @Override
+    public TimeRangeReadQuery withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism has to be greater than 0");
+        }
+        return new TimeRangeReadQuery(getContext(), tablename, keys, fromMillis, toMillis, parallelism, fetchSize);
+    }
+    
+    @Override
+    public TimeRangeReadQuery withFetchSize(int fetchSize) {
+        return new TimeRangeReadQuery(getContext(), tablename, keys, fromMillis, toMillis, parallelism, fetchSize);
+    }
+    
+    @Override
+    public <E> TimeRangeEntityReadQuery<E> asEntity(Class<E> objectClass) {
+        return new TimeRangeEntityReadQuery<E>(getContext(), this, objectClass);
+    }
+    
+    @Override
+    public ResultList<Record> execute() {
+        return ListenableFutures.getUninterruptibly(executeAsync());
+    }
+    
+    @Override
+    public ListenableFuture<ResultList<Record>> executeAsync() {
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return Deadlines.enforce(deadlineCtx, newQuery(deadlineCtx).executeAsync());
+        }
+        
+        final TimeBucketInterceptor timeBuckets = getTimeBuckets();
+        final TableSchema schema = getCatalog().getTableSchema(tablename);
+        
+        if (schema.getClusteringKeyNames().isEmpty() || !schema.getClusteringKeyNames().get(0).equals(timeBuckets.getTimeName())) {
+            throw new IllegalStateException(timeBuckets.getTimeName() + " has to be the first clustering column of " + tablename);
+        }
+        
+        // the buckets are disjoint. Reading them in clustering order results in records in clustering order 
+        ImmutableList<Integer> buckets = timeBuckets.getTimeBucket().toBuckets(fromMillis, toMillis);
+        if (schema.getClusteringOrders().get(0) == ClusteringOrder.DESC) {
+            buckets = buckets.reverse();
+        }
+        
+        final BucketList bucketList = new BucketList(timeBuckets, schema.getDataType(timeBuckets.getTimeName()), buckets);
+        return Futures.transform(bucketList.firstBucket(), Functions.<ResultList<Record>>constant(bucketList), MoreExecutors.directExecutor());
+    }
+    
+    @Override
+    public Publisher<Record> executeRx() {
+        return new ResultListPublisher<Record>(executeAsync());
+    }
+    
+    
+    private TimeBucketInterceptor getTimeBuckets() {
+        final ImmutableList<TimeBucketInterceptor> timeBuckets = getInterceptorRegistry().getInterceptors(TimeBucketInterceptor.class);
+        if (timeBuckets.isEmpty()) {
+            throw new IllegalStateException("time buckets are not activated for " + tablename);
+        }
+        return timeBuckets.get(0);
+    }
+    
+    
+    
+    /**
+     * Entity time range read query 
+     * @param <E> the entity type
+     */
+    static class TimeRangeEntityReadQuery<E> extends AbstractQuery<TimeRangeEntityReadQuery<E>> implements TimeRangeRead<ResultList<E>, E> {
+        private final Class<E> clazz;
+        private final TimeRangeReadQuery query;
+        
+        
+        /**
+         * @param ctx    the context
+         * @param query  the underlying query  
+         * @param clazz  the entity type
+         */
+        TimeRangeEntityReadQuery(Context ctx, TimeRangeReadQuery query, Class<E> clazz) {
+            super(ctx);
+            this.query = query;
+            this.clazz = clazz;
+        }
+        
+        @Override
+        protected TimeRangeEntityReadQuery<E> newQuery(Context newContext) {
+            return query.newQuery(newContext).<E>asEntity(clazz); 
+        }
+        
+        @Override
+        public TimeRangeEntityReadQuery<E> withParallelism(int parallelism) {
+            return query.newQuery(getContext()).withParallelism(parallelism).<E>asEntity(clazz);
+        }
+        
+        @Override
+        public TimeRangeEntityReadQuery<E> withFetchSize(int fetchSize) {
+            return query.newQuery(getContext()).withFetchSize(fetchSize).<E>asEntity(clazz);
+        }
+        
+        @Override
+        public ResultList<E> execute() {
+            return ListenableFutures.getUninterruptibly(executeAsync());
+        }
+        
+        @Override
+        public ListenableFuture<ResultList<E>> executeAsync() {
+            final Function<ResultList<Record>, ResultList<E>> mapEntity = new Function<ResultList<Record>, ResultList<E>>() {
+                @Override
+                public ResultList<E> apply(ResultList<Record> recordList) {
+                    return new ListReadQuery.EntityListImpl<>(query.tablename, getBeanMapper(), getCatalog(), recordList, clazz);
+                }
+            };
+            
+            return Futures.transform(query.newQuery(getContext()).executeAsync(), mapEntity, MoreExecutors.directExecutor());
+        }
+        
+        @Override
+        public Publisher<E> executeRx() {
+            return new ResultListPublisher<>(executeAsync());
+        }
+    }
+    
+    
+    
+    /**
+     * Result list which concatenates the bucket results. The list can be iterated only once
+     */
+    private final class BucketList implements ResultList<Record>, FetchingIterator<Record> {
+        private final TimeBucketInterceptor timeBuckets;
+        private final DataType timeType;
+        private final Deque<Integer> unreadBuckets;
+        private final Deque<ListenableFuture<ResultList<Record>>> runningReads = new ArrayDeque<>();
+        private final List<ExecutionInfo> executionInfos = Lists.newArrayList();
+        private FetchingIterator<Record> current = null;
+        
+        
+        BucketList(TimeBucketInterceptor timeBuckets, DataType timeType, ImmutableList<Integer> buckets) {
+            this.timeBuckets = timeBuckets;
+            this.timeType = timeType;
+            this.unreadBuckets = new ArrayDeque<>(buckets);
+            readAhead();
+        }
+        
+        ListenableFuture<?> firstBucket() {
+            return runningReads.isEmpty() ? Futures.immediateFuture(null) : runningReads.peekFirst();
+        }
+        
+        private void readAhead() {
+            while ((runningReads.size() < parallelism) && !unreadBuckets.isEmpty()) {
+                runningReads.addLast(readBucketAsync(unreadBuckets.removeFirst()));
+            }
+        }
+        
+        private ListenableFuture<ResultList<Record>> readBucketAsync(int bucket) {
+            final ImmutableSet.Builder<Clause> whereConditions = ImmutableSet.builder();
+            for (Entry<String, Object> entry : keys.entrySet()) {
+                whereConditions.add(eq(entry.getKey(), entry.getValue()));
+            }
+            whereConditions.add(eq(timeBuckets.getBucketName(), bucket));
+            whereConditions.add(gte(timeBuckets.getTimeName(), toTimeValue(fromMillis)));
+            whereConditions.add(lt(timeBuckets.getTimeName(), toTimeValue(toMillis)));
+            
+            return new ListReadQuery(getContext(), new ReadQueryDataImpl(tablename).whereConditions(whereConditions.build())
+                                                                                   .fetchSize(fetchSize))
+                                                                                   .executeAsync();
+        }
+        
+        private Object toTimeValue(long millis) {
+            if (timeType.getName() == DataType.Name.TIMESTAMP) {
+                return new Date(millis);
+            } else {
+                return millis;
+            }
+        }
+        
+        /**
+         * @param block  true, if it should be waited for the next bucket
+         * @return true, if the next bucket is the current one 
+         */
+        private boolean nextBucket(boolean block) {
+            if (runningReads.isEmpty() || (!block && !runningReads.peekFirst().isDone())) {
+                return false;
+            }
+            
+            final ResultList<Record> recordList = ListenableFutures.getUninterruptibly(runningReads.removeFirst());
+            executionInfos.addAll(recordList.getAllExecutionInfo());
+            current = recordList.iterator();
+            readAhead();
+            
+            return true;
+        }
+        
+        
+        @Override
+        public FetchingIterator<Record> iterator() {
+            return this;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while ((current == null) || !current.hasNext()) {
+                if (!nextBucket(true)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+        
+        @Override
+        public int getAvailableWithoutFetching() {
+            while (((current == null) || ((current.getAvailableWithoutFetching() == 0) && current.isFullyFetched())) && nextBucket(false)) {
+                // skip exhausted buckets
+            }
+            return (current == null) ? 0 : current.getAvailableWithoutFetching();
+        }
+        
+        @Override
+        public boolean isFullyFetched() {
+            return runningReads.isEmpty() && ((current == null) || current.isFullyFetched());
+        }
+        
+        @Override
+        public ListenableFuture<ResultSet> fetchMoreResultsAsync() {
+            if ((current != null) && !current.isFullyFetched()) {
+                return current.fetchMoreResultsAsync();
+            } else if (!runningReads.isEmpty()) {
+                return Futures.transform(runningReads.peekFirst(), Functions.<ResultSet>constant(null), MoreExecutors.directExecutor());
+            } else {
+                return Futures.immediateFuture(null);
+            }
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public ExecutionInfo getExecutionInfo() {
+            return executionInfos.isEmpty() ? null : executionInfos.get(executionInfos.size() - 1);
+        }
+        
+        @Override
+        public ImmutableList<ExecutionInfo> getAllExecutionInfo() {
+            return ImmutableList.copyOf(executionInfos);
+        }
+        
+        @Override
+        public boolean wasApplied() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+import com.google.common.collect.ImmutableList;
+
+
+
+/**
+ * Trace sampler which traces a sample of the queries. The trace sessions are fetched in the 
+ * background and aggregated per query shape. The query shape is the query string of the 
+ * (prepared) statement 
+ */
+public interface TraceSampler {
+
+    /**
+     * @return the trace statistics of the query shapes ordered by the average coordinator duration, slowest first
+     */
+    ImmutableList<TraceStatistics> getStatistics();
+    
+    /**
+     * @return the number of traced queries
+     */
+    long getNumSampled();
+    
+    /**
+     * @return the number of traces which could not be fetched or have been skipped because of too many pending fetches  
+     */
+    long getNumDropped();
+    
+    /**
+     * removes the collected statistics
+     */
+    void reset();
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.QueryTrace;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Statement;
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+
+
+/**
+ * Trace sampler which enables tracing for 1 of N queries. Additionally, the next execution of a 
+ * query shape will be traced, if an untraced execution of this shape has exceeded the latency 
+ * threshold. Tracing has to be decided before the query is sent, so the slow execution itself 
+ * cannot be traced.<br>
+ * The trace sessions are fetched asynchronously by the driver and aggregated per query shape. 
+ * The number of pending trace fetches is limited. Traces which exceed this limit are dropped 
+ */
+final class TraceSamplerImpl implements TraceSampler {
+    
+    private static final int MAX_SHAPES = 1000;
+    private static final int MAX_PENDING_FETCHES = 16;
+    private static final Pattern READ_CELLS_PATTERN = Pattern.compile("Read (\\d+) live (?:rows )?and (\\d+) tombstone cells");
+    
+    private final int sampleRate;
+    private final long latencyThresholdMillis;
+    private final AtomicLong numQueries = new AtomicLong();
+    private final AtomicLong numSampled = new AtomicLong();
+    private final AtomicLong numDropped = new AtomicLong();
+    private final AtomicInteger numPendingFetches = new AtomicInteger();
+    private final ConcurrentMap<String, ShapeStatistics> shapes = Maps.newConcurrentMap();
+    
+    
+    /**
+     * @param sampleRate              the sample rate. 1 of sampleRate queries will be traced. 0 disables sampling by rate 
+     * @param latencyThresholdMillis  the latency threshold. If exceeded, the next execution of the query shape will be traced. -1 disables the threshold
+     */
+    TraceSamplerImpl(int sampleRate, long latencyThresholdMillis) {
+        this.sampleRate = sampleRate;
+        this.latencyThresholdMillis = latencyThresholdMillis;
+    }
+    
+    
+    /**
+     * @param dbSession  the db session
+     * @param statement  the statement to perform 
+     * @return the result set future
+     */
+    ListenableFuture<ResultSet> executeAsync(DBSession dbSession, final Statement statement) {
+        final ShapeStatistics shapeStatistics = getShapeStatistics(toShape(statement));
+        if (shapeStatistics == null) {
+            return dbSession.executeAsync(statement);
+        }
+        
+        // explicitly traced statements will be aggregated as well 
+        final boolean isSampled = statement.isTracing() ? tryAcquireFetch() : (shouldSample(shapeStatistics) && tryAcquireFetch());
+        if (isSampled) {
+            statement.enableTracing();
+        }
+        
+        final long startNanos = System.nanoTime();
+        final ListenableFuture<ResultSet> future = dbSession.executeAsync(statement);
+        
+        Futures.addCallback(future, 
+                            new FutureCallback<ResultSet>() {
+                                @Override
+                                public void onSuccess(ResultSet resultSet) {
+                                    if (isSampled) {
+                                        fetchTraceAsync(shapeStatistics, resultSet.getExecutionInfo());
+                                    } else if ((latencyThresholdMillis >= 0) && (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) >= latencyThresholdMillis)) {
+                                        shapeStatistics.traceNext.set(true);
+                                    }
+                                }
+                                
+                                @Override
+                                public void onFailure(Throwable t) {
+                                    if (isSampled) {
+                                        releaseFetch();
+                                        numDropped.incrementAndGet();
+                                    }
+                                }
+                            },
+                            MoreExecutors.directExecutor());
+        
+        return future;
+    }
+    
+    
+    private boolean shouldSample(ShapeStatistics shapeStatistics) {
+        if (shapeStatistics.traceNext.compareAndSet(true, false)) {
+            return true;
+        }
+        
+        return (sampleRate > 0) && ((numQueries.incrementAndGet() % sampleRate) == 0);
+    }
+    
+    
+    private boolean tryAcquireFetch() {
+        if (numPendingFetches.incrementAndGet() > MAX_PENDING_FETCHES) {
+            releaseFetch();
+            numDropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    
+    private void releaseFetch() {
+        numPendingFetches.decrementAndGet();
+    }
+
+    
+    private void fetchTraceAsync(final ShapeStatistics shapeStatistics, ExecutionInfo executionInfo) {
+        final ListenableFuture<QueryTrace> traceFuture;
+        try {
+            traceFuture = executionInfo.getQueryTraceAsync();
+        } catch (RuntimeException rt) {
+            releaseFetch();
+            numDropped.incrementAndGet();
+            return;
+        }
+        
+        Futures.addCallback(traceFuture, 
+                            new FutureCallback<QueryTrace>() {
+                                @Override
+                                public void onSuccess(QueryTrace trace) {
+                                    releaseFetch();
+                                    if (trace == null) {
+                                        numDropped.incrementAndGet();
+                                    } else {
+                                        numSampled.incrementAndGet();
+                                        shapeStatistics.add(trace);
+                                    }
+                                }
+                                
+                                @Override
+                                public void onFailure(Throwable t) {
+                                    releaseFetch();
+                                    numDropped.incrementAndGet();
+                                }
+                            },
+                            MoreExecutors.directExecutor());
+    }
+    
+    
+    private ShapeStatistics getShapeStatistics(String shape) {
+        ShapeStatistics shapeStatistics = shapes.get(shape);
+        if ((shapeStatistics == null) && (shapes.size() < MAX_SHAPES)) {
+            ShapeStatistics newShapeStatistics = new ShapeStatistics(shape);
+            shapeStatistics = shapes.putIfAbsent(shape, newShapeStatistics);
+            if (shapeStatistics == null) {
+                shapeStatistics = newShapeStatistics;
+            }
+        }
+        return shapeStatistics;
+    }
+    
+    
+    private static String toShape(Statement statement) {
+        if (statement instanceof BoundStatement) {
+            return ((BoundStatement) statement).preparedStatement().getQueryString();
+            
+        } else if (statement instanceof RegularStatement) {
+            return ((RegularStatement) statement).getQueryString();
+            
+        } else if (statement instanceof BatchStatement) {
+            final SortedSet<String> innerShapes = Sets.newTreeSet();
+            for (Statement innerStatement : ((BatchStatement) statement).getStatements()) {
+                innerShapes.add(toShape(innerStatement));
+            }
+            return "BATCH: " + Joiner.on("; ").join(innerShapes);
+            
+        } else {
+            return statement.toString();
+        }
+    }
+    
+    
+    @Override
+    public ImmutableList<TraceStatistics> getStatistics() {
+        final List<TraceStatistics> statistics = Lists.newArrayList();
+        for (ShapeStatistics shapeStatistics : shapes.values()) {
+            TraceStatistics snapshot = shapeStatistics.snapshot();
+            if (snapshot.getNumTraces() > 0) {
+                statistics.add(snapshot);
+            }
+        }
+        
+        Collections.sort(statistics, new Comparator<TraceStatistics>() {
+                                        @Override
+                                        public int compare(TraceStatistics s1, TraceStatistics s2) {
+                                            return Longs.compare(s2.getAvgCoordinatorMicros(), s1.getAvgCoordinatorMicros());
+                                        }
+                                     });
+        return ImmutableList.copyOf(statistics);
+    }
+    
+    @Override
+    public long getNumSampled() {
+        return numSampled.get();
+    }
+    
+    @Override
+    public long getNumDropped() {
+        return numDropped.get();
+    }
+    
+    @Override
+    public void reset() {
+        shapes.clear();
+        numSampled.set(0);
+        numDropped.set(0);
+    }
+    
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("sampleRate", sampleRate)
+                          .add("latencyThresholdMillis", latencyThresholdMillis)
+                          .add("numSampled", getNumSampled())
+                          .add("numDropped", getNumDropped())
+                          .toString();
+    }
+    
+    
+    
+    private static final class ShapeStatistics {
+        private final String shape;
+        private final AtomicBoolean traceNext = new AtomicBoolean(false);
+        private long numTraces = 0;
+        private long sumCoordinatorMicros = 0;
+        private long maxCoordinatorMicros = 0;
+        private long sumReplicaMicros = 0;
+        private long sumReadMergeMicros = 0;
+        private long sumTombstones = 0;
+        private long maxTombstones = 0;
+        
+        ShapeStatistics(String shape) {
+            this.shape = shape;
+        }
+        
+        void add(QueryTrace trace) {
+            final InetAddress coordinator = trace.getCoordinator();
+            final Integer durationMicros = trace.getDurationMicros();
+            final long coordinatorMicros = (durationMicros == null) ? 0 : durationMicros;
+
+            long replicaMicros = 0;
+            long readMergeMicros = 0;
+            long tombstones = 0;
+            
+            // the read/merge stage of a source starts with the partition read and ends with the cell summary
+            final Map<InetAddress, Integer> readStartMicros = Maps.newHashMap();
+            for (QueryTrace.Event event : trace.getEvents()) {
+                final InetAddress source = event.getSource();
+                final Integer elapsedMicros = event.getSourceElapsedMicros();
+                final String description = (event.getDescription() == null) ? "" : event.getDescription();
+                if ((source == null) || (elapsedMicros == null)) {
+                    continue;
+                }
+                
+                if (!source.equals(coordinator)) {
+                    replicaMicros = Math.max(replicaMicros, elapsedMicros);
+                }
+                
+                if (isReadStart(description) && !readStartMicros.containsKey(source)) {
+                    readStartMicros.put(source, elapsedMicros);
+                }
+                
+                final Matcher matcher = READ_CELLS_PATTERN.matcher(description);
+                if (matcher.find()) {
+                    tombstones += Long.parseLong(matcher.group(2));
+                    final Integer startMicros = readStartMicros.remove(source);
+                    if (startMicros != null) {
+                        readMergeMicros = Math.max(readMergeMicros, elapsedMicros - startMicros);
+                    }
+                }
+            }
+            
+            synchronized (this) {
+                numTraces++;
+                sumCoordinatorMicros += coordinatorMicros;
+                maxCoordinatorMicros = Math.max(maxCoordinatorMicros, coordinatorMicros);
+                sumReplicaMicros += replicaMicros;
+                sumReadMergeMicros += readMergeMicros;
+                sumTombstones += tombstones;
+                maxTombstones = Math.max(maxTombstones, tombstones);
+            }
+        }
+        
+        private static boolean isReadStart(String description) {
+            return description.startsWith("Executing single-partition query") || 
+                   description.startsWith("Acquiring sstable references") || 
+                   description.startsWith("Merging memtable");
+        }
+        
+        synchronized TraceStatistics snapshot() {
+            return new TraceStatisticsImpl(shape, 
+                                           numTraces,
+                                           (numTraces == 0) ? 0 : sumCoordinatorMicros / numTraces,
+                                           maxCoordinatorMicros,
+                                           (numTraces == 0) ? 0 : sumReplicaMicros / numTraces,
+                                           (numTraces == 0) ? 0 : sumReadMergeMicros / numTraces,
+                                           (numTraces == 0) ? 0 : ((double) sumTombstones) / numTraces,
+                                           maxTombstones);
+        }
+    }
+    
+    
+    
+    private static final class TraceStatisticsImpl implements TraceStatistics {
+        private final String query;
+        private final long numTraces;
+        private final long avgCoordinatorMicros;
+        private final long maxCoordinatorMicros;
+        private final long avgReplicaMicros;
+        private final long avgReadMergeMicros;
+        private final double avgTombstonesScanned;
+        private final long maxTombstonesScanned;
+        
+        TraceStatisticsImpl(String query, 
+                            long numTraces, 
+                            long avgCoordinatorMicros, 
+                            long maxCoordinatorMicros, 
+                            long avgReplicaMicros,
+                            long avgReadMergeMicros, 
+                            double avgTombstonesScanned, 
+                            long maxTombstonesScanned) {
+            this.query = query;
+            this.numTraces = numTraces;
+            this.avgCoordinatorMicros = avgCoordinatorMicros;
+            this.maxCoordinatorMicros = maxCoordinatorMicros;
+            this.avgReplicaMicros = avgReplicaMicros;
+            this.avgReadMergeMicros = avgReadMergeMicros;
+            this.avgTombstonesScanned = avgTombstonesScanned;
+            this.maxTombstonesScanned = maxTombstonesScanned;
+        }
+
+        @Override
+        public String getQuery() {
+            return query;
+        }
+
+        @Override
+        public long getNumTraces() {
+            return numTraces;
+        }
+
+        @Override
+        public long getAvgCoordinatorMicros() {
+            return avgCoordinatorMicros;
+        }
+
+        @Override
+        public long getMaxCoordinatorMicros() {
+            return maxCoordinatorMicros;
+        }
+
+        @Override
+        public long getAvgReplicaMicros() {
+            return avgReplicaMicros;
+        }
+
+        @Override
+        public long getAvgReadMergeMicros() {
+            return avgReadMergeMicros;
+        }
+
+        @Override
+        public double getAvgTombstonesScanned() {
+            return avgTombstonesScanned;
+        }
+
+        @Override
+        public long getMaxTombstonesScanned() {
+            return maxTombstonesScanned;
+        }
+        
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper("TraceStatistics")
+                              .add("query", query)
+                              .add("numTraces", numTraces)
+                              .add("avgCoordinatorMicros", avgCoordinatorMicros)
+                              .add("maxCoordinatorMicros", maxCoordinatorMicros)
+                              .add("avgReplicaMicros", avgReplicaMicros)
+                              .add("avgReadMergeMicros", avgReadMergeMicros)
+                              .add("avgTombstonesScanned", avgTombstonesScanned)
+                              .add("maxTombstonesScanned", maxTombstonesScanned)
+                              .toString();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+
+/**
+ * Aggregated trace statistics of a query shape
+ */
+public interface TraceStatistics {
+
+    /**
+     * @return the query shape
+     */
+    String getQuery();
+    
+    /**
+     * @return the number of aggregated traces
+     */
+    long getNumTraces();
+    
+    /**
+     * @return the average duration of the request on the coordinator in micros
+     */
+    long getAvgCoordinatorMicros();
+    
+    /**
+     * @return the max duration of the request on the coordinator in micros
+     */
+    long getMaxCoordinatorMicros();
+    
+    /**
+     * @return the average time spent on the slowest remote replica in micros. 0, if the requests are served by the coordinator itself 
+     */
+    long getAvgReplicaMicros();
+    
+    /**
+     * @return the average time spent to read and merge the memtables and sstables in micros
+     */
+    long getAvgReadMergeMicros();
+    
+    /**
+     * @return the average number of tombstone cells scanned per request
+     */
+    double getAvgTombstonesScanned();
+    
+    /**
+     * @return the max number of tombstone cells scanned by a request
+     */
+    long getMaxTombstonesScanned();
+}
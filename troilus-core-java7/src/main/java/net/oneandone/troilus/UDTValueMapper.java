@@ -23,6 +23,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+
+import net.oneandone.troilus.MetadataCatalog.TableSchema;
 
 
 
@@ -32,18 +35,16 @@ import java.util.Map.Entry;
 import com.datastax.driver.core.CodecRegistry;
 import com.datastax.driver.core.DataType;
 import com.datastax.driver.core.ProtocolVersion;
-import com.datastax.driver.core.TupleType;
 import com.datastax.driver.core.TypeCodec;
 import com.datastax.driver.core.UDTValue;
 import com.datastax.driver.core.UserType;
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
 
 /**
@@ -56,6 +57,13 @@ class UDTValueMapper {
     private final MetadataCatalog catalog;
     private final CodecRegistry codecRegistry = CodecRegistry.DEFAULT_INSTANCE;
     
+    // codecs and decoders are bound to the identity of the (immutable) driver metadata, plans to the 
+    // identity of the table schema snapshot. A schema change including the change of a user type results 
+    // in new instances, which means that stale entries will not be hit 
+    private final ConcurrentMap<DataType, TypeCodec<Object>> codecs = new MapMaker().weakKeys().makeMap();
+    private final ConcurrentMap<ColumnKey, ColumnPlan> columnPlans = Maps.newConcurrentMap();
+    private final ConcurrentMap<DataType, ValueDecoder> decoders = new MapMaker().weakKeys().makeMap();
+    
     UDTValueMapper(ProtocolVersion protocolVersion, MetadataCatalog catalog, BeanMapper beanMapper) {
         this.protocolVersion = protocolVersion;
         this.catalog = catalog;
@@ -73,293 +81,451 @@ class UDTValueMapper {
             return true;
 
         } else {
-            return DataType.allPrimitiveTypes().contains(dataType) || (TupleType.class.isAssignableFrom(dataType.getClass()));
+            // primitive or tuple type
+            return !(dataType instanceof UserType) && (dataType.getName() != DataType.Name.CUSTOM);
         }
     }
     
     
-    
     /**
-     * @param datatype   the db datatype
-     * @param udtValue   the udt value
-     * @param fieldtype1 the field 1 type
-     * @param fieldtype2 the field 2 type
-     * @param fieldname  the fieldname
-     * @return the mapped value or <code>null</code>
+     * @param tablename  the tablename
+     * @param name       the columnname
+     * @return the compiled codec plan of the column 
      */
-    public <T> Object fromUdtValue(DataType datatype, 
-                               UDTValue udtValue,
-                               Class<?> fieldtype1, 
-                               Class<?> fieldtype2,
-                               String fieldname) {
-    	final CodecRegistry codecRegistry = getCodecRegistry();
-    	
-        // build-in type 
+    ColumnPlan getColumnPlan(Tablename tablename, String name) {
+        final TableSchema schema = catalog.getTableSchema(tablename);
+        final ColumnKey key = new ColumnKey(tablename, name);
+        
+        ColumnPlan plan = columnPlans.get(key);
+        if ((plan == null) || (plan.schema != schema)) {   // not compiled yet or schema has been changed
+            final DataType dataType = schema.getColumnMetadata(name).getType();
+            plan = new ColumnPlan(schema, dataType, compileEncoder(tablename, dataType));
+            columnPlans.put(key, plan);
+        }
+        
+        return plan;
+    }
+    
+    
+    private ValueEncoder compileEncoder(final Tablename tablename, DataType datatype) {
+        
+        // build-in type (will not be converted)
         if (isBuildInType(datatype)) {
-            final TypeCodec<T> typeCodec = codecRegistry.codecFor(datatype);
-            
-            try {
-            	if (udtValue.isNull(fieldname)) return null;
-            	return typeCodec.deserialize(udtValue.getBytesUnsafe(fieldname), protocolVersion);
-            } catch(IllegalArgumentException ex) {
-            	return null;
-            }
+            return PASS_THROUGH_ENCODER;
             
-        // udt collection    
+        // udt collection
         } else if (datatype.isCollection()) {
-           
+            
             // set
-        	 if (DataType.Name.SET == datatype.getName()) {
-                return fromUdtValues(datatype.getTypeArguments().get(0), 
-                                     ImmutableSet.copyOf(udtValue.getSet(fieldname, UDTValue.class)), 
-                                     fieldtype2); 
+            if (DataType.Name.SET == datatype.getName()) {
+                final ValueEncoder elementEncoder = compileEncoder(tablename, datatype.getTypeArguments().get(0));
+                return new ValueEncoder() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public Object encode(Object value) {
+                        final ImmutableSet.Builder<Object> udt = ImmutableSet.builder();
+                        if (value != null) {
+                            for (Object element : (Set<Object>) value) {
+                                udt.add(elementEncoder.encode(element));
+                            }
+                        }
+                        return udt.build();
+                    }
+                };
                 
             // list
-        	 } else if (DataType.Name.LIST == datatype.getName()) {
-                return fromUdtValues(datatype.getTypeArguments().get(0), 
-                                     ImmutableList.copyOf(udtValue.getList(fieldname, UDTValue.class)),
-                                     fieldtype2); 
+            } else if (DataType.Name.LIST == datatype.getName()) {
+                final ValueEncoder elementEncoder = compileEncoder(tablename, datatype.getTypeArguments().get(0));
+                return new ValueEncoder() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public Object encode(Object value) {
+                        final ImmutableList.Builder<Object> udt = ImmutableList.builder();
+                        if (value != null) {
+                            for (Object element : (List<Object>) value) {
+                                udt.add(elementEncoder.encode(element));
+                            }
+                        }
+                        return udt.build();
+                    }
+                };
                 
             // map
             } else {
-                if (isBuildInType(datatype.getTypeArguments().get(0))) {
-                    return fromUdtValues(datatype.getTypeArguments().get(0), 
-                                         datatype.getTypeArguments().get(1), 
-                                         ImmutableMap.<Object, Object>copyOf(udtValue.getMap(fieldname, fieldtype1, UDTValue.class)), 
-                                         fieldtype1, 
-                                         fieldtype2);
-
-                } else if (isBuildInType(datatype.getTypeArguments().get(1))) {
-                    return fromUdtValues(datatype.getTypeArguments().get(0), 
-                                         datatype.getTypeArguments().get(1), 
-                                         ImmutableMap.<Object, Object>copyOf(udtValue.getMap(fieldname, UDTValue.class, fieldtype2)), 
-                                         fieldtype1, 
-                                         fieldtype2);
-                    
-                } else {
-                    return fromUdtValues(datatype.getTypeArguments().get(0), 
-                                         datatype.getTypeArguments().get(1), 
-                                         ImmutableMap.<Object, Object>copyOf(udtValue.getMap(fieldname, UDTValue.class, UDTValue.class)),
-                                         fieldtype1, 
-                                         fieldtype2);
-                }
+                final ValueEncoder keyEncoder = compileEncoder(tablename, datatype.getTypeArguments().get(0));
+                final ValueEncoder valueEncoder = compileEncoder(tablename, datatype.getTypeArguments().get(1));
+                return new ValueEncoder() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public Object encode(Object value) {
+                        final ImmutableMap.Builder<Object, Object> udt = ImmutableMap.builder();
+                        if (value != null) {
+                            for (Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                                udt.put(keyEncoder.encode(entry.getKey()), valueEncoder.encode(entry.getValue()));
+                            }
+                        }
+                        return udt.build();
+                    }
+                };
             }
-                        
-        // udt    
+            
+        // udt
         } else {
-            return fromUdtValue(datatype, udtValue, fieldtype1);
+            return new UDTEncoder(tablename, catalog.getUserType(tablename, ((UserType) datatype).getTypeName()));
         }
     }
     
-
     
-    public <T> T fromUdtValue(final DataType datatype, final UDTValue udtValue, Class<T> type) {
+    private static interface ValueEncoder {
         
-        PropertiesSource propsSource = new PropertiesSource() {
+        Object encode(Object value);
+    }
+    
+    
+    private static final ValueEncoder PASS_THROUGH_ENCODER = new ValueEncoder() {
+        
+        @Override
+        public Object encode(Object value) {
+            return value;
+        }
+    };
+    
+    
+    private final class UDTEncoder implements ValueEncoder {
+        private final Tablename tablename;
+        private final UserType usertype;
+        private final ConcurrentMap<String, FieldEncoder> fieldEncoders = Maps.newConcurrentMap();
+        
+        UDTEncoder(Tablename tablename, UserType usertype) {
+            this.tablename = tablename;
+            this.usertype = usertype;
+        }
+        
+        @Override
+        public Object encode(Object value) {
+            if (value == null) {
+                return value;
+            } 
             
-            @Override
-            public <E> Optional<E> read(String name, Class<?> clazz1) {
-                return read(name, clazz1, Object.class);
+            final UDTValue udtValue = usertype.newValue();
+            for (Entry<String, Optional<Object>> entry : beanMapper.toValues(value, ImmutableSet.<String>of()).entrySet()) {
+                if (!entry.getValue().isPresent()) {
+                    udtValue.setToNull(entry.getKey());
+                    continue;
+                }
+                
+                final FieldEncoder fieldEncoder = getFieldEncoder(entry.getKey());
+                udtValue.setBytesUnsafe(entry.getKey(), fieldEncoder.codec.serialize(fieldEncoder.encoder.encode(entry.getValue().get()), protocolVersion));
             }
             
-            @SuppressWarnings("unchecked")
-            @Override
-            public <E> Optional<E> read(String name, Class<?> clazz1, Class<?> clazz2) {
-                return Optional.fromNullable((E) fromUdtValue(((UserType) datatype).getFieldType(name), udtValue, clazz1, clazz2, name));
+            return udtValue;
+        }
+        
+        private FieldEncoder getFieldEncoder(String fieldname) {
+            FieldEncoder fieldEncoder = fieldEncoders.get(fieldname);
+            if (fieldEncoder == null) {
+                final DataType fieldType = usertype.getFieldType(fieldname);
+                fieldEncoder = new FieldEncoder(getCodec(fieldType), compileEncoder(tablename, fieldType));
+                fieldEncoders.put(fieldname, fieldEncoder);
             }
-        };
+            return fieldEncoder;
+        }
+    }
+    
+    
+    private static final class FieldEncoder {
+        private final TypeCodec<Object> codec;
+        private final ValueEncoder encoder;
         
-        return beanMapper.fromValues(type, propsSource, ImmutableSet.<String>of());
+        FieldEncoder(TypeCodec<Object> codec, ValueEncoder encoder) {
+            this.codec = codec;
+            this.encoder = encoder;
+        }
     }
-
     
-    public <T> ImmutableSet<T> fromUdtValues(final DataType datatype, ImmutableSet<UDTValue> udtValues, Class<T> type) {
-        return ImmutableSet.copyOf(fromUdtValues(datatype, (ImmutableCollection<UDTValue>) udtValues, type));
+    
+    /**
+     * The compiled codec plan of a column
+     */
+    static final class ColumnPlan {
+        private final TableSchema schema;
+        private final DataType dataType;
+        private final ValueEncoder encoder;
+        private final boolean isBuildInType;
+        private final boolean isBuildInKeyType;
+        private final boolean isBuildInValueType;
+        
+        private ColumnPlan(TableSchema schema, DataType dataType, ValueEncoder encoder) {
+            this.schema = schema;
+            this.dataType = dataType;
+            this.encoder = encoder;
+            this.isBuildInType = isBuildInType(dataType);
+            this.isBuildInKeyType = (dataType.getTypeArguments().size() > 0) && isBuildInType(dataType.getTypeArguments().get(0));
+            this.isBuildInValueType = (dataType.getTypeArguments().size() > 1) && isBuildInType(dataType.getTypeArguments().get(1));
+        }
+        
+        /**
+         * @return the column type
+         */
+        DataType getDataType() {
+            return dataType;
+        }
+        
+        /**
+         * @return true, if the column type is a build-in type
+         */
+        boolean isBuildInType() {
+            return isBuildInType;
+        }
+        
+        /**
+         * @return true, if the (first) type argument of the column type is a build-in type
+         */
+        boolean isBuildInKeyType() {
+            return isBuildInKeyType;
+        }
+        
+        /**
+         * @return true, if the second type argument of the column type is a build-in type
+         */
+        boolean isBuildInValueType() {
+            return isBuildInValueType;
+        }
+        
+        private Object encode(Object value) {
+            return encoder.encode(value);
+        }
+    }
+    
+    
+    private static final class ColumnKey {
+        private final Tablename tablename;
+        private final String name;
+        
+        ColumnKey(Tablename tablename, String name) {
+            this.tablename = tablename;
+            this.name = name;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof ColumnKey) && 
+                   ((ColumnKey) other).name.equals(this.name) &&
+                   ((ColumnKey) other).tablename.equals(this.tablename);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * tablename.hashCode() + name.hashCode();
+        }
+    }
+    
+    
+    private TypeCodec<Object> getCodec(DataType dataType) {
+        TypeCodec<Object> codec = codecs.get(dataType);
+        if (codec == null) {
+            codec = codecRegistry.codecFor(dataType);
+            codecs.put(dataType, codec);
+        }
+        return codec;
     }
+    
+    
+    
+    /**
+     * @param datatype   the db datatype
+     * @param udtValue   the udt value
+     * @param fieldtype1 the field 1 type
+     * @param fieldtype2 the field 2 type
+     * @param fieldname  the fieldname
+     * @return the mapped value or <code>null</code>
+     */
+    public <T> Object fromUdtValue(DataType datatype, 
+                                   UDTValue udtValue,
+                                   Class<?> fieldtype1, 
+                                   Class<?> fieldtype2,
+                                   String fieldname) {
+        return getDecoder(datatype).decode(udtValue, fieldname, fieldtype1, fieldtype2);
+    }
+    
 
     
-    public <T> ImmutableList<T> fromUdtValues(final DataType datatype, ImmutableList<UDTValue> udtValues, Class<T> type) {
-        return fromUdtValues(datatype, (ImmutableCollection<UDTValue>) udtValues, type);
+    public <T> T fromUdtValue(final DataType datatype, final UDTValue udtValue, Class<T> type) {
+        return getUDTDecoder(datatype).decode(udtValue, type);
     }
 
     
-    private <T> ImmutableList<T> fromUdtValues(final DataType datatype, ImmutableCollection<UDTValue> udtValues, Class<T> type) {
-        List<T> elements = Lists.newArrayList();
-        
-        for (UDTValue elementUdtValue : udtValues) {
-            final UDTValue elementUdtVal = elementUdtValue;
-            
-            final PropertiesSource propsSource = new PropertiesSource() {
-                
-                @Override
-                public <E> Optional<E> read(String name, Class<?> clazz1) {
-                    return read(name, clazz1, Object.class);
-                }
-                
-                @SuppressWarnings("unchecked")
-                @Override
-                public <E> Optional<E>  read(String name, Class<?> clazz1, Class<?> clazz2) {
-                    return Optional.fromNullable((E) fromUdtValue(((UserType) datatype).getFieldType(name), elementUdtVal, clazz1, clazz2, name));
-                }
-            };
+    public <T> ImmutableSet<T> fromUdtValues(final DataType datatype, ImmutableSet<UDTValue> udtValues, Class<T> type) {
+        return ImmutableSet.copyOf(getUDTDecoder(datatype).decodeAll(udtValues, type));
+    }
 
-            
-            T element = beanMapper.fromValues(type, propsSource, ImmutableSet.<String>of());
-            elements.add(element);
-        }
-        
-        return ImmutableList.copyOf(elements);
+    
+    public <T> ImmutableList<T> fromUdtValues(final DataType datatype, ImmutableList<UDTValue> udtValues, Class<T> type) {
+        return getUDTDecoder(datatype).decodeAll(udtValues, type);
     }
     
     
+    public <K, V> ImmutableMap<K, V> fromUdtValues(final DataType keyDatatype, final DataType valueDatatype, ImmutableMap<?, ?> udtValues, Class<K> keystype, Class<V> valuesType) {
+        return decodeMap(isBuildInType(keyDatatype) ? null : getUDTDecoder(keyDatatype), 
+                         isBuildInType(valueDatatype) ? null : getUDTDecoder(valueDatatype), 
+                         udtValues, 
+                         keystype, 
+                         valuesType);
+    }
+    
     
     @SuppressWarnings("unchecked")
-    public <K, V> ImmutableMap<K, V> fromUdtValues(final DataType keyDatatype, final DataType valueDatatype, ImmutableMap<?, ?> udtValues, Class<K> keystype, Class<V> valuesType) {
-        
+    private static <K, V> ImmutableMap<K, V> decodeMap(UDTDecoder keyDecoder, UDTDecoder valueDecoder, Map<?, ?> udtValues, Class<K> keystype, Class<V> valuesType) {
         final Map<K, V> elements = Maps.newHashMap();
 
         for (Entry<?, ?> entry : udtValues.entrySet()) {
+            final K keyElement = ((keyDecoder == null) || keystype.isAssignableFrom(entry.getKey().getClass())) ? (K) entry.getKey() 
+                                                                                                                 : keyDecoder.decode((UDTValue) entry.getKey(), keystype);
+            final V valueElement = ((valueDecoder == null) || valuesType.isAssignableFrom(entry.getValue().getClass())) ? (V) entry.getValue()
+                                                                                                                        : valueDecoder.decode((UDTValue) entry.getValue(), valuesType);
+            elements.put(keyElement, valueElement);
+        }
         
-            K keyElement;
-            if (keystype.isAssignableFrom(entry.getKey().getClass())) {
-                keyElement = (K) entry.getKey(); 
-                
-            } else {
-                final UDTValue keyUdtValue = (UDTValue) entry.getKey();
-                
-                final PropertiesSource propsSource = new PropertiesSource() {
-                    
-                    @Override
-                    public <E> Optional<E> read(String name, Class<?> clazz1) {
-                        return read(name, clazz1, Object.class);
+        return ImmutableMap.copyOf(elements);
+    }
+    
+    
+    private ValueDecoder getDecoder(DataType datatype) {
+        ValueDecoder decoder = decoders.get(datatype);
+        if (decoder == null) {
+            decoder = compileDecoder(datatype);
+            decoders.put(datatype, decoder);
+        }
+        return decoder;
+    }
+    
+    
+    private UDTDecoder getUDTDecoder(DataType datatype) {
+        return (UDTDecoder) getDecoder(datatype);
+    }
+    
+    
+    private ValueDecoder compileDecoder(final DataType datatype) {
+        
+        // build-in type 
+        if (isBuildInType(datatype)) {
+            final TypeCodec<Object> typeCodec = getCodec(datatype);
+            return new ValueDecoder() {
+                @Override
+                public Object decode(UDTValue udtValue, String fieldname, Class<?> fieldtype1, Class<?> fieldtype2) {
+                    try {
+                        if (udtValue.isNull(fieldname)) {
+                            return null;
+                        }
+                        return typeCodec.deserialize(udtValue.getBytesUnsafe(fieldname), protocolVersion);
+                    } catch (IllegalArgumentException ex) {
+                        return null;
                     }
-                    
+                }
+            };
+            
+        // udt collection    
+        } else if (datatype.isCollection()) {
+           
+            // set
+            if (DataType.Name.SET == datatype.getName()) {
+                final UDTDecoder elementDecoder = getUDTDecoder(datatype.getTypeArguments().get(0));
+                return new ValueDecoder() {
                     @Override
-                    public <T> Optional<T> read(String name, Class<?> clazz1, Class<?> clazz2) {
-                        return Optional.fromNullable((T) fromUdtValue(((UserType) keyDatatype).getFieldType(name), keyUdtValue, clazz1, clazz2, name));
+                    public Object decode(UDTValue udtValue, String fieldname, Class<?> fieldtype1, Class<?> fieldtype2) {
+                        return ImmutableSet.copyOf(elementDecoder.decodeAll(udtValue.getSet(fieldname, UDTValue.class), fieldtype2));
                     }
                 };
-
-                keyElement = beanMapper.fromValues(keystype, propsSource, ImmutableSet.<String>of());
-            }
-            
-            
-            
-            V valueElement;
-            if (valuesType.isAssignableFrom(entry.getValue().getClass())) {
-                valueElement = (V) entry.getValue();
                 
-            } else {
-                final UDTValue valueUdtValue = (UDTValue) entry.getValue();
-
-                final PropertiesSource propsSource = new PropertiesSource() {
-                    
+            // list
+            } else if (DataType.Name.LIST == datatype.getName()) {
+                final UDTDecoder elementDecoder = getUDTDecoder(datatype.getTypeArguments().get(0));
+                return new ValueDecoder() {
                     @Override
-                    public <E> Optional<E> read(String name, Class<?> clazz1) {
-                        return read(name, clazz1, Object.class);
+                    public Object decode(UDTValue udtValue, String fieldname, Class<?> fieldtype1, Class<?> fieldtype2) {
+                        return elementDecoder.decodeAll(udtValue.getList(fieldname, UDTValue.class), fieldtype2);
                     }
-                    
+                };
+                
+            // map
+            } else {
+                final DataType keyType = datatype.getTypeArguments().get(0);
+                final DataType valueType = datatype.getTypeArguments().get(1);
+                final UDTDecoder keyDecoder = isBuildInType(keyType) ? null : getUDTDecoder(keyType);
+                final UDTDecoder valueDecoder = isBuildInType(valueType) ? null : getUDTDecoder(valueType);
+                return new ValueDecoder() {
                     @Override
-                    public <T> Optional<T> read(String name, Class<?> clazz1, Class<?> clazz2) {
-                        return Optional.fromNullable((T) fromUdtValue(((UserType) valueDatatype).getFieldType(name), valueUdtValue, clazz1, clazz2, name));
+                    public Object decode(UDTValue udtValue, String fieldname, Class<?> fieldtype1, Class<?> fieldtype2) {
+                        final Map<?, ?> map = udtValue.getMap(fieldname, 
+                                                              (keyDecoder == null) ? fieldtype1 : UDTValue.class, 
+                                                              (valueDecoder == null) ? fieldtype2 : UDTValue.class);
+                        return decodeMap(keyDecoder, valueDecoder, map, fieldtype1, fieldtype2);
                     }
                 };
-                
-                valueElement = beanMapper.fromValues(valuesType, propsSource, ImmutableSet.<String>of());
             }
-
-            elements.put(keyElement, valueElement);
+                        
+        // udt    
+        } else {
+            return new UDTDecoder((UserType) datatype);
         }
-        
-        return ImmutableMap.copyOf(elements);
     }
     
     
-    @SuppressWarnings("unchecked")
-    public Object toUdtValue(Tablename tablename,
-                             MetadataCatalog catalog, 
-                             DataType datatype, 
-                             Object value) {
+    private static interface ValueDecoder {
         
-        // build-in type (will not be converted)
-        if (isBuildInType(datatype)) {
-            return value;
-            
-        // udt collection
-        } else if (datatype.isCollection()) {
-           
-           // set
-        	if (DataType.Name.SET == datatype.getName()) {
-        	   final DataType elementDataType = datatype.getTypeArguments().get(0);
-               
-               final Set<Object> udt = Sets.newHashSet();
-               if (value != null) {
-                   for (Object element : (Set<Object>) value) {
-                       udt.add(toUdtValue(tablename, catalog, elementDataType, element));
-                   }
-               }
-               
-               return ImmutableSet.copyOf(udt);
-               
-           // list 
-        	 } else if (DataType.Name.LIST == datatype.getName()) {    
-        	     final DataType elementDataType = datatype.getTypeArguments().get(0);
-               
-        	     final List<Object> udt = Lists.newArrayList();
-               if (value != null) {
-                   for (Object element : (List<Object>) value) {
-                       udt.add(toUdtValue(tablename, catalog, elementDataType, element));
-                   }
-               }
-               
-               return ImmutableList.copyOf(udt);
-              
-           // map
-           } else {
-               final DataType keyDataType = datatype.getTypeArguments().get(0);
-               final DataType valueDataType = datatype.getTypeArguments().get(1);
-               
-               final Map<Object, Object> udt = Maps.newHashMap();
-               if (value != null) {
-                   for (Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
-                         udt.put(toUdtValue(tablename, catalog, keyDataType, entry.getKey()), 
-                                 toUdtValue(tablename, catalog, valueDataType, entry.getValue()));
-                   }
-               
-               }
-               return ImmutableMap.copyOf(udt);  
-           }
+        Object decode(UDTValue udtValue, String fieldname, Class<?> fieldtype1, Class<?> fieldtype2);
+    }
     
-           
-        // udt
-        } else {
-            if (value == null) {
-                return value;
-                
-            } else {
-                final UserType usertype = catalog.getUserType(tablename, ((UserType) datatype).getTypeName());
-                final UDTValue udtValue = usertype.newValue();
+    
+    private final class UDTDecoder implements ValueDecoder {
+        private final UserType usertype;
+        private final ConcurrentMap<String, ValueDecoder> fieldDecoders = Maps.newConcurrentMap();
+        
+        UDTDecoder(UserType usertype) {
+            this.usertype = usertype;
+        }
+        
+        @Override
+        public Object decode(UDTValue udtValue, String fieldname, Class<?> fieldtype1, Class<?> fieldtype2) {
+            if (udtValue.isNull(fieldname)) {
+                return null;
+            }
+            return decode(udtValue.getUDTValue(fieldname), fieldtype1);
+        }
+        
+        <T> T decode(final UDTValue udtValue, Class<T> type) {
+            final PropertiesSource propsSource = new PropertiesSource() {
                 
-                for (Entry<String, Optional<Object>> entry : beanMapper.toValues(value, ImmutableSet.<String>of()).entrySet()) {
-                    if (!entry.getValue().isPresent()) {
-                        //return null;
-                    	udtValue.setToNull(entry.getKey());
-                    	continue;
-                    }
-
-                    final DataType fieldType = usertype.getFieldType(entry.getKey());
-                    Object vl = entry.getValue().get();
-                    
-                    if (!isBuildInType(usertype.getFieldType(entry.getKey()))) {
-                        vl = toUdtValue(tablename, catalog, fieldType, vl);
-                    }
-                    
-                    final String key = entry.getKey();
-                    udtValue.setBytesUnsafe(key, serialize(fieldType, vl));
+                @Override
+                public <E> Optional<E> read(String name, Class<?> clazz1) {
+                    return read(name, clazz1, Object.class);
                 }
                 
-                return udtValue;
+                @SuppressWarnings("unchecked")
+                @Override
+                public <E> Optional<E> read(String name, Class<?> clazz1, Class<?> clazz2) {
+                    return Optional.fromNullable((E) getFieldDecoder(name).decode(udtValue, name, clazz1, clazz2));
+                }
+            };
+            
+            return beanMapper.fromValues(type, propsSource, ImmutableSet.<String>of());
+        }
+        
+        <T> ImmutableList<T> decodeAll(Collection<UDTValue> udtValues, Class<T> type) {
+            final List<T> elements = Lists.newArrayList();
+            for (UDTValue udtValue : udtValues) {
+                elements.add(decode(udtValue, type));
+            }
+            return ImmutableList.copyOf(elements);
+        }
+        
+        private ValueDecoder getFieldDecoder(String fieldname) {
+            ValueDecoder fieldDecoder = fieldDecoders.get(fieldname);
+            if (fieldDecoder == null) {
+                fieldDecoder = getDecoder(usertype.getFieldType(fieldname));
+                fieldDecoders.put(fieldname, fieldDecoder);
             }
+            return fieldDecoder;
         }
     }
     
@@ -375,10 +541,11 @@ class UDTValueMapper {
             return null;
         } 
         
-        final DataType dataType = catalog.getColumnMetadata(tablename, name).getType();
+        final ColumnPlan plan = getColumnPlan(tablename, name);
+        final DataType dataType = plan.getDataType();
         
         // build in
-        if (UDTValueMapper.isBuildInType(dataType)) {
+        if (plan.isBuildInType()) {
             
             // enum
             if (DataTypes.isTextDataType(dataType) && Enum.class.isAssignableFrom(value.getClass())) {
@@ -394,7 +561,7 @@ class UDTValueMapper {
          
         // udt    
         } else {
-            return toUdtValue(tablename, catalog, catalog.getColumnMetadata(tablename, name).getType(), value);
+            return plan.encode(value);
         }
     }
     
@@ -445,11 +612,8 @@ class UDTValueMapper {
      * @param value
      * @return
      */
-    @SuppressWarnings("unchecked")
 	public <T> ByteBuffer serialize(DataType dataType, Object value) {
-        final CodecRegistry codecRegistry = getCodecRegistry();
-        final TypeCodec<T> typeCodec = codecRegistry.codecFor(dataType);
-    	return typeCodec.serialize((T)value, protocolVersion);
+    	return getCodec(dataType).serialize(value, protocolVersion);
     }
     
     
@@ -472,10 +636,9 @@ class UDTValueMapper {
      * @param fieldname
      * @return
      */
+    @SuppressWarnings("unchecked")
     public <T> T deserialize(DataType dataType, UDTValue udtValue, String fieldname) {
-        final CodecRegistry codecRegistry = getCodecRegistry();
-        final TypeCodec<T> typeCodec = codecRegistry.codecFor(dataType);
-    	return typeCodec.deserialize(udtValue.getBytesUnsafe(fieldname), protocolVersion);
+    	return (T) getCodec(dataType).deserialize(udtValue.getBytesUnsafe(fieldname), protocolVersion);
     }
     
     /**
@@ -484,9 +647,8 @@ class UDTValueMapper {
      * @param byteBuffer
      * @return
      */
+    @SuppressWarnings("unchecked")
     public <T> T deserialize(DataType dataType, ByteBuffer byteBuffer) {
-        final CodecRegistry codecRegistry = getCodecRegistry();
-        final TypeCodec<T> typeCodec = codecRegistry.codecFor(dataType);
-    	return typeCodec.deserialize(byteBuffer, protocolVersion);
+    	return (T) getCodec(dataType).deserialize(byteBuffer, protocolVersion);
     }
 }   
\ No newline at end of file
@@ -75,7 +75,7 @@ class UpdateQuery extends WriteQuery<UpdateWithUnitAndCounter> implements Update
      * @return the new insert query
      */@Override
      public UpdateQuery entity(Object entity) {
-        ImmutableMap<String, Optional<Object>> values = getBeanMapper().toValues(entity, getCatalog().getColumnNames(getData().getTablename()));
+        ImmutableMap<String, Optional<Object>> values = getContext().toEntityValues(entity, getData().getTablename());
         return newQuery(getData().valuesToMutate(Immutables.join(getData().getValuesToMutate(), values)));
     }
     
@@ -0,0 +1,1216 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import net.oneandone.troilus.java7.WriteBehindJournal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BatchStatement.Type;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/**
+ * Write-behind journal implementation. The journal consists of memory-mapped segment files 
+ * of fixed size. The serialized values of the bound statements are copied into the mapped 
+ * segment directly. An entry is published by writing its length at last. Entry layout:
+ * <pre>
+ *   int    length of the entry (excluding this field)
+ *   long   append timestamp in micros 
+ *   byte   flags
+ *   byte   consistency level (ordinal + 1, 0 for default)
+ *   short  number of statements
+ *   [long  explicit writetime in micros, if flagged]
+ *   per statement:
+ *     int    query id of the segment dictionary. If the id is new, the query follows:
+ *     [int   query length, bytes utf-8 query]
+ *     byte   idempotence (1 idempotent, 0 not set)
+ *     short  number of values
+ *     per value:
+ *       int    value length (-1 null, -2 unset) followed by the serialized value
+ * </pre>
+ * Statements which are not idempotent are rejected, because journaled mutations may be written 
+ * more than once.<br>
+ * The drainer thread reads the entries in order and groups the single statement entries per 
+ * partition. A group is closed before another entry of one of its rows is read, so that the 
+ * group can be written as unlogged batch with the timestamp of its latest entry without 
+ * overtaking a mutation of the same row. Entries with more than one statement are written 
+ * as logged batch.<br> 
+ * The checkpoint is the position of the oldest entry which has not been written. Segments 
+ * before the checkpoint are deleted
+ */
+class WriteBehindJournalImpl implements WriteBehindJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindJournalImpl.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILENAME = "checkpoint";
+    
+    private static final int ENTRY_HEADER_SIZE = 4 + 8 + 1 + 1 + 2;
+    private static final byte FLAG_EXPLICIT_WRITETIME = 1;
+    private static final byte IDEMPOTENT = 1;
+    private static final int NULL_VALUE = -1;
+    private static final int UNSET_VALUE = -2;
+    private static final ByteBuffer UNSET = ByteBuffer.allocate(0);
+    private static final int MAX_UNSIGNED_SHORT = 0xFFFF;
+    
+    private static final int MAX_ENTRIES_PER_ROUND = 1000;
+    private static final int MAX_BATCH_STATEMENTS = 50;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long MIN_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 10 * 1000;
+    private static final long CLOSE_TIMEOUT_MILLIS = 10 * 1000;
+    
+    private static final Result ACKNOWLEDGED = new AcknowledgedResult();
+    
+    
+    private final DBSession dbSession;
+    private final File directory;
+    private final int segmentSize;
+    private final int maxParallelWrites;
+    private final Semaphore writePermits;
+    private final MappedByteBuffer checkpointBuffer;
+    private final ConcurrentNavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, QueryPlan> queryPlans = Maps.newConcurrentMap();
+    
+    private final AtomicBoolean isOpen = new AtomicBoolean(true);
+    private final Thread drainer;
+    private final ScheduledExecutorService retryScheduler;
+    private final Thread shutdownHook;
+    
+    private final AtomicLong numAppended = new AtomicLong();
+    private final AtomicLong numDrained = new AtomicLong();
+    private final AtomicLong numRetries = new AtomicLong();
+    private final WriteBehindMetrics metrics = new Metrics();
+    
+    // appender state
+    private final Object appendLock = new Object();
+    private Segment writeSegment;                                             // guarded by appendLock
+    private final Map<String, Integer> writeDictionary = Maps.newHashMap();   // guarded by appendLock
+    private long lastTimestampMicros = 0;                                     // guarded by appendLock
+    
+    // drainer state, accessed by the drainer thread only
+    private Segment readSegment;
+    private int readOffset;
+    private final List<String> readDictionary = Lists.newArrayList();
+    
+    // checkpoint state
+    private final Object checkpointLock = new Object();
+    private final NavigableSet<Long> inFlightPositions = new TreeSet<>();     // guarded by checkpointLock
+    private final List<DrainWaiter> drainWaiters = Lists.newArrayList();     // guarded by checkpointLock
+    private long readPosition;                                                // guarded by checkpointLock
+    private volatile long checkpoint;
+    
+    
+    /**
+     * opens the journal. Mutations which have not been drained will be replayed
+     *  
+     * @param dbSession          the db session
+     * @param directory          the journal directory 
+     * @param segmentSize        the size of a journal segment file in bytes. A mutation has to fit into a segment
+     * @param maxParallelWrites  the max number of parallel database writes of the drainer
+     */
+    WriteBehindJournalImpl(DBSession dbSession, File directory, int segmentSize, int maxParallelWrites) {
+        if (segmentSize <= ENTRY_HEADER_SIZE) {
+            throw new IllegalArgumentException("segment size has to be greater than " + ENTRY_HEADER_SIZE);
+        }
+        if (maxParallelWrites <= 0) {
+            throw new IllegalArgumentException("max parallel writes has to be greater than 0");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("journal directory " + directory + " can not be created");
+        }
+        
+        this.dbSession = dbSession;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxParallelWrites = maxParallelWrites;
+        this.writePermits = new Semaphore(maxParallelWrites);
+        
+        this.checkpointBuffer = map(new File(directory, CHECKPOINT_FILENAME), 8);
+        recover(checkpointBuffer.getLong(0));
+        
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                                   .setNameFormat("troilus-write-behind-retry-%d")
+                                                                                                   .build());
+        this.drainer = new Thread("troilus-write-behind-" + directory.getName()) {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        drainer.setDaemon(true);
+        drainer.start();
+
+        // persist the checkpoint on shutdown
+        this.shutdownHook = new Thread() {
+            @Override
+            public void run() {
+                close();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+    
+    
+    private void recover(long recoveredCheckpoint) {
+        int checkpointSeq = toSeq(recoveredCheckpoint);
+        int checkpointOffset = toOffset(recoveredCheckpoint);
+        
+        long numRecovered = 0;
+        for (File file : listSegmentFiles()) {
+            int seq = parseSeq(file);
+            if (seq < checkpointSeq) {
+                delete(file);
+                
+            } else {
+                Segment segment = new Segment(seq, file, map(file, (int) file.length()));
+                
+                // scan the published entries
+                int offset = 0;
+                while ((offset + 4) <= segment.buffer.capacity()) {
+                    int length = segment.buffer.getInt(offset);
+                    if ((length <= 0) || ((offset + 4 + length) > segment.buffer.capacity())) {
+                        break;
+                    }
+                    if ((seq > checkpointSeq) || (offset >= checkpointOffset)) {
+                        numRecovered++;
+                    }
+                    offset += 4 + length;
+                }
+                segment.limit = offset;
+                segment.isFinished = true;
+                segments.put(seq, segment);
+            }
+        }
+        numAppended.set(numRecovered);
+
+        // new entries are appended to a new segment 
+        int writeSeq = (segments.isEmpty() ? Math.max(checkpointSeq, 0) : Math.max(segments.lastKey(), checkpointSeq)) + 1;
+        File file = new File(directory, SEGMENT_PREFIX + writeSeq + SEGMENT_SUFFIX);
+        writeSegment = new Segment(writeSeq, file, map(file, segmentSize));
+        segments.put(writeSeq, writeSegment);
+        
+        // the replay starts at the checkpoint. The dictionary of the segment is restored by reading the preceding entries  
+        readSegment = segments.firstEntry().getValue();
+        readOffset = (readSegment.seq == checkpointSeq) ? Math.min(checkpointOffset, readSegment.limit) : 0;
+        int offset = 0;
+        while (offset < readOffset) {
+            offset = readEntry(readSegment, offset, readDictionary).endOffset;
+        }
+        
+        readPosition = toPosition(readSegment.seq, readOffset);
+        checkpoint = readPosition;
+        checkpointBuffer.putLong(0, checkpoint);
+        
+        if (numRecovered > 0) {
+            LOG.info("replaying " + numRecovered + " mutations of write-behind journal " + directory);
+        }
+    }
+
+    
+    private ImmutableList<File> listSegmentFiles() {
+        List<File> files = Lists.newArrayList();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File file : children) {
+                if (file.getName().startsWith(SEGMENT_PREFIX) && file.getName().endsWith(SEGMENT_SUFFIX)) {
+                    files.add(file);
+                }
+            }
+        }
+        
+        File[] sorted = files.toArray(new File[files.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Integer.compare(parseSeq(f1), parseSeq(f2));
+            }
+        });
+        return ImmutableList.copyOf(sorted);
+    }
+    
+    
+    private static int parseSeq(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+    
+    
+    private static MappedByteBuffer map(File file, int size) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            return raf.getChannel().map(MapMode.READ_WRITE, 0, size);  // the mapping remains valid after closing the file
+        } catch (IOException ioe) {
+            throw new RuntimeException("could not map journal file " + file, ioe);
+        }
+    }
+    
+    
+    private static void delete(File file) {
+        if (!file.delete()) {
+            LOG.debug("could not delete drained journal segment " + file + ". Segment will be deleted on next opening");
+        }
+    }
+    
+    
+    private static long toPosition(int seq, int offset) {
+        return (((long) seq) << 32) | (offset & 0xFFFFFFFFL);
+    }
+    
+    private static int toSeq(long position) {
+        return (int) (position >>> 32);
+    }
+    
+    private static int toOffset(long position) {
+        return (int) position;
+    }
+    
+    
+    
+    ////////////////////////////////////
+    // append
+    
+    /**
+     * appends the statement to the journal
+     * 
+     * @param statementFuture   the statement future. The statement has to be a bound statement or a batch of bound statements. 
+     *                          Neither the statement nor one of the batched statements has to be flagged as non-idempotent
+     * @param consistencyLevel  the consistency level or null
+     * @param writetime         the explicit writetime in micros or null
+     * @param idempotent        the explicit idempotence of the query or null
+     * @return the result future which completes as soon as the statement is appended
+     */
+    ListenableFuture<Result> appendAsync(ListenableFuture<Statement> statementFuture, final ConsistencyLevel consistencyLevel, final Long writetime, final Boolean idempotent) {
+        Function<Statement, Result> appendFunction = new Function<Statement, Result>() {
+            @Override
+            public Result apply(Statement statement) {
+                List<BoundStatement> statements = Lists.newArrayList();
+                flatten(statement, statements);
+                
+                // journaled mutations will be written at least once 
+                if (!isIdempotent(statement, statements, idempotent)) {
+                    throw new IllegalStateException("non-idempotent statement " + statement + " is not supported in write-behind mode");
+                }
+                
+                append(statements, (consistencyLevel == null) ? statement.getConsistencyLevel() : consistencyLevel, writetime, Boolean.TRUE.equals(idempotent));
+                return ACKNOWLEDGED;
+            }
+        };
+        return Futures.transform(statementFuture, appendFunction, MoreExecutors.directExecutor());
+    }
+    
+    
+    private static boolean isIdempotent(Statement statement, List<BoundStatement> statements, Boolean idempotent) {
+        if (idempotent != null) {
+            return idempotent;
+        }
+        
+        // a batch may contain non-idempotent statements such as list appends or counter updates 
+        if (Boolean.FALSE.equals(statement.isIdempotent())) {
+            return false;
+        }
+        for (BoundStatement childStatement : statements) {
+            if (Boolean.FALSE.equals(childStatement.isIdempotent())) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    
+    private static void flatten(Statement statement, List<BoundStatement> statements) {
+        if (statement instanceof BoundStatement) {
+            statements.add((BoundStatement) statement);
+        } else if (statement instanceof BatchStatement) {
+            for (Statement childStatement : ((BatchStatement) statement).getStatements()) {
+                flatten(childStatement, statements);
+            }
+        } else {
+            throw new IllegalArgumentException("statement " + statement + " is not supported in write-behind mode");
+        }
+    }
+    
+    
+    private void append(List<BoundStatement> statements, ConsistencyLevel consistencyLevel, Long writetime, boolean isIdempotent) {
+        if (statements.isEmpty()) {
+            return;
+        } else if (statements.size() > MAX_UNSIGNED_SHORT) {
+            throw new IllegalArgumentException("a journal entry can not contain more than " + MAX_UNSIGNED_SHORT + " statements");
+        }
+        
+        synchronized (appendLock) {
+            if (!isOpen.get()) {
+                throw new IllegalStateException("write-behind journal " + directory + " is closed");
+            }
+            
+            int size = computeEntrySize(statements, writetime);
+            if ((writeSegment.limit + size) > segmentSize) {
+                rollSegment();
+                size = computeEntrySize(statements, writetime);
+                if (size > segmentSize) {
+                    throw new IllegalArgumentException("mutation of " + size + " bytes exceeds the journal segment size of " + segmentSize + " bytes");
+                }
+            }
+            
+            lastTimestampMicros = Math.max(System.currentTimeMillis() * 1000, lastTimestampMicros + 1);
+
+            int offset = writeSegment.limit;
+            ByteBuffer buffer = writeSegment.buffer.duplicate();
+            buffer.position(offset + 4);
+            buffer.putLong(lastTimestampMicros);
+            buffer.put((writetime == null) ? 0 : FLAG_EXPLICIT_WRITETIME);
+            buffer.put((consistencyLevel == null) ? 0 : (byte) (consistencyLevel.ordinal() + 1));
+            buffer.putShort((short) statements.size());
+            if (writetime != null) {
+                buffer.putLong(writetime);
+            }
+            
+            for (BoundStatement statement : statements) {
+                String query = statement.preparedStatement().getQueryString();
+                Integer queryId = writeDictionary.get(query);
+                if (queryId == null) {
+                    byte[] queryBytes = query.getBytes(StandardCharsets.UTF_8);
+                    buffer.putInt(writeDictionary.size());
+                    buffer.putInt(queryBytes.length);
+                    buffer.put(queryBytes);
+                    writeDictionary.put(query, writeDictionary.size());
+                } else {
+                    buffer.putInt(queryId);
+                }
+                buffer.put((isIdempotent || Boolean.TRUE.equals(statement.isIdempotent())) ? IDEMPOTENT : 0);
+                
+                int numValues = statement.preparedStatement().getVariables().size();
+                buffer.putShort((short) numValues);
+                for (int i = 0; i < numValues; i++) {
+                    if (!statement.isSet(i)) {
+                        buffer.putInt(UNSET_VALUE);
+                    } else {
+                        ByteBuffer value = statement.getBytesUnsafe(i);
+                        if (value == null) {
+                            buffer.putInt(NULL_VALUE);
+                        } else {
+                            buffer.putInt(value.remaining());
+                            buffer.put(value);   // copies the serialized value into the mapped segment 
+                        }
+                    }
+                }
+            }
+            
+            // publish the entry 
+            writeSegment.buffer.putInt(offset, buffer.position() - offset - 4);
+            writeSegment.limit = buffer.position();
+        }
+        
+        numAppended.incrementAndGet();
+        LockSupport.unpark(drainer);
+    }
+    
+    
+    // guarded by appendLock
+    private int computeEntrySize(List<BoundStatement> statements, Long writetime) {
+        int size = ENTRY_HEADER_SIZE + ((writetime == null) ? 0 : 8);
+        
+        Set<String> newQueries = Sets.newHashSet();
+        for (BoundStatement statement : statements) {
+            String query = statement.preparedStatement().getQueryString();
+            size += 4 + 1 + 2;
+            if (!writeDictionary.containsKey(query) && newQueries.add(query)) {
+                size += 4 + query.getBytes(StandardCharsets.UTF_8).length;
+            }
+            
+            int numValues = statement.preparedStatement().getVariables().size();
+            if (numValues > MAX_UNSIGNED_SHORT) {
+                throw new IllegalArgumentException("a journaled statement can not contain more than " + MAX_UNSIGNED_SHORT + " values");
+            }
+            for (int i = 0; i < numValues; i++) {
+                size += 4;
+                if (statement.isSet(i)) {
+                    ByteBuffer value = statement.getBytesUnsafe(i);
+                    size += (value == null) ? 0 : value.remaining();
+                }
+            }
+        }
+        
+        return size;
+    }
+    
+    
+    // guarded by appendLock
+    private void rollSegment() {
+        Segment finishedSegment = writeSegment;
+        
+        int seq = finishedSegment.seq + 1;
+        File file = new File(directory, SEGMENT_PREFIX + seq + SEGMENT_SUFFIX);
+        writeSegment = new Segment(seq, file, map(file, segmentSize));
+        writeDictionary.clear();
+        
+        // the new segment has to be registered before the drainer notices the finished segment   
+        segments.put(seq, writeSegment);
+        finishedSegment.isFinished = true;
+        finishedSegment.buffer.force();
+    }
+    
+    
+    
+    ////////////////////////////////////
+    // drain
+    
+    private void drain() {
+        try {
+            while (isOpen.get()) {
+                ImmutableList<Entry> entries = readEntries();
+                if (entries.isEmpty()) {
+                    LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                    
+                } else {
+                    for (Group group : toGroups(entries)) {
+                        writePermits.acquire();
+                        writeAsync(group, 0);
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            LOG.debug("write-behind drainer of " + directory + " stopped");
+        }
+    }
+    
+    
+    private ImmutableList<Entry> readEntries() {
+        ImmutableList.Builder<Entry> builder = ImmutableList.builder();
+        
+        int numEntries = 0;
+        while (numEntries < MAX_ENTRIES_PER_ROUND) {
+            boolean isFinished = readSegment.isFinished;  // has to be read before the limit 
+            if (readOffset < readSegment.limit) {
+                Entry entry = readEntry(readSegment, readOffset, readDictionary);
+                builder.add(entry);
+                readOffset = entry.endOffset;
+                numEntries++;
+                
+            } else if (isFinished) {
+                Map.Entry<Integer, Segment> next = segments.higherEntry(readSegment.seq);
+                if (next == null) {
+                    break;
+                }
+                readSegment = next.getValue();
+                readOffset = 0;
+                readDictionary.clear();
+                
+            } else {
+                break;
+            }
+        }
+        
+        ImmutableList<Entry> entries = builder.build();
+        
+        List<DrainWaiter> drained;
+        synchronized (checkpointLock) {
+            for (Entry entry : entries) {
+                inFlightPositions.add(entry.position);
+            }
+            readPosition = toPosition(readSegment.seq, readOffset);
+            drained = updateCheckpoint();
+        }
+        complete(drained);
+        
+        return entries;
+    }
+    
+    
+    private static Entry readEntry(Segment segment, int offset, List<String> dictionary) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset);
+
+        int length = buffer.getInt();
+        long appendMicros = buffer.getLong();
+        byte flags = buffer.get();
+        int consistency = buffer.get();
+        int numStatements = buffer.getShort() & MAX_UNSIGNED_SHORT;
+        boolean hasExplicitWritetime = (flags & FLAG_EXPLICIT_WRITETIME) != 0;
+        long writetime = hasExplicitWritetime ? buffer.getLong() : appendMicros;
+        
+        ImmutableList.Builder<JournaledStatement> statements = ImmutableList.builder();
+        for (int i = 0; i < numStatements; i++) {
+            int queryId = buffer.getInt();
+            if (queryId == dictionary.size()) {
+                byte[] queryBytes = new byte[buffer.getInt()];
+                buffer.get(queryBytes);
+                dictionary.add(new String(queryBytes, StandardCharsets.UTF_8));
+            }
+            String query = dictionary.get(queryId);
+            boolean isIdempotent = buffer.get() == IDEMPOTENT;
+            
+            ByteBuffer[] values = new ByteBuffer[buffer.getShort() & MAX_UNSIGNED_SHORT];
+            for (int j = 0; j < values.length; j++) {
+                int valueLength = buffer.getInt();
+                if (valueLength == NULL_VALUE) {
+                    values[j] = null;
+                } else if (valueLength == UNSET_VALUE) {
+                    values[j] = UNSET;
+                } else {
+                    ByteBuffer value = buffer.slice();   // no copy. The value refers the mapped segment 
+                    value.limit(valueLength);
+                    values[j] = value;
+                    buffer.position(buffer.position() + valueLength);
+                }
+            }
+            statements.add(new JournaledStatement(query, isIdempotent, values));
+        }
+        
+        return new Entry(toPosition(segment.seq, offset), 
+                         offset + 4 + length, 
+                         writetime, 
+                         hasExplicitWritetime, 
+                         (consistency == 0) ? null : ConsistencyLevel.values()[consistency - 1], 
+                         statements.build());
+    }
+    
+    
+    private ImmutableList<Group> toGroups(ImmutableList<Entry> entries) throws InterruptedException {
+        List<Group> groups = Lists.newArrayList();
+        Map<Object, Group> openGroups = Maps.newLinkedHashMap();
+        
+        for (Entry entry : entries) {
+            ImmutableList<BoundStatement> statements = bind(entry);
+            
+            // the open groups of the rows are closed. Otherwise, the timestamp of a later entry of the 
+            // group would let the grouped mutation of a row overtake this entry (e.g. entries of another 
+            // consistency level or logged entries) 
+            for (BoundStatement statement : statements) {
+                Object rowKey = getRowKey(statement);
+                if (rowKey == null) {
+                    closeGroups(openGroups.keySet(), openGroups, groups);
+                    break;
+                } else {
+                    closeGroups(getPartitionsOfRow(rowKey, openGroups), openGroups, groups);
+                }
+            }
+            
+            if ((statements.size() != 1) || entry.hasExplicitWritetime) {
+                groups.add(new Group(entry, statements));
+                continue;
+            }
+            
+            BoundStatement statement = statements.get(0);
+            ByteBuffer routingKey = dbSession.getRoutingKey(statement);
+            Object rowKey = getRowKey(statement);
+            if ((routingKey == null) || (rowKey == null)) {
+                groups.add(new Group(entry, statements));
+                continue;
+            }
+            
+            Object partition = Arrays.asList(statement.getKeyspace(), routingKey, entry.consistencyLevel);
+            Group group = openGroups.get(partition);
+            if ((group != null) && (group.statements.size() >= MAX_BATCH_STATEMENTS)) {
+                groups.add(openGroups.remove(partition));
+                group = null;
+            }
+            if (group == null) {
+                group = new Group(entry.consistencyLevel);
+                openGroups.put(partition, group);
+            }
+            group.add(entry, statement, rowKey);
+        }
+        
+        groups.addAll(openGroups.values());
+        return ImmutableList.copyOf(groups);
+    }
+    
+    
+    private static ImmutableList<Object> getPartitionsOfRow(Object rowKey, Map<Object, Group> openGroups) {
+        ImmutableList.Builder<Object> partitions = ImmutableList.builder();
+        for (Map.Entry<Object, Group> openGroup : openGroups.entrySet()) {
+            if (openGroup.getValue().rowKeys.contains(rowKey)) {
+                partitions.add(openGroup.getKey());
+            }
+        }
+        return partitions.build();
+    }
+    
+    
+    private static void closeGroups(Collection<Object> partitions, Map<Object, Group> openGroups, List<Group> groups) {
+        for (Object partition : ImmutableList.copyOf(partitions)) {
+            groups.add(openGroups.remove(partition));
+        }
+    }
+    
+    
+    /**
+     * @return the bound statements or an empty list, if the statements can not be executed anymore
+     */
+    private ImmutableList<BoundStatement> bind(Entry entry) throws InterruptedException {
+        ImmutableList.Builder<BoundStatement> statements = ImmutableList.builder();
+        
+        for (JournaledStatement journaledStatement : entry.statements) {
+            QueryPlan queryPlan = getQueryPlan(journaledStatement.query);
+            if ((queryPlan == null) || (queryPlan.preparedStatement.getVariables().size() != journaledStatement.values.length)) {
+                LOG.warn("dropping journaled mutation " + journaledStatement.query + " which can not be executed anymore");
+                return ImmutableList.of();
+            }
+            
+            BoundStatement statement = queryPlan.preparedStatement.bind();
+            if (journaledStatement.isIdempotent) {
+                statement.setIdempotent(true);
+            }
+            for (int i = 0; i < journaledStatement.values.length; i++) {
+                if (journaledStatement.values[i] != UNSET) {
+                    statement.setBytesUnsafe(i, journaledStatement.values[i]);
+                }
+            }
+            statements.add(statement);
+        }
+        
+        return statements.build();
+    }
+    
+    
+    /**
+     * prepares the query. Failed preparations will be retried until the journal is closed
+     * 
+     * @return the query plan or null, if the query is invalid 
+     */
+    private QueryPlan getQueryPlan(String query) throws InterruptedException {
+        QueryPlan queryPlan = queryPlans.get(query);
+        
+        int attempt = 0;
+        while (queryPlan == null) {
+            try {
+                queryPlan = new QueryPlan(ListenableFutures.getUninterruptibly(dbSession.prepareAsync(query)), dbSession.getSession().getCluster().getMetadata());
+                queryPlans.put(query, queryPlan);
+                
+            } catch (InvalidQueryException iqe) {
+                LOG.warn("could not prepare journaled query " + query, iqe);
+                return null;
+                
+            } catch (RuntimeException rt) {
+                LOG.debug("could not prepare journaled query " + query + ". retrying", rt);
+                numRetries.incrementAndGet();
+                Thread.sleep(getRetryDelayMillis(attempt++));
+                if (!isOpen.get()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        
+        return queryPlan;
+    }
+
+    
+    private Object getRowKey(BoundStatement statement) {
+        int[] primaryKeyIndexes = queryPlans.get(statement.preparedStatement().getQueryString()).primaryKeyIndexes;
+        if (primaryKeyIndexes == null) {
+            return null;
+        }
+        
+        List<Object> rowKey = Lists.newArrayList();
+        rowKey.add(statement.preparedStatement().getVariables().getKeyspace(0));
+        rowKey.add(statement.preparedStatement().getVariables().getTable(0));
+        for (int index : primaryKeyIndexes) {
+            rowKey.add(statement.getBytesUnsafe(index));
+        }
+        return rowKey;
+    }
+    
+    
+    private void writeAsync(final Group group, final int attempt) {
+        if (group.statements.isEmpty()) {
+            onWritten(group);
+            return;
+        }
+        
+        ListenableFuture<ResultSet> future = dbSession.executeAsync(group.toStatement());
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            
+            @Override
+            public void onSuccess(ResultSet result) {
+                onWritten(group);
+            }
+            
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof InvalidQueryException) {
+                    LOG.warn("dropping journaled mutations which can not be executed", t);
+                    onWritten(group);
+                    return;
+                }
+                
+                numRetries.incrementAndGet();
+                if (!isOpen.get()) {
+                    writePermits.release();  // will be replayed on next opening
+                    return;
+                }
+                
+                LOG.debug("writing journaled mutations failed. retrying", t);
+                try {
+                    retryScheduler.schedule(new Runnable() {
+                                                @Override
+                                                public void run() {
+                                                    writeAsync(group, attempt + 1);
+                                                }
+                                            }, 
+                                            getRetryDelayMillis(attempt), 
+                                            TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ree) {
+                    writePermits.release();  // journal is closed  
+                }
+            }
+            
+        }, MoreExecutors.directExecutor());
+    }
+    
+    
+    private static long getRetryDelayMillis(int attempt) {
+        return Math.min(MIN_RETRY_DELAY_MILLIS << Math.min(attempt, 16), MAX_RETRY_DELAY_MILLIS);
+    }
+    
+    
+    private void onWritten(Group group) {
+        writePermits.release();
+        numDrained.addAndGet(group.entries.size());
+        
+        List<DrainWaiter> drained;
+        synchronized (checkpointLock) {
+            for (Entry entry : group.entries) {
+                inFlightPositions.remove(entry.position);
+            }
+            drained = updateCheckpoint();
+        }
+        complete(drained);
+    }
+
+    
+    // guarded by checkpointLock
+    private List<DrainWaiter> updateCheckpoint() {
+        long newCheckpoint = inFlightPositions.isEmpty() ? readPosition : inFlightPositions.first();
+        if (newCheckpoint <= checkpoint) {
+            return ImmutableList.of();
+        }
+        
+        checkpoint = newCheckpoint;
+        checkpointBuffer.putLong(0, newCheckpoint);
+        
+        // remove the drained segments
+        Iterator<Segment> it = segments.headMap(toSeq(newCheckpoint)).values().iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            it.remove();
+            delete(segment.file);
+        }
+        
+        List<DrainWaiter> drained = Lists.newArrayList();
+        Iterator<DrainWaiter> waiterIt = drainWaiters.iterator();
+        while (waiterIt.hasNext()) {
+            DrainWaiter waiter = waiterIt.next();
+            if (waiter.position <= newCheckpoint) {
+                waiterIt.remove();
+                drained.add(waiter);
+            }
+        }
+        return drained;
+    }
+    
+    
+    private static void complete(List<DrainWaiter> drained) {
+        for (DrainWaiter waiter : drained) {
+            waiter.future.set(null);
+        }
+    }
+    
+    
+    @Override
+    public ListenableFuture<Void> drainAsync() {
+        long position;
+        synchronized (appendLock) {
+            position = toPosition(writeSegment.seq, writeSegment.limit);
+        }
+        
+        synchronized (checkpointLock) {
+            if (checkpoint >= position) {
+                return Futures.immediateFuture(null);
+            } else if (!isOpen.get()) {
+                return Futures.immediateFailedFuture(new IllegalStateException("write-behind journal " + directory + " is closed"));
+            }
+            
+            DrainWaiter waiter = new DrainWaiter(position);
+            drainWaiters.add(waiter);
+            return waiter.future;
+        }
+    }
+    
+    
+    @Override
+    public WriteBehindMetrics getMetrics() {
+        return metrics;
+    }
+    
+    
+    @Override
+    public void close() {
+        if (isOpen.compareAndSet(true, false)) {
+            synchronized (appendLock) {
+                writeSegment.buffer.force();
+            }
+            
+            // stop draining and wait for the running writes. Failed writes will not be retried anymore 
+            drainer.interrupt();
+            writePermits.release(retryScheduler.shutdownNow().size());  // the cancelled retries hold a permit
+            try {
+                drainer.join(CLOSE_TIMEOUT_MILLIS);
+                if (!writePermits.tryAcquire(maxParallelWrites, CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("running writes of write-behind journal " + directory + " have not been completed within " + CLOSE_TIMEOUT_MILLIS + " millis");
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            
+            synchronized (checkpointLock) {
+                checkpointBuffer.force();
+                for (DrainWaiter waiter : drainWaiters) {
+                    waiter.future.setException(new IllegalStateException("write-behind journal " + directory + " has been closed before draining"));
+                }
+                drainWaiters.clear();
+            }
+            
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ise) {
+                // shutdown in progress 
+            }
+        }
+    }
+    
+    
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("directory", directory)
+                          .add("segmentSize", segmentSize)
+                          .add("maxParallelWrites", maxParallelWrites)
+                          .add("pending", metrics.getNumPending())
+                          .toString();
+    }
+    
+    
+    
+    private final class Metrics implements WriteBehindMetrics {
+        
+        @Override
+        public long getNumAppended() {
+            return numAppended.get();
+        }
+        
+        @Override
+        public long getNumDrained() {
+            return numDrained.get();
+        }
+        
+        @Override
+        public long getNumPending() {
+            return Math.max(0, numAppended.get() - numDrained.get());
+        }
+        
+        @Override
+        public long getPendingBytes() {
+            long position = checkpoint;
+            
+            long bytes = 0;
+            for (Segment segment : segments.tailMap(toSeq(position)).values()) {
+                bytes += segment.limit - ((segment.seq == toSeq(position)) ? toOffset(position) : 0);
+            }
+            return Math.max(0, bytes);
+        }
+        
+        @Override
+        public long getLagMillis() {
+            long position = checkpoint;
+            
+            for (Segment segment : segments.tailMap(toSeq(position)).values()) {
+                int offset = (segment.seq == toSeq(position)) ? toOffset(position) : 0;
+                if (offset < segment.limit) {
+                    long appendMicros = segment.buffer.getLong(offset + 4);
+                    return Math.max(0, System.currentTimeMillis() - (appendMicros / 1000));
+                }
+            }
+            return 0;
+        }
+        
+        @Override
+        public long getNumRetries() {
+            return numRetries.get();
+        }
+        
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("appended", getNumAppended())
+                              .add("drained", getNumDrained())
+                              .add("pending", getNumPending())
+                              .add("pendingBytes", getPendingBytes())
+                              .add("lagMillis", getLagMillis())
+                              .add("retries", getNumRetries())
+                              .toString();
+        }
+    }
+    
+    
+    
+    private static final class Segment {
+        private final int seq;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private volatile int limit = 0;               // end of the published entries
+        private volatile boolean isFinished = false;  // true, if no entries will be appended anymore
+
+        Segment(int seq, File file, MappedByteBuffer buffer) {
+            this.seq = seq;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+    
+    
+    
+    private static final class JournaledStatement {
+        private final String query;
+        private final boolean isIdempotent;
+        private final ByteBuffer[] values;
+        
+        JournaledStatement(String query, boolean isIdempotent, ByteBuffer[] values) {
+            this.query = query;
+            this.isIdempotent = isIdempotent;
+            this.values = values;
+        }
+    }
+    
+    
+    
+    private static final class Entry {
+        private final long position;
+        private final int endOffset;
+        private final long writetime;
+        private final boolean hasExplicitWritetime;
+        private final ConsistencyLevel consistencyLevel;
+        private final ImmutableList<JournaledStatement> statements;
+        
+        Entry(long position, 
+              int endOffset, 
+              long writetime, 
+              boolean hasExplicitWritetime, 
+              ConsistencyLevel consistencyLevel, 
+              ImmutableList<JournaledStatement> statements) {
+            this.position = position;
+            this.endOffset = endOffset;
+            this.writetime = writetime;
+            this.hasExplicitWritetime = hasExplicitWritetime;
+            this.consistencyLevel = consistencyLevel;
+            this.statements = statements;
+        }
+    }
+    
+    
+    
+    /**
+     * Entries which are written together. A group consists of the statements of a single entry 
+     * (logged) or of the single statement entries of a partition (unlogged, each row once and 
+     * no other entry of the rows in between)
+     */
+    private static final class Group {
+        private final ConsistencyLevel consistencyLevel;
+        private final List<Entry> entries = Lists.newArrayList();
+        private final List<BoundStatement> statements = Lists.newArrayList();
+        private final Set<Object> rowKeys = Sets.newHashSet();
+        private final Type batchType;
+        private long writetime = Long.MIN_VALUE;
+        private Statement statement = null;
+        
+        Group(ConsistencyLevel consistencyLevel) {
+            this.consistencyLevel = consistencyLevel;
+            this.batchType = Type.UNLOGGED;
+        }
+        
+        Group(Entry entry, ImmutableList<BoundStatement> statements) {
+            this.consistencyLevel = entry.consistencyLevel;
+            this.batchType = Type.LOGGED;
+            this.entries.add(entry);
+            this.statements.addAll(statements);
+            this.writetime = entry.writetime;
+        }
+        
+        void add(Entry entry, BoundStatement statement, Object rowKey) {
+            entries.add(entry);
+            statements.add(statement);
+            rowKeys.add(rowKey);
+            writetime = Math.max(writetime, entry.writetime);
+        }
+        
+        Statement toStatement() {
+            if (statement == null) {
+                if (statements.size() == 1) {
+                    statement = statements.get(0);
+                } else {
+                    BatchStatement batchStatement = new BatchStatement(batchType);
+                    batchStatement.addAll(statements);
+                    statement = batchStatement;
+                }
+                
+                // the journal timestamp keeps the order of the mutations. The idempotence of the statements is kept  
+                statement.setDefaultTimestamp(writetime);
+                if (consistencyLevel != null) {
+                    statement.setConsistencyLevel(consistencyLevel);
+                }
+            }
+            return statement;
+        }
+    }
+    
+    
+    
+    private static final class QueryPlan {
+        private static final Pattern MULTI_ROW_RESTRICTION = Pattern.compile("[<>]|\\sIN\\s", Pattern.CASE_INSENSITIVE);
+        
+        private final PreparedStatement preparedStatement;
+        private final int[] primaryKeyIndexes;   // null, if the statement does not address a single row by binding the primary key
+        
+        QueryPlan(PreparedStatement preparedStatement, Metadata metadata) {
+            this.preparedStatement = preparedStatement;
+            this.primaryKeyIndexes = getPrimaryKeyIndexes(preparedStatement, metadata);
+        }
+        
+        private static int[] getPrimaryKeyIndexes(PreparedStatement preparedStatement, Metadata metadata) {
+            ColumnDefinitions variables = preparedStatement.getVariables();
+            if ((variables.size() == 0) || MULTI_ROW_RESTRICTION.matcher(preparedStatement.getQueryString()).find()) {
+                return null;
+            }
+            
+            KeyspaceMetadata keyspaceMetadata = metadata.getKeyspace(Metadata.quote(variables.getKeyspace(0)));
+            TableMetadata tableMetadata = (keyspaceMetadata == null) ? null : keyspaceMetadata.getTable(Metadata.quote(variables.getTable(0)));
+            if (tableMetadata == null) {
+                return null;
+            }
+            
+            List<ColumnMetadata> primaryKey = tableMetadata.getPrimaryKey();
+            int[] indexes = new int[primaryKey.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = -1;
+                for (int j = 0; j < variables.size(); j++) {
+                    if (variables.getName(j).equals(primaryKey.get(i).getName())) {
+                        indexes[i] = j;
+                        break;
+                    }
+                }
+                
+                if (indexes[i] == -1) {
+                    return null;
+                }
+            }
+            return indexes;
+        }
+    }
+    
+    
+    
+    private static final class DrainWaiter {
+        private final long position;
+        private final SettableFuture<Void> future = SettableFuture.create();
+        
+        DrainWaiter(long position) {
+            this.position = position;
+        }
+    }
+    
+    
+    
+    private static final class AcknowledgedResult implements Result {
+        
+        @Override
+        public ExecutionInfo getExecutionInfo() {
+            return null;
+        }
+        
+        @Override
+        public ImmutableList<ExecutionInfo> getAllExecutionInfo() {
+            return ImmutableList.of();
+        }
+        
+        @Override
+        public boolean wasApplied() {
+            return true;
+        }
+        
+        @Override
+        public String toString() {
+            return "acknowledged by write-behind journal";
+        }
+    }
+}
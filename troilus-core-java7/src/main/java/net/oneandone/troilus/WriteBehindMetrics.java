@@ -0,0 +1,55 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+
+/**
+ * Write-behind journal metrics. The pending mutations include the 
+ * mutations which have been replayed from the journal on opening 
+ */
+public interface WriteBehindMetrics {
+
+    /**
+     * @return the number of mutations which have been appended to the journal
+     */
+    long getNumAppended();
+    
+    /**
+     * @return the number of mutations which have been written to the database
+     */
+    long getNumDrained();
+    
+    /**
+     * @return the number of mutations which have not been written to the database yet
+     */
+    long getNumPending();
+    
+    /**
+     * @return the journal size in bytes of the pending mutations
+     */
+    long getPendingBytes();
+    
+    /**
+     * @return the age of the oldest pending mutation in millis or 0, if no mutation is pending
+     */
+    long getLagMillis();
+    
+    /**
+     * @return the number of failed database writes which have been retried
+     */
+    long getNumRetries();
+}
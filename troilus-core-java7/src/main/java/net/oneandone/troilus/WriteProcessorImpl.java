@@ -0,0 +1,681 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.oneandone.troilus.java7.Batchable;
+import net.oneandone.troilus.java7.CounterMutation;
+import net.oneandone.troilus.java7.WriteProcessor;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BatchStatement.Type;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+
+/**
+ * Backpressure-aware write processor. Items are requested from the upstream publisher only
+ * if the number of items in flight (received, but the result has not been emitted to the
+ * downstream subscriber) is below the max in flight limit. By doing this a slow database as
+ * well as a slow downstream subscriber will slow down the upstream publisher.
+ *
+ * @param <T> the item type
+ */
+class WriteProcessorImpl<T> implements WriteProcessor<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteProcessorImpl.class);
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 50;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+
+    private final Context ctx;
+    private final Function<? super T, Batchable<?>> mutationFunction;
+    private final int maxInFlight;
+    private final int maxRetries;
+    private final Function<? super T, ?> partitionKeyFunction;  // null, if grouping is deactivated
+
+
+    // processing state
+    private final Object lock = new Object();
+    private final AtomicInteger numDrainRequests = new AtomicInteger();
+    private final Deque<MutationResult<T>> results = Queues.newArrayDeque();
+    private final Map<Object, List<T>> pendingGroups = Maps.newLinkedHashMap();
+    private Subscription upstreamSubscription = null;
+    private Subscriber<? super MutationResult<T>> downstreamSubscriber = null;
+    private boolean isDownstreamReady = false;
+    private long upstreamDemand = 0;     // requested, but not received items
+    private long downstreamDemand = 0;   // requested, but not emitted results
+    private int numInFlight = 0;         // received items, which results are not emitted
+    private int numRunningWrites = 0;
+    private boolean isUpstreamCompleted = false;
+    private Throwable upstreamError = null;
+    private Throwable protocolError = null;
+    private boolean isCancelled = false;
+    private boolean isTerminated = false;
+    private boolean isClosed = false;
+    private ScheduledExecutorService retryScheduler = null;  // created on the first retry
+
+
+    /**
+     * @param ctx               the context
+     * @param mutationFunction  the function which maps a received item to the mutation to perform
+     */
+    WriteProcessorImpl(Context ctx, Function<? super T, Batchable<?>> mutationFunction) {
+        this(ctx, mutationFunction, DEFAULT_MAX_IN_FLIGHT, 0, null);
+    }
+
+    private WriteProcessorImpl(Context ctx,
+                               Function<? super T, Batchable<?>> mutationFunction,
+                               int maxInFlight,
+                               int maxRetries,
+                               Function<? super T, ?> partitionKeyFunction) {
+        // grouped items are written as batch, which does not execute the response interceptors 
+        if (LookupIndexImpl.isActivated(ctx)) {
+            throw new IllegalStateException("write processors are not supported by a lookup index");
+        }
+        
+        this.ctx = ctx;
+        this.mutationFunction = mutationFunction;
+        this.maxInFlight = maxInFlight;
+        this.maxRetries = maxRetries;
+        this.partitionKeyFunction = partitionKeyFunction;
+    }
+
+    /**
+     * @param ctx        the context
+     * @param tablename  the tablename
+     * @return a new processor which inserts the received entities
+     */
+    static <E> WriteProcessorImpl<E> newEntityWriteProcessor(final Context ctx, final Tablename tablename) {
+        Function<E, Batchable<?>> insertFunction = new Function<E, Batchable<?>>() {
+            @Override
+            public Batchable<?> apply(E entity) {
+                ImmutableMap<String, Optional<Object>> values = ctx.toEntityValues(entity, tablename);
+                return new InsertQuery(ctx, new WriteQueryDataImpl(tablename).valuesToMutate(values));
+            }
+        };
+
+        return new WriteProcessorImpl<E>(ctx, insertFunction);
+    }
+
+
+    @Override
+    public WriteProcessorImpl<T> withMaxInFlight(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("max in flight has to be greater than 0");
+        }
+        return new WriteProcessorImpl<T>(ctx, mutationFunction, maxInFlight, maxRetries, partitionKeyFunction);
+    }
+
+    @Override
+    public WriteProcessorImpl<T> withRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("max retries has to be positive");
+        }
+        return new WriteProcessorImpl<T>(ctx, mutationFunction, maxInFlight, maxRetries, partitionKeyFunction);
+    }
+
+    @Override
+    public WriteProcessorImpl<T> withPartitionGrouping(Function<? super T, ?> partitionKeyFunction) {
+        return new WriteProcessorImpl<T>(ctx, mutationFunction, maxInFlight, maxRetries, partitionKeyFunction);
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService scheduler;
+        synchronized (lock) {
+            isClosed = true;
+            scheduler = retryScheduler;
+        }
+        
+        // already scheduled retries will be performed
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+
+
+
+    ////////////////////
+    // downstream (publisher) side
+
+    @Override
+    public void subscribe(Subscriber<? super MutationResult<T>> subscriber) {
+        // https://github.com/reactive-streams/reactive-streams-jvm#1.9
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber is null");
+        }
+
+        boolean isAccepted;
+        synchronized (lock) {
+            isAccepted = (downstreamSubscriber == null);
+            if (isAccepted) {
+                downstreamSubscriber = subscriber;
+            }
+        }
+
+        if (isAccepted) {
+            subscriber.onSubscribe(new ResultSubscription());
+            synchronized (lock) {
+                isDownstreamReady = true;
+            }
+            drain();
+
+        } else {
+            subscriber.onSubscribe(new CancelledSubscription());
+            subscriber.onError(new IllegalStateException("subscription already exists. Multi-subscribe is not supported"));  // only one allowed
+        }
+    }
+
+
+    private final class ResultSubscription implements Subscription {
+
+        @Override
+        public void request(long n) {
+            synchronized (lock) {
+                if (n <= 0) {
+                    // https://github.com/reactive-streams/reactive-streams#3.9
+                    protocolError = new IllegalArgumentException("Non-negative number of elements must be requested: https://github.com/reactive-streams/reactive-streams#3.9");
+                } else {
+                    downstreamDemand = (downstreamDemand + n < 0) ? Long.MAX_VALUE : downstreamDemand + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            Subscription subscription;
+            synchronized (lock) {
+                isCancelled = true;
+                results.clear();
+                subscription = upstreamSubscription;
+            }
+
+            // While the Subscription is not cancelled, Subscription.cancel() MUST request the Publisher to eventually drop any references to the corresponding subscriber.
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            close();
+        }
+    }
+
+
+    private static final class CancelledSubscription implements Subscription {
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+
+
+
+    ////////////////////
+    // upstream (subscriber) side
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        // https://github.com/reactive-streams/reactive-streams-jvm#2.13
+        if (subscription == null) {
+            throw new NullPointerException("subscription is null");
+        }
+
+        boolean isAccepted;
+        boolean isAlreadyCancelled;
+        synchronized (lock) {
+            isAccepted = (upstreamSubscription == null);
+            isAlreadyCancelled = isCancelled;
+            if (isAccepted) {
+                upstreamSubscription = subscription;
+            }
+        }
+
+        // https://github.com/reactive-streams/reactive-streams-jvm#2.5
+        if (!isAccepted || isAlreadyCancelled) {
+            subscription.cancel();
+        } else {
+            drain();
+        }
+    }
+
+
+    @Override
+    public void onNext(T item) {
+        // https://github.com/reactive-streams/reactive-streams-jvm#2.13
+        if (item == null) {
+            throw new NullPointerException("item is null");
+        }
+
+        Object partitionKey = getPartitionKey(item);
+
+        ImmutableList<ImmutableList<T>> writeUnits;
+        synchronized (lock) {
+            upstreamDemand--;
+            numInFlight++;
+
+            if (partitionKey == null) {
+                writeUnits = ImmutableList.of(ImmutableList.of(item));
+            } else {
+                List<T> group = pendingGroups.get(partitionKey);
+                if (group == null) {
+                    group = Lists.newArrayList();
+                    pendingGroups.put(partitionKey, group);
+                }
+                group.add(item);
+
+                // groups will be flushed, if a running write is completed. If no write is running, write immediately
+                writeUnits = (numRunningWrites == 0) ? flushPendingGroups() : ImmutableList.<ImmutableList<T>>of();
+            }
+            numRunningWrites += writeUnits.size();
+        }
+
+        for (ImmutableList<T> writeUnit : writeUnits) {
+            write(writeUnit, 0);
+        }
+    }
+
+
+    private Object getPartitionKey(T item) {
+        if (partitionKeyFunction == null) {
+            return null;
+        } else {
+            try {
+                // counter mutations can not be part of an unlogged batch  
+                if (mutationFunction.apply(item) instanceof CounterMutation) {
+                    return null;
+                }
+                return partitionKeyFunction.apply(item);
+            } catch (RuntimeException rt) {
+                LOG.debug("could not get partition key of " + item + ". Item will be written ungrouped", rt);
+                return null;
+            }
+        }
+    }
+
+
+    @Override
+    public void onError(Throwable error) {
+        // https://github.com/reactive-streams/reactive-streams-jvm#2.13
+        if (error == null) {
+            throw new NullPointerException("error is null");
+        }
+
+        synchronized (lock) {
+            upstreamError = error;
+        }
+        drain();
+    }
+
+
+    @Override
+    public void onComplete() {
+        synchronized (lock) {
+            isUpstreamCompleted = true;
+        }
+        drain();
+    }
+
+
+
+
+    ////////////////////
+    // database
+
+    private void write(final ImmutableList<T> items, final int attempt) {
+        ListenableFuture<Result> future;
+        try {
+            future = toMutation(items).executeAsync();
+        } catch (RuntimeException rt) {
+            future = Futures.immediateFailedFuture(rt);
+        }
+
+        Futures.addCallback(future, new FutureCallback<Result>() {
+
+                                        @Override
+                                        public void onSuccess(Result result) {
+                                            onWritten(items, result, null);
+                                        }
+
+                                        @Override
+                                        public void onFailure(Throwable error) {
+                                            onWriteFailed(items, error, attempt);
+                                        }
+                                    },
+                            MoreExecutors.directExecutor());
+    }
+
+
+    private Batchable<?> toMutation(ImmutableList<T> items) {
+        if (items.size() == 1) {
+            return mutationFunction.apply(items.get(0));
+
+        } else {
+            List<Batchable<?>> batchables = Lists.newArrayList();
+            for (T item : items) {
+                batchables.add(mutationFunction.apply(item));
+            }
+
+            // all items belongs to the same partition
+            return new BatchMutationQuery(ctx, Type.UNLOGGED, ImmutableList.copyOf(batchables));
+        }
+    }
+
+
+    private void onWriteFailed(final ImmutableList<T> items, final Throwable error, final int attempt) {
+        
+        // a group is split to isolate the failed item. A single item is retried, if retries are left 
+        if (!isRetryable(error) || ((items.size() == 1) && (attempt >= maxRetries))) {
+            onWritten(items, null, error);
+            return;
+        }
+        
+        // the items are written again only, if all of them are idempotent 
+        ListenableFuture<Boolean> isIdempotentFuture;
+        try {
+            isIdempotentFuture = isIdempotentAsync(items);
+        } catch (RuntimeException rt) {
+            isIdempotentFuture = Futures.immediateFailedFuture(rt);
+        }
+        
+        Futures.addCallback(isIdempotentFuture, new FutureCallback<Boolean>() {
+            
+                                                    @Override
+                                                    public void onSuccess(Boolean isIdempotent) {
+                                                        if (isIdempotent) {
+                                                            rewrite(items, error, attempt);
+                                                        } else {
+                                                            onWritten(items, null, error);
+                                                        }
+                                                    }
+                                                    
+                                                    @Override
+                                                    public void onFailure(Throwable t) {
+                                                        onWritten(items, null, error);
+                                                    }
+                                                }, 
+                            MoreExecutors.directExecutor());
+    }
+    
+    
+    private void rewrite(ImmutableList<T> items, Throwable error, final int attempt) {
+        
+        // group failed? -> write the items one by one to isolate the failed one
+        if (items.size() > 1) {
+            synchronized (lock) {
+                numRunningWrites += items.size() - 1;
+            }
+
+            for (T item : items) {
+                write(ImmutableList.of(item), attempt);
+            }
+
+        } else {
+            final long delayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, INITIAL_RETRY_DELAY_MILLIS << Math.min(attempt, 16));
+            LOG.debug("writing " + items.get(0) + " failed. Retrying (" + (attempt + 1) + " of " + maxRetries + ") in " + delayMillis + " millis", error);
+            
+            final ImmutableList<T> itemsToRetry = items;
+            try {
+                getRetryScheduler().schedule(new Runnable() {
+                                                @Override
+                                                public void run() {
+                                                    write(itemsToRetry, attempt + 1);
+                                                }
+                                             }, 
+                                             delayMillis, 
+                                             TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ree) {
+                LOG.debug("processor is closed. " + items.get(0) + " will not be retried");
+                onWritten(items, null, error);
+            }
+        }
+    }
+    
+    
+    private ScheduledExecutorService getRetryScheduler() {
+        synchronized (lock) {
+            if (isClosed) {
+                throw new RejectedExecutionException("processor is closed");
+            }
+            
+            if (retryScheduler == null) {
+                retryScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                                      .setNameFormat("troilus-writeprocessor-retry-%d")
+                                                                                                      .build());
+            }
+            return retryScheduler;
+        }
+    }
+    
+    
+    /**
+     * @return true, if all mutations of the items are idempotent
+     */
+    private ListenableFuture<Boolean> isIdempotentAsync(ImmutableList<T> items) {
+        List<ListenableFuture<Boolean>> futures = Lists.newArrayList();
+        for (T item : items) {
+            futures.add(isIdempotentAsync(mutationFunction.apply(item)));
+        }
+        
+        Function<List<Boolean>, Boolean> allIdempotent = new Function<List<Boolean>, Boolean>() {
+            @Override
+            public Boolean apply(List<Boolean> idempotents) {
+                return !idempotents.contains(false);
+            }
+        };
+        return Futures.transform(Futures.allAsList(futures), allIdempotent, MoreExecutors.directExecutor());
+    }
+    
+    
+    private ListenableFuture<Boolean> isIdempotentAsync(Batchable<?> mutation) {
+        if (mutation instanceof CounterMutation) {
+            return Futures.immediateFuture(false);
+        }
+        
+        // the explicit idempotence of a query is not part of the statement. It is set on execution  
+        if (mutation instanceof AbstractQuery) {
+            Boolean idempotent = ((AbstractQuery<?>) mutation).getExecutionSpec().getIdempotent();
+            if (idempotent != null) {
+                return Futures.immediateFuture(idempotent);
+            }
+        }
+        
+        Function<Statement, Boolean> isIdempotent = new Function<Statement, Boolean>() {
+            @Override
+            public Boolean apply(Statement statement) {
+                return Boolean.TRUE.equals(statement.isIdempotent());
+            }
+        };
+        return Futures.transform(mutation.getStatementAsync(ctx.getDefaultDbSession()), isIdempotent, MoreExecutors.directExecutor());
+    }
+
+
+    /**
+     * Only errors which signal that the write has not been applied are retried. A write timeout
+     * does not mean that the write has failed. Retrying it would double-apply non-idempotent
+     * writes such as counter updates or list appends
+     */
+    private static boolean isRetryable(Throwable error) {
+        for (Throwable cause : Throwables.getCausalChain(error)) {
+            if ((cause instanceof UnavailableException) ||
+                (cause instanceof NoHostAvailableException) ||
+                (cause instanceof OverloadedException)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private void onWritten(ImmutableList<T> items, Result result, Throwable error) {
+
+        ImmutableList<ImmutableList<T>> writeUnits;
+        synchronized (lock) {
+            numRunningWrites--;
+
+            if (!isCancelled) {
+                for (T item : items) {
+                    results.add((error == null) ? MutationResult.newSuccessResult(item, result)
+                                                : MutationResult.newFailureResult(item, error));
+                }
+            }
+
+            writeUnits = flushPendingGroups();
+            numRunningWrites += writeUnits.size();
+        }
+
+        for (ImmutableList<T> writeUnit : writeUnits) {
+            write(writeUnit, 0);
+        }
+
+        drain();
+    }
+
+
+    private ImmutableList<ImmutableList<T>> flushPendingGroups() {
+        ImmutableList.Builder<ImmutableList<T>> writeUnits = ImmutableList.builder();
+        for (List<T> group : pendingGroups.values()) {
+            writeUnits.add(ImmutableList.copyOf(group));
+        }
+        pendingGroups.clear();
+
+        return writeUnits.build();
+    }
+
+
+
+
+    ////////////////////
+    // signaling
+
+    private void drain() {
+        // already draining by another thread?
+        if (numDrainRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            drainLoop();
+            missed = numDrainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+
+    private void drainLoop() {
+
+        while (true) {
+            Subscriber<? super MutationResult<T>> subscriber;
+            Subscription subscription;
+            MutationResult<T> result = null;
+            boolean isCompleted = false;
+            Throwable error = null;
+            boolean isProtocolViolation = false;
+            long numToRequest = 0;
+
+            synchronized (lock) {
+                if (isTerminated || isCancelled || !isDownstreamReady) {
+                    return;
+                }
+
+                subscriber = downstreamSubscriber;
+                subscription = upstreamSubscription;
+
+                if (protocolError != null) {
+                    isTerminated = true;
+                    isProtocolViolation = true;
+                    error = protocolError;
+                    results.clear();
+
+                } else if ((downstreamDemand > 0) && !results.isEmpty()) {
+                    result = results.poll();
+                    downstreamDemand--;
+                    numInFlight--;
+
+                } else if (((upstreamError != null) || isUpstreamCompleted) && (numInFlight == 0)) {
+                    isTerminated = true;
+                    error = upstreamError;
+                    isCompleted = (upstreamError == null);
+
+                } else if ((subscription != null) && (upstreamError == null) && !isUpstreamCompleted) {
+                    // request more items only, if a relevant amount of items can be requested
+                    long free = maxInFlight - numInFlight - upstreamDemand;
+                    if (free >= Math.max(1, maxInFlight / 2)) {
+                        upstreamDemand += free;
+                        numToRequest = free;
+                    }
+                }
+            }
+
+
+            if (result != null) {
+                subscriber.onNext(result);
+
+            } else if (error != null) {
+                if (isProtocolViolation && (subscription != null)) {
+                    subscription.cancel();
+                }
+                close();
+                subscriber.onError(error);
+                return;
+
+            } else if (isCompleted) {
+                close();
+                subscriber.onComplete();
+                return;
+
+            } else {
+                if (numToRequest > 0) {
+                    subscription.request(numToRequest);
+                }
+                return;
+            }
+        }
+    }
+}
@@ -23,10 +23,12 @@ import net.oneandone.troilus.java7.Batchable;
 import net.oneandone.troilus.java7.interceptor.CascadeOnWriteInterceptor;
 import net.oneandone.troilus.java7.interceptor.WriteQueryData;
 import net.oneandone.troilus.java7.interceptor.WriteQueryRequestInterceptor;
+import net.oneandone.troilus.java7.interceptor.WriteQueryResponseInterceptor;
 
 import com.datastax.driver.core.Statement;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
@@ -87,7 +89,18 @@ abstract class WriteQuery<Q> extends MutationQuery<Q> {
     
     @Override
     public ListenableFuture<Result> executeAsync() {
-        ListenableFuture<Result> future = super.executeAsync();
+        final Context deadlineCtx = Deadlines.start(getContext());
+        if (deadlineCtx != null) {
+            return Deadlines.enforce(deadlineCtx, ((WriteQuery<?>) newQuery(deadlineCtx)).executeAsync());
+        }
+        
+        final ReadYourWritesSessionImpl session = getExecutionSpec().getReadYourWritesSession();
+        if ((session != null) && !isLwt() && (getExecutionSpec().getWritetime() == null)) {
+            // the session compares the remembered values with the database values by using the writetime  
+            return ((WriteQuery<?>) newQuery(getContext().withWritetime(session.newWritetime()))).executeAsync();
+        }
+        
+        ListenableFuture<Result> future = isLwt() ? executeLwtAsync(data.getTablename(), data.getKeys()) : super.executeAsync();
         
         Function<Result, Result> validateLwtIfFunction = new Function<Result, Result>() {
             @Override
@@ -95,10 +108,22 @@ abstract class WriteQuery<Q> extends MutationQuery<Q> {
                 if (isLwt() && !result.wasApplied()) {
                     throw new IfConditionException(result, "duplicated entry");
                 }
+                
+                if (session != null) {
+                    // the writetime of a lightweight transaction is assigned by the server 
+                    if (isLwt()) {
+                        session.onConditionalWrite(getContext(), data);
+                    } else {
+                        session.onWrite(getContext(), data, getExecutionSpec().getWritetime(), getExecutionSpec().getTtl());
+                    }
+                }
                 return result;
             }
         };
-        return Futures.transform(future, validateLwtIfFunction, MoreExecutors.directExecutor());
+        ListenableFuture<Result> resultFuture = Futures.transform(future, validateLwtIfFunction, MoreExecutors.directExecutor());
+        
+        // running response interceptors after the write has been performed successfully
+        return executeResponseInterceptorsAsync(resultFuture);
     }
 
     
@@ -115,16 +140,7 @@ abstract class WriteQuery<Q> extends MutationQuery<Q> {
         // perform request executors
         ListenableFuture<WriteQueryData> queryDataFuture = executeRequestInterceptorsAsync(Futures.<WriteQueryData>immediateFuture(data));        
         
-        // query data to statement
-        Function<WriteQueryData, ListenableFuture<Statement>> queryDataToStatement = new Function<WriteQueryData, ListenableFuture<Statement>>() {
-            @Override
-            public ListenableFuture<Statement> apply(WriteQueryData queryData) {
-                return WriteQueryDataImpl.toStatementAsync(queryData, getExecutionSpec(), getUDTValueMapper(), dbSession);
-            }
-        };
-        
-        
-        ListenableFuture<Statement> statementFuture = ListenableFutures.transform(queryDataFuture, queryDataToStatement, getExecutor());
+        ListenableFuture<Statement> statementFuture = toStatementAsync(dbSession, queryDataFuture);
         if (getInterceptorRegistry().getInterceptors(CascadeOnWriteInterceptor.class).isEmpty()) {
             return statementFuture;
             
@@ -137,6 +153,31 @@ abstract class WriteQuery<Q> extends MutationQuery<Q> {
     }
     
     
+    @Override
+    protected ListenableFuture<ImmutableList<Statement>> getCascadedStatementsAsync(DBSession dbSession) {
+        // perform request executors
+        ListenableFuture<WriteQueryData> queryDataFuture = executeRequestInterceptorsAsync(Futures.<WriteQueryData>immediateFuture(data));        
+        
+        ListenableFuture<Statement> statementFuture = toStatementAsync(dbSession, queryDataFuture);
+        ListenableFuture<ImmutableSet<Statement>> cascadingStatmentsFuture = executeCascadeInterceptorsAsync(dbSession, queryDataFuture);
+        return joinStatements(statementFuture, cascadingStatmentsFuture);
+    }
+    
+    
+    private ListenableFuture<Statement> toStatementAsync(final DBSession dbSession, ListenableFuture<WriteQueryData> queryDataFuture) {
+        
+        // query data to statement
+        Function<WriteQueryData, ListenableFuture<Statement>> queryDataToStatement = new Function<WriteQueryData, ListenableFuture<Statement>>() {
+            @Override
+            public ListenableFuture<Statement> apply(WriteQueryData queryData) {
+                return WriteQueryDataImpl.toStatementAsync(queryData, getExecutionSpec(), getUDTValueMapper(), dbSession);
+            }
+        };
+        
+        return ListenableFutures.transform(queryDataFuture, queryDataToStatement, getExecutor());
+    }
+    
+    
     
     
     private ListenableFuture<WriteQueryData> executeRequestInterceptorsAsync(ListenableFuture<WriteQueryData> queryDataFuture) {
@@ -147,7 +188,7 @@ abstract class WriteQuery<Q> extends MutationQuery<Q> {
             Function<WriteQueryData, ListenableFuture<WriteQueryData>> mapperFunction = new Function<WriteQueryData, ListenableFuture<WriteQueryData>>() {
                 @Override
                 public ListenableFuture<WriteQueryData> apply(WriteQueryData queryData) {
-                    return icptor.onWriteRequestAsync(queryData);
+                    return Futures.nonCancellationPropagating(icptor.onWriteRequestAsync(queryData));
                 }
             };
 
@@ -160,6 +201,27 @@ abstract class WriteQuery<Q> extends MutationQuery<Q> {
     
     
     
+    private ListenableFuture<Result> executeResponseInterceptorsAsync(ListenableFuture<Result> resultFuture) {
+
+        for (WriteQueryResponseInterceptor interceptor : getInterceptorRegistry().getInterceptors(WriteQueryResponseInterceptor.class).reverse()) {
+            final WriteQueryResponseInterceptor icptor = interceptor;
+
+            Function<Result, ListenableFuture<Result>> mapperFunction = new Function<Result, ListenableFuture<Result>>() {
+                @Override
+                public ListenableFuture<Result> apply(Result result) {
+                    return Futures.nonCancellationPropagating(icptor.onWriteResponseAsync(data, result));
+                }
+            };
+
+            // running interceptors within dedicated threads!
+            resultFuture = ListenableFutures.transform(resultFuture, mapperFunction, getExecutor());
+        }
+
+        return resultFuture; 
+    }
+    
+    
+    
     private ListenableFuture<ImmutableSet<Statement>> executeCascadeInterceptorsAsync(DBSession dbSession, ListenableFuture<WriteQueryData> queryDataFuture) {
         Set<ListenableFuture<ImmutableSet<Statement>>> statmentFutures = Sets.newHashSet();
         
@@ -169,7 +231,7 @@ abstract class WriteQuery<Q> extends MutationQuery<Q> {
             Function<WriteQueryData, ListenableFuture<ImmutableSet<? extends Batchable<?>>>> querydataToBatchables = new Function<WriteQueryData, ListenableFuture<ImmutableSet<? extends Batchable<?>>>>() {
                 @Override
                 public ListenableFuture<ImmutableSet<? extends Batchable<?>>> apply(WriteQueryData queryData) {
-                    return icptor.onWriteAsync(queryData);                    
+                    return Futures.nonCancellationPropagating(icptor.onWriteAsync(queryData));                    
                 }
             };
             
@@ -677,7 +677,7 @@ class WriteQueryDataImpl implements WriteQueryData {
 
         
         final ListenableFuture<PreparedStatement> preparedStatementFuture = dbSession.prepareAsync(insert);
-        return dbSession.bindAsync(preparedStatementFuture, values.toArray());
+        return dbSession.bindAsync(preparedStatementFuture, values.toArray(), isIdempotent(data));
     }
     
     
@@ -761,7 +761,7 @@ class WriteQueryDataImpl implements WriteQueryData {
    
             
             final ListenableFuture<PreparedStatement> preparedStatementFuture = dbSession.prepareAsync(update);
-            return dbSession.bindAsync(preparedStatementFuture, values.toArray());
+            return dbSession.bindAsync(preparedStatementFuture, values.toArray(), isIdempotent(data));
             
         // where condition-based update
         } else {
@@ -797,12 +797,27 @@ class WriteQueryDataImpl implements WriteQueryData {
             for (Clause whereCondition : data.getWhereConditions()) {
                 update.where(whereCondition);
             }
+            update.setIdempotent(isIdempotent(data));
                         
             return Futures.<Statement>immediateFuture(update);
         }
     }
     
     
+    /**
+     * @param data  the query data
+     * @return true, if the write can be applied multiple times without changing the result 
+     */
+    static boolean isIdempotent(WriteQueryData data) {
+        // lightweight transactions and list appends, prepends and removals are not idempotent  
+        return !Boolean.TRUE.equals(data.getIfNotExits()) &&
+               data.getOnlyIfConditions().isEmpty() &&
+               data.getListValuesToAppend().isEmpty() &&
+               data.getListValuesToPrepend().isEmpty() &&
+               data.getListValuesToRemove().isEmpty();
+    }
+    
+    
     private static boolean isKeyOnlyStatement(WriteQueryData data) {
         return data.getListValuesToAppend().isEmpty() && 
                data.getListValuesToPrepend().isEmpty() &&
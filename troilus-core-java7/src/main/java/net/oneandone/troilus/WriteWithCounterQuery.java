@@ -75,7 +75,7 @@ class WriteWithCounterQuery extends WriteQuery<WriteWithCounter> implements Writ
      * @return the new insert query
      */@Override
      public WriteWithCounterQuery entity(Object entity) {
-        ImmutableMap<String, Optional<Object>> values = getBeanMapper().toValues(entity, getCatalog().getColumnNames(getData().getTablename()));
+        ImmutableMap<String, Optional<Object>> values = getContext().toEntityValues(entity, getData().getTablename());
         return newQuery(getData().valuesToMutate(Immutables.join(getData().getValuesToMutate(), values)));
     }
     
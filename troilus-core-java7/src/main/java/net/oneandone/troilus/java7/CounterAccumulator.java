@@ -0,0 +1,64 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.java7;
+
+import java.io.Closeable;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+
+
+
+/**
+ * Accumulator which buffers counter diffs locally and writes the summed diffs
+ * periodically or if a threshold of pending updates is reached. The accumulator
+ * has to be closed to flush the remaining diffs
+ */
+public interface CounterAccumulator extends Closeable {
+
+    /**
+     * adds the diff to the buffered counter value (fire-and-forget). The
+     * diff will be written by one of the next flushes
+     *
+     * @param keys  the (complete) primary key of the counter row
+     * @param name  the name of the counter column
+     * @param diff  the diff to add. Use negative values to decrement
+     */
+    void add(ImmutableMap<String, Object> keys, String name, long diff);
+
+    /**
+     * adds the diff to the buffered counter value
+     *
+     * @param keys  the (complete) primary key of the counter row
+     * @param name  the name of the counter column
+     * @param diff  the diff to add. Use negative values to decrement
+     * @return the future of the flush which writes the diff
+     */
+    ListenableFuture<Void> addAsync(ImmutableMap<String, Object> keys, String name, long diff);
+
+    /**
+     * writes the buffered diffs immediately
+     *
+     * @return the flush future
+     */
+    ListenableFuture<Void> flushAsync();
+
+    /**
+     * flushes the buffered diffs and stops periodic flushing. Blocks until the final flush is done
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.java7;
+
+
+import com.datastax.driver.core.ConsistencyLevel;
+
+
+/**
+ * Multi read query which reads the rows of many primary keys concurrently by 
+ * using a single-partition read per key 
+ *
+ * @param <T>  the result type
+ * @param <R>  the element type
+ */
+public interface MultiRead<T, R> extends SingleRead<T, R> {
+
+    /**
+     * @param parallelism  the max number of concurrently running reads
+     * @return a cloned query instance with the modified behavior
+     */
+    MultiRead<T, R> withParallelism(int parallelism);
+    
+    @Override
+    MultiRead<T, R> withTracking();
+
+    @Override
+    MultiRead<T, R> withoutTracking();
+
+    @Override
+    MultiRead<T, R> withConsistency(ConsistencyLevel consistencyLevel);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.java7;
+
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+
+/**
+ * Multi read query 
+ *
+ * @param <T>  the result type
+ * @param <R>  the element type
+ */
+public interface MultiReadWithUnit<T, R> extends MultiRead<T, R> {
+
+    /**
+     * @param objectClass  the entity type
+     * @param <E> the entity type
+     * @return  a cloned query instance which returns the entities in request order. Absent entities are marked as such
+     */
+    <E> MultiRead<ImmutableList<Optional<E>>, E> asEntity(Class<E> objectClass);
+}
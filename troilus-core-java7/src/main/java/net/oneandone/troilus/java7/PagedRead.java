@@ -0,0 +1,47 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.java7;
+
+import net.oneandone.troilus.PageCursor;
+
+import com.datastax.driver.core.ConsistencyLevel;
+
+
+
+/**
+ * Keyset based paged read. A page is read by seeking the clustering key of the last 
+ * record of the previous page instead of using the driver's paging state  
+ */
+public interface PagedRead extends Query<Page> {
+
+    /**
+     * @param cursor  the cursor of the previous page or null to start with the first page
+     * @return a cloned query instance with the modified behavior
+     */
+    PagedRead withCursor(PageCursor cursor);
+    
+    /**
+     * @param numPages  the number of pages to read ahead in the background
+     * @return a cloned query instance with the modified behavior
+     */
+    PagedRead withPrefetch(int numPages);
+    
+    /**
+     * @param consistencyLevel   the  consistency level to use
+     * @return a cloned query instance with the modified behavior
+     */
+    PagedRead withConsistency(ConsistencyLevel consistencyLevel);
+}
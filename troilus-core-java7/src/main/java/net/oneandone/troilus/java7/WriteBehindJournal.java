@@ -0,0 +1,55 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.java7;
+
+import java.io.Closeable;
+
+import net.oneandone.troilus.WriteBehindMetrics;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+
+
+/**
+ * Local write-behind journal. Mutations of a Dao in write-behind mode are appended to 
+ * memory-mapped journal segments and acknowledged immediately. A background drainer writes 
+ * the journaled mutations to the database by using unlogged batches per partition, with a 
+ * bounded number of parallel writes and retries. The journal survives a crash of the process. 
+ * Mutations which have not been drained are replayed from the last checkpoint when the 
+ * journal is opened again.<br>
+ * The mutations are written with the timestamp of appending, so that replays keep the order 
+ * of the mutations. Lightweight transactions and counter mutations are not supported 
+ */
+public interface WriteBehindJournal extends Closeable {
+
+    /**
+     * @return the future which completes when all mutations which have been appended 
+     *         before calling this method have been written to the database
+     */
+    ListenableFuture<Void> drainAsync();
+
+    /**
+     * @return the journal metrics
+     */
+    WriteBehindMetrics getMetrics();
+
+    /**
+     * stops draining and persists the checkpoint. Pending mutations will be replayed 
+     * when the journal is opened again 
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.java7;
+
+import java.io.Closeable;
+
+import net.oneandone.troilus.MutationResult;
+
+import org.reactivestreams.Processor;
+
+import com.google.common.base.Function;
+
+
+
+/**
+ * Processor which writes the received items and emits a result for each of them. The
+ * processor requests items from the upstream publisher only as long as the number of
+ * items in flight (received but not yet emitted to the downstream subscriber) is below
+ * the configured limit. The processor is closed, if the processing is terminated or 
+ * cancelled.
+ *
+ * @param <T> the item type
+ */
+public interface WriteProcessor<T> extends Processor<T, MutationResult<T>>, Closeable {
+
+    /**
+     * @param maxInFlight  the max number of items in flight
+     * @return a cloned processor instance with the modified behavior
+     */
+    WriteProcessor<T> withMaxInFlight(int maxInFlight);
+
+    /**
+     * @param maxRetries  the max number of retries of a failed item. Only errors which signal
+     *                    that the write has not been applied such as unavailable or overloaded
+     *                    exceptions will be retried and only, if the item is idempotent. The retries 
+     *                    are delayed by an exponential backoff
+     * @return a cloned processor instance with the modified behavior
+     */
+    WriteProcessor<T> withRetries(int maxRetries);
+
+    /**
+     * @param partitionKeyFunction  the function which returns the partition key of an item. Items
+     *                              of the same partition which are received while other writes are
+     *                              running, will be written by using a single unlogged batch. If the
+     *                              batch has not been applied, the items will be written one by one, if
+     *                              all of them are idempotent. Otherwise all items of the batch fail.
+     *                              Counter mutations are not grouped
+     * @return a cloned processor instance with the modified behavior
+     */
+    WriteProcessor<T> withPartitionGrouping(Function<? super T, ?> partitionKeyFunction);
+
+    /**
+     * stops retrying failed items. Retries which are already scheduled will be performed 
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.java7.interceptor;
+
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.oneandone.troilus.interceptor.QueryInterceptor;
+import net.oneandone.troilus.java7.Record;
+
+
+
+
+
+/**
+ * Interceptor which will be executed for each fetched page of a list read query. The page 
+ * contains all records which are available without fetching. The pages are passed in order 
+ * while the next page is fetched in the background. This allows batching lookups per page 
+ * instead of performing a blocking lookup per record   
+ */  
+public interface ReadQueryPageInterceptor extends QueryInterceptor {
+    
+    /**
+     * @param queryData   the request data
+     * @param page        the records of the fetched page
+     * @return the (modified or validated) records of the page
+     */
+    ListenableFuture<ImmutableList<Record>> onReadPageAsync(ReadQueryData queryData, ImmutableList<Record> page);
+}
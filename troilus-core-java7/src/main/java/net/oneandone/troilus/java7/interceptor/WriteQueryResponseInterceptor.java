@@ -0,0 +1,40 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.java7.interceptor;
+
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.oneandone.troilus.Result;
+import net.oneandone.troilus.interceptor.QueryInterceptor;
+
+
+
+
+
+/**
+ * Interceptor which will be executed after a write query has been performed successfully. 
+ * The interceptor is not executed for writes which are performed as part of a batch 
+ */  
+public interface WriteQueryResponseInterceptor extends QueryInterceptor {
+    
+    /**
+     * @param queryData   the request data
+     * @param result      the result of the write
+     * @return the (modified) result
+     */
+    ListenableFuture<Result> onWriteResponseAsync(WriteQueryData queryData, Result result);
+}
@@ -21,10 +21,11 @@ package net.oneandone.troilus;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
 
 import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 
 
@@ -41,34 +42,62 @@ class CompletableFutures {
     }
     
     
+    /**
+     * <b>Warning:</b> the returned future is completed by the thread which completes the underlying 
+     * future, which is typically a driver I/O thread. Dependent stages which are registered by using 
+     * the non-async methods such as thenApply(...) will run within this thread. Blocking or long-running 
+     * stages have to be registered by using the async methods with a dedicated executor such as 
+     * thenApplyAsync(..., executor). Otherwise they will block the driver I/O  
+     * 
+     * @param future  the listenable future 
+     * @return the completable future which passes a cancellation to the listenable future 
+     */
     public static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> future) {
+        // unwrap a bridged CompletableFuture instead of adapting it twice  
+        if (future instanceof CompletableToListenableFutureAdapter) {
+            return ((CompletableToListenableFutureAdapter<T>) future).getCompletableFuture();
+        }
+        
         return new ListenableToCompletableFutureAdapter<>(future);
     }
     
     
     /**
-     * Adapter which maps a ListenableFuture into a CompletableFuture  
+     * Adapter which maps a ListenableFuture into a CompletableFuture. The adapter is completed 
+     * by the thread which completes the underlying future (typically the driver I/O thread) 
+     * to avoid a thread hand-off per query. Non-async dependent stages must not block for this 
+     * reason. Cancelling the adapter cancels the underlying future. A cancelled underlying 
+     * future cancels the adapter   
      */
     private static class ListenableToCompletableFutureAdapter<T> extends CompletableFuture<T> {
+        private final ListenableFuture<T> future;
         
         /**
          * @param rsFuture the underlying ResultSetFuture
          */
         public ListenableToCompletableFutureAdapter(ListenableFuture<T> future) {
+            this.future = future;
             
             Runnable resultHandler = () -> { 
                 try {
-                    complete(future.get());
+                    complete(Futures.getDone(future));
                     
                 } catch (ExecutionException ee) {
                     completeExceptionally((ee.getCause() == null) ? ee : ee.getCause());
                     
-                } catch (InterruptedException | RuntimeException e) {
+                } catch (RuntimeException e) {   // includes cancellation
                     completeExceptionally(e);
                 }
             };
             
-            future.addListener(resultHandler, ForkJoinPool.commonPool());
+            future.addListener(resultHandler, MoreExecutors.directExecutor());
+        }
+        
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean isCancelled = super.cancel(mayInterruptIfRunning);
+            future.cancel(mayInterruptIfRunning);
+            return isCancelled;
         }
     }   
     
@@ -84,11 +113,13 @@ class CompletableFutures {
      * Adapter which maps a CompletableFuture into a ListenableFuture  
      */
     private static class CompletableToListenableFutureAdapter<T> extends AbstractFuture<T> {
+        private final CompletableFuture<T> future;
         
         /**
          * @param rsFuture the underlying ResultSetFuture
          */
         public CompletableToListenableFutureAdapter(CompletableFuture<T> future) {
+            this.future = future;
             future.whenComplete((result, throwable) -> {
                                                           if (throwable == null) {
                                                               set(result);
@@ -100,5 +131,9 @@ class CompletableFutures {
                                                           }
                                                        });
         }
+        
+        CompletableFuture<T> getCompletableFuture() {
+            return future;
+        }
     }   
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+
+
+/**
+ * Count query 
+ */
+public interface CountRead extends ListRead<Count, Count> {
+
+    /**
+     * splits the count query by token ranges, which will be counted concurrently. The 
+     * parallel count does not support keys, where conditions and a limit. Such a query
+     * fails with an {@link IllegalStateException}
+     * 
+     * @param maxParallelism  the max number of token ranges to count concurrently
+     * @return a cloned query instance with the modified behavior
+     */
+    CountRead withParallelism(int maxParallelism);
+
+    /**
+     * @param listener  the listener which will be notified about the progress of a parallel count 
+     * @return a cloned query instance with the modified behavior
+     */
+    CountRead withProgressListener(CountProgressListener listener);
+    
+    /**
+     * estimates the number of partitions based on the size estimates of the table (system.size_estimates)
+     * instead of scanning the table. The approximate count does not support keys, where 
+     * conditions and a limit. Such a query fails with an {@link IllegalStateException}
+     * 
+     * @return a cloned query instance with the modified behavior
+     */
+    CountRead withApproximation();
+}
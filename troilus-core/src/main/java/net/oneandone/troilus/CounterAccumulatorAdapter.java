@@ -0,0 +1,63 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.collect.ImmutableMap;
+
+
+
+/**
+ * Java8 adapter of a counter accumulator
+ */
+class CounterAccumulatorAdapter implements CounterAccumulator {
+
+    private final net.oneandone.troilus.java7.CounterAccumulator accumulator;
+
+
+    /**
+     * @param accumulator the underlying accumulator
+     */
+    CounterAccumulatorAdapter(net.oneandone.troilus.java7.CounterAccumulator accumulator) {
+        this.accumulator = accumulator;
+    }
+
+    @Override
+    public void add(ImmutableMap<String, Object> keys, String name, long diff) {
+        accumulator.add(keys, name, diff);
+    }
+
+    @Override
+    public CompletableFuture<Void> addAsync(ImmutableMap<String, Object> keys, String name, long diff) {
+        return CompletableFutures.toCompletableFuture(accumulator.addAsync(keys, name, diff));
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        return CompletableFutures.toCompletableFuture(accumulator.flushAsync());
+    }
+
+    @Override
+    public void close() {
+        accumulator.close();
+    }
+
+    @Override
+    public String toString() {
+        return accumulator.toString();
+    }
+}
@@ -82,6 +82,11 @@ import com.google.common.util.concurrent.ListenableFuture;
              return (net.oneandone.troilus.java7.CounterMutation) mutation.withRetryPolicy(policy);
          }
          
+         @Override
+         public net.oneandone.troilus.java7.CounterMutation withIdempotence(boolean idempotent) {
+             return (net.oneandone.troilus.java7.CounterMutation) mutation.withIdempotence(idempotent);
+         }
+         
          @Override
          public net.oneandone.troilus.java7.CounterMutation withSerialConsistency(ConsistencyLevel consistencyLevel) {
              return (net.oneandone.troilus.java7.CounterMutation) mutation.withSerialConsistency(consistencyLevel);
@@ -153,6 +158,11 @@ import com.google.common.util.concurrent.ListenableFuture;
                  return (CounterMutation) mutation.withRetryPolicy(policy);
              }
              
+             @Override
+             public CounterMutation withIdempotence(boolean idempotent) {
+                 return (CounterMutation) mutation.withIdempotence(idempotent);
+             }
+             
              @Override
              public CounterMutation withSerialConsistency(ConsistencyLevel consistencyLevel) {
                  return (CounterMutation) mutation.withSerialConsistency(consistencyLevel);
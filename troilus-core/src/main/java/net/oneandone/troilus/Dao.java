@@ -16,6 +16,7 @@
 package net.oneandone.troilus;
 
 
+import java.io.File;
 import java.util.Optional;
 
 import net.oneandone.troilus.ColumnName;
@@ -56,12 +57,157 @@ public interface Dao {
      */
     Dao withoutTracking();
 
+    /**
+     * activates sampled tracing. The sampled queries are traced and the trace sessions are 
+     * aggregated per query shape by the sampler. Queries of a Dao instance with deactivated 
+     * tracking will not be sampled 
+     * 
+     * @param sampler  the trace sampler
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withTraceSampling(TraceSampler sampler);
+
     /**
      * @param policy  the retry policy
      * @return a cloned Dao instance with the modified behavior
      */
     Dao withRetryPolicy(RetryPolicy policy);
 
+    /**
+     * activates the JVM-wide serialization of lightweight transactions per partition key. Only one 
+     * Paxos round per partition key will be in flight. Contended Paxos rounds will be retried by 
+     * using a jittered backoff 
+     * 
+     * @param maxContentionRetries  the max number of retries of contended Paxos rounds 
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withLwtSerialization(int maxContentionRetries);
+
+    /**
+     * activates hedged reads. If the first attempt of an idempotent read is not completed within 
+     * the given latency percentile measured for the table, a duplicate request will be sent. The 
+     * first response is taken and the other request is cancelled 
+     * 
+     * @param latencyPercentile  the latency percentile such as 0.95 after which the hedged request is sent
+     * @param maxExtraLoad       the max ratio of extra requests caused by hedging such as 0.05
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withHedgedReads(double latencyPercentile, double maxExtraLoad);
+
+    /**
+     * activates the JVM-wide coalescing of single-key reads. Reads by the complete primary key 
+     * which arrive within the window are collected and performed as a batch. Reads of the same 
+     * partition are combined to one read by using an IN restriction on the last clustering key.
+     * Reads of Daos with the same table, window and max batch size are coalesced, if they use the 
+     * same session, consistency level and columns 
+     * 
+     * @param windowMillis  the max time a read is delayed to be coalesced with other reads
+     * @param maxBatchSize  the number of collected reads which triggers the batch immediately
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withReadCoalescing(long windowMillis, int maxBatchSize);
+
+    /**
+     * activates single-flight reads. A read shares the in-flight execution of an identical read, 
+     * which has the same statement, bound values and consistency level. The cluster receives one 
+     * request and all callers get the same result. Nothing is kept after the read is completed 
+     * 
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withSingleFlightReads();
+
+    /**
+     * sets a timeout for each query execution. The timeout is resolved into a deadline when a query 
+     * is started. The deadline is shared by all stages of the query. The remaining time is set as 
+     * driver read timeout of the statements. If the deadline is exceeded, the query fails with a 
+     * {@link net.oneandone.troilus.DeadlineExceededException}, the pending downstream requests are 
+     * cancelled and no more pages are fetched   
+     * 
+     * @param timeoutMillis  the timeout in millis 
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withTimeout(long timeoutMillis);
+
+    /**
+     * sets an absolute deadline for the query executions. See {@link Dao#withTimeout(long)}  
+     * 
+     * @param deadlineMillisSinceEpoch  the deadline in millis since epoch  
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withDeadline(long deadlineMillisSinceEpoch);
+
+    /**
+     * activates unset nulls for entity writes. Entity properties without value are not written 
+     * instead of being written as null, which would create a tombstone. Values which are set 
+     * to null explicitly such as value(name, null) are still written
+     * 
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withUnsetNulls();
+
+    /**
+     * activates time buckets. The bucket key of key-based writes, deletes and reads will be 
+     * computed by using the time value. Time range reads are performed by reading the buckets 
+     * of the range concurrently 
+     * 
+     * @param bucketName  the name of the (int) bucket column, which is part of the partition key
+     * @param timeName    the name of the time column (timestamp or bigint), which is the first clustering column 
+     * @param timeBucket  the time bucket 
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withTimeBuckets(String bucketName, String timeName, TimeBucket timeBucket);
+
+    /**
+     * activates the maintenance of the lookup index. Successfully applied key-based writes will be queued by the 
+     * lookup index and written to the lookup table asynchronously. The old lookup row of a changed indexed value 
+     * is removed by the reconciliation only. Batches and write processors of the returned Dao are rejected, as well 
+     * as the combination with the write-behind mode 
+     * 
+     * @param lookupIndex  the lookup index created by this Dao
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withLookupIndex(LookupIndex lookupIndex);
+
+    /**
+     * activates the write-behind mode. Mutations will be appended to the journal and acknowledged 
+     * immediately. The journal writes the mutations to the database in the background. Lightweight 
+     * transactions and non-idempotent mutations will be rejected. Counter mutations will be performed directly.
+     * Only prepared mutations such as key-based writes and deletes can be journaled. Mutations which are 
+     * not prepared such as where condition based writes and deletes will fail with an IllegalArgumentException   
+     * 
+     * @param writeBehindJournal  the write-behind journal
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withWriteBehind(WriteBehindJournal writeBehindJournal);
+
+    /**
+     * activates read-your-writes. Key-based writes and deletes will be remembered by the session and 
+     * single row reads will be merged with the remembered rows. The session should be scoped to a 
+     * unit of work such as a user request 
+     * 
+     * @param session  the read-your-writes session
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withReadYourWrites(ReadYourWritesSession session);
+
+    /**
+     * @param cascadeMode  the way how the statements of cascading interceptors are performed 
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withCascadeMode(CascadeMode cascadeMode);
+
+    /**
+     * sets the batch size limit. Unlogged and counter batches which exceed the limit will be 
+     * split by partition and performed in parallel. Logged batches which exceed the limit 
+     * will be rejected with a {@link net.oneandone.troilus.BatchTooLargeException}. The result 
+     * of a split batch contains the execution infos of all parts 
+     * 
+     * @param maxStatements  the max number of statements per batch
+     * @param maxBytes       the max (estimated) size of the batch in bytes
+     * @return a cloned Dao instance with the modified behavior
+     */
+    Dao withBatchSizeLimit(int maxStatements, int maxBytes);
+
     /**
      * @param queryInterceptor   the interceptor
      * @return a cloned Dao instance with the modified behavior
@@ -239,6 +385,82 @@ public interface Dao {
      * @return the delete query
      */
     Deletion deleteWhere(Clause... whereConditions);
+
+    /**
+     * @return a processor which performs the received mutations
+     */
+    WriteProcessor<Batchable<?>> writeRx();
+
+    /**
+     * @param entityClass  the entity type
+     * @param <E> the entity type
+     * @return a processor which writes the received entities
+     */
+    <E> WriteProcessor<E> writeEntityRx(Class<E> entityClass);
+
+    /**
+     * @param flushPeriodMillis  the period in which the buffered counter diffs will be written
+     * @param maxPendingUpdates  the number of buffered updates which triggers a flush
+     * @return a new counter accumulator which has to be closed
+     */
+    CounterAccumulator newCounterAccumulator(long flushPeriodMillis, int maxPendingUpdates);
+
+    /**
+     * @return a new entity session which writes the changed values of attached entities only
+     */
+    EntitySession newEntitySession();
+
+    /**
+     * @param generationName     the name of the (bigint) clustering column which holds the generation of the chunks
+     * @param chunkNumberName    the name of the (int) clustering column which holds the chunk number
+     * @param chunkDataName      the name of the blob column which holds the chunk data
+     * @param chunkSize          the chunk size in bytes
+     * @param maxParallelChunks  the max number of chunks which are written or prefetched in parallel
+     * @return a new large object store which stores the objects as chunks
+     */
+    LargeObjectStore newLargeObjectStore(String generationName, String chunkNumberName, String chunkDataName, int chunkSize, int maxParallelChunks);
+
+    /**
+     * @param lookupTablename        the name of the lookup table
+     * @param columnMapping          the source column names and the related lookup column names. The primary key columns 
+     *                               of the source table and of the lookup table have to be mapped  
+     * @param flushPeriodMillis      the period in which the queued lookup changes will be written
+     * @param maxPendingChanges      the number of queued lookup changes which triggers a flush
+     * @param reconcilePeriodMillis  the period of the reconciliation scan which repairs the lookup table or 0. If 0, stale 
+     *                               lookup rows remain until the reconciliation is performed explicitly   
+     * @return a new lookup index which has to be activated by {@link Dao#withLookupIndex(LookupIndex)} and to be closed 
+     */
+    LookupIndex newLookupIndex(String lookupTablename, ImmutableMap<String, String> columnMapping, long flushPeriodMillis, int maxPendingChanges, long reconcilePeriodMillis);
+
+    /**
+     * @param directory          the journal directory. Pending mutations of the directory will be replayed
+     * @param segmentSize        the size of a journal segment file in bytes. A mutation has to fit into a segment
+     * @param maxParallelWrites  the max number of parallel database writes of the journal 
+     * @return a new write-behind journal which has to be activated by {@link Dao#withWriteBehind(WriteBehindJournal)} and to be closed 
+     */
+    WriteBehindJournal newWriteBehindJournal(File directory, int segmentSize, int maxParallelWrites);
+
+    /**
+     * @return a new read-your-writes session which has to be activated by {@link Dao#withReadYourWrites(ReadYourWritesSession)} 
+     */
+    ReadYourWritesSession newReadYourWritesSession();
+
+    /**
+     * @param sampleRate              1 of sampleRate queries will be traced. 0 disables the sampling by rate
+     * @param latencyThresholdMillis  the latency threshold. The next execution of a query shape will be traced, if an untraced execution has exceeded the threshold. -1 disables the threshold  
+     * @return a new trace sampler which has to be activated by {@link Dao#withTraceSampling(TraceSampler)} 
+     */
+    TraceSampler newTraceSampler(int sampleRate, long latencyThresholdMillis);
+
+    /**
+     * @return the lightweight transaction metrics of the table 
+     */
+    LwtMetrics getLwtMetrics();
+
+    /**
+     * @return the hedged read metrics of the table 
+     */
+    HedgeMetrics getHedgeMetrics();
     
     
  
@@ -270,6 +492,25 @@ public interface Dao {
                                                                        ColumnName<E> composedKeyNamePart2, E composedKeyValuePart2, 
                                                                        ColumnName<F> composedKeyNamePart3, F composedKeyValuePart3);
     
+    /**
+     * reads the records of many (full) primary keys concurrently. Each key is read by a single-partition read 
+     * 
+     * @param keys  the primary keys to read
+     * @return the multi read query which returns the records in request order. Absent records are marked as such 
+     */
+    MultiReadWithUnit<ImmutableList<Optional<Record>>, Record> readWithKeys(ImmutableList<ImmutableMap<String, Object>> keys);
+
+    /**
+     * reads the records of a time range. Requires activated time buckets. The buckets of the range 
+     * are read concurrently and the records are returned in clustering order 
+     * 
+     * @param keys        the partition key without the bucket key
+     * @param fromMillis  the start of the time range (inclusive)
+     * @param toMillis    the end of the time range (exclusive)
+     * @return the time range read query
+     */
+    TimeRangeReadWithUnit<ResultList<Record>, Record> readTimeRange(ImmutableMap<String, Object> keys, long fromMillis, long toMillis);
+
     ListReadWithUnit<ResultList<Record>, Record> readSequenceWithKeys(String name, ImmutableList<Object> values);
 
     ListReadWithUnit<ResultList<Record>, Record> readSequenceWithKeys(String composedKeyNamePart1, Object composedKeyValuePart1, 
@@ -16,6 +16,7 @@
 package net.oneandone.troilus;
 
 
+import java.io.File;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -30,10 +31,12 @@ import net.oneandone.troilus.interceptor.DeleteQueryData;
 import net.oneandone.troilus.interceptor.DeleteQueryRequestInterceptor;
 import net.oneandone.troilus.interceptor.QueryInterceptor;
 import net.oneandone.troilus.interceptor.ReadQueryData;
+import net.oneandone.troilus.interceptor.ReadQueryPageInterceptor;
 import net.oneandone.troilus.interceptor.ReadQueryRequestInterceptor;
 import net.oneandone.troilus.interceptor.ReadQueryResponseInterceptor;
 import net.oneandone.troilus.interceptor.WriteQueryData;
 import net.oneandone.troilus.interceptor.WriteQueryRequestInterceptor;
+import net.oneandone.troilus.interceptor.WriteQueryResponseInterceptor;
 import net.oneandone.troilus.java7.Batchable;
 
 import org.reactivestreams.Subscriber;
@@ -106,6 +109,14 @@ public class DaoImpl implements Dao {
     public Dao withoutTracking() {
         return new DaoImpl(ctx.withoutTracking(), this.tablename);
     }
+    
+    @Override
+    public Dao withTraceSampling(TraceSampler sampler) {
+        if (!(sampler instanceof TraceSamplerImpl)) {
+            throw new IllegalArgumentException("trace sampler " + sampler + " has not been created by a Dao");
+        }
+        return new DaoImpl(ctx.withTraceSampling((TraceSamplerImpl) sampler), this.tablename);
+    }
 
     @Override
     public Dao withRetryPolicy(RetryPolicy policy) {
@@ -113,6 +124,95 @@ public class DaoImpl implements Dao {
     }
 
     
+    @Override
+    public Dao withLwtSerialization(int maxContentionRetries) {
+        return new DaoImpl(ctx.withLwtSerialization(maxContentionRetries), this.tablename);
+    }
+
+    @Override
+    public Dao withHedgedReads(double latencyPercentile, double maxExtraLoad) {
+        return new DaoImpl(ctx.withHedging(latencyPercentile, maxExtraLoad), this.tablename);
+    }
+    
+    @Override
+    public Dao withReadCoalescing(long windowMillis, int maxBatchSize) {
+        return new DaoImpl(ctx.withReadCoalescing(windowMillis, maxBatchSize), this.tablename);
+    }
+    
+    @Override
+    public Dao withSingleFlightReads() {
+        return new DaoImpl(ctx.withSingleFlight(true), this.tablename);
+    }
+    
+    @Override
+    public Dao withTimeout(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeout has to be greater than 0");
+        }
+        return new DaoImpl(ctx.withTimeout(timeoutMillis), this.tablename);
+    }
+    
+    @Override
+    public Dao withDeadline(long deadlineMillisSinceEpoch) {
+        return new DaoImpl(ctx.withDeadline(deadlineMillisSinceEpoch), this.tablename);
+    }
+    
+    @Override
+    public Dao withUnsetNulls() {
+        return new DaoImpl(ctx.withUnsetNulls(true), this.tablename);
+    }
+    
+    @Override
+    public Dao withTimeBuckets(String bucketName, String timeName, TimeBucket timeBucket) {
+        return new DaoImpl(ctx.withInterceptor(new TimeBucketInterceptor(bucketName, timeName, timeBucket)), this.tablename);
+    }
+    
+    @Override
+    public Dao withLookupIndex(LookupIndex lookupIndex) {
+        if (!(lookupIndex instanceof LookupIndexAdapter) || !((LookupIndexAdapter) lookupIndex).getLookupIndex().getTablename().equals(tablename)) {
+            throw new IllegalArgumentException("lookup index " + lookupIndex + " has not been created by a Dao of " + tablename);
+        }
+        if (ctx.getExecutionSpec().getWriteBehindJournal() != null) {
+            throw new IllegalStateException("lookup index is not supported in write-behind mode");
+        }
+        return new DaoImpl(ctx.withInterceptor(((LookupIndexAdapter) lookupIndex).getLookupIndex()), this.tablename);
+    }
+    
+    @Override
+    public Dao withWriteBehind(WriteBehindJournal writeBehindJournal) {
+        if (!(writeBehindJournal instanceof WriteBehindJournalAdapter)) {
+            throw new IllegalArgumentException("write-behind journal " + writeBehindJournal + " has not been created by a Dao");
+        }
+        if (LookupIndexImpl.isActivated(ctx)) {
+            throw new IllegalStateException("write-behind mode is not supported by a lookup index");
+        }
+        return new DaoImpl(ctx.withWriteBehind(((WriteBehindJournalAdapter) writeBehindJournal).getJournal()), this.tablename);
+    }
+    
+    @Override
+    public Dao withReadYourWrites(ReadYourWritesSession session) {
+        if (!(session instanceof ReadYourWritesSessionImpl)) {
+            throw new IllegalArgumentException("read-your-writes session " + session + " has not been created by a Dao");
+        }
+        return new DaoImpl(ctx.withReadYourWrites((ReadYourWritesSessionImpl) session), this.tablename);
+    }
+    
+    
+    @Override
+    public Dao withCascadeMode(CascadeMode cascadeMode) {
+        return new DaoImpl(ctx.withCascadeMode(cascadeMode), this.tablename);
+    }
+    
+    
+    @Override
+    public Dao withBatchSizeLimit(int maxStatements, int maxBytes) {
+        if ((maxStatements <= 0) || (maxBytes <= 0)) {
+            throw new IllegalArgumentException("max statements and max bytes have to be greater than 0");
+        }
+        return new DaoImpl(ctx.withBatchSizeLimit(maxStatements, maxBytes), this.tablename);
+    }
+    
+    
     @Override
     public Dao withInterceptor(QueryInterceptor queryInterceptor) {
         Context context = ctx.withInterceptor(queryInterceptor);
@@ -125,10 +225,18 @@ public class DaoImpl implements Dao {
             context = context.withInterceptor(new ListReadQueryResponseInterceptorAdapter((ReadQueryResponseInterceptor) queryInterceptor));
         } 
 
+        if (ReadQueryPageInterceptor.class.isAssignableFrom(queryInterceptor.getClass())) {
+            context = context.withInterceptor(new ReadQueryPageInterceptorAdapter((ReadQueryPageInterceptor) queryInterceptor));
+        } 
+
         if (WriteQueryRequestInterceptor.class.isAssignableFrom(queryInterceptor.getClass())) {
             context = context.withInterceptor(new WriteQueryRequestInterceptorAdapter((WriteQueryRequestInterceptor) queryInterceptor));
         } 
 
+        if (WriteQueryResponseInterceptor.class.isAssignableFrom(queryInterceptor.getClass())) {
+            context = context.withInterceptor(new WriteQueryResponseInterceptorAdapter((WriteQueryResponseInterceptor) queryInterceptor));
+        } 
+
         if (DeleteQueryRequestInterceptor.class.isAssignableFrom(queryInterceptor.getClass())) {
             context = context.withInterceptor(new DeleteQueryRequestInterceptorAdapter((DeleteQueryRequestInterceptor) queryInterceptor));
         } 
@@ -147,7 +255,7 @@ public class DaoImpl implements Dao {
     
     @Override
     public Insertion writeEntity(Object entity) {
-        final ImmutableMap<String, com.google.common.base.Optional<Object>> values = ctx.getBeanMapper().toValues(entity, ctx.getCatalog().getColumnNames(tablename));
+        final ImmutableMap<String, com.google.common.base.Optional<Object>> values = ctx.toEntityValues(entity, tablename);
         return new InsertQueryAdapter(ctx, new InsertQuery(ctx, new WriteQueryDataImpl(tablename).valuesToMutate(values)));
     }
     
@@ -259,6 +367,64 @@ public class DaoImpl implements Dao {
         return new DeleteQueryAdapter(ctx, new DeleteQuery(ctx, new DeleteQueryDataImpl(tablename).key(keyNameValuePairs)));      
     }
     
+    @Override
+    public WriteProcessor<net.oneandone.troilus.Batchable<?>> writeRx() {
+        return new WriteProcessorAdapter<>(new WriteProcessorImpl<net.oneandone.troilus.Batchable<?>>(ctx, Mutations::toJava7Mutation));
+    }
+    
+    @Override
+    public <E> WriteProcessor<E> writeEntityRx(Class<E> entityClass) {
+        return new WriteProcessorAdapter<>(WriteProcessorImpl.<E>newEntityWriteProcessor(ctx, tablename));
+    }
+    
+    @Override
+    public CounterAccumulator newCounterAccumulator(long flushPeriodMillis, int maxPendingUpdates) {
+        return new CounterAccumulatorAdapter(new CounterAccumulatorImpl(ctx, tablename, flushPeriodMillis, maxPendingUpdates));
+    }
+    
+    @Override
+    public EntitySession newEntitySession() {
+        return new EntitySessionAdapter(new EntitySessionImpl(ctx, tablename));
+    }
+    
+    @Override
+    public LargeObjectStore newLargeObjectStore(String generationName, String chunkNumberName, String chunkDataName, int chunkSize, int maxParallelChunks) {
+        return new LargeObjectStoreAdapter(new LargeObjectStoreImpl(ctx, tablename, generationName, chunkNumberName, chunkDataName, chunkSize, maxParallelChunks));
+    }
+    
+    @Override
+    public LookupIndex newLookupIndex(String lookupTablename, ImmutableMap<String, String> columnMapping, long flushPeriodMillis, int maxPendingChanges, long reconcilePeriodMillis) {
+        return new LookupIndexAdapter(new LookupIndexImpl(ctx, tablename, Tablename.newTablename(tablename.getKeyspacename(), lookupTablename), columnMapping, flushPeriodMillis, maxPendingChanges, reconcilePeriodMillis));
+    }
+    
+    @Override
+    public WriteBehindJournal newWriteBehindJournal(File directory, int segmentSize, int maxParallelWrites) {
+        return new WriteBehindJournalAdapter(new WriteBehindJournalImpl(ctx.getDefaultDbSession(), directory, segmentSize, maxParallelWrites));
+    }
+    
+    @Override
+    public ReadYourWritesSession newReadYourWritesSession() {
+        return new ReadYourWritesSessionImpl();
+    }
+    
+    @Override
+    public TraceSampler newTraceSampler(int sampleRate, long latencyThresholdMillis) {
+        if ((sampleRate < 0) || ((sampleRate == 0) && (latencyThresholdMillis < 0))) {
+            throw new IllegalArgumentException("sample rate has to be greater than 0 or a latency threshold has to be set");
+        }
+        return new TraceSamplerImpl(sampleRate, latencyThresholdMillis);
+    }
+    
+    @Override
+    public LwtMetrics getLwtMetrics() {
+        return LwtSerializer.get(tablename);
+    }
+    
+    @Override
+    public HedgeMetrics getHedgeMetrics() {
+        return ReadHedger.get(tablename);
+    }
+    
     
     
     @Override
@@ -314,6 +480,16 @@ public class DaoImpl implements Dao {
     }
     
     
+    @Override
+    public MultiReadWithUnit<ImmutableList<Optional<Record>>, Record> readWithKeys(ImmutableList<ImmutableMap<String, Object>> keys) {
+        return new MultiReadQueryAdapter(ctx, new MultiReadQuery(ctx, tablename, keys));
+    }
+    
+    @Override
+    public TimeRangeReadWithUnit<ResultList<Record>, Record> readTimeRange(ImmutableMap<String, Object> keys, long fromMillis, long toMillis) {
+        return new TimeRangeReadQueryAdapter(ctx, new TimeRangeReadQuery(ctx, tablename, keys, fromMillis, toMillis));
+    }
+    
     @Override
     public ListReadWithUnit<ResultList<Record>, Record> readSequenceWithKeys(String name, ImmutableList<Object> values) {
         return new ListReadQueryAdapter(ctx, new ListReadQuery(ctx, new ReadQueryDataImpl(tablename).keys(ImmutableMap.of(name, values))));
@@ -578,6 +754,9 @@ public class DaoImpl implements Dao {
         
         
         static net.oneandone.troilus.java7.ResultList<net.oneandone.troilus.java7.Record> convertToJava7(ResultList<Record> recordList) {
+            if (recordList instanceof RecordListAdapter) {
+                return ((RecordListAdapter) recordList).recordList;
+            }
             
             return new net.oneandone.troilus.java7.ResultList<net.oneandone.troilus.java7.Record>() {
                 
@@ -1164,6 +1343,28 @@ public class DaoImpl implements Dao {
     }
     
     
+    private static final class ReadQueryPageInterceptorAdapter implements net.oneandone.troilus.java7.interceptor.ReadQueryPageInterceptor {
+        
+        private ReadQueryPageInterceptor interceptor;
+        
+        public ReadQueryPageInterceptorAdapter(ReadQueryPageInterceptor interceptor) {
+            this.interceptor = interceptor;
+        }
+        
+        @Override
+        public ListenableFuture<ImmutableList<net.oneandone.troilus.java7.Record>> onReadPageAsync(net.oneandone.troilus.java7.interceptor.ReadQueryData data, ImmutableList<net.oneandone.troilus.java7.Record> page) {
+            final ImmutableList<Record> records = ImmutableList.copyOf(page.stream().map(record -> RecordAdapter.convertFromJava7(record)).collect(Collectors.toList()));
+            return CompletableFutures.toListenableFuture(interceptor.onReadPageAsync(new ListReadQueryDataAdapter(data), records)
+                                                                    .thenApply(list -> ImmutableList.copyOf(list.stream().map(record -> RecordAdapter.convertToJava7(record)).collect(Collectors.toList()))));
+        }
+        
+        @Override
+        public String toString() {
+            return "ReadQueryPageInterceptor (with " + interceptor + ")";
+        }
+    }
+    
+    
     private static final class WriteQueryRequestInterceptorAdapter implements net.oneandone.troilus.java7.interceptor.WriteQueryRequestInterceptor {
          
         private WriteQueryRequestInterceptor interceptor;
@@ -1186,6 +1387,27 @@ public class DaoImpl implements Dao {
     
     
     
+    private static final class WriteQueryResponseInterceptorAdapter implements net.oneandone.troilus.java7.interceptor.WriteQueryResponseInterceptor {
+         
+        private WriteQueryResponseInterceptor interceptor;
+        
+        public WriteQueryResponseInterceptorAdapter(WriteQueryResponseInterceptor interceptor) {
+            this.interceptor = interceptor;
+        }
+        
+        @Override
+        public ListenableFuture<Result> onWriteResponseAsync(net.oneandone.troilus.java7.interceptor.WriteQueryData data, Result result) {
+            return CompletableFutures.toListenableFuture(interceptor.onWriteResponseAsync(new WriteQueryDataAdapter(data), result));
+        }
+        
+        @Override
+        public String toString() {
+            return "WriteQueryPostInterceptorAdapter (with " + interceptor + ")";
+        }
+    }
+    
+    
+    
     private static final class DeleteQueryRequestInterceptorAdapter implements net.oneandone.troilus.java7.interceptor.DeleteQueryRequestInterceptor {
          
         private DeleteQueryRequestInterceptor interceptor;
@@ -0,0 +1,71 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+
+
+/**
+ * Entity session which tracks the changes of attached entities. Saving an entity writes the
+ * changed values only. Collection changes are written as element-wise deltas (add/remove set 
+ * elements, put map entries, append/prepend list elements) instead of replacing the whole
+ * collection, which would create a tombstone.<br>
+ * Property values are compared by using equals. Values such as UDT beans should be replaced 
+ * instead of modified in place
+ */
+public interface EntitySession {
+
+    /**
+     * attaches the entity, typically read by asEntity(..). The current property values are 
+     * taken as snapshot
+     * 
+     * @param entity  the entity to attach
+     * @param <E>     the entity type
+     * @return the attached entity
+     */
+    <E> E attach(E entity);
+
+    /**
+     * @param entity  the entity to detach
+     */
+    void detach(Object entity);
+
+    /**
+     * @param entity  the attached entity
+     * @return true, if a property value differs from the snapshot. Absent and empty collections are the same
+     */
+    boolean isModified(Object entity);
+
+    /**
+     * writes the changed values of the attached entity. The current property values become 
+     * the new snapshot. The old snapshot is restored, if the write fails or is not applied 
+     * 
+     * @param entity  the attached entity
+     * @return the result or empty, if the entity is unchanged and nothing has been written 
+     */
+    Optional<Result> save(Object entity);
+
+    /**
+     * writes the changed values of the attached entity. The current property values become 
+     * the new snapshot. The old snapshot is restored, if the write fails or is not applied 
+     * 
+     * @param entity  the attached entity
+     * @return the result future. The result is empty, if the entity is unchanged and nothing has been written 
+     */
+    CompletableFuture<Optional<Result>> saveAsync(Object entity);
+}
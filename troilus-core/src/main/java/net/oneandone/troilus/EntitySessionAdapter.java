@@ -0,0 +1,68 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+
+
+/**
+ * Java8 adapter of an entity session
+ */
+class EntitySessionAdapter implements EntitySession {
+
+    private final net.oneandone.troilus.java7.EntitySession session;
+
+
+    /**
+     * @param session the underlying session
+     */
+    EntitySessionAdapter(net.oneandone.troilus.java7.EntitySession session) {
+        this.session = session;
+    }
+
+    @Override
+    public <E> E attach(E entity) {
+        return session.attach(entity);
+    }
+
+    @Override
+    public void detach(Object entity) {
+        session.detach(entity);
+    }
+
+    @Override
+    public boolean isModified(Object entity) {
+        return session.isModified(entity);
+    }
+
+    @Override
+    public Optional<Result> save(Object entity) {
+        return Optional.ofNullable(session.save(entity).orNull());
+    }
+
+    @Override
+    public CompletableFuture<Optional<Result>> saveAsync(Object entity) {
+        return CompletableFutures.toCompletableFuture(session.saveAsync(entity))
+                                 .thenApply(result -> Optional.ofNullable(result.orNull()));
+    }
+
+    @Override
+    public String toString() {
+        return session.toString();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.collect.ImmutableMap;
+
+
+
+/**
+ * Store which splits large objects into fixed-size chunks. Each chunk is stored as a 
+ * clustering row, which is identified by the object key, the generation and the chunk number. 
+ * A write stores its chunks under a new generation and publishes the generation by a manifest
+ * row at last. A read reads the chunks of the published generation only. The memory usage is 
+ * bounded by the number of parallel chunks, regardless of the object size.<br>
+ * A read of a generation which is replaced in the meantime fails with an IOException. Use 
+ * deleteWithKey(..) of the Dao to delete an object
+ */
+public interface LargeObjectStore {
+
+    /**
+     * writes the object. The chunks are written in parallel. The chunks of the replaced  
+     * generation will be removed after the new generation has been published
+     * 
+     * @param keys     the key of the object without the generation and the chunk number
+     * @param channel  the channel to read the object data from
+     * @return the future of the object size in bytes 
+     */
+    CompletableFuture<Long> writeAsync(ImmutableMap<String, Object> keys, ReadableByteChannel channel);
+
+    /**
+     * writes the object. The chunks are written in parallel. The chunks of the replaced  
+     * generation will be removed after the new generation has been published
+     * 
+     * @param keys    the key of the object without the generation and the chunk number
+     * @param stream  the stream to read the object data from
+     * @return the future of the object size in bytes 
+     */
+    CompletableFuture<Long> writeAsync(ImmutableMap<String, Object> keys, InputStream stream);
+
+    /**
+     * @param keys    the key of the object without the generation and the chunk number
+     * @param stream  the stream to read the object data from
+     * @return the object size in bytes 
+     */
+    long write(ImmutableMap<String, Object> keys, InputStream stream);
+
+    /**
+     * reads the object. The chunks are fetched in the background with a bounded prefetch, 
+     * while the channel is consumed. The channel has to be closed
+     * 
+     * @param keys  the key of the object without the generation and the chunk number
+     * @return the future of the channel or empty, if the object does not exist
+     */
+    CompletableFuture<Optional<ReadableByteChannel>> readAsync(ImmutableMap<String, Object> keys);
+
+    /**
+     * @param keys  the key of the object without the generation and the chunk number
+     * @return the channel or empty, if the object does not exist. The channel has to be closed
+     */
+    Optional<ReadableByteChannel> read(ImmutableMap<String, Object> keys);
+}
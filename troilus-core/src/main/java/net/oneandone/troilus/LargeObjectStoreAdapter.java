@@ -0,0 +1,72 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.collect.ImmutableMap;
+
+
+
+/**
+ * Java8 adapter of a large object store
+ */
+class LargeObjectStoreAdapter implements LargeObjectStore {
+
+    private final net.oneandone.troilus.java7.LargeObjectStore store;
+
+
+    /**
+     * @param store the underlying store
+     */
+    LargeObjectStoreAdapter(net.oneandone.troilus.java7.LargeObjectStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public CompletableFuture<Long> writeAsync(ImmutableMap<String, Object> keys, ReadableByteChannel channel) {
+        return CompletableFutures.toCompletableFuture(store.writeAsync(keys, channel));
+    }
+
+    @Override
+    public CompletableFuture<Long> writeAsync(ImmutableMap<String, Object> keys, InputStream stream) {
+        return CompletableFutures.toCompletableFuture(store.writeAsync(keys, stream));
+    }
+
+    @Override
+    public long write(ImmutableMap<String, Object> keys, InputStream stream) {
+        return store.write(keys, stream);
+    }
+
+    @Override
+    public CompletableFuture<Optional<ReadableByteChannel>> readAsync(ImmutableMap<String, Object> keys) {
+        return CompletableFutures.toCompletableFuture(store.readAsync(keys))
+                                 .thenApply(channel -> Optional.ofNullable(channel.orNull()));
+    }
+
+    @Override
+    public Optional<ReadableByteChannel> read(ImmutableMap<String, Object> keys) {
+        return Optional.ofNullable(store.read(keys).orNull());
+    }
+
+    @Override
+    public String toString() {
+        return store.toString();
+    }
+}
@@ -24,7 +24,9 @@ import java.util.concurrent.CompletableFuture;
 
 import org.reactivestreams.Publisher;
 
+import com.datastax.driver.core.ExecutionInfo;
 import com.datastax.driver.core.PagingState;
+import com.google.common.collect.ImmutableList;
 
 import net.oneandone.troilus.AbstractQuery;
 import net.oneandone.troilus.Context;
@@ -33,6 +35,7 @@ import net.oneandone.troilus.ListReadQuery;
 import net.oneandone.troilus.ColumnName;
 import net.oneandone.troilus.ListReadQuery.CountReadQuery;
 import net.oneandone.troilus.ListReadQuery.ListEntityReadQuery;
+import net.oneandone.troilus.ListReadQuery.PagedReadQuery;
 
 
  
@@ -133,7 +136,7 @@ class ListReadQueryAdapter extends AbstractQuery<ListReadQueryAdapter> implement
 	}  
 	
     @Override
-    public ListRead<Count, Count> count() {
+    public CountRead count() {
         return new CountReadQueryAdapter(getContext(), query.count());
     }
     
@@ -141,6 +144,11 @@ class ListReadQueryAdapter extends AbstractQuery<ListReadQueryAdapter> implement
     public <E> ListEntityReadQueryAdapter<E> asEntity(Class<E> objectClass) {
         return new ListEntityReadQueryAdapter<>(getContext(), query.asEntity(objectClass)) ;
     }
+    
+    @Override
+    public PagedRead keysetPages(int pageSize) {
+        return new PagedReadQueryAdapter(getContext(), query.keysetPages(pageSize));
+    }
 
     @Override
     public ResultList<Record> execute() {
@@ -230,9 +238,124 @@ class ListReadQueryAdapter extends AbstractQuery<ListReadQueryAdapter> implement
      
 
     /**
+     * Java8 adapter of a PagedReadQuery
+     */
+    private static class PagedReadQueryAdapter extends AbstractQuery<PagedReadQueryAdapter> implements PagedRead {
+        
+        private final PagedReadQuery query;
+        
+        /**
+         * @param ctx     the context
+         * @param query   the query
+         */
+        PagedReadQueryAdapter(Context ctx, PagedReadQuery query) {
+            super(ctx);
+            this.query = query;
+        }
+        
+        @Override
+        protected PagedReadQueryAdapter newQuery(Context newContext) {
+            return new PagedReadQueryAdapter(newContext, query.newQuery(newContext));
+        }
+        
+        @Override
+        public PagedRead withCursor(PageCursor cursor) {
+            return new PagedReadQueryAdapter(getContext(), query.withCursor(cursor));
+        }
+        
+        @Override
+        public PagedRead withPrefetch(int numPages) {
+            return new PagedReadQueryAdapter(getContext(), query.withPrefetch(numPages));
+        }
+        
+        @Override
+        public Page execute() {
+            return CompletableFutures.getUninterruptibly(executeAsync());
+        }
+        
+        @Override
+        public CompletableFuture<Page> executeAsync() {
+            return CompletableFutures.toCompletableFuture(query.executeAsync())
+                                     .thenApply(page -> PageAdapter.convertFromJava7(page));
+        }
+    }
+    
+    
+    /**
+     * Java8 adapter of a Page
+     */
+    private static class PageAdapter implements Page {
+        
+        private final net.oneandone.troilus.java7.Page page;
+        private final ImmutableList<Record> records;
+        
+        private PageAdapter(net.oneandone.troilus.java7.Page page) {
+            this.page = page;
+            
+            final ImmutableList.Builder<Record> builder = ImmutableList.builder();
+            for (net.oneandone.troilus.java7.Record record : page.getRecords()) {
+                builder.add(RecordAdapter.convertFromJava7(record));
+            }
+            this.records = builder.build();
+        }
+        
+        static Page convertFromJava7(net.oneandone.troilus.java7.Page page) {
+            return new PageAdapter(page);
+        }
+        
+        @Override
+        public ExecutionInfo getExecutionInfo() {
+            return page.getExecutionInfo();
+        }
+        
+        @Override
+        public ImmutableList<ExecutionInfo> getAllExecutionInfo() {
+            return page.getAllExecutionInfo();
+        }
+        
+        @Override
+        public boolean wasApplied() {
+            return page.wasApplied();
+        }
+        
+        @Override
+        public ImmutableList<Record> getRecords() {
+            return records;
+        }
+        
+        @Override
+        public PageCursor getCursor() {
+            return page.getCursor();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return page.hasNext();
+        }
+        
+        @Override
+        public Page next() {
+            return CompletableFutures.getUninterruptibly(nextAsync());
+        }
+        
+        @Override
+        public CompletableFuture<Page> nextAsync() {
+            return CompletableFutures.toCompletableFuture(page.nextAsync())
+                                     .thenApply(nextPage -> PageAdapter.convertFromJava7(nextPage));
+        }
+        
+        @Override
+        public String toString() {
+            return page.toString();
+        }
+    }
+    
+    
+    
+        /**
      * Java8 adapter of a CountReadQuery
      */
-    private static class CountReadQueryAdapter extends AbstractQuery<CountReadQueryAdapter> implements ListRead<Count, Count> {
+    private static class CountReadQueryAdapter extends AbstractQuery<CountReadQueryAdapter> implements CountRead {
 
         private final CountReadQuery query;
     
@@ -271,6 +394,21 @@ class ListReadQueryAdapter extends AbstractQuery<ListReadQueryAdapter> implement
             return new CountReadQueryAdapter(getContext(), query.withDistinct());
         }
         
+        @Override
+        public CountRead withParallelism(int maxParallelism) {
+            return new CountReadQueryAdapter(getContext(), query.withParallelism(maxParallelism));
+        }
+        
+        @Override
+        public CountRead withProgressListener(CountProgressListener listener) {
+            return new CountReadQueryAdapter(getContext(), query.withProgressListener(listener));
+        }
+        
+        @Override
+        public CountRead withApproximation() {
+            return new CountReadQueryAdapter(getContext(), query.withApproximation());
+        }
+        
         @Override
         public Count execute() {
             return CompletableFutures.getUninterruptibly(executeAsync());
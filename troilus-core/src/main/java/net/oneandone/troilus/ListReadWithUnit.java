@@ -33,7 +33,16 @@ public interface ListReadWithUnit<T, R> extends ListReadWithColumns<T, R> {
     /**
      * @return a cloned query instance which returns the count
      */
-    ListRead<Count, Count> count();
+    CountRead count();
+    
+    /**
+     * reads the records page by page by seeking the clustering key of the last record 
+     * of the previous page. Requires a key-based read of a partition  
+     * 
+     * @param pageSize  the max number of records per page
+     * @return a paged read
+     */
+    PagedRead keysetPages(int pageSize);
 
     /**
      * @param objectClass  the entity type
@@ -0,0 +1,58 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+
+
+/**
+ * Lookup index which maintains a lookup table of the source table asynchronously. Key-based 
+ * writes of the source table are queued, coalesced per lookup key and written periodically 
+ * by using unlogged batches per lookup partition. The lookup changes are not performed 
+ * within the request path of the source write.<br>
+ * Lookup rows which become stale by changing or deleting the indexed source value are 
+ * removed by the reconciliation scan. Lookup results should be verified against the 
+ * source row. Only the key-based writes of the source Dao are indexed. Batches, write processors 
+ * and the write-behind mode are rejected by a Dao with lookup index. The index has to be closed 
+ * to flush the remaining changes
+ */
+public interface LookupIndex extends Closeable {
+
+    /**
+     * writes the queued lookup changes immediately
+     *
+     * @return the flush future
+     */
+    CompletableFuture<Void> flushAsync();
+
+    /**
+     * repairs the lookup table by scanning the lookup table and the source table. Lookup 
+     * rows without matching source row will be deleted. The lookup rows of all source rows 
+     * will be (re)written 
+     *
+     * @return the reconciliation future
+     */
+    CompletableFuture<Void> reconcileAsync();
+
+    /**
+     * flushes the queued changes and stops periodic flushing and reconciliation. Blocks 
+     * until the final flush is done
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.concurrent.CompletableFuture;
+
+
+
+/**
+ * Java8 adapter of a lookup index
+ */
+class LookupIndexAdapter implements LookupIndex {
+
+    private final LookupIndexImpl index;
+
+
+    /**
+     * @param index the underlying index
+     */
+    LookupIndexAdapter(LookupIndexImpl index) {
+        this.index = index;
+    }
+    
+    LookupIndexImpl getLookupIndex() {
+        return index;
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        return CompletableFutures.toCompletableFuture(index.flushAsync());
+    }
+
+    @Override
+    public CompletableFuture<Void> reconcileAsync() {
+        return CompletableFutures.toCompletableFuture(index.reconcileAsync());
+    }
+
+    @Override
+    public void close() {
+        index.close();
+    }
+
+    @Override
+    public String toString() {
+        return index.toString();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.reactivestreams.Publisher;
+
+import net.oneandone.troilus.AbstractQuery;
+import net.oneandone.troilus.Context;
+import net.oneandone.troilus.MultiReadQuery;
+import net.oneandone.troilus.MultiReadQuery.MultiEntityReadQuery;
+
+import com.google.common.collect.ImmutableList;
+
+
+ 
+/**
+ * Java8 adapter of a MultiReadQuery
+ */
+class MultiReadQueryAdapter extends AbstractQuery<MultiReadQueryAdapter> implements MultiReadWithUnit<ImmutableList<Optional<Record>>, Record> {
+    
+    private final MultiReadQuery query;
+     
+    
+    /**
+     * @param ctx     the context
+     * @param query   the underlying query
+     */
+    MultiReadQueryAdapter(Context ctx, MultiReadQuery query) {
+        super(ctx);
+        this.query = query;
+    }
+   
+    
+    @Override
+    protected MultiReadQueryAdapter newQuery(Context newContext) {
+        return new MultiReadQueryAdapter(newContext, query.newQuery(newContext));
+    }
+    
+    @Override
+    public MultiReadQueryAdapter withParallelism(int parallelism) {
+        return new MultiReadQueryAdapter(getContext(), query.newQuery(getContext()).withParallelism(parallelism));
+    }
+    
+    @Override
+    public <E> MultiEntityReadQueryAdapter<E> asEntity(Class<E> objectClass) {
+        return new MultiEntityReadQueryAdapter<>(getContext(), query.newQuery(getContext()).asEntity(objectClass));
+    }
+    
+    @Override
+    public ImmutableList<Optional<Record>> execute() {
+        return CompletableFutures.getUninterruptibly(executeAsync());
+    }
+    
+    @Override
+    public CompletableFuture<ImmutableList<Optional<Record>>> executeAsync() {
+        return CompletableFutures.toCompletableFuture(query.executeAsync())
+                                 .thenApply(records -> {
+                                                         final ImmutableList.Builder<Optional<Record>> builder = ImmutableList.builder();
+                                                         for (com.google.common.base.Optional<net.oneandone.troilus.java7.Record> record : records) {
+                                                             builder.add(record.isPresent() ? Optional.of(RecordAdapter.convertFromJava7(record.get())) : Optional.empty());
+                                                         }
+                                                         return builder.build();
+                                                       });
+    }
+    
+    @Override
+    public Publisher<Record> executeRx() {
+        return new RecordMappingPublisher(query.executeRx());
+    }
+    
+    
+    
+
+    /**
+     * Java8 adapter of a MultiEntityReadQuery
+     */
+    private static class MultiEntityReadQueryAdapter<E> extends AbstractQuery<MultiEntityReadQueryAdapter<E>> implements MultiRead<ImmutableList<Optional<E>>, E> {
+        
+        private final MultiEntityReadQuery<E> query;
+        
+        /**
+         * @param ctx    the context 
+         * @param query  the underlying query
+         */
+        MultiEntityReadQueryAdapter(Context ctx, MultiEntityReadQuery<E> query) {
+            super(ctx);
+            this.query = query;
+        }
+        
+        @Override
+        protected MultiEntityReadQueryAdapter<E> newQuery(Context newContext) {
+            return new MultiEntityReadQueryAdapter<>(newContext, query.newQuery(newContext)); 
+        }
+        
+        @Override
+        public MultiEntityReadQueryAdapter<E> withParallelism(int parallelism) {
+            return new MultiEntityReadQueryAdapter<>(getContext(), query.withParallelism(parallelism));
+        }
+        
+        @Override
+        public ImmutableList<Optional<E>> execute() {
+            return CompletableFutures.getUninterruptibly(executeAsync());
+        }
+
+        @Override
+        public CompletableFuture<ImmutableList<Optional<E>>> executeAsync() {
+            return CompletableFutures.toCompletableFuture(query.executeAsync())
+                                     .thenApply(entities -> {
+                                                                final ImmutableList.Builder<Optional<E>> builder = ImmutableList.builder();
+                                                                for (com.google.common.base.Optional<E> entity : entities) {
+                                                                    builder.add(Optional.ofNullable(entity.orNull()));
+                                                                }
+                                                                return builder.build();
+                                                            });
+        }   
+        
+        @Override
+        public Publisher<E> executeRx() {
+            return query.executeRx();
+        }
+    }
+}
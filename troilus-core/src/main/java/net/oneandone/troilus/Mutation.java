@@ -60,6 +60,15 @@ public interface Mutation<Q, R> extends Query<R> {
      */
     Q withRetryPolicy(RetryPolicy policy);
     
+    /**
+     * overrides the automatic idempotence classification of the generated statement. Idempotent 
+     * statements may be retried or speculatively executed by the driver
+     * 
+     * @param idempotent  true, if the query can be applied multiple times without changing the result
+     * @return a cloned query instance with the modified behavior
+     */
+    Q withIdempotence(boolean idempotent);
+    
     /**
      * @return the statement future
      */
@@ -64,6 +64,11 @@ class Mutations {
             return mutation.withRetryPolicy(policy);
         }
         
+        @Override
+        public Object withIdempotence(boolean idempotent) {
+            return mutation.withIdempotence(idempotent);
+        }
+        
         @Override
         public Object withSerialConsistency(ConsistencyLevel consistencyLevel) {
             return mutation.withSerialConsistency(consistencyLevel);
@@ -0,0 +1,53 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.collect.ImmutableList;
+
+
+
+/**
+ * Page of a keyset based paged read 
+ */
+public interface Page extends Result {
+
+    /**
+     * @return the records of this page
+     */
+    ImmutableList<Record> getRecords();
+    
+    /**
+     * @return the cursor pointing behind the last record of this page or null, if the page is empty 
+     */
+    PageCursor getCursor();
+    
+    /**
+     * @return true, if a next page may exist
+     */
+    boolean hasNext();
+    
+    /**
+     * @return the next page
+     */
+    Page next();
+    
+    /**
+     * @return the next page future
+     */
+    CompletableFuture<Page> nextAsync();
+}
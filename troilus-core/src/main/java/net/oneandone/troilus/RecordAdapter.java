@@ -224,6 +224,10 @@ class RecordAdapter implements Record {
      * @return the java8-based record
      */
     public static Record convertFromJava7(net.oneandone.troilus.java7.Record record) {
+        // avoid stacking adapters, if the record has been passed through an interceptor
+        if (record instanceof Java7RecordAdapter) {
+            return ((Java7RecordAdapter) record).record;
+        }
         return new RecordAdapter(record);
     }
     
@@ -232,148 +236,161 @@ class RecordAdapter implements Record {
      * @return the java7-based record
      */
     static net.oneandone.troilus.java7.Record convertToJava7(Record record) {
+        if (record instanceof RecordAdapter) {
+            return ((RecordAdapter) record).record;
+        }
+        return new Java7RecordAdapter(record);
+    }
+    
+    
+    /**
+     * Java7 adapter of a Record
+     */
+    private static final class Java7RecordAdapter implements net.oneandone.troilus.java7.Record {
+        private final Record record;
         
-        return new net.oneandone.troilus.java7.Record() {
-            
-            @Override
-            public boolean wasApplied() {
-                return record.wasApplied();
-            }
-            
-            @Override
-            public ExecutionInfo getExecutionInfo() {
-                return record.getExecutionInfo();
-            }
-            
-            @Override
-            public ImmutableList<ExecutionInfo> getAllExecutionInfo() {
-                return record.getAllExecutionInfo();
-            }
-            
-            @Override
-            public boolean isNull(String name) {
-                return record.isNull(name);
-            }
-            
-            @Override
-            public Long getWritetime(String name) {
-                return record.getWritetime(name);
-            }
-            
-            @Override
-            public BigInteger getVarint(String name) {
-                return record.getVarint(name);
-            }
-            
-            @Override
-            public <T> T getValue(ColumnName<T> name) {
-                return record.getValue(name);
-            }
-            
-            @Override
-            public UUID getUUID(String name) {
-                return record.getUUID(name);
-            }
-            
-            @Override
-            public TupleValue getTupleValue(String name) {
-                return record.getTupleValue(name);
-            }
-            
-            @Override
-            public UDTValue getUDTValue(String name) {
-                return record.getUDTValue(name);           
-            }
-         
-            @Override
-            public Integer getTtl(String name) {
-                final Duration ttl = record.getTtl(name);
-                if (ttl == null) {
-                    return null;
-                } else {
-                    return (int) ttl.getSeconds();
-                }
-            }
-            
-            @Override
-            public String getString(String name) {
-                return record.getString(name);
-            }
-            
-            @Override
-            public <T> ImmutableSet<T> getSet(String name, Class<T> elementsClass) {
-                return record.getSet(name, elementsClass);
-            }
-            
-            @Override
-            public <T> T getValue(String name, Class<T> type) {
-                return record.getValue(name, type);
-            }
-            
-            @Override
-            public <K, V> ImmutableMap<K, V> getMap(String name, Class<K> keysClass, Class<V> valuesClass) {
-                return record.getMap(name, keysClass, valuesClass);
-            }
-            
-            @Override
-            public long getLong(String name) {
-                return record.getLong(name);
-            }
-            
-            @Override
-            public <T> ImmutableList<T> getList(String name, Class<T> elementsClass) {
-                return record.getList(name, elementsClass);
-            }
-            
-            @Override
-            public int getInt(String name) {
-                return record.getInt(name);
-            }
-            
-            @Override
-            public InetAddress getInet(String name) {
-                return record.getInet(name);
-            }
-            
-            @Override
-            public float getFloat(String name) {
-                return record.getFloat(name);
-            }
-            
-            @Override
-            public <T extends Enum<T>> T getEnum(String name, Class<T> enumType) {
-                return record.getEnum(name, enumType);
-            }
-            
-            @Override
-            public BigDecimal getDecimal(String name) {
-                return record.getDecimal(name);
-            }
-            
-            @Override
-            public long getTime(String name) {
-                return record.getTime(name);
-            }
-            
-            @Override
-            public Date getDate(String name) {
-                return Date.from(record.getDate(name));
-            }
-            
-            @Override
-            public ByteBuffer getBytesUnsafe(String name) {
-                return record.getBytesUnsafe(name);
-            }
-            
-            @Override
-            public ByteBuffer getBytes(String name) {
-                return record.getBytes(name);
-            }
-            
-            @Override
-            public boolean getBool(String name) {
-                return record.getBool(name);
+        Java7RecordAdapter(Record record) {
+            this.record = record;
+        }
+        
+        @Override
+        public boolean wasApplied() {
+            return record.wasApplied();
+        }
+        
+        @Override
+        public ExecutionInfo getExecutionInfo() {
+            return record.getExecutionInfo();
+        }
+        
+        @Override
+        public ImmutableList<ExecutionInfo> getAllExecutionInfo() {
+            return record.getAllExecutionInfo();
+        }
+        
+        @Override
+        public boolean isNull(String name) {
+            return record.isNull(name);
+        }
+        
+        @Override
+        public Long getWritetime(String name) {
+            return record.getWritetime(name);
+        }
+        
+        @Override
+        public BigInteger getVarint(String name) {
+            return record.getVarint(name);
+        }
+        
+        @Override
+        public <T> T getValue(ColumnName<T> name) {
+            return record.getValue(name);
+        }
+        
+        @Override
+        public UUID getUUID(String name) {
+            return record.getUUID(name);
+        }
+        
+        @Override
+        public TupleValue getTupleValue(String name) {
+            return record.getTupleValue(name);
+        }
+        
+        @Override
+        public UDTValue getUDTValue(String name) {
+            return record.getUDTValue(name);           
+        }
+     
+        @Override
+        public Integer getTtl(String name) {
+            final Duration ttl = record.getTtl(name);
+            if (ttl == null) {
+                return null;
+            } else {
+                return (int) ttl.getSeconds();
             }
-        };
+        }
+        
+        @Override
+        public String getString(String name) {
+            return record.getString(name);
+        }
+        
+        @Override
+        public <T> ImmutableSet<T> getSet(String name, Class<T> elementsClass) {
+            return record.getSet(name, elementsClass);
+        }
+        
+        @Override
+        public <T> T getValue(String name, Class<T> type) {
+            return record.getValue(name, type);
+        }
+        
+        @Override
+        public <K, V> ImmutableMap<K, V> getMap(String name, Class<K> keysClass, Class<V> valuesClass) {
+            return record.getMap(name, keysClass, valuesClass);
+        }
+        
+        @Override
+        public long getLong(String name) {
+            return record.getLong(name);
+        }
+        
+        @Override
+        public <T> ImmutableList<T> getList(String name, Class<T> elementsClass) {
+            return record.getList(name, elementsClass);
+        }
+        
+        @Override
+        public int getInt(String name) {
+            return record.getInt(name);
+        }
+        
+        @Override
+        public InetAddress getInet(String name) {
+            return record.getInet(name);
+        }
+        
+        @Override
+        public float getFloat(String name) {
+            return record.getFloat(name);
+        }
+        
+        @Override
+        public <T extends Enum<T>> T getEnum(String name, Class<T> enumType) {
+            return record.getEnum(name, enumType);
+        }
+        
+        @Override
+        public BigDecimal getDecimal(String name) {
+            return record.getDecimal(name);
+        }
+        
+        @Override
+        public long getTime(String name) {
+            return record.getTime(name);
+        }
+        
+        @Override
+        public Date getDate(String name) {
+            return Date.from(record.getDate(name));
+        }
+        
+        @Override
+        public ByteBuffer getBytesUnsafe(String name) {
+            return record.getBytesUnsafe(name);
+        }
+        
+        @Override
+        public ByteBuffer getBytes(String name) {
+            return record.getBytes(name);
+        }
+        
+        @Override
+        public boolean getBool(String name) {
+            return record.getBool(name);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import com.datastax.driver.core.ConsistencyLevel;
+
+
+
+/**
+ * Time range read query of a time-bucketed table. The buckets of the time range are 
+ * read concurrently. The records are returned in clustering order  
+ *
+ * @param <T>  the result type
+ * @param <R>  the element type
+ */
+public interface TimeRangeRead<T, R> extends SingleRead<T, R> {
+   
+    /**
+     * @param parallelism  the max number of concurrently read buckets
+     * @return a cloned query instance with the modified behavior
+     */
+    TimeRangeRead<T, R> withParallelism(int parallelism);
+    
+    /**
+     * @param fetchSize the fetch size of the bucket reads
+     * @return a cloned query instance with the modified behavior
+     */
+    TimeRangeRead<T, R> withFetchSize(int fetchSize);
+    
+    @Override
+    TimeRangeRead<T, R> withTracking();
+    
+    @Override
+    TimeRangeRead<T, R> withoutTracking();
+    
+    @Override
+    TimeRangeRead<T, R> withConsistency(ConsistencyLevel consistencyLevel);
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.reactivestreams.Publisher;
+
+import net.oneandone.troilus.AbstractQuery;
+import net.oneandone.troilus.Context;
+import net.oneandone.troilus.TimeRangeReadQuery;
+import net.oneandone.troilus.TimeRangeReadQuery.TimeRangeEntityReadQuery;
+
+
+
+/**
+ * Java8 adapter of a TimeRangeReadQuery
+ */
+class TimeRangeReadQueryAdapter extends AbstractQuery<TimeRangeReadQueryAdapter> implements TimeRangeReadWithUnit<ResultList<Record>, Record> {
+    
+    private final TimeRangeReadQuery query;
+     
+    
+    /**
+     * @param ctx     the context
+     * @param query   the underlying query
+     */
+    TimeRangeReadQueryAdapter(Context ctx, TimeRangeReadQuery query) {
+        super(ctx);
+        this.query = query;
+    }
+   
+    
+    @Override
+    protected TimeRangeReadQueryAdapter newQuery(Context newContext) {
+        return new TimeRangeReadQueryAdapter(newContext, query.newQuery(newContext));
+    }
+    
+    @Override
+    public TimeRangeReadQueryAdapter withParallelism(int parallelism) {
+        return new TimeRangeReadQueryAdapter(getContext(), query.newQuery(getContext()).withParallelism(parallelism));
+    }
+    
+    @Override
+    public TimeRangeReadQueryAdapter withFetchSize(int fetchSize) {
+        return new TimeRangeReadQueryAdapter(getContext(), query.newQuery(getContext()).withFetchSize(fetchSize));
+    }
+    
+    @Override
+    public <E> TimeRangeEntityReadQueryAdapter<E> asEntity(Class<E> objectClass) {
+        return new TimeRangeEntityReadQueryAdapter<>(getContext(), query.newQuery(getContext()).asEntity(objectClass));
+    }
+    
+    @Override
+    public ResultList<Record> execute() {
+        return CompletableFutures.getUninterruptibly(executeAsync());
+    }
+    
+    @Override
+    public CompletableFuture<ResultList<Record>> executeAsync() {
+        return CompletableFutures.toCompletableFuture(query.executeAsync())
+                                 .thenApply(recordList -> DaoImpl.RecordListAdapter.convertFromJava7(recordList));
+    }
+    
+    @Override
+    public Publisher<Record> executeRx() {
+        return new RecordMappingPublisher(query.executeRx());
+    }
+    
+    
+    
+
+    /**
+     * Java8 adapter of a TimeRangeEntityReadQuery
+     */
+    private static class TimeRangeEntityReadQueryAdapter<E> extends AbstractQuery<TimeRangeEntityReadQueryAdapter<E>> implements TimeRangeRead<ResultList<E>, E> {
+        
+        private final TimeRangeEntityReadQuery<E> query;
+        
+        /**
+         * @param ctx    the context 
+         * @param query  the underlying query
+         */
+        TimeRangeEntityReadQueryAdapter(Context ctx, TimeRangeEntityReadQuery<E> query) {
+            super(ctx);
+            this.query = query;
+        }
+        
+        @Override
+        protected TimeRangeEntityReadQueryAdapter<E> newQuery(Context newContext) {
+            return new TimeRangeEntityReadQueryAdapter<>(newContext, query.newQuery(newContext)); 
+        }
+        
+        @Override
+        public TimeRangeEntityReadQueryAdapter<E> withParallelism(int parallelism) {
+            return new TimeRangeEntityReadQueryAdapter<>(getContext(), query.withParallelism(parallelism));
+        }
+        
+        @Override
+        public TimeRangeEntityReadQueryAdapter<E> withFetchSize(int fetchSize) {
+            return new TimeRangeEntityReadQueryAdapter<>(getContext(), query.withFetchSize(fetchSize));
+        }
+        
+        @Override
+        public ResultList<E> execute() {
+            return CompletableFutures.getUninterruptibly(executeAsync());
+        }
+
+        @Override
+        public CompletableFuture<ResultList<E>> executeAsync() {
+            return CompletableFutures.toCompletableFuture(query.executeAsync())
+                                     .thenApply(entityList -> new DaoImpl.EntityListAdapter<>(entityList));
+        }   
+        
+        @Override
+        public Publisher<E> executeRx() {
+            return query.executeRx();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.concurrent.CompletableFuture;
+
+
+
+/**
+ * Java8 adapter of a write-behind journal
+ */
+class WriteBehindJournalAdapter implements WriteBehindJournal {
+
+    private final WriteBehindJournalImpl journal;
+
+
+    /**
+     * @param journal the underlying journal
+     */
+    WriteBehindJournalAdapter(WriteBehindJournalImpl journal) {
+        this.journal = journal;
+    }
+    
+    WriteBehindJournalImpl getJournal() {
+        return journal;
+    }
+
+    @Override
+    public CompletableFuture<Void> drainAsync() {
+        return CompletableFutures.toCompletableFuture(journal.drainAsync());
+    }
+
+    @Override
+    public WriteBehindMetrics getMetrics() {
+        return journal.getMetrics();
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+
+    @Override
+    public String toString() {
+        return journal.toString();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+import java.util.function.Function;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+
+
+/**
+ * Java8 adapter of a write processor
+ *
+ * @param <T> the item type
+ */
+class WriteProcessorAdapter<T> implements WriteProcessor<T> {
+
+    private final net.oneandone.troilus.java7.WriteProcessor<T> processor;
+
+
+    /**
+     * @param processor the underlying processor
+     */
+    WriteProcessorAdapter(net.oneandone.troilus.java7.WriteProcessor<T> processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public WriteProcessor<T> withMaxInFlight(int maxInFlight) {
+        return new WriteProcessorAdapter<>(processor.withMaxInFlight(maxInFlight));
+    }
+
+    @Override
+    public WriteProcessor<T> withRetries(int maxRetries) {
+        return new WriteProcessorAdapter<>(processor.withRetries(maxRetries));
+    }
+
+    @Override
+    public WriteProcessor<T> withPartitionGrouping(Function<? super T, ?> partitionKeyFunction) {
+        return new WriteProcessorAdapter<>(processor.withPartitionGrouping(item -> partitionKeyFunction.apply(item)));
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super MutationResult<T>> subscriber) {
+        processor.subscribe(subscriber);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        processor.onSubscribe(subscription);
+    }
+
+    @Override
+    public void onNext(T item) {
+        processor.onNext(item);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        processor.onError(error);
+    }
+
+    @Override
+    public void onComplete() {
+        processor.onComplete();
+    }
+
+    @Override
+    public void close() {
+        processor.close();
+    }
+}
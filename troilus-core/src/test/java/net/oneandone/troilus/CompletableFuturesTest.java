@@ -0,0 +1,102 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+
+
+public class CompletableFuturesTest {
+
+    @Test
+    public void testCompletion() throws Exception {
+
+        // result
+        SettableFuture<String> future = SettableFuture.create();
+        CompletableFuture<String> completableFuture = CompletableFutures.toCompletableFuture(future);
+        Assert.assertFalse(completableFuture.isDone());
+        future.set("value");
+        Assert.assertEquals("value", completableFuture.get());
+
+
+        // error
+        future = SettableFuture.create();
+        completableFuture = CompletableFutures.toCompletableFuture(future);
+        future.setException(new IOException("failed"));
+        try {
+            completableFuture.get();
+            Assert.fail("ExecutionException expected");
+        } catch (ExecutionException expected) {
+            Assert.assertTrue(expected.getCause() instanceof IOException);
+        }
+
+
+        // the adapter is completed by the thread which completes the underlying future
+        final SettableFuture<String> ioFuture = SettableFuture.create();
+        final AtomicReference<String> stageThreadname = new AtomicReference<>();
+        CompletableFuture<String> stage = CompletableFutures.toCompletableFuture(ioFuture)
+                                                            .thenApply(value -> {
+                                                                                   stageThreadname.set(Thread.currentThread().getName());
+                                                                                   return value;
+                                                                                });
+        Thread ioThread = new Thread(() -> ioFuture.set("io"), "io-thread");
+        ioThread.start();
+        ioThread.join();
+        Assert.assertEquals("io", stage.get());
+        Assert.assertEquals("io-thread", stageThreadname.get());
+
+
+        // a bridged future is unwrapped instead of being adapted twice
+        CompletableFuture<String> source = new CompletableFuture<>();
+        Assert.assertSame(source, CompletableFutures.toCompletableFuture(CompletableFutures.toListenableFuture(source)));
+    }
+
+
+    @Test
+    public void testCancellation() throws Exception {
+
+        // cancelling the adapter cancels the underlying future
+        SettableFuture<String> future = SettableFuture.create();
+        CompletableFuture<String> completableFuture = CompletableFutures.toCompletableFuture(future);
+        Assert.assertTrue(completableFuture.cancel(false));
+        Assert.assertTrue(completableFuture.isCancelled());
+        Assert.assertTrue(future.isCancelled());
+
+
+        // a cancelled underlying future cancels the adapter
+        future = SettableFuture.create();
+        completableFuture = CompletableFutures.toCompletableFuture(future);
+        future.cancel(false);
+        Assert.assertTrue(completableFuture.isCancelled());
+
+
+        // cancelling a completed adapter has no effect
+        future = SettableFuture.create();
+        completableFuture = CompletableFutures.toCompletableFuture(future);
+        future.set("value");
+        Assert.assertFalse(completableFuture.cancel(false));
+        Assert.assertEquals("value", completableFuture.get());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import net.oneandone.troilus.api.FeesTable;
+import net.oneandone.troilus.interceptor.ReadQueryData;
+import net.oneandone.troilus.interceptor.ReadQueryRequestInterceptor;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+
+
+public class DeadlineTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testTimeout() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withTimeout(10000);
+        
+        feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "deadline-1", FeesTable.YEAR, 2015)
+              .value(FeesTable.AMOUNT, 33)
+              .execute();
+        
+        Assert.assertEquals(33, feeDao.readWithKey(FeesTable.CUSTOMER_ID, "deadline-1", FeesTable.YEAR, 2015)
+                                      .execute()
+                                      .get()
+                                      .getInt(FeesTable.AMOUNT));
+    }
+    
+    
+    @Test
+    public void testDeadlineExceeded() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+        Dao expiredDao = feeDao.withDeadline(System.currentTimeMillis() - 1);
+        
+        try {
+            expiredDao.writeWithKey(FeesTable.CUSTOMER_ID, "deadline-2", FeesTable.YEAR, 2015)
+                      .value(FeesTable.AMOUNT, 44)
+                      .execute();
+            Assert.fail("DeadlineExceededException expected");
+        } catch (DeadlineExceededException expected) { }
+        
+        try {
+            expiredDao.readWithKey(FeesTable.CUSTOMER_ID, "deadline-2", FeesTable.YEAR, 2015)
+                      .executeAsync()
+                      .get();
+            Assert.fail("DeadlineExceededException expected");
+        } catch (ExecutionException expected) { 
+            Assert.assertTrue(expected.getCause() instanceof DeadlineExceededException);
+        }
+        
+        Assert.assertFalse(feeDao.readWithKey(FeesTable.CUSTOMER_ID, "deadline-2", FeesTable.YEAR, 2015)
+                                 .execute()
+                                 .isPresent());
+    }
+    
+    
+    @Test
+    public void testCancellation() throws Exception {
+        
+        // the mapped future cancels the source future
+        SettableFuture<String> source = SettableFuture.create();
+        ListenableFuture<String> mapped = ListenableFutures.transform(source, new Function<String, ListenableFuture<String>>() {
+                                                                                @Override
+                                                                                public ListenableFuture<String> apply(String value) {
+                                                                                    return SettableFuture.create();
+                                                                                }
+                                                                           });
+        mapped.cancel(false);
+        Assert.assertTrue(source.isCancelled());
+        
+        
+        // the mapped future cancels the inner future
+        final SettableFuture<String> inner = SettableFuture.create();
+        source = SettableFuture.create();
+        mapped = ListenableFutures.transform(source, new Function<String, ListenableFuture<String>>() {
+                                                        @Override
+                                                        public ListenableFuture<String> apply(String value) {
+                                                            return inner;
+                                                        }
+                                                     });
+        source.set("value");
+        mapped.cancel(false);
+        Assert.assertTrue(inner.isCancelled());
+        
+        
+        // the joining future cancels both futures
+        SettableFuture<ImmutableSet<String>> futureSet = SettableFuture.create();
+        SettableFuture<String> future = SettableFuture.create();
+        ListenableFutures.join(futureSet, future, MoreExecutors.directExecutor()).cancel(false);
+        Assert.assertTrue(futureSet.isCancelled());
+        Assert.assertTrue(future.isCancelled());
+        
+        
+        // the deadline cancels the query future 
+        Context ctx = Deadlines.start(new Context(cassandra.getSession()).withTimeout(50));
+        SettableFuture<String> query = SettableFuture.create();
+        try {
+            Deadlines.enforce(ctx, query).get();
+            Assert.fail("DeadlineExceededException expected");
+        } catch (ExecutionException expected) { 
+            Assert.assertTrue(expected.getCause() instanceof DeadlineExceededException);
+        }
+        Assert.assertTrue(query.isCancelled());
+    }
+    
+    
+    @Test
+    public void testSharedFutureIsNotCancelled() throws Exception {
+        
+        // the future returned by the interceptor is not owned by the query 
+        final CompletableFuture<ReadQueryData> shared = new CompletableFuture<>();
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withInterceptor(new ReadQueryRequestInterceptor() {
+                                                                                                @Override
+                                                                                                public CompletableFuture<ReadQueryData> onReadRequestAsync(ReadQueryData queryData) {
+                                                                                                    return shared;
+                                                                                                }
+                                                                                           })
+                                                                         .withTimeout(50);
+        
+        try {
+            feeDao.readWithKey(FeesTable.CUSTOMER_ID, "deadline-3", FeesTable.YEAR, 2015)
+                  .executeAsync()
+                  .get();
+            Assert.fail("DeadlineExceededException expected");
+        } catch (ExecutionException expected) { 
+            Assert.assertTrue(expected.getCause() instanceof DeadlineExceededException);
+        }
+        Assert.assertFalse(shared.isCancelled());
+    }
+}
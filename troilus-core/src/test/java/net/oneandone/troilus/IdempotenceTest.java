@@ -0,0 +1,112 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+import java.io.IOException;
+
+import net.oneandone.troilus.api.LoginsTable;
+import net.oneandone.troilus.api.UsersTable;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.datastax.driver.core.Statement;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+
+
+public class IdempotenceTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(UsersTable.DDL);
+        cassandra.tryExecuteCqlFile(LoginsTable.DDL);
+    }
+
+
+
+    @Test
+    public void testClassification() throws Exception {
+        Context ctx = new Context(cassandra.getSession());
+        DBSession dbSession = ctx.getDefaultDbSession();
+        Dao usersDao = new DaoImpl(cassandra.getSession(), UsersTable.TABLE);
+        Dao loginsDao = new DaoImpl(cassandra.getSession(), LoginsTable.TABLE);
+
+        
+        // plain writes, deletes and reads are idempotent
+        Statement statement = usersDao.writeWithKey(UsersTable.USER_ID, "4545")
+                                      .value(UsersTable.NAME, "eric")
+                                      .addSetValue(UsersTable.PHONE_NUMBERS, "24234244")
+                                      .getStatementAsync(dbSession)
+                                      .get();
+        Assert.assertTrue(statement.isIdempotent());
+        
+        statement = usersDao.deleteWithKey(UsersTable.USER_ID, "4545")
+                            .getStatementAsync(dbSession)
+                            .get();
+        Assert.assertTrue(statement.isIdempotent());
+        
+        ReadQueryDataImpl readData = new ReadQueryDataImpl(Tablename.newTablename(cassandra.getSession(), UsersTable.TABLE)).keys(ImmutableMap.of(UsersTable.USER_ID, ImmutableList.<Object>of("4545")));
+        statement = ReadQueryDataImpl.toStatementAsync(readData, ctx.getUDTValueMapper(), dbSession).get();
+        Assert.assertTrue(statement.isIdempotent());
+
+        
+        // lightweight transactions, list mutations and counter updates are not idempotent 
+        statement = usersDao.writeWithKey(UsersTable.USER_ID, "4545")
+                            .value(UsersTable.NAME, "eric")
+                            .ifNotExists()
+                            .getStatementAsync(dbSession)
+                            .get();
+        Assert.assertFalse(statement.isIdempotent());
+        
+        statement = usersDao.writeWithKey(UsersTable.USER_ID, "4545")
+                            .appendListValue(UsersTable.ADDRESSES, "street 4, 3454 city")
+                            .getStatementAsync(dbSession)
+                            .get();
+        Assert.assertFalse(statement.isIdempotent());
+        
+        statement = usersDao.deleteWithKey(UsersTable.USER_ID, "4545")
+                            .ifExists()
+                            .getStatementAsync(dbSession)
+                            .get();
+        Assert.assertFalse(statement.isIdempotent());
+        
+        statement = loginsDao.writeWithKey(LoginsTable.USER_ID, "4545")
+                             .incr(LoginsTable.LOGINS)
+                             .getStatementAsync(dbSession)
+                             .get();
+        Assert.assertFalse(statement.isIdempotent());
+    }
+}
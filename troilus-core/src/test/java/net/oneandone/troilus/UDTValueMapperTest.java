@@ -0,0 +1,131 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus;
+
+
+import java.io.IOException;
+
+import net.oneandone.troilus.UDTValueMapper.ColumnPlan;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.datastax.driver.core.UDTValue;
+import com.google.common.collect.ImmutableMap;
+
+
+
+public class UDTValueMapperTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCql("DROP TABLE planpoints");
+        cassandra.tryExecuteCql("DROP TYPE planpoint");
+        cassandra.executeCql("CREATE TYPE planpoint (x int, y int)");
+        cassandra.executeCql("CREATE TABLE planpoints (id text PRIMARY KEY, point frozen<planpoint>, points map<text, frozen<planpoint>>)");
+    }
+
+
+
+    @Test
+    public void testColumnPlanCaching() throws Exception {
+        Tablename tablename = Tablename.newTablename(cassandra.getSession(), "planpoints");
+        UDTValueMapper mapper = new Context(cassandra.getSession()).getUDTValueMapper();
+
+        // the plan of the column is compiled once and reused
+        ColumnPlan plan = mapper.getColumnPlan(tablename, "point");
+        Assert.assertSame(plan, mapper.getColumnPlan(tablename, "point"));
+
+        UDTValue udtValue = (UDTValue) mapper.toStatementValue(tablename, "point", new Point(1, 2));
+        Assert.assertEquals(1, udtValue.getInt("x"));
+        Assert.assertEquals(2, udtValue.getInt("y"));
+        Assert.assertSame(plan, mapper.getColumnPlan(tablename, "point"));
+
+        // maps are encoded per entry
+        ImmutableMap<?, ?> udtValues = (ImmutableMap<?, ?>) mapper.toStatementValue(tablename, "points", ImmutableMap.of("a", new Point(3, 4)));
+        Assert.assertEquals(3, ((UDTValue) udtValues.get("a")).getInt("x"));
+
+
+        // the plan is rebuilt, if a field is added to the user type
+        cassandra.executeCql("ALTER TYPE planpoint ADD z int");
+        long maxWaitMillis = System.currentTimeMillis() + 10 * 1000;
+        while ((mapper.getColumnPlan(tablename, "point") == plan) && (System.currentTimeMillis() < maxWaitMillis)) {
+            Thread.sleep(50);   // schema change events are received asynchronously
+        }
+        Assert.assertNotSame(plan, mapper.getColumnPlan(tablename, "point"));
+
+        udtValue = (UDTValue) mapper.toStatementValue(tablename, "point", new Point3d(1, 2, 3));
+        Assert.assertEquals(3, udtValue.getInt("z"));
+    }
+
+
+
+    public static class Point {
+
+        @Field(name = "x")
+        private Integer x;
+
+        @Field(name = "y")
+        private Integer y;
+
+        @SuppressWarnings("unused")
+        private Point() {  }
+
+        public Point(Integer x, Integer y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+
+    public static class Point3d {
+
+        @Field(name = "x")
+        private Integer x;
+
+        @Field(name = "y")
+        private Integer y;
+
+        @Field(name = "z")
+        private Integer z;
+
+        @SuppressWarnings("unused")
+        private Point3d() {  }
+
+        public Point3d(Integer x, Integer y, Integer z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+
+import net.oneandone.troilus.BatchMutation;
+import net.oneandone.troilus.BatchTooLargeException;
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.Result;
+import net.oneandone.troilus.Write;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+
+
+
+public class BatchSizeLimitTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testSplitUnloggedBatch() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withBatchSizeLimit(10, 64 * 1024);
+
+        BatchMutation batch = newBatch(feeDao, 100);
+        Result result = batch.withoutWriteAheadLog().execute();
+        
+        // 5 partitions with 20 statements each are split into 10 batches
+        Assert.assertEquals(10, result.getAllExecutionInfo().size());
+        Assert.assertTrue(result.wasApplied());
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(20, feeDao.readSequenceWhere(QueryBuilder.eq(FeesTable.CUSTOMER_ID, "batch-customer" + i))
+                                          .count()
+                                          .execute()
+                                          .getCount());
+        }
+    }
+
+
+    @Test
+    public void testRejectLoggedBatch() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withBatchSizeLimit(10, 64 * 1024);
+
+        try {
+            newBatch(feeDao, 11).withWriteAheadLog().execute();
+            Assert.fail("BatchTooLargeException expected");
+        } catch (BatchTooLargeException expected) { }
+
+        // within the limit
+        newBatch(feeDao, 10).withWriteAheadLog().execute();
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimit() throws Exception {
+        new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withBatchSizeLimit(0, 64 * 1024);
+    }
+
+
+    private static BatchMutation newBatch(Dao feeDao, int numWrites) {
+        BatchMutation batch = newWrite(feeDao, 0).combinedWith(newWrite(feeDao, 1));
+        for (int i = 2; i < numWrites; i++) {
+            batch = batch.combinedWith(newWrite(feeDao, i));
+        }
+        return batch;
+    }
+    
+    private static Write newWrite(Dao feeDao, int i) {
+        return feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "batch-customer" + (i % 5), FeesTable.YEAR, i)
+                     .value(FeesTable.AMOUNT, i);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.CounterAccumulator;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+
+
+public class CounterAccumulatorTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(LoginsTable.DDL);
+    }
+
+
+
+    @Test
+    public void testAccumulate() throws Exception {
+        Dao loginsDao = new DaoImpl(cassandra.getSession(), LoginsTable.TABLE);
+
+        final CounterAccumulator accumulator = loginsDao.newCounterAccumulator(60 * 1000, 500);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        accumulator.add(ImmutableMap.of(LoginsTable.USER_ID, "user" + (j % 3)), LoginsTable.LOGINS, 1);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+
+        // awaits the flush
+        CompletableFuture<Void> flushed = accumulator.addAsync(ImmutableMap.of(LoginsTable.USER_ID, "user0"), LoginsTable.LOGINS, -2);
+        accumulator.flushAsync();
+        flushed.get(30, TimeUnit.SECONDS);
+
+        Assert.assertEquals(334 * 4 - 2, loginsDao.readWithKey(LoginsTable.USER_ID, "user0").execute().get().getLong(LoginsTable.LOGINS));
+        Assert.assertEquals(333 * 4, loginsDao.readWithKey(LoginsTable.USER_ID, "user1").execute().get().getLong(LoginsTable.LOGINS));
+        Assert.assertEquals(333 * 4, loginsDao.readWithKey(LoginsTable.USER_ID, "user2").execute().get().getLong(LoginsTable.LOGINS));
+
+
+        // close flushes the remaining diffs
+        accumulator.add(ImmutableMap.of(LoginsTable.USER_ID, "user1"), LoginsTable.LOGINS, 10);
+        accumulator.close();
+
+        Assert.assertEquals(333 * 4 + 10, loginsDao.readWithKey(LoginsTable.USER_ID, "user1").execute().get().getLong(LoginsTable.LOGINS));
+    }
+}
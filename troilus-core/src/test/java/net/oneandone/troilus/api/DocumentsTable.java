@@ -0,0 +1,30 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+
+public interface DocumentsTable  {
+   
+    public static final String TABLE = "documents";
+    
+    public static final String DOCUMENT_ID = "document_id";
+    public static final String GENERATION = "generation";
+    public static final String CHUNK = "chunk";
+    public static final String DATA = "data";
+ 
+    public static final String DDL = "com/unitedinternet/troilus/example/documents.ddl";
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.HedgeMetrics;
+import net.oneandone.troilus.Record;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+
+
+public class HedgedReadTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testHedgedReads() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withHedgedReads(0.5, 0.2);
+        
+        feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "hedged-customer", FeesTable.YEAR, 2015)
+              .value(FeesTable.AMOUNT, 344)
+              .execute();
+        
+        long numReadsBefore = feeDao.getHedgeMetrics().getNumReads();
+        long numHedgedBefore = feeDao.getHedgeMetrics().getNumHedged();
+
+        for (int round = 0; round < 10; round++) {
+            List<CompletableFuture<Optional<Record>>> futures = Lists.newArrayList();
+            for (int i = 0; i < 50; i++) {
+                futures.add(feeDao.readWithKey(FeesTable.CUSTOMER_ID, "hedged-customer", FeesTable.YEAR, 2015)
+                                  .executeAsync());
+            }
+            
+            // hedged or not, the response has to be the same
+            for (CompletableFuture<Optional<Record>> future : futures) {
+                Optional<Record> record = future.get(30, TimeUnit.SECONDS);
+                Assert.assertTrue(record.isPresent());
+                Assert.assertEquals(344, record.get().getInt(FeesTable.AMOUNT));
+            }
+        }
+
+        HedgeMetrics metrics = feeDao.getHedgeMetrics();
+        Assert.assertEquals(500, metrics.getNumReads() - numReadsBefore);
+        Assert.assertTrue(metrics.getLatencyMicros(0.5) >= 0);
+        
+        // the hedge budget limits the extra load (the budget may have been filled by earlier reads)
+        Assert.assertTrue(metrics.getNumHedged() - numHedgedBefore <= 0.2 * 500 + 100);
+        Assert.assertTrue(metrics.getNumHedgeWins() <= metrics.getNumHedged());
+    }
+}
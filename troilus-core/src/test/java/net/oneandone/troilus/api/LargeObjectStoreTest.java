@@ -0,0 +1,128 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Optional;
+import java.util.Random;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.LargeObjectStore;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+
+
+
+public class LargeObjectStoreTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(DocumentsTable.DDL);
+    }
+
+
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        Dao documentsDao = new DaoImpl(cassandra.getSession(), DocumentsTable.TABLE);
+        LargeObjectStore store = documentsDao.newLargeObjectStore(DocumentsTable.GENERATION, DocumentsTable.CHUNK, DocumentsTable.DATA, 64 * 1024, 4);
+        
+        byte[] document = new byte[1000 * 1000];
+        new Random().nextBytes(document);
+        
+        long size = store.write(ImmutableMap.of(DocumentsTable.DOCUMENT_ID, "doc1"), new ByteArrayInputStream(document));
+        Assert.assertEquals(document.length, size);
+        Assert.assertEquals(16 + 1, numRows(documentsDao, "doc1"));   // chunks and manifest 
+        
+        Assert.assertArrayEquals(document, read(store, "doc1"));
+        
+        
+        // overwrite with a smaller object (the chunks of the replaced generation are removed)
+        Optional<ReadableByteChannel> replacedChannel = store.read(ImmutableMap.of(DocumentsTable.DOCUMENT_ID, "doc1"));
+        byte[] smallDocument = new byte[] { 4, 5, 6 };
+        store.writeAsync(ImmutableMap.of(DocumentsTable.DOCUMENT_ID, "doc1"), new ByteArrayInputStream(smallDocument)).get();
+        Assert.assertEquals(1 + 1, numRows(documentsDao, "doc1"));
+        Assert.assertArrayEquals(smallDocument, read(store, "doc1"));
+        
+        // the read of the replaced generation fails, once the prefetched chunks have been consumed
+        try (InputStream is = Channels.newInputStream(replacedChannel.get())) {
+            ByteStreams.copy(is, new ByteArrayOutputStream());
+            Assert.fail("IOException expected");
+        } catch (IOException expected) { }
+        
+        
+        // empty object
+        store.write(ImmutableMap.of(DocumentsTable.DOCUMENT_ID, "doc2"), new ByteArrayInputStream(new byte[0]));
+        Assert.assertArrayEquals(new byte[0], read(store, "doc2"));
+        
+        
+        // not existing object 
+        Assert.assertFalse(store.read(ImmutableMap.of(DocumentsTable.DOCUMENT_ID, "doc3")).isPresent());
+        
+        
+        // delete 
+        documentsDao.deleteWithKey(DocumentsTable.DOCUMENT_ID, "doc1").execute();
+        Assert.assertFalse(store.readAsync(ImmutableMap.of(DocumentsTable.DOCUMENT_ID, "doc1")).get().isPresent());
+    }
+    
+    
+    private static int numRows(Dao documentsDao, String documentId) {
+        return Iterables.size(documentsDao.readSequenceWithKey(DocumentsTable.DOCUMENT_ID, documentId)
+                                          .column(DocumentsTable.CHUNK)
+                                          .execute());
+    }
+    
+    private static byte[] read(LargeObjectStore store, String documentId) throws IOException {
+        Optional<ReadableByteChannel> channel = store.read(ImmutableMap.of(DocumentsTable.DOCUMENT_ID, documentId));
+        Assert.assertTrue(channel.isPresent());
+        
+        try (InputStream is = Channels.newInputStream(channel.get())) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            ByteStreams.copy(is, os);
+            return os.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.IfConditionException;
+import net.oneandone.troilus.LwtMetrics;
+import net.oneandone.troilus.Result;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+
+
+public class LwtSerializationTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testSerializedIfNotExists() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withLwtSerialization(3);
+        long numExecutedBefore = feeDao.getLwtMetrics().getNumExecuted();
+
+        // concurrent lwts on the same partition
+        List<CompletableFuture<Result>> futures = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            futures.add(feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "lwt-customer", FeesTable.YEAR, i % 2)
+                              .value(FeesTable.AMOUNT, i)
+                              .ifNotExists()
+                              .executeAsync());
+        }
+
+        int numApplied = 0;
+        for (CompletableFuture<Result> future : futures) {
+            try {
+                future.get(30, TimeUnit.SECONDS);
+                numApplied++;
+            } catch (ExecutionException expected) {
+                Assert.assertTrue(expected.getCause() instanceof IfConditionException);
+            }
+        }
+        Assert.assertEquals(2, numApplied);
+
+        LwtMetrics metrics = feeDao.getLwtMetrics();
+        Assert.assertTrue(metrics.getNumExecuted() - numExecutedBefore >= 20);
+        Assert.assertEquals(0, metrics.getQueueDepth());
+    }
+
+
+    @Test
+    public void testCancelledLwt() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withLwtSerialization(3);
+
+        List<CompletableFuture<Result>> futures = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            futures.add(feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "lwt-cancelled", FeesTable.YEAR, 2015)
+                              .value(FeesTable.AMOUNT, i)
+                              .ifNotExists()
+                              .executeAsync());
+        }
+        
+        // cancelling does not free the partition slot of the running lwt
+        futures.get(0).cancel(true);
+        Assert.assertTrue(futures.get(0).isCancelled());
+
+        int numApplied = 0;
+        for (CompletableFuture<Result> future : futures.subList(1, futures.size())) {
+            try {
+                future.get(30, TimeUnit.SECONDS);
+                numApplied++;
+            } catch (ExecutionException expected) {
+                Assert.assertTrue(expected.getCause() instanceof IfConditionException);
+            }
+        }
+        Assert.assertTrue(numApplied <= 1);
+        Assert.assertTrue(feeDao.readWithKey(FeesTable.CUSTOMER_ID, "lwt-cancelled", FeesTable.YEAR, 2015).execute().isPresent());
+        Assert.assertEquals(0, feeDao.getLwtMetrics().getQueueDepth());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.Record;
+import net.oneandone.troilus.interceptor.ReadQueryData;
+import net.oneandone.troilus.interceptor.ReadQueryRequestInterceptor;
+import net.oneandone.troilus.reactive.MySubscriber;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+
+
+public class MultiGetTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testReadWithKeys() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+
+        // every second key exists
+        List<ImmutableMap<String, Object>> keys = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            if ((i % 2) == 0) {
+                feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "multi-" + i, FeesTable.YEAR, 2015)
+                      .value(FeesTable.AMOUNT, i)
+                      .execute();
+            }
+            keys.add(ImmutableMap.of(FeesTable.CUSTOMER_ID, "multi-" + i, FeesTable.YEAR, 2015));
+        }
+
+        
+        // results in request order
+        ImmutableList<Optional<Record>> records = feeDao.readWithKeys(ImmutableList.copyOf(keys))
+                                                        .withParallelism(8)
+                                                        .execute();
+        Assert.assertEquals(100, records.size());
+        for (int i = 0; i < 100; i++) {
+            if ((i % 2) == 0) {
+                Assert.assertEquals(i, records.get(i).get().getInt(FeesTable.AMOUNT));
+            } else {
+                Assert.assertFalse(records.get(i).isPresent());
+            }
+        }
+        
+        
+        // rows in order of arrival
+        MySubscriber subscriber = new MySubscriber();
+        feeDao.readWithKeys(ImmutableList.copyOf(keys))
+              .executeRx()
+              .subscribe(subscriber);
+        Assert.assertEquals(50, subscriber.getAll().size());
+        
+        
+        // no keys
+        Assert.assertTrue(feeDao.readWithKeys(ImmutableList.<ImmutableMap<String, Object>>of()).execute().isEmpty());
+    }
+    
+    
+    
+    @Test
+    public void testReadWithKeysRxWithBoundedDemand() throws Exception {
+        ReadCounter readCounter = new ReadCounter();
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE)
+                             .withInterceptor(readCounter);
+
+        List<ImmutableMap<String, Object>> keys = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "bounded-" + i, FeesTable.YEAR, 2015)
+                  .value(FeesTable.AMOUNT, i)
+                  .execute();
+            keys.add(ImmutableMap.of(FeesTable.CUSTOMER_ID, "bounded-" + i, FeesTable.YEAR, 2015));
+        }
+        
+        
+        // the subscriber requests a single row only
+        final CountDownLatch latch = new CountDownLatch(1);
+        feeDao.readWithKeys(ImmutableList.copyOf(keys))
+              .withParallelism(4)
+              .executeRx()
+              .subscribe(new Subscriber<Record>() {
+                  
+                  @Override
+                  public void onSubscribe(Subscription subscription) {
+                      subscription.request(1);
+                  }
+                  
+                  @Override
+                  public void onNext(Record record) {
+                      latch.countDown();
+                  }
+                  
+                  @Override
+                  public void onError(Throwable t) { }
+                  
+                  @Override
+                  public void onComplete() { }
+              });
+        
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Thread.sleep(500);
+        
+        // the consumed row and the window of running reads and buffered rows 
+        Assert.assertTrue(readCounter.getNumReads() <= 1 + 4);
+    }
+    
+    
+    private static final class ReadCounter implements ReadQueryRequestInterceptor {
+        private final AtomicInteger numReads = new AtomicInteger();
+        
+        @Override
+        public CompletableFuture<ReadQueryData> onReadRequestAsync(ReadQueryData queryData) {
+            numReads.incrementAndGet();
+            return CompletableFuture.completedFuture(queryData);
+        }
+        
+        public int getNumReads() {
+            return numReads.get();
+        }
+    }
+}
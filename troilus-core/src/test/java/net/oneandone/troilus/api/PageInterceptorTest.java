@@ -0,0 +1,146 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.Record;
+import net.oneandone.troilus.interceptor.ReadQueryData;
+import net.oneandone.troilus.interceptor.ReadQueryPageInterceptor;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+
+
+public class PageInterceptorTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testPageInterceptor() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+
+        for (int year = 2000; year < 2010; year++) {
+            feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "paged-customer", FeesTable.YEAR, year)
+                  .value(FeesTable.AMOUNT, year)
+                  .execute();
+        }
+        feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "reference-customer", FeesTable.YEAR, 2002)
+              .value(FeesTable.AMOUNT, 1)
+              .execute();
+        feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "reference-customer", FeesTable.YEAR, 2007)
+              .value(FeesTable.AMOUNT, 1)
+              .execute();
+
+        ReferenceFilter filter = new ReferenceFilter(feeDao);
+        Dao feeDaoWithFilter = feeDao.withInterceptor(filter);
+
+        
+        // the referenced years are looked up once per page instead of once per record
+        List<Integer> years = Lists.newArrayList();
+        for (Record record : feeDaoWithFilter.readSequenceWithKey(FeesTable.CUSTOMER_ID, "paged-customer").execute()) {
+            years.add(record.getInt(FeesTable.YEAR));
+        }
+        Assert.assertEquals(ImmutableList.of(2002, 2007), years);
+        Assert.assertEquals(1, filter.numPages.get());
+        Assert.assertEquals(10, filter.numRecords.get());
+
+        
+        Optional<Record> record = feeDaoWithFilter.readWithKey(FeesTable.CUSTOMER_ID, "paged-customer", FeesTable.YEAR, 2003)
+                                                  .execute();
+        Assert.assertFalse(record.isPresent());
+
+        record = feeDaoWithFilter.readWithKey(FeesTable.CUSTOMER_ID, "paged-customer", FeesTable.YEAR, 2007)
+                                 .execute();
+        Assert.assertEquals(2007, record.get().getInt(FeesTable.AMOUNT));
+        
+        
+        // empty results are not passed to the interceptor
+        int numPages = filter.numPages.get();
+        Assert.assertFalse(feeDaoWithFilter.readSequenceWithKey(FeesTable.CUSTOMER_ID, "unknown-customer").execute().iterator().hasNext());
+        Assert.assertEquals(numPages, filter.numPages.get());
+    }
+    
+    
+    
+    private static final class ReferenceFilter implements ReadQueryPageInterceptor {
+        private final Dao feeDao;
+        private final AtomicInteger numPages = new AtomicInteger();
+        private final AtomicInteger numRecords = new AtomicInteger();
+        
+        public ReferenceFilter(Dao feeDao) {
+            this.feeDao = feeDao;
+        }
+        
+        @Override
+        public CompletableFuture<ImmutableList<Record>> onReadPageAsync(ReadQueryData queryData, ImmutableList<Record> page) {
+            numPages.incrementAndGet();
+            numRecords.addAndGet(page.size());
+            
+            // one multi-get per page 
+            ImmutableList<ImmutableMap<String, Object>> keys = ImmutableList.copyOf(page.stream()
+                                                                                        .map(record -> ImmutableMap.<String, Object>of(FeesTable.CUSTOMER_ID, "reference-customer", FeesTable.YEAR, record.getInt(FeesTable.YEAR)))
+                                                                                        .collect(Collectors.toList()));
+            return feeDao.readWithKeys(keys)
+                         .executeAsync()
+                         .thenApply(references -> { 
+                                                     List<Record> filtered = Lists.newArrayList();
+                                                     for (int i = 0; i < page.size(); i++) {
+                                                         if (references.get(i).isPresent()) {
+                                                             filtered.add(page.get(i));
+                                                         }
+                                                     }
+                                                     return ImmutableList.copyOf(filtered);
+                                                  });
+        }
+    }
+}
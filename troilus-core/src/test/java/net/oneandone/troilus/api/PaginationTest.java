@@ -5,6 +5,7 @@ package net.oneandone.troilus.api;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
@@ -18,6 +19,9 @@ import net.oneandone.troilus.DaoImpl;
 import net.oneandone.troilus.Field;
 import net.oneandone.troilus.ListRead;
 import net.oneandone.troilus.ListReadWithUnit;
+import net.oneandone.troilus.Page;
+import net.oneandone.troilus.PageCursor;
+import net.oneandone.troilus.PagedRead;
 import net.oneandone.troilus.Record;
 import net.oneandone.troilus.ResultList;
 
@@ -145,6 +149,44 @@ public class PaginationTest implements PaginationInvites {
 		assertNull(pagingState);
 	}
 	
+	@Test
+	public void testFetchInvitesByKeyset() {
+		Dao dao = new DaoImpl(cassandra.getSession(), TABLE_NAME);
+		
+		Page page = dao.readSequenceWithKey("group_id", "group_1")
+				.keysetPages(30)
+				.withPrefetch(2)
+				.execute();
+		
+		int numRecords = assertSortOrder(page.getRecords().iterator());
+		int numPages = 1;
+		while (page.hasNext()) {
+			page = page.next();
+			numRecords += assertSortOrder(page.getRecords().iterator());
+			numPages++;
+		}
+		
+		assertEquals("Size should be "+ROW_COUNT, ROW_COUNT, numRecords);
+		assertEquals(4, numPages);
+	}
+	
+	@Test
+	public void testFetchInvitesByKeysetCursor() {
+		Dao dao = new DaoImpl(cassandra.getSession(), TABLE_NAME);
+		PagedRead pagedRead = dao.readSequenceWithKey("group_id", "group_1").keysetPages(30);
+		
+		// the cursor is passed to the client, which requests the next page later
+		Page firstPage = pagedRead.execute();
+		String cursor = firstPage.getCursor().toString();
+		
+		Page secondPage = pagedRead.withCursor(PageCursor.valueOf(cursor)).execute();
+		assertEquals(30, secondPage.getRecords().size());
+		
+		Date lastInviteDateOfFirstPage = firstPage.getRecords().get(29).getValue(INVITE_DATE, Date.class);
+		Date firstInviteDateOfSecondPage = secondPage.getRecords().get(0).getValue(INVITE_DATE, Date.class);
+		assertTrue(firstInviteDateOfSecondPage.after(lastInviteDateOfFirstPage));
+	}
+	
 	
 	private PagingState fetchAndAssert(int pageNumber, int pageSize, int expectedSize, PagingState pagingState) {
 		Dao dao = new DaoImpl(cassandra.getSession(), TABLE_NAME);
@@ -0,0 +1,113 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Count;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+
+public class ParallelCountTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testParallelCount() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+
+        for (int i = 0; i < 100; i++) {
+            feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "customer" + (i % 30), FeesTable.YEAR, i)
+                  .value(FeesTable.AMOUNT, i)
+                  .execute();
+        }
+
+        
+        AtomicInteger numProgressNotifications = new AtomicInteger();
+        Count count = feeDao.readSequence()
+                            .count()
+                            .withParallelism(4)
+                            .withProgressListener((partialCount, numCompletedRanges, numRanges) -> numProgressNotifications.incrementAndGet())
+                            .execute();
+        
+        Assert.assertEquals(100, count.getCount());
+        Assert.assertFalse(count.isApproximate());
+        Assert.assertTrue(numProgressNotifications.get() >= 4);
+        Assert.assertEquals(feeDao.readSequence().count().execute().getCount(), count.getCount());
+        
+        
+        Count estimation = feeDao.readSequence()
+                                 .count()
+                                 .withApproximation()
+                                 .execute();
+        Assert.assertTrue(estimation.isApproximate());
+        Assert.assertTrue(estimation.getCount() >= 0);
+    }
+    
+    
+    
+    @Test
+    public void testUnsupportedParallelCount() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+
+        try {
+            feeDao.readSequenceWithKey(FeesTable.CUSTOMER_ID, "customer1")
+                  .count()
+                  .withParallelism(4)
+                  .execute();
+            Assert.fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) { }
+        
+        try {
+            feeDao.readSequence()
+                  .count()
+                  .withApproximation()
+                  .withLimit(10)
+                  .execute();
+            Assert.fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) { }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.Record;
+import net.oneandone.troilus.interceptor.ReadQueryData;
+import net.oneandone.troilus.interceptor.ReadQueryRequestInterceptor;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.google.common.collect.Lists;
+
+
+
+public class ReadCoalescingTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testCoalescedReads() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+        ReadCounter readCounter = new ReadCounter();
+        Dao coalescingFeeDao = feeDao.withReadCoalescing(50, 40)
+                                     .withInterceptor(readCounter);
+
+        // every second year exists
+        for (int year = 2000; year < 2020; year += 2) {
+            feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "coalesced-customer", FeesTable.YEAR, year)
+                  .value(FeesTable.AMOUNT, year * 10)
+                  .execute();
+        }
+        feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "other-customer", FeesTable.YEAR, 2000)
+              .value(FeesTable.AMOUNT, 1)
+              .execute();
+
+        // reads of the same partition, duplicated reads and reads of another partition are mixed
+        List<CompletableFuture<Optional<Record>>> futures = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            futures.add(coalescingFeeDao.readWithKey(FeesTable.CUSTOMER_ID, "coalesced-customer", FeesTable.YEAR, 2000 + (i % 20))
+                                        .executeAsync());
+        }
+        CompletableFuture<Optional<Record>> otherFuture = coalescingFeeDao.readWithKey(FeesTable.CUSTOMER_ID, "other-customer", FeesTable.YEAR, 2000)
+                                                                          .executeAsync();
+
+        for (int i = 0; i < 100; i++) {
+            Optional<Record> record = futures.get(i).get(30, TimeUnit.SECONDS);
+            int year = 2000 + (i % 20);
+            if ((year % 2) == 0) {
+                Assert.assertTrue(record.isPresent());
+                Assert.assertEquals(year, record.get().getInt(FeesTable.YEAR));
+                Assert.assertEquals(year * 10, record.get().getInt(FeesTable.AMOUNT));
+            } else {
+                Assert.assertFalse(record.isPresent());
+            }
+        }
+        Assert.assertEquals(1, otherFuture.get(30, TimeUnit.SECONDS).get().getInt(FeesTable.AMOUNT));
+        
+        // the 101 reads are dispatched by at least 3 batches with a grouped read per partition
+        Assert.assertTrue(readCounter.getNumReads() >= 4);
+        Assert.assertTrue(readCounter.getNumReads() <= 10);
+        readCounter.reset();
+
+
+        // column selection without key column
+        CompletableFuture<Optional<Record>> future1 = coalescingFeeDao.readWithKey(FeesTable.CUSTOMER_ID, "coalesced-customer", FeesTable.YEAR, 2004)
+                                                                      .column(FeesTable.AMOUNT)
+                                                                      .executeAsync();
+        CompletableFuture<Optional<Record>> future2 = coalescingFeeDao.readWithKey(FeesTable.CUSTOMER_ID, "coalesced-customer", FeesTable.YEAR, 2006)
+                                                                      .column(FeesTable.AMOUNT)
+                                                                      .executeAsync();
+        Assert.assertEquals(20040, future1.get(30, TimeUnit.SECONDS).get().getInt(FeesTable.AMOUNT));
+        Assert.assertEquals(20060, future2.get(30, TimeUnit.SECONDS).get().getInt(FeesTable.AMOUNT));
+        Assert.assertEquals(1, readCounter.getNumReads());
+        readCounter.reset();
+        
+        
+        // different consistency levels are not grouped
+        CompletableFuture<Optional<Record>> future3 = coalescingFeeDao.readWithKey(FeesTable.CUSTOMER_ID, "coalesced-customer", FeesTable.YEAR, 2004)
+                                                                      .withConsistency(ConsistencyLevel.ONE)
+                                                                      .executeAsync();
+        CompletableFuture<Optional<Record>> future4 = coalescingFeeDao.readWithKey(FeesTable.CUSTOMER_ID, "coalesced-customer", FeesTable.YEAR, 2006)
+                                                                      .withConsistency(ConsistencyLevel.ALL)
+                                                                      .executeAsync();
+        Assert.assertEquals(20040, future3.get(30, TimeUnit.SECONDS).get().getInt(FeesTable.AMOUNT));
+        Assert.assertEquals(20060, future4.get(30, TimeUnit.SECONDS).get().getInt(FeesTable.AMOUNT));
+        Assert.assertEquals(2, readCounter.getNumReads());
+    }
+    
+    
+    private static final class ReadCounter implements ReadQueryRequestInterceptor {
+        private final AtomicInteger numReads = new AtomicInteger();
+        
+        @Override
+        public CompletableFuture<ReadQueryData> onReadRequestAsync(ReadQueryData queryData) {
+            numReads.incrementAndGet();
+            return CompletableFuture.completedFuture(queryData);
+        }
+        
+        public int getNumReads() {
+            return numReads.get();
+        }
+        
+        public void reset() {
+            numReads.set(0);
+        }
+    }
+}
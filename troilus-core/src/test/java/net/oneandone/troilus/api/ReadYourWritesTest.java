@@ -0,0 +1,197 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.ReadYourWritesSession;
+import net.oneandone.troilus.Record;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.datastax.driver.core.ConsistencyLevel;
+
+
+
+public class ReadYourWritesTest {
+
+    private static CassandraDB cassandra;
+    
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withConsistency(ConsistencyLevel.LOCAL_ONE);
+        
+        ReadYourWritesSession session = feeDao.newReadYourWritesSession();
+        Dao sessionDao = feeDao.withReadYourWrites(session);
+        
+        
+        // write and read through the session
+        sessionDao.writeWithKey(FeesTable.CUSTOMER_ID, "ryw-1", FeesTable.YEAR, 2015)
+                  .value(FeesTable.AMOUNT, 100)
+                  .execute();
+        Assert.assertEquals(1, session.getNumTrackedRows());
+
+        Record record = sessionDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-1", FeesTable.YEAR, 2015)
+                                  .execute()
+                                  .get();
+        Assert.assertEquals(100, record.getInt(FeesTable.AMOUNT));
+        Assert.assertEquals("ryw-1", record.getString(FeesTable.CUSTOMER_ID));
+        Assert.assertNotNull(record.getWritetime(FeesTable.AMOUNT));
+
+        
+        // a newer write of another client wins over a deletion of the session
+        sessionDao.deleteWithKey(FeesTable.CUSTOMER_ID, "ryw-1", FeesTable.YEAR, 2015)
+                  .execute();
+        feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "ryw-1", FeesTable.YEAR, 2015)
+              .value(FeesTable.AMOUNT, 200)
+              .withWritetime(record.getWritetime(FeesTable.AMOUNT) + 1000000)
+              .execute();
+        Assert.assertEquals(200, sessionDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-1", FeesTable.YEAR, 2015)
+                                           .column(FeesTable.AMOUNT)
+                                           .execute()
+                                           .get()
+                                           .getInt(FeesTable.AMOUNT));
+
+        
+        // an older write of another client loses 
+        sessionDao.writeWithKey(FeesTable.CUSTOMER_ID, "ryw-2", FeesTable.YEAR, 2015)
+                  .value(FeesTable.AMOUNT, 300)
+                  .execute();
+        feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "ryw-2", FeesTable.YEAR, 2015)
+              .value(FeesTable.AMOUNT, 1)
+              .withWritetime(1000)
+              .execute();
+        Assert.assertEquals(300, sessionDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-2", FeesTable.YEAR, 2015)
+                                           .execute()
+                                           .get()
+                                           .getInt(FeesTable.AMOUNT));
+        
+        
+        // delete through the session
+        sessionDao.deleteWithKey(FeesTable.CUSTOMER_ID, "ryw-2", FeesTable.YEAR, 2015)
+                  .execute();
+        Assert.assertFalse(sessionDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-2", FeesTable.YEAR, 2015)
+                                     .execute()
+                                     .isPresent());
+        Assert.assertFalse(feeDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-2", FeesTable.YEAR, 2015)
+                                 .execute()
+                                 .isPresent());
+        
+        // rewrite after deletion
+        sessionDao.writeWithKey(FeesTable.CUSTOMER_ID, "ryw-2", FeesTable.YEAR, 2015)
+                  .value(FeesTable.AMOUNT, 400)
+                  .execute();
+        Assert.assertEquals(400, sessionDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-2", FeesTable.YEAR, 2015)
+                                           .execute()
+                                           .get()
+                                           .getInt(FeesTable.AMOUNT));
+        
+        
+        Assert.assertEquals(2, session.getNumTrackedRows());
+        session.clear();
+        Assert.assertEquals(0, session.getNumTrackedRows());
+    }
+    
+    
+    @Test
+    public void testReadYourLightweightTransactions() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withConsistency(ConsistencyLevel.LOCAL_ONE);
+        
+        ReadYourWritesSession session = feeDao.newReadYourWritesSession();
+        Dao sessionDao = feeDao.withReadYourWrites(session);
+        
+        
+        // the writetime of a lightweight transaction is assigned by the server 
+        sessionDao.writeWithKey(FeesTable.CUSTOMER_ID, "ryw-lwt-1", FeesTable.YEAR, 2015)
+                  .value(FeesTable.AMOUNT, 500)
+                  .ifNotExists()
+                  .execute();
+        Record record = sessionDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-lwt-1", FeesTable.YEAR, 2015)
+                                  .execute()
+                                  .get();
+        Assert.assertEquals(500, record.getInt(FeesTable.AMOUNT));
+        Long lwtWritetime = feeDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-lwt-1", FeesTable.YEAR, 2015)
+                                  .columnWithMetadata(FeesTable.AMOUNT)
+                                  .execute()
+                                  .get()
+                                  .getWritetime(FeesTable.AMOUNT);
+        Assert.assertEquals(lwtWritetime, record.getWritetime(FeesTable.AMOUNT));
+
+        // a write of another client, which is newer than the server writetime, wins 
+        feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "ryw-lwt-1", FeesTable.YEAR, 2015)
+              .value(FeesTable.AMOUNT, 600)
+              .withWritetime(lwtWritetime + 1)
+              .execute();
+        Assert.assertEquals(600, sessionDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-lwt-1", FeesTable.YEAR, 2015)
+                                           .execute()
+                                           .get()
+                                           .getInt(FeesTable.AMOUNT));
+        
+        // a conditional delete forgets the row 
+        sessionDao.deleteWithKey(FeesTable.CUSTOMER_ID, "ryw-lwt-1", FeesTable.YEAR, 2015)
+                  .ifExists()
+                  .execute();
+        Assert.assertEquals(0, session.getNumTrackedRows());
+        Assert.assertFalse(sessionDao.readWithKey(FeesTable.CUSTOMER_ID, "ryw-lwt-1", FeesTable.YEAR, 2015)
+                                     .execute()
+                                     .isPresent());
+    }
+    
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testForeignSession() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+        
+        feeDao.withReadYourWrites(new ReadYourWritesSession() {
+            
+            @Override
+            public int getNumTrackedRows() {
+                return 0;
+            }
+            
+            @Override
+            public void clear() {
+            }
+        });
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+
+import java.io.IOException;
+import java.util.Optional;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.Record;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+
+public class SchemaChangeTest {
+    
+    private static CassandraDB cassandra;
+    
+    
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+        
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+    
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(IdsTable.DDL);
+    }
+
+     
+    
+    @Test
+    public void testAddColumn() throws Exception {
+        Dao idsDao = new DaoImpl(cassandra.getSession(), IdsTable.TABLE);
+        
+        idsDao.writeWithKey(IdsTable.ID, "GLOBAL")
+              .value(IdsTable.IDS, ImmutableMap.of("ID_433433", 23))
+              .execute();
+        
+        
+        // alter the table after the schema snapshot has been built 
+        cassandra.executeCql("ALTER TABLE " + IdsTable.TABLE + " ADD note text");
+        
+        // the schema change event is processed asynchronously 
+        for (int i = 0; i < 100; i++) {
+            try {
+                idsDao.writeWithKey(IdsTable.ID, "GLOBAL")
+                      .value("note", "added")
+                      .execute();
+                break;
+            } catch (RuntimeException rt) {
+                Thread.sleep(100);
+            }
+        }
+        
+        Optional<Record> optionalRecord = idsDao.readWithKey(IdsTable.ID, "GLOBAL")
+                                                .execute();
+        Assert.assertTrue(optionalRecord.isPresent());
+        Assert.assertEquals("added", optionalRecord.get().getString("note"));
+        Assert.assertEquals(23, (int) optionalRecord.get().getMap(IdsTable.IDS, String.class, Integer.class).get("ID_433433"));
+    }        
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.Record;
+import net.oneandone.troilus.ResultList;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.PagingState;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+
+
+public class SingleFlightReadTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testSingleFlightReads() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withSingleFlightReads();
+
+        for (int year = 2000; year < 2010; year++) {
+            feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "hot-customer", FeesTable.YEAR, year)
+                  .value(FeesTable.AMOUNT, year)
+                  .execute();
+        }
+
+        // identical reads in flight get the same result, each caller can iterate it on its own
+        List<CompletableFuture<Optional<Record>>> recordFutures = Lists.newArrayList();
+        List<CompletableFuture<ResultList<Record>>> listFutures = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            recordFutures.add(feeDao.readWithKey(FeesTable.CUSTOMER_ID, "hot-customer", FeesTable.YEAR, 2005)
+                                    .executeAsync());
+            listFutures.add(feeDao.readSequenceWithKey(FeesTable.CUSTOMER_ID, "hot-customer")
+                                  .executeAsync());
+        }
+
+        for (CompletableFuture<Optional<Record>> future : recordFutures) {
+            Assert.assertEquals(2005, future.get(30, TimeUnit.SECONDS).get().getInt(FeesTable.AMOUNT));
+        }
+
+        // merged reads share the execution info of the single read request
+        Set<ExecutionInfo> executionInfos = Sets.newIdentityHashSet();
+        for (CompletableFuture<ResultList<Record>> future : listFutures) {
+            ResultList<Record> list = future.get(30, TimeUnit.SECONDS);
+            executionInfos.add(list.getExecutionInfo());
+            
+            int numRecords = 0;
+            for (Record record : list) {
+                Assert.assertEquals(2000 + numRecords, record.getInt(FeesTable.AMOUNT));
+                numRecords++;
+            }
+            Assert.assertEquals(10, numRecords);
+        }
+        Assert.assertTrue(executionInfos.size() < listFutures.size());
+
+
+        // nothing is kept after completion
+        feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "hot-customer", FeesTable.YEAR, 2005)
+              .value(FeesTable.AMOUNT, 9999)
+              .execute();
+        Assert.assertEquals(9999, feeDao.readWithKey(FeesTable.CUSTOMER_ID, "hot-customer", FeesTable.YEAR, 2005)
+                                        .execute()
+                                        .get()
+                                        .getInt(FeesTable.AMOUNT));
+    }
+
+
+    @Test
+    public void testSingleFlightReadsWithPagingState() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withSingleFlightReads();
+
+        for (int year = 2000; year < 2010; year++) {
+            feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "paged-customer", FeesTable.YEAR, year)
+                  .value(FeesTable.AMOUNT, year)
+                  .execute();
+        }
+        
+        PagingState pagingState = feeDao.readSequenceWithKey(FeesTable.CUSTOMER_ID, "paged-customer")
+                                        .all()
+                                        .withFetchSize(3)
+                                        .execute()
+                                        .getExecutionInfo()
+                                        .getPagingState();
+
+        // reads which differ in the paging state only are not shared 
+        List<CompletableFuture<ResultList<Record>>> firstPageFutures = Lists.newArrayList();
+        List<CompletableFuture<ResultList<Record>>> secondPageFutures = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            firstPageFutures.add(feeDao.readSequenceWithKey(FeesTable.CUSTOMER_ID, "paged-customer")
+                                       .all()
+                                       .withFetchSize(3)
+                                       .executeAsync());
+            secondPageFutures.add(feeDao.readSequenceWithKey(FeesTable.CUSTOMER_ID, "paged-customer")
+                                        .all()
+                                        .withFetchSize(3)
+                                        .withPagingState(pagingState)
+                                        .executeAsync());
+        }
+
+        for (CompletableFuture<ResultList<Record>> future : firstPageFutures) {
+            Assert.assertEquals(2000, future.get(30, TimeUnit.SECONDS).iterator().next().getInt(FeesTable.AMOUNT));
+        }
+        for (CompletableFuture<ResultList<Record>> future : secondPageFutures) {
+            Assert.assertEquals(2003, future.get(30, TimeUnit.SECONDS).iterator().next().getInt(FeesTable.AMOUNT));
+        }
+    }
+}
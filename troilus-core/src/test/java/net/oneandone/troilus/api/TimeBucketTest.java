@@ -0,0 +1,193 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.Field;
+import net.oneandone.troilus.Record;
+import net.oneandone.troilus.TimeBucket;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+
+
+public class TimeBucketTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(EventsTable.DDL);
+    }
+
+
+
+    @Test
+    public void testBuckets() throws Exception {
+        long day = TimeUnit.DAYS.toMillis(1);
+        
+        Assert.assertEquals(0, TimeBucket.DAY.toBucket(0));
+        Assert.assertEquals(0, TimeBucket.DAY.toBucket(day - 1));
+        Assert.assertEquals(1, TimeBucket.DAY.toBucket(day));
+        Assert.assertEquals(-1, TimeBucket.DAY.toBucket(-1));
+        Assert.assertEquals(24, TimeBucket.HOUR.toBucket(day));
+        
+        Assert.assertEquals(Lists.newArrayList(0, 1, 2), TimeBucket.DAY.toBuckets(0, (2 * day) + 1));
+        Assert.assertEquals(Lists.newArrayList(0, 1), TimeBucket.DAY.toBuckets(0, 2 * day));
+    }
+    
+    
+    @Test
+    public void testWriteAndReadTimeRange() throws Exception {
+        Dao eventsDao = new DaoImpl(cassandra.getSession(), EventsTable.TABLE)
+                                    .withTimeBuckets(EventsTable.BUCKET, EventsTable.TIME, TimeBucket.DAY);
+        
+        long start = 1446336000000L;  // 2015-11-01 00:00 UTC
+        long step = TimeUnit.HOURS.toMillis(7);
+        
+        // 20 events spread over 6 day buckets
+        for (int i = 0; i < 20; i++) {
+            eventsDao.writeWithKey(EventsTable.SOURCE, "sensor1", EventsTable.TIME, new Date(start + (i * step)))
+                     .value(EventsTable.PAYLOAD, "event" + i)
+                     .execute();
+        }
+        
+        eventsDao.writeWithKey(EventsTable.SOURCE, "sensor2", EventsTable.TIME, new Date(start))
+                 .value(EventsTable.PAYLOAD, "other")
+                 .execute();
+        
+        
+        // the bucket is added to the key of single reads
+        Optional<Record> record = eventsDao.readWithKey(EventsTable.SOURCE, "sensor1", EventsTable.TIME, new Date(start + (5 * step)))
+                                           .execute();
+        Assert.assertEquals("event5", record.get().getString(EventsTable.PAYLOAD));
+        Assert.assertEquals(TimeBucket.DAY.toBucket(start + (5 * step)), record.get().getInt(EventsTable.BUCKET));
+        
+        
+        // read the complete range 
+        List<String> payloads = Lists.newArrayList();
+        for (Record rec : eventsDao.readTimeRange(ImmutableMap.of(EventsTable.SOURCE, "sensor1"), start, start + (20 * step))
+                                   .withParallelism(2)
+                                   .execute()) {
+            payloads.add(rec.getString(EventsTable.PAYLOAD));
+        }
+        Assert.assertEquals(20, payloads.size());
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("event" + i, payloads.get(i));
+        }
+        
+        
+        // read a sub range: from inclusive, to exclusive
+        payloads = Lists.newArrayList();
+        for (Record rec : eventsDao.readTimeRange(ImmutableMap.of(EventsTable.SOURCE, "sensor1"), start + (3 * step), start + (9 * step))
+                                   .withFetchSize(2)
+                                   .executeAsync()
+                                   .get()) {
+            payloads.add(rec.getString(EventsTable.PAYLOAD));
+        }
+        Assert.assertEquals(Lists.newArrayList("event3", "event4", "event5", "event6", "event7", "event8"), payloads);
+        
+        
+        // empty range 
+        Assert.assertFalse(eventsDao.readTimeRange(ImmutableMap.of(EventsTable.SOURCE, "sensor3"), start, start + (20 * step))
+                                    .execute()
+                                    .iterator()
+                                    .hasNext());
+        
+        
+        // the bucket is added to the key of deletions
+        eventsDao.deleteWithKey(EventsTable.SOURCE, "sensor1", EventsTable.TIME, new Date(start + (5 * step)))
+                 .execute();
+        Assert.assertFalse(eventsDao.readWithKey(EventsTable.SOURCE, "sensor1", EventsTable.TIME, new Date(start + (5 * step)))
+                                    .execute()
+                                    .isPresent());
+        
+        
+        // entity read
+        List<Event> events = Lists.newArrayList(eventsDao.readTimeRange(ImmutableMap.of(EventsTable.SOURCE, "sensor1"), start, start + (7 * step))
+                                                         .asEntity(Event.class)
+                                                         .execute());
+        Assert.assertEquals(6, events.size());
+        Assert.assertEquals("event0", events.get(0).getPayload());
+        Assert.assertEquals("event6", events.get(5).getPayload());
+    }
+    
+    
+    @Test
+    public void testMissingTimeBuckets() throws Exception {
+        Dao eventsDao = new DaoImpl(cassandra.getSession(), EventsTable.TABLE);
+        
+        try {
+            eventsDao.readTimeRange(ImmutableMap.of(EventsTable.SOURCE, "sensor1"), 0, 1000).execute();
+            Assert.fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) { }
+    }
+    
+    
+    
+    public static class Event {
+        
+        @Field(name = EventsTable.SOURCE)
+        private String source;
+        
+        @Field(name = EventsTable.TIME)
+        private Date time;
+        
+        @Field(name = EventsTable.PAYLOAD)
+        private String payload;
+
+        
+        public String getSource() {
+            return source;
+        }
+        
+        public Date getTime() {
+            return time;
+        }
+        
+        public String getPayload() {
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.IOException;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.TraceSampler;
+import net.oneandone.troilus.TraceStatistics;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.google.common.collect.ImmutableList;
+
+
+
+public class TraceSamplingTest {
+
+    private static CassandraDB cassandra;
+    
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testSampledTracing() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withConsistency(ConsistencyLevel.LOCAL_ONE);
+        
+        TraceSampler sampler = feeDao.newTraceSampler(2, -1);
+        Dao sampledDao = feeDao.withTraceSampling(sampler);
+        
+        for (int i = 0; i < 10; i++) {
+            sampledDao.writeWithKey(FeesTable.CUSTOMER_ID, "trace-" + i, FeesTable.YEAR, 2015)
+                      .value(FeesTable.AMOUNT, i)
+                      .execute();
+            
+            sampledDao.readWithKey(FeesTable.CUSTOMER_ID, "trace-" + i, FeesTable.YEAR, 2015)
+                      .execute();
+        }
+        
+        // queries of a Dao with deactivated tracking are not sampled
+        for (int i = 0; i < 10; i++) {
+            sampledDao.withoutTracking()
+                      .readWithKey(FeesTable.CUSTOMER_ID, "trace-" + i, FeesTable.YEAR, 2015)
+                      .execute();
+        }
+        
+        
+        // the traces are fetched in the background
+        for (int i = 0; i < 50; i++) {
+            if ((sampler.getNumSampled() + sampler.getNumDropped()) >= 10) {
+                break;
+            }
+            Thread.sleep(200);
+        }
+        
+        Assert.assertEquals(10, sampler.getNumSampled() + sampler.getNumDropped());
+        Assert.assertTrue(sampler.getNumSampled() > 0);
+        
+        long numTraces = 0;
+        for (TraceStatistics statistics : sampler.getStatistics()) {
+            Assert.assertTrue(statistics.getQuery().contains(FeesTable.TABLE));
+            Assert.assertTrue(statistics.getAvgCoordinatorMicros() > 0);
+            Assert.assertTrue(statistics.getMaxCoordinatorMicros() >= statistics.getAvgCoordinatorMicros());
+            numTraces += statistics.getNumTraces();
+        }
+        Assert.assertEquals(sampler.getNumSampled(), numTraces);
+        
+        
+        sampler.reset();
+        Assert.assertTrue(sampler.getStatistics().isEmpty());
+        Assert.assertEquals(0, sampler.getNumSampled());
+    }
+    
+    
+    @Test
+    public void testLatencyThreshold() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE).withConsistency(ConsistencyLevel.LOCAL_ONE);
+        
+        // each execution exceeds the threshold, so each following execution of the shape is traced  
+        TraceSampler sampler = feeDao.newTraceSampler(0, 0);
+        Dao sampledDao = feeDao.withTraceSampling(sampler);
+        
+        for (int i = 0; i < 4; i++) {
+            sampledDao.readWithKey(FeesTable.CUSTOMER_ID, "threshold", FeesTable.YEAR, 2015)
+                      .execute();
+            Thread.sleep(100);  // the latency is recorded after the result is delivered
+        }
+        
+        for (int i = 0; i < 50; i++) {
+            if ((sampler.getNumSampled() + sampler.getNumDropped()) >= 2) {
+                break;
+            }
+            Thread.sleep(200);
+        }
+        
+        Assert.assertEquals(2, sampler.getNumSampled() + sampler.getNumDropped());
+    }
+    
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testForeignSampler() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+        
+        feeDao.withTraceSampling(new TraceSampler() {
+            
+            @Override
+            public ImmutableList<TraceStatistics> getStatistics() {
+                return ImmutableList.of();
+            }
+            
+            @Override
+            public long getNumSampled() {
+                return 0;
+            }
+            
+            @Override
+            public long getNumDropped() {
+                return 0;
+            }
+            
+            @Override
+            public void reset() {
+            }
+        });
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.api;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.WriteBehindJournal;
+import net.oneandone.troilus.WriteBehindMetrics;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+
+
+
+public class WriteBehindTest {
+
+    private static CassandraDB cassandra;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+        File directory = folder.newFolder("journal");
+        
+        // small segments to force segment rolling 
+        try (WriteBehindJournal journal = feeDao.newWriteBehindJournal(directory, 4 * 1024, 4)) {
+            Dao writeBehindDao = feeDao.withWriteBehind(journal);
+
+            for (int i = 0; i < 500; i++) {
+                writeBehindDao.writeWithKey(FeesTable.CUSTOMER_ID, "wb-" + (i % 50), FeesTable.YEAR, 2015)
+                              .value(FeesTable.AMOUNT, i)
+                              .execute();
+            }
+            writeBehindDao.deleteWithKey(FeesTable.CUSTOMER_ID, "wb-7", FeesTable.YEAR, 2015)
+                          .execute();
+            
+            journal.drainAsync().get();
+            
+            // the last mutation of a row wins 
+            for (int i = 0; i < 50; i++) {
+                if (i == 7) {
+                    Assert.assertFalse(feeDao.readWithKey(FeesTable.CUSTOMER_ID, "wb-" + i, FeesTable.YEAR, 2015).execute().isPresent());
+                } else {
+                    Assert.assertEquals(450 + i, feeDao.readWithKey(FeesTable.CUSTOMER_ID, "wb-" + i, FeesTable.YEAR, 2015)
+                                                       .execute()
+                                                       .get()
+                                                       .getInt(FeesTable.AMOUNT));
+                }
+            }
+            
+            WriteBehindMetrics metrics = journal.getMetrics();
+            Assert.assertEquals(501, metrics.getNumAppended());
+            Assert.assertEquals(501, metrics.getNumDrained());
+            Assert.assertEquals(0, metrics.getNumPending());
+            Assert.assertEquals(0, metrics.getPendingBytes());
+            Assert.assertEquals(0, metrics.getLagMillis());
+            
+            
+            // lightweight transactions are rejected
+            try {
+                writeBehindDao.writeWithKey(FeesTable.CUSTOMER_ID, "wb-lwt", FeesTable.YEAR, 2015)
+                              .value(FeesTable.AMOUNT, 1)
+                              .ifNotExists()
+                              .executeAsync()
+                              .get();
+                Assert.fail("IllegalStateException expected");
+            } catch (ExecutionException expected) { 
+                Assert.assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+            
+            
+            // non-idempotent mutations are rejected
+            try {
+                writeBehindDao.writeWithKey(FeesTable.CUSTOMER_ID, "wb-nonidempotent", FeesTable.YEAR, 2015)
+                              .value(FeesTable.AMOUNT, 1)
+                              .withIdempotence(false)
+                              .executeAsync()
+                              .get();
+                Assert.fail("IllegalStateException expected");
+            } catch (ExecutionException expected) { 
+                Assert.assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+            Assert.assertEquals(501, journal.getMetrics().getNumAppended());
+            
+            
+            // mutations which are not prepared can not be journaled
+            try {
+                writeBehindDao.deleteWhere(QueryBuilder.eq(FeesTable.CUSTOMER_ID, "wb-3"))
+                              .executeAsync()
+                              .get();
+                Assert.fail("IllegalArgumentException expected");
+            } catch (ExecutionException expected) { 
+                Assert.assertTrue(expected.getCause() instanceof IllegalArgumentException);
+            }
+            Assert.assertEquals(501, journal.getMetrics().getNumAppended());
+        }
+    }
+    
+    
+    @Test
+    public void testReopen() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+        File directory = folder.newFolder("journal");
+        
+        try (WriteBehindJournal journal = feeDao.newWriteBehindJournal(directory, 64 * 1024, 2)) {
+            Dao writeBehindDao = feeDao.withWriteBehind(journal);
+            for (int i = 0; i < 100; i++) {
+                writeBehindDao.writeWithKey(FeesTable.CUSTOMER_ID, "reopen-" + i, FeesTable.YEAR, 2015)
+                              .value(FeesTable.AMOUNT, i)
+                              .execute();
+            }
+        }
+        
+        // mutations which have not been drained before closing are replayed 
+        try (WriteBehindJournal journal = feeDao.newWriteBehindJournal(directory, 64 * 1024, 2)) {
+            journal.drainAsync().get();
+            Assert.assertEquals(0, journal.getMetrics().getNumPending());
+            
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals(i, feeDao.readWithKey(FeesTable.CUSTOMER_ID, "reopen-" + i, FeesTable.YEAR, 2015)
+                                             .execute()
+                                             .get()
+                                             .getInt(FeesTable.AMOUNT));
+            }
+        }
+    }
+}
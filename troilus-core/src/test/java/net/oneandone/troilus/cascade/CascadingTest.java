@@ -26,9 +26,11 @@ import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 import net.oneandone.troilus.Batchable;
+import net.oneandone.troilus.CascadeMode;
 import net.oneandone.troilus.CassandraDB;
 import net.oneandone.troilus.Dao;
 import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.IfConditionException;
 import net.oneandone.troilus.Record;
 import net.oneandone.troilus.interceptor.CascadeOnDeleteInterceptor;
 import net.oneandone.troilus.interceptor.CascadeOnWriteInterceptor;
@@ -224,6 +226,70 @@ public class CascadingTest {
     
     
 
+    @Test
+    public void testCasscadingWithoutLoggedBatch() throws Exception {   
+        
+        DaoManager daoManager = new DaoManager(cassandra.getSession());
+        Dao keyByEmailDao = daoManager.getKeyByEmailDao();
+        TupleType idxType = TupleType.of(protocolVersion, codecRegistry,DataType.text(), DataType.bigint());
+        
+        for (CascadeMode cascadeMode : new CascadeMode[] { CascadeMode.UNLOGGED, CascadeMode.PARALLEL }) {
+            Dao keyByAccountDao = daoManager.getKeyByAccountDao().withCascadeMode(cascadeMode);
+
+            String id = "act" + cascadeMode;
+            byte[] key = new byte[] { 34, 56, 87, 88 };
+            String email = cascadeMode + "@example.org";
+            long time = System.currentTimeMillis(); 
+            
+            
+            // insert 
+            keyByAccountDao.writeWithKey(KeyByAccountColumns.ACCOUNT_ID, id)
+                           .value(KeyByAccountColumns.KEY, key)
+                           .value(KeyByAccountColumns.EMAIL_IDX, ImmutableSet.of(idxType.newValue(email, time)))
+                           .withConsistency(ConsistencyLevel.QUORUM)
+                           .execute();
+            
+            Record record = keyByEmailDao.readWithKey(KeyByEmailColumns.EMAIL, email, KeyByEmailColumns.CREATED, time)
+                                         .withConsistency(ConsistencyLevel.QUORUM)
+                                         .execute()
+                                         .get();
+            Assert.assertEquals(id, record.getValue(KeyByEmailColumns.ACCOUNT_ID));
+            
+            
+            // a not applied conditional insert does not perform the cascading statements
+            String otherEmail = "other" + email;
+            try {
+                keyByAccountDao.writeWithKey(KeyByAccountColumns.ACCOUNT_ID, id)
+                               .value(KeyByAccountColumns.KEY, key)
+                               .value(KeyByAccountColumns.EMAIL_IDX, ImmutableSet.of(idxType.newValue(otherEmail, time)))
+                               .ifNotExists()
+                               .withConsistency(ConsistencyLevel.QUORUM)
+                               .execute();
+                Assert.fail("IfConditionException expected");
+            } catch (IfConditionException expected) { }
+            
+            Assert.assertEquals(Optional.empty(), keyByEmailDao.readWithKey(KeyByEmailColumns.EMAIL, otherEmail, KeyByEmailColumns.CREATED, time)
+                                                               .withConsistency(ConsistencyLevel.QUORUM)
+                                                               .execute());
+            
+            
+            // delete
+            keyByAccountDao.deleteWithKey(KeyByAccountColumns.ACCOUNT_ID, id)
+                           .withConsistency(ConsistencyLevel.QUORUM)
+                           .execute();
+    
+            Assert.assertEquals(Optional.empty(), keyByEmailDao.readWithKey(KeyByEmailColumns.EMAIL, email, KeyByEmailColumns.CREATED, time)
+                                                               .withConsistency(ConsistencyLevel.QUORUM)
+                                                               .execute());
+            Assert.assertEquals(Optional.empty(), keyByAccountDao.readWithKey(KeyByAccountColumns.ACCOUNT_ID, id)
+                                                                 .withConsistency(ConsistencyLevel.QUORUM)
+                                                                 .execute());
+        }
+    }
+    
+    
+    
+
     @Test
     public void testCasscadingNoIndex() throws Exception {   
         
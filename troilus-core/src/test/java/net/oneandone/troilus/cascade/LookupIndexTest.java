@@ -0,0 +1,202 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.cascade;
+
+
+
+import java.io.IOException;
+import java.util.Optional;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.IfConditionException;
+import net.oneandone.troilus.LookupIndex;
+import net.oneandone.troilus.Record;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+
+
+public class LookupIndexTest {
+
+    private static CassandraDB cassandra;
+    
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+        
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(AccountsColumns.DDL);
+        cassandra.tryExecuteCqlFile(AccountByEmailColumns.DDL);
+    }
+    
+    
+    private static final ImmutableMap<String, String> MAPPING = ImmutableMap.of(AccountsColumns.ACCOUNT_ID.getName(), AccountByEmailColumns.ACCOUNT_ID.getName(),
+                                                                                AccountsColumns.EMAIL.getName(), AccountByEmailColumns.EMAIL.getName(),
+                                                                                AccountsColumns.KEY.getName(), AccountByEmailColumns.KEY.getName());
+    
+
+    @Test
+    public void testLookupIndex() throws Exception {   
+        Dao accountsDao = new DaoImpl(cassandra.getSession(), AccountsColumns.TABLE);
+        Dao accountByEmailDao = new DaoImpl(cassandra.getSession(), AccountByEmailColumns.TABLE);
+        
+        try (LookupIndex emailIndex = accountsDao.newLookupIndex(AccountByEmailColumns.TABLE, MAPPING, 60 * 1000, 1000, 0)) {
+            Dao indexedAccountsDao = accountsDao.withLookupIndex(emailIndex);
+            
+            byte[] key = new byte[] { 34, 56, 87, 88 };
+            byte[] key2 = new byte[] { 4, 5, 6 };
+            
+            
+            // insert  
+            indexedAccountsDao.writeWithKey(AccountsColumns.ACCOUNT_ID, "act1")
+                              .value(AccountsColumns.EMAIL, "me@example.org")
+                              .value(AccountsColumns.KEY, key)
+                              .execute();
+            
+            // lookup rows are written by the flush only (flush period is 1 min)
+            Assert.assertFalse(accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "me@example.org").execute().isPresent());
+
+            emailIndex.flushAsync().get();
+            Record record = accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "me@example.org").execute().get();
+            Assert.assertEquals("act1", record.getValue(AccountByEmailColumns.ACCOUNT_ID));
+            Assert.assertArrayEquals(key, record.getValue(AccountByEmailColumns.KEY));
+            
+            
+            // changes of the same lookup key are coalesced
+            indexedAccountsDao.writeWithKey(AccountsColumns.ACCOUNT_ID, "act1")
+                              .value(AccountsColumns.EMAIL, "me@example.org")
+                              .value(AccountsColumns.KEY, key2)
+                              .execute();
+            indexedAccountsDao.writeWithKey(AccountsColumns.ACCOUNT_ID, "act1")
+                              .value(AccountsColumns.EMAIL, "me@example.org")
+                              .execute();
+            emailIndex.flushAsync().get();
+            record = accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "me@example.org").execute().get();
+            Assert.assertArrayEquals(key2, record.getValue(AccountByEmailColumns.KEY));
+            
+            
+            // change the indexed value. The stale lookup row will be removed by the reconciliation
+            indexedAccountsDao.writeWithKey(AccountsColumns.ACCOUNT_ID, "act1")
+                              .value(AccountsColumns.EMAIL, "other@example.org")
+                              .execute();
+            emailIndex.flushAsync().get();
+            Assert.assertEquals("act1", accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "other@example.org").execute().get().getValue(AccountByEmailColumns.ACCOUNT_ID));
+            Assert.assertTrue(accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "me@example.org").execute().isPresent());
+            
+            emailIndex.reconcileAsync().get();
+            Assert.assertFalse(accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "me@example.org").execute().isPresent());
+            Assert.assertTrue(accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "other@example.org").execute().isPresent());
+            
+            
+            // source rows written without index will be added by the reconciliation 
+            accountsDao.writeWithKey(AccountsColumns.ACCOUNT_ID, "act2")
+                       .value(AccountsColumns.EMAIL, "act2@example.org")
+                       .value(AccountsColumns.KEY, key)
+                       .execute();
+            emailIndex.reconcileAsync().get();
+            Assert.assertEquals("act2", accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "act2@example.org").execute().get().getValue(AccountByEmailColumns.ACCOUNT_ID));
+            
+            
+            // a not applied conditional write is not indexed
+            try {
+                indexedAccountsDao.writeWithKey(AccountsColumns.ACCOUNT_ID, "act1")
+                                  .value(AccountsColumns.EMAIL, "notapplied@example.org")
+                                  .value(AccountsColumns.KEY, key)
+                                  .ifNotExists()
+                                  .execute();
+                Assert.fail("IfConditionException expected");
+            } catch (IfConditionException expected) { }
+            
+            emailIndex.flushAsync().get();
+            Assert.assertFalse(accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "notapplied@example.org").execute().isPresent());
+            
+            
+            // delete
+            indexedAccountsDao.deleteWithKey(AccountsColumns.ACCOUNT_ID, "act1")
+                              .execute();
+            emailIndex.reconcileAsync().get();
+            Assert.assertFalse(accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "other@example.org").execute().isPresent());
+            
+            
+            // queued changes are written on close
+            indexedAccountsDao.writeWithKey(AccountsColumns.ACCOUNT_ID, "act3")
+                              .value(AccountsColumns.EMAIL, "act3@example.org")
+                              .value(AccountsColumns.KEY, key)
+                              .execute();
+        }
+        
+        Optional<Record> record = accountByEmailDao.readWithKey(AccountByEmailColumns.EMAIL, "act3@example.org").execute();
+        Assert.assertEquals("act3", record.get().getValue(AccountByEmailColumns.ACCOUNT_ID));
+    }
+    
+    
+    @Test
+    public void testUnsupportedWritePaths() throws Exception {   
+        Dao accountsDao = new DaoImpl(cassandra.getSession(), AccountsColumns.TABLE);
+        
+        try (LookupIndex emailIndex = accountsDao.newLookupIndex(AccountByEmailColumns.TABLE, MAPPING, 60 * 1000, 1000, 0)) {
+            Dao indexedAccountsDao = accountsDao.withLookupIndex(emailIndex);
+            
+            // batches do not execute the response interceptors of the batched writes
+            try {
+                indexedAccountsDao.writeWithKey(AccountsColumns.ACCOUNT_ID, "act4")
+                                  .value(AccountsColumns.EMAIL, "act4@example.org")
+                                  .combinedWith(indexedAccountsDao.writeWithKey(AccountsColumns.ACCOUNT_ID, "act5")
+                                                                  .value(AccountsColumns.EMAIL, "act5@example.org"))
+                                  .execute();
+                Assert.fail("IllegalStateException expected");
+            } catch (IllegalStateException expected) { }
+            Assert.assertFalse(accountsDao.readWithKey(AccountsColumns.ACCOUNT_ID, "act4").execute().isPresent());
+
+            try {
+                indexedAccountsDao.writeRx();
+                Assert.fail("IllegalStateException expected");
+            } catch (IllegalStateException expected) { }
+        }
+    }
+    
+    
+    @Test
+    public void testInvalidMapping() throws Exception {   
+        Dao accountsDao = new DaoImpl(cassandra.getSession(), AccountsColumns.TABLE);
+        Dao accountByEmailDao = new DaoImpl(cassandra.getSession(), AccountByEmailColumns.TABLE);
+        
+        try {
+            accountsDao.newLookupIndex(AccountByEmailColumns.TABLE, ImmutableMap.of(AccountsColumns.EMAIL.getName(), AccountByEmailColumns.EMAIL.getName()), 1000, 1000, 0);
+            Assert.fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) { }
+        
+        try (LookupIndex emailIndex = accountsDao.newLookupIndex(AccountByEmailColumns.TABLE, MAPPING, 1000, 1000, 0)) {
+            accountByEmailDao.withLookupIndex(emailIndex);
+            Assert.fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) { }
+    }
+}
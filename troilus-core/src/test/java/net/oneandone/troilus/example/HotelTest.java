@@ -393,7 +393,63 @@ public class HotelTest {
         optionalRecord.ifPresent(rec -> System.out.println(rec.getValue(CLASSIFICATION)));
 
     }
-                
+    
+    
+    @Test
+    public void testUnsetNulls() throws Exception {
+        Dao hotelsDao = new DaoImpl(cassandra.getSession(), HotelsTable.TABLE);
+        Dao unsetNullsHotelsDao = hotelsDao.withUnsetNulls();
+        
+        hotelsDao.writeEntity(new Hotel("BUP7766", 
+                                        "Gellert",
+                                        ImmutableSet.of("1", "2"),
+                                        Optional.of(ClassifierEnum.FOUR), 
+                                        Optional.of("Art nouveau spa hotel"),
+                                        new Address("Szent Gellert ter 2", "Budapest", "1114"),
+                                        Optional.of("+36 1 889 5500")))
+                 .execute();
+        
+        
+        // empty properties are not written 
+        unsetNullsHotelsDao.writeEntity(new Hotel("BUP7766", 
+                                                  "Hotel Gellert",
+                                                  ImmutableSet.of("1", "2", "3"),
+                                                  Optional.of(ClassifierEnum.FOUR), 
+                                                  Optional.empty(),
+                                                  new Address("Szent Gellert ter 2", "Budapest", "1114"),
+                                                  Optional.empty()))
+                           .execute();
+        
+        Record record = hotelsDao.readWithKey(HotelsTable.ID, "BUP7766").execute().get();
+        Assert.assertEquals("Hotel Gellert", record.getString(HotelsTable.NAME));
+        Assert.assertEquals("Art nouveau spa hotel", record.getString(HotelsTable.DESCRIPTION));
+        Assert.assertEquals("+36 1 889 5500", record.getString(HotelsTable.PHONE));
+        
+        
+        // explicit nulls are still written
+        unsetNullsHotelsDao.writeWithKey(HotelsTable.ID, "BUP7766")
+                           .value(HotelsTable.PHONE, null)
+                           .execute();
+
+        record = hotelsDao.readWithKey(HotelsTable.ID, "BUP7766").execute().get();
+        Assert.assertNull(record.getString(HotelsTable.PHONE));
+        Assert.assertEquals("Art nouveau spa hotel", record.getString(HotelsTable.DESCRIPTION));
+
+        
+        // without unset nulls, empty properties are written as null
+        hotelsDao.writeEntity(new Hotel("BUP7766", 
+                                        "Hotel Gellert",
+                                        ImmutableSet.of("1", "2", "3"),
+                                        Optional.of(ClassifierEnum.FOUR), 
+                                        Optional.empty(),
+                                        new Address("Szent Gellert ter 2", "Budapest", "1114"),
+                                        Optional.empty()))
+                 .execute();
+        
+        record = hotelsDao.readWithKey(HotelsTable.ID, "BUP7766").execute().get();
+        Assert.assertNull(record.getString(HotelsTable.DESCRIPTION));
+    }
+
 }
 
 
@@ -0,0 +1,173 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.persistence;
+
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.EntitySession;
+import net.oneandone.troilus.Field;
+import net.oneandone.troilus.Record;
+import net.oneandone.troilus.Result;
+import net.oneandone.troilus.api.UsersTable;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+
+public class EntitySessionTest  {
+    
+    private static CassandraDB cassandra;
+    
+    
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+        
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+    
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(UsersTable.DDL);
+    }
+    
+    
+    
+    @Test
+    public void testSaveChangedValuesOnly() throws Exception {
+        Dao userDao = new DaoImpl(cassandra.getSession(), UsersTable.TABLE);
+
+        userDao.writeWithKey(UsersTable.USER_ID, "4545345")
+               .value(UsersTable.NAME, "hans")
+               .value(UsersTable.MODIFIED, 1345553l)
+               .value(UsersTable.PHONE_NUMBERS, ImmutableSet.of("1234", "5678"))
+               .value(UsersTable.ADDRESSES, ImmutableList.of("berlin"))
+               .value(UsersTable.ROLES, ImmutableMap.of("customer", "active"))
+               .execute();
+        
+        
+        EntitySession session = userDao.newEntitySession();
+        TrackedUser user = session.attach(userDao.readWithKey(UsersTable.USER_ID, "4545345")
+                                                 .asEntity(TrackedUser.class)
+                                                 .execute()
+                                                 .get());
+        Assert.assertFalse(session.isModified(user));
+        Assert.assertFalse(session.save(user).isPresent());
+        
+        
+        // concurrent write of another client
+        userDao.writeWithKey(UsersTable.USER_ID, "4545345")
+               .value(UsersTable.MODIFIED, 2345553l)
+               .addSetValue(UsersTable.PHONE_NUMBERS, "9999")
+               .putMapValue(UsersTable.ROLES, "admin", "active")
+               .execute();
+        
+        
+        user.name = "hans peter";
+        user.phoneNumbers = ImmutableSet.of("1234", "4321");
+        user.addresses = ImmutableList.of("berlin", "karlsruhe");
+        user.roles = ImmutableMap.of("customer", "inactive");
+        Assert.assertTrue(session.isModified(user));
+        
+        Optional<Result> result = session.save(user); 
+        Assert.assertTrue(result.isPresent());
+        Assert.assertFalse(session.isModified(user));
+        
+        
+        // only the changes have been written. The unchanged values and the collection elements 
+        // of the other client are kept 
+        Record record = userDao.readWithKey(UsersTable.USER_ID, "4545345").execute().get();
+        Assert.assertEquals("hans peter", record.getString(UsersTable.NAME));
+        Assert.assertEquals(2345553l, record.getLong(UsersTable.MODIFIED));
+        Assert.assertEquals(ImmutableSet.of("1234", "4321", "9999"), record.getSet(UsersTable.PHONE_NUMBERS, String.class));
+        Assert.assertEquals(ImmutableList.of("berlin", "karlsruhe"), record.getList(UsersTable.ADDRESSES, String.class));
+        Assert.assertEquals(ImmutableMap.of("customer", "inactive", "admin", "active"), record.getMap(UsersTable.ROLES, String.class, String.class));
+        
+        
+        // removing a map entry replaces the map  
+        user.roles = ImmutableMap.of();
+        user.phoneNumbers = null;
+        session.save(user);
+
+        record = userDao.readWithKey(UsersTable.USER_ID, "4545345").execute().get();
+        Assert.assertTrue(record.getMap(UsersTable.ROLES, String.class, String.class).isEmpty());
+        Assert.assertTrue(record.getSet(UsersTable.PHONE_NUMBERS, String.class).isEmpty());
+        Assert.assertEquals("hans peter", record.getString(UsersTable.NAME));
+        
+        
+        // absent and empty collections are the same 
+        user.phoneNumbers = ImmutableSet.of();
+        Assert.assertFalse(session.isModified(user));
+        
+        
+        // concurrent saves of the same entity append the list element once 
+        user.addresses = ImmutableList.of("berlin", "karlsruhe", "munich");
+        CompletableFuture<Optional<Result>> future1 = session.saveAsync(user);
+        CompletableFuture<Optional<Result>> future2 = session.saveAsync(user);
+        Assert.assertTrue(future1.get().isPresent() ^ future2.get().isPresent());
+        Assert.assertFalse(session.isModified(user));
+        
+        record = userDao.readWithKey(UsersTable.USER_ID, "4545345").execute().get();
+        Assert.assertEquals(ImmutableList.of("berlin", "karlsruhe", "munich"), record.getList(UsersTable.ADDRESSES, String.class));
+        
+        
+        session.detach(user);
+        try {
+            session.save(user);
+            Assert.fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) { }
+    }
+    
+    
+    
+    public static class TrackedUser {
+        
+        @Field(name = "user_id")
+        private String userId;
+        
+        @Field(name = "name")
+        private String name;
+        
+        @Field(name = "modified")
+        private Long modified;
+        
+        @Field(name = "phone_numbers")
+        private ImmutableSet<String> phoneNumbers;
+        
+        @Field(name = "addresses")
+        private ImmutableList<String> addresses;
+        
+        @Field(name = "roles")
+        private ImmutableMap<String, String> roles;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.troilus.reactive;
+
+
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.oneandone.troilus.Batchable;
+import net.oneandone.troilus.CassandraDB;
+import net.oneandone.troilus.Dao;
+import net.oneandone.troilus.DaoImpl;
+import net.oneandone.troilus.MutationResult;
+import net.oneandone.troilus.WriteProcessor;
+import net.oneandone.troilus.api.FeesTable;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+
+
+public class WriteProcessorTest {
+
+    private static CassandraDB cassandra;
+
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        cassandra = CassandraDB.newInstance();
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        cassandra.close();
+    }
+
+
+    @Before
+    public void before() throws IOException {
+        cassandra.tryExecuteCqlFile(FeesTable.DDL);
+    }
+
+
+
+    @Test
+    public void testWriteRx() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+
+        List<Batchable<?>> mutations = Lists.newArrayList();
+        for (int i = 0; i < 300; i++) {
+            mutations.add(feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "customer" + (i % 7), FeesTable.YEAR, i)
+                                .value(FeesTable.AMOUNT, i));
+        }
+
+        WriteProcessor<Batchable<?>> processor = feeDao.writeRx()
+                                                       .withMaxInFlight(10)
+                                                       .withRetries(2);
+        new IterablePublisher<>(mutations).subscribe(processor);
+
+        ResultSubscriber<Batchable<?>> resultSubscriber = new ResultSubscriber<>();
+        processor.subscribe(resultSubscriber);
+
+        ImmutableList<MutationResult<Batchable<?>>> results = resultSubscriber.getAll();
+        Assert.assertEquals(300, results.size());
+        for (MutationResult<Batchable<?>> result : results) {
+            Assert.assertTrue(result.isSuccess());
+        }
+        processor.close();
+
+        Assert.assertEquals(300 / 7 + 1, feeDao.readSequenceWhere(QueryBuilder.eq(FeesTable.CUSTOMER_ID, "customer0"))
+                                               .count()
+                                               .execute()
+                                               .getCount());
+    }
+
+
+    @Test
+    public void testWriteRxWithPartitionGrouping() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+
+        List<Batchable<?>> mutations = Lists.newArrayList();
+        List<String> partitionKeys = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            mutations.add(feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "customer" + (i % 3), FeesTable.YEAR, i)
+                                .value(FeesTable.AMOUNT, i));
+            partitionKeys.add("customer" + (i % 3));
+        }
+
+        WriteProcessor<Batchable<?>> processor = feeDao.writeRx()
+                                                       .withMaxInFlight(20)
+                                                       .withPartitionGrouping(mutation -> partitionKeys.get(mutations.indexOf(mutation)));
+        new IterablePublisher<>(mutations).subscribe(processor);
+
+        ResultSubscriber<Batchable<?>> resultSubscriber = new ResultSubscriber<>();
+        processor.subscribe(resultSubscriber);
+
+        Assert.assertEquals(100, resultSubscriber.getAll().size());
+        Assert.assertEquals(34, feeDao.readSequenceWhere(QueryBuilder.eq(FeesTable.CUSTOMER_ID, "customer0"))
+                                      .count()
+                                      .execute()
+                                      .getCount());
+    }
+
+
+
+    @Test
+    public void testWriteRxWithBoundedDemand() throws Exception {
+        Dao feeDao = new DaoImpl(cassandra.getSession(), FeesTable.TABLE);
+
+        List<Batchable<?>> mutations = Lists.newArrayList();
+        for (int i = 0; i < 50; i++) {
+            mutations.add(feeDao.writeWithKey(FeesTable.CUSTOMER_ID, "bounded", FeesTable.YEAR, i)
+                                .value(FeesTable.AMOUNT, i));
+        }
+
+        WriteProcessor<Batchable<?>> processor = feeDao.writeRx()
+                                                       .withMaxInFlight(4);
+        new IterablePublisher<>(mutations).subscribe(processor);
+
+        // requests 3 results at once. The next 3 results are requested after the requested ones are received
+        ResultSubscriber<Batchable<?>> resultSubscriber = new ResultSubscriber<>(3);
+        processor.subscribe(resultSubscriber);
+
+        ImmutableList<MutationResult<Batchable<?>>> results = resultSubscriber.getAll();
+        Assert.assertEquals(50, results.size());
+        Assert.assertFalse(resultSubscriber.isDemandExceeded());
+        for (MutationResult<Batchable<?>> result : results) {
+            Assert.assertTrue(result.isSuccess());
+        }
+    }
+
+
+
+    private static final class IterablePublisher<T> implements Publisher<T> {
+        private final Iterator<T> it;
+
+        public IterablePublisher(Iterable<T> iterable) {
+            this.it = iterable.iterator();
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super T> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                private final AtomicLong demand = new AtomicLong();
+                private boolean isCompleted = false;
+
+                @Override
+                public void request(long n) {
+                    // prevent recursive emitting
+                    if (demand.getAndAdd(n) > 0) {
+                        return;
+                    }
+
+                    do {
+                        synchronized (it) {
+                            if (it.hasNext()) {
+                                subscriber.onNext(it.next());
+                            } else if (!isCompleted) {
+                                isCompleted = true;
+                                subscriber.onComplete();
+                                return;
+                            }
+                        }
+                    } while (demand.decrementAndGet() > 0);
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        }
+    }
+
+
+
+    private static final class ResultSubscriber<T> implements Subscriber<MutationResult<T>> {
+        private final List<MutationResult<T>> results = Lists.newCopyOnWriteArrayList();
+        private final CountDownLatch completedLatch = new CountDownLatch(1);
+        private final long batchSize;
+        private final AtomicLong outstanding = new AtomicLong();
+        private volatile boolean isDemandExceeded = false;
+        private Subscription subscription;
+
+        public ResultSubscriber() {
+            this(Long.MAX_VALUE);
+        }
+
+        public ResultSubscriber(long batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            outstanding.set(batchSize);
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public void onNext(MutationResult<T> result) {
+            results.add(result);
+
+            if (batchSize != Long.MAX_VALUE) {
+                long remaining = outstanding.decrementAndGet();
+                if (remaining < 0) {
+                    isDemandExceeded = true;
+                } else if (remaining == 0) {
+                    outstanding.set(batchSize);
+                    subscription.request(batchSize);
+                }
+            }
+        }
+
+        public boolean isDemandExceeded() {
+            return isDemandExceeded;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            completedLatch.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completedLatch.countDown();
+        }
+
+        public ImmutableList<MutationResult<T>> getAll() throws InterruptedException {
+            Assert.assertTrue(completedLatch.await(30, TimeUnit.SECONDS));
+            return ImmutableList.copyOf(results);
+        }
+    }
+}